@@ -0,0 +1,174 @@
+package ecommerce.carga;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import org.HdrHistogram.Histogram;
+
+import ecommerce.entity.TipoCliente;
+
+/**
+ * Um degrau do teste de carga: {@code usuarios} threads em laço fechado, cada
+ * uma enviando um {@code POST /finalizar} de um carrinho sorteado e esperando
+ * a resposta antes do próximo. As requisições iniciadas no aquecimento são
+ * descartadas.
+ * <p>
+ * A latência é registrada só para compras concluídas, para que respostas de
+ * erro rápidas (ex.: 503 do bulkhead) não puxem os percentis para baixo; os
+ * erros aparecem na contagem por resultado.
+ * <p>
+ * Cada carrinho só pode ser finalizado uma vez; depois de uma compra
+ * concluída, {@code reabrir} o devolve a aberto (fora da latência medida) para
+ * que possa ser sorteado de novo.
+ */
+final class Degrau {
+
+	/** Um carrinho da massa de dados e o cliente dono dele. */
+	record Pedido(long carrinhoId, long clienteId, TipoCliente tipo, int itens) {
+	}
+
+	private final HttpClient http;
+	private final URI base;
+	private final List<Pedido> pedidos;
+	private final OpcoesDeCarga opcoes;
+	private final LongConsumer reabrir;
+
+	Degrau(HttpClient http, URI base, List<Pedido> pedidos, OpcoesDeCarga opcoes, LongConsumer reabrir) {
+		this.http = http;
+		this.base = base;
+		this.pedidos = pedidos;
+		this.opcoes = opcoes;
+		this.reabrir = reabrir;
+	}
+
+	Medicao executar(int usuarios) throws InterruptedException {
+		long inicioMedicao = System.nanoTime() + TimeUnit.SECONDS.toNanos(opcoes.aquecimentoSegundos);
+		long fimMedicao = inicioMedicao + TimeUnit.SECONDS.toNanos(opcoes.duracaoSegundos);
+
+		ExecutorService threads = Executors.newFixedThreadPool(usuarios);
+		try {
+			List<Future<Medicao>> medicoes = new ArrayList<>();
+			for (int i = 0; i < usuarios; i++) {
+				Random aleatorio = new Random(opcoes.semente + 31L * usuarios + i);
+				medicoes.add(threads.submit(usuario(aleatorio, inicioMedicao, fimMedicao)));
+			}
+			Medicao total = new Medicao(usuarios, opcoes.duracaoSegundos);
+			for (Future<Medicao> medicao : medicoes) {
+				total.somar(medicao.get());
+			}
+			return total;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Falha em um usuário do teste de carga.", e.getCause());
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+
+	private Callable<Medicao> usuario(Random aleatorio, long inicioMedicao, long fimMedicao) {
+		Duration timeout = Duration.ofSeconds(opcoes.timeoutSegundos);
+		return () -> {
+			Medicao medicao = new Medicao(0, opcoes.duracaoSegundos);
+			while (System.nanoTime() < fimMedicao) {
+				Pedido pedido = pedidos.get(aleatorio.nextInt(pedidos.size()));
+				HttpRequest requisicao = HttpRequest
+						.newBuilder(base.resolve("/finalizar?carrinhoId=" + pedido.carrinhoId() + "&clienteId="
+								+ pedido.clienteId()))
+						.timeout(timeout).POST(HttpRequest.BodyPublishers.noBody()).build();
+
+				long inicio = System.nanoTime();
+				String resultado;
+				try {
+					HttpResponse<String> resposta = http.send(requisicao, HttpResponse.BodyHandlers.ofString());
+					resultado = resposta.statusCode() == 200 && resposta.body().contains("\"sucesso\":false")
+							? "200 não concluída"
+							: String.valueOf(resposta.statusCode());
+				} catch (HttpTimeoutException e) {
+					resultado = "timeout";
+				} catch (IOException e) {
+					resultado = "erro de E/S";
+				}
+				if (inicio >= inicioMedicao) {
+					medicao.registrar(pedido, resultado, System.nanoTime() - inicio);
+				}
+				if (resultado.equals(Medicao.SUCESSO)) {
+					reabrir.accept(pedido.carrinhoId());
+				}
+				if (opcoes.pausaMillis > 0) {
+					Thread.sleep(opcoes.pausaMillis);
+				}
+			}
+			return medicao;
+		};
+	}
+
+	/** Contagens e histogramas de latência (em microssegundos) de um degrau. */
+	static final class Medicao {
+		static final String SUCESSO = "200";
+
+		final int usuarios;
+		final int duracaoSegundos;
+		final Histogram latencias = new Histogram(3);
+		final Map<TipoCliente, Histogram> porTipo = new EnumMap<>(TipoCliente.class);
+		final Map<Integer, Histogram> porTamanho = new TreeMap<>();
+		final Map<String, Long> resultados = new TreeMap<>();
+		long requisicoes;
+
+		Medicao(int usuarios, int duracaoSegundos) {
+			this.usuarios = usuarios;
+			this.duracaoSegundos = duracaoSegundos;
+		}
+
+		void registrar(Pedido pedido, String resultado, long latenciaNanos) {
+			requisicoes++;
+			resultados.merge(resultado, 1L, Long::sum);
+			if (SUCESSO.equals(resultado)) {
+				long micros = TimeUnit.NANOSECONDS.toMicros(latenciaNanos);
+				latencias.recordValue(micros);
+				porTipo.computeIfAbsent(pedido.tipo(), tipo -> new Histogram(3)).recordValue(micros);
+				porTamanho.computeIfAbsent(pedido.itens(), itens -> new Histogram(3)).recordValue(micros);
+			}
+		}
+
+		void somar(Medicao outra) {
+			requisicoes += outra.requisicoes;
+			latencias.add(outra.latencias);
+			outra.porTipo.forEach((tipo, h) -> porTipo.computeIfAbsent(tipo, t -> new Histogram(3)).add(h));
+			outra.porTamanho.forEach((itens, h) -> porTamanho.computeIfAbsent(itens, i -> new Histogram(3)).add(h));
+			outra.resultados.forEach((resultado, n) -> resultados.merge(resultado, n, Long::sum));
+		}
+
+		long sucessos() {
+			return resultados.getOrDefault(SUCESSO, 0L);
+		}
+
+		double vazao() {
+			return (double) requisicoes / duracaoSegundos;
+		}
+
+		double vazaoDeSucessos() {
+			return (double) sucessos() / duracaoSegundos;
+		}
+
+		double percentualDeErros() {
+			return requisicoes == 0 ? 0 : 100.0 * (requisicoes - sucessos()) / requisicoes;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package ecommerce.carga;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ecommerce.entity.TipoCliente;
+import ecommerce.massa.Mistura;
+
+/**
+ * Opções do teste de carga, no formato {@code --nome=valor}. Opções que não
+ * são do teste (ex.: {@code --spring.datasource.hikari.maximum-pool-size=4})
+ * são repassadas à aplicação.
+ */
+final class OpcoesDeCarga {
+
+	/** Usuários simultâneos de cada degrau, em ordem. */
+	final int[] usuarios;
+	final int duracaoSegundos;
+	final int aquecimentoSegundos;
+	/** Pausa de cada usuário entre uma resposta e a próxima requisição. */
+	final int pausaMillis;
+	final int timeoutSegundos;
+	final Mistura<TipoCliente> tipos;
+	/** Quantidade de itens dos carrinhos. */
+	final Mistura<Integer> tamanhos;
+	final int clientes;
+	final int carrinhos;
+	final int produtos;
+	/** Concentração dos itens nos produtos mais populares (0 = uniforme). */
+	final double zipf;
+	final long semente;
+	final List<String> argumentosDaAplicacao;
+
+	private OpcoesDeCarga(Map<String, String> valores, List<String> argumentosDaAplicacao) {
+		this.usuarios = Arrays.stream(valores.remove("usuarios").split(",")).map(String::trim)
+				.mapToInt(Integer::parseInt).toArray();
+		this.duracaoSegundos = Integer.parseInt(valores.remove("duracao"));
+		this.aquecimentoSegundos = Integer.parseInt(valores.remove("aquecimento"));
+		this.pausaMillis = Integer.parseInt(valores.remove("pausa"));
+		this.timeoutSegundos = Integer.parseInt(valores.remove("timeout"));
+		this.tipos = Mistura.de(valores.remove("tipos"), TipoCliente::valueOf);
+		this.tamanhos = Mistura.de(valores.remove("tamanhos"), Integer::valueOf);
+		this.clientes = Integer.parseInt(valores.remove("clientes"));
+		this.carrinhos = Integer.parseInt(valores.remove("carrinhos"));
+		this.produtos = Integer.parseInt(valores.remove("produtos"));
+		this.zipf = Double.parseDouble(valores.remove("zipf"));
+		this.semente = Long.parseLong(valores.remove("semente"));
+		this.argumentosDaAplicacao = argumentosDaAplicacao;
+
+		if (Arrays.stream(usuarios).anyMatch(n -> n <= 0) || duracaoSegundos <= 0 || clientes <= 0 || carrinhos <= 0
+				|| produtos <= 0) {
+			throw new IllegalArgumentException("Usuários, duração, clientes, carrinhos e produtos devem ser positivos.");
+		}
+		if (tamanhos.valores().stream().anyMatch(tamanho -> tamanho <= 0 || tamanho > produtos)) {
+			throw new IllegalArgumentException("Tamanhos de carrinho devem estar entre 1 e o número de produtos.");
+		}
+	}
+
+	static OpcoesDeCarga ler(String[] args) {
+		Map<String, String> valores = new LinkedHashMap<>();
+		valores.put("usuarios", "4,8,16,32,64");
+		valores.put("duracao", "15");
+		valores.put("aquecimento", "5");
+		valores.put("pausa", "0");
+		valores.put("timeout", "10");
+		valores.put("tipos", "BRONZE:60,PRATA:30,OURO:10");
+		valores.put("tamanhos", "1:30,5:40,20:25,100:5");
+		valores.put("clientes", "300");
+		valores.put("carrinhos", "1000");
+		valores.put("produtos", "2000");
+		valores.put("zipf", "1.0");
+		valores.put("semente", "42");
+
+		List<String> argumentosDaAplicacao = new ArrayList<>();
+		for (String arg : args) {
+			int igual = arg.indexOf('=');
+			String nome = arg.startsWith("--") && igual > 2 ? arg.substring(2, igual) : null;
+			if (nome != null && valores.containsKey(nome)) {
+				valores.put(nome, arg.substring(igual + 1));
+			} else {
+				argumentosDaAplicacao.add(arg);
+			}
+		}
+		return new OpcoesDeCarga(valores, argumentosDaAplicacao);
+	}
+}
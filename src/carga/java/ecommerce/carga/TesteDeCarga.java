@@ -0,0 +1,147 @@
+package ecommerce.carga;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import ecommerce.CompraApplication;
+import ecommerce.carga.Degrau.Medicao;
+import ecommerce.carga.Degrau.Pedido;
+import ecommerce.massa.GeradorDeMassa;
+import ecommerce.massa.ParametrosDaMassa;
+
+/**
+ * Teste de carga do {@code POST /finalizar} contra uma instância da aplicação
+ * completa, em uma porta livre e com banco H2 próprio.
+ * <p>
+ * A massa de dados ({@link GeradorDeMassa}) mistura tipos de cliente e
+ * tamanhos de carrinho com os pesos das opções {@code tipos} e
+ * {@code tamanhos}, com os itens concentrados nos produtos populares conforme
+ * {@code zipf}. A carga sobe em degraus de usuários simultâneos
+ * ({@code usuarios}); para cada degrau são impressos vazão, percentis de
+ * latência e resultados por status HTTP, e ao final o ponto de saturação: o
+ * menor degrau que já alcança 95% da maior vazão observada. A partir dele, mais usuários só aumentam a fila e a latência.
+ * <p>
+ * Uso: {@code mvn -Pcarga test-compile exec:exec -Dcarga.opcoes="--usuarios=8,16,32 --duracao=20"}.
+ */
+public class TesteDeCarga {
+
+	private static final double FRACAO_SATURACAO = 0.95;
+	private static final BigDecimal PRECO_MINIMO = new BigDecimal("1.00");
+	private static final BigDecimal PRECO_MAXIMO = new BigDecimal("500.99");
+	private static final int PESO_MAXIMO = 5;
+	private static final int QUANTIDADE_MAXIMA = 3;
+	private static final int LOTE = 5_000;
+	private static final String REABRIR_CARRINHO = "update carrinho_de_compras set status = 'ABERTO' where id = ?";
+
+	public static void main(String[] args) throws Exception {
+		OpcoesDeCarga opcoes = OpcoesDeCarga.ler(args);
+
+		try (ConfigurableApplicationContext contexto = new SpringApplicationBuilder(CompraApplication.class)
+				.run(argumentosDaAplicacao(opcoes))) {
+			URI base = URI.create("http://localhost:" + contexto.getEnvironment().getProperty("local.server.port"));
+			System.out.printf("Aplicação em %s; preparando %d clientes, %d produtos e %d carrinhos...%n", base,
+					opcoes.clientes, opcoes.produtos, opcoes.carrinhos);
+			List<Pedido> pedidos = semear(contexto, opcoes);
+
+			System.out.printf("Tipos de cliente: %s. Itens por carrinho: %s.%n", opcoes.tipos, opcoes.tamanhos);
+			System.out.printf("Degraus de %ds (mais %ds de aquecimento), pausa de %d ms entre requisições.%n%n",
+					opcoes.duracaoSegundos, opcoes.aquecimentoSegundos, opcoes.pausaMillis);
+
+			HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+					.connectTimeout(Duration.ofSeconds(opcoes.timeoutSegundos)).build();
+			JdbcTemplate jdbc = contexto.getBean(JdbcTemplate.class);
+			Degrau degrau = new Degrau(http, base, pedidos, opcoes,
+					carrinhoId -> jdbc.update(REABRIR_CARRINHO, carrinhoId));
+			List<Medicao> medicoes = new ArrayList<>();
+			for (int usuarios : opcoes.usuarios) {
+				Medicao medicao = degrau.executar(usuarios);
+				medicoes.add(medicao);
+				imprimirDegrau(medicao);
+			}
+			imprimirResumo(medicoes);
+		}
+	}
+
+	/** Porta livre, banco próprio e log reduzido, com as opções repassadas por cima. */
+	private static String[] argumentosDaAplicacao(OpcoesDeCarga opcoes) {
+		Map<String, String> argumentos = new LinkedHashMap<>();
+		argumentos.put("server.port", "--server.port=0");
+		argumentos.put("spring.datasource.url", "--spring.datasource.url=jdbc:h2:mem:carga;DB_CLOSE_DELAY=-1");
+		argumentos.put("spring.main.banner-mode", "--spring.main.banner-mode=off");
+		argumentos.put("logging.level.root", "--logging.level.root=WARN");
+		// Sem os avisos do Tomcat sobre threads da aplicação ainda vivas no encerramento
+		argumentos.put("logging.level.org.apache.catalina.loader",
+				"--logging.level.org.apache.catalina.loader=ERROR");
+		for (String argumento : opcoes.argumentosDaAplicacao) {
+			int igual = argumento.indexOf('=');
+			// Argumentos repetidos viram uma lista no Spring: o repassado substitui o padrão
+			argumentos.put(igual > 2 ? argumento.substring(2, igual) : argumento, argumento);
+		}
+		return argumentos.values().toArray(String[]::new);
+	}
+
+	/** Gera a massa em lotes JDBC e guarda cada carrinho como um pedido possível. */
+	private static List<Pedido> semear(ConfigurableApplicationContext contexto, OpcoesDeCarga opcoes) {
+		GeradorDeMassa gerador = new GeradorDeMassa(contexto.getBean(JdbcTemplate.class),
+				contexto.getBean(PlatformTransactionManager.class));
+		List<Pedido> pedidos = new ArrayList<>(opcoes.carrinhos);
+		gerador.gerar(new ParametrosDaMassa(opcoes.clientes, opcoes.produtos, opcoes.carrinhos, opcoes.tipos,
+				opcoes.tamanhos, PRECO_MINIMO, PRECO_MAXIMO, 0, PESO_MAXIMO, opcoes.zipf, QUANTIDADE_MAXIMA, LOTE,
+				opcoes.semente, true),
+				(carrinhoId, clienteId, tipo, itens) -> pedidos.add(new Pedido(carrinhoId, clienteId, tipo, itens)));
+		return pedidos;
+	}
+
+	private static void imprimirDegrau(Medicao medicao) {
+		System.out.printf("%d usuários: %.1f req/s, %.1f compras/s, %.2f%% falhas, latência p50 %s p99 %s ms%n",
+				medicao.usuarios, medicao.vazao(), medicao.vazaoDeSucessos(), medicao.percentualDeErros(),
+				millis(medicao.latencias, 50), millis(medicao.latencias, 99));
+		System.out.printf("  resultados: %s%n", medicao.resultados);
+		medicao.porTipo.forEach((tipo, latencias) -> System.out.printf("  %-13s p50 %8s p99 %8s ms (%d)%n", tipo,
+				millis(latencias, 50), millis(latencias, 99), latencias.getTotalCount()));
+		medicao.porTamanho.forEach((itens, latencias) -> System.out.printf("  %-13s p50 %8s p99 %8s ms (%d)%n",
+				itens + " itens", millis(latencias, 50), millis(latencias, 99), latencias.getTotalCount()));
+		System.out.println();
+	}
+
+	private static void imprimirResumo(List<Medicao> medicoes) {
+		System.out.printf("%8s %10s %10s %8s %9s %9s %9s %9s %9s%n", "usuários", "req/s", "compras/s", "falhas%",
+				"p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "máx ms");
+		double maiorVazao = 0;
+		for (Medicao medicao : medicoes) {
+			maiorVazao = Math.max(maiorVazao, medicao.vazaoDeSucessos());
+			Histogram latencias = medicao.latencias;
+			System.out.printf("%8d %10.1f %10.1f %8.2f %9s %9s %9s %9s %9s%n", medicao.usuarios, medicao.vazao(),
+					medicao.vazaoDeSucessos(), medicao.percentualDeErros(), millis(latencias, 50),
+					millis(latencias, 95), millis(latencias, 99), millis(latencias, 99.9),
+					latencias.getTotalCount() == 0 ? "-" : String.format("%.1f", latencias.getMaxValue() / 1000.0));
+		}
+
+		for (Medicao medicao : medicoes) {
+			if (medicao.vazaoDeSucessos() >= FRACAO_SATURACAO * maiorVazao) {
+				System.out.printf("%nSaturação: %d usuários já alcançam %.0f%% da maior vazão (%.1f compras/s).%n",
+						medicao.usuarios, 100 * FRACAO_SATURACAO, maiorVazao);
+				break;
+			}
+		}
+	}
+
+	private static String millis(Histogram latencias, double percentil) {
+		if (latencias.getTotalCount() == 0) {
+			return "-";
+		}
+		return String.format("%.1f", latencias.getValueAtPercentile(percentil) / 1000.0);
+	}
+}
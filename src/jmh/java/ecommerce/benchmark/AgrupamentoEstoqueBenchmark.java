@@ -0,0 +1,119 @@
+package ecommerce.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.agrupado.EstoqueAgrupado;
+import ecommerce.external.fake.EstoqueEmMemoria;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Vazão de consultas de disponibilidade concorrentes contra um estoque remoto
+ * lento e com poucas chamadas simultâneas (como o bulkhead), com e sem
+ * {@link EstoqueAgrupado}. Os carrinhos levam uma unidade de produtos sorteados
+ * entre {@code produtosQuentes}. Ao fim de cada iteração é impresso o tamanho
+ * médio dos grupos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(64)
+@Fork(1)
+public class AgrupamentoEstoqueBenchmark {
+
+	@Param({ "0", "500" })
+	private long janelaMicros;
+
+	@Param({ "16" })
+	private int produtosQuentes;
+
+	@Param({ "1000" })
+	private long latenciaMicros;
+
+	@Param({ "8" })
+	private int chamadasSimultaneas;
+
+	private IEstoqueExternal estoque;
+	private DistributionSummary tamanhoDoGrupo;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		EstoqueEmMemoria memoria = new EstoqueEmMemoria(produtosQuentes);
+		for (long id = 1; id <= produtosQuentes; id++) {
+			memoria.repor(id, 1_000_000L);
+		}
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		estoque = new EstoqueAgrupado(new EstoqueRemotoLento(memoria, TimeUnit.MICROSECONDS.toNanos(latenciaMicros),
+				chamadasSimultaneas), Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(janelaMicros)), 64, registry);
+		tamanhoDoGrupo = registry.get("estoque.agrupamento.tamanho").summary();
+	}
+
+	@TearDown(Level.Iteration)
+	public void relatar() {
+		if (janelaMicros > 0) {
+			System.out.printf("%n  consultas por chamada agrupada: média %.1f, máximo %.0f%n", tamanhoDoGrupo.mean(),
+					tamanhoDoGrupo.max());
+		}
+	}
+
+	@Benchmark
+	public DisponibilidadeDTO verificarDisponibilidade() {
+		ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+		long[] ids = { 1L + aleatorio.nextInt(produtosQuentes), 1L + aleatorio.nextInt(produtosQuentes) };
+		return estoque.verificarDisponibilidade(new ItensEstoqueDTO(ids, new long[] { 1L, 1L }));
+	}
+
+	/** Estoque com latência fixa por chamada e limite de chamadas em andamento. */
+	private static final class EstoqueRemotoLento implements IEstoqueExternal {
+		private final IEstoqueExternal estoque;
+		private final long latenciaNanos;
+		private final Semaphore vagas;
+
+		EstoqueRemotoLento(IEstoqueExternal estoque, long latenciaNanos, int chamadasSimultaneas) {
+			this.estoque = estoque;
+			this.latenciaNanos = latenciaNanos;
+			this.vagas = new Semaphore(chamadasSimultaneas);
+		}
+
+		@Override
+		public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
+			vagas.acquireUninterruptibly();
+			try {
+				LockSupport.parkNanos(latenciaNanos);
+				return estoque.verificarDisponibilidade(itens);
+			} finally {
+				vagas.release();
+			}
+		}
+
+		@Override
+		public EstoqueBaixaDTO darBaixa(ItensEstoqueDTO itens) {
+			return estoque.darBaixa(itens);
+		}
+	}
+}
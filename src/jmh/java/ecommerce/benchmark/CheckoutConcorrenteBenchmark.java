@@ -0,0 +1,106 @@
+package ecommerce.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ecommerce.benchmark.DadosBenchmark.CarrinhoFixo;
+import ecommerce.benchmark.DadosBenchmark.ClienteFixo;
+import ecommerce.benchmark.DadosBenchmark.RegistroSemBanco;
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.TipoCliente;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.external.fake.PagamentoSimulado;
+import ecommerce.service.CompraService;
+import ecommerce.service.MetricasCompra;
+import ecommerce.service.custo.CalculadoraDeCusto;
+
+/**
+ * Compara a latência de {@code finalizarCompra} com a consulta ao estoque em
+ * sequência (executor síncrono) e em paralelo com o cálculo do custo, para um
+ * estoque que demora a responder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckoutConcorrenteBenchmark {
+
+	@Param({ "0", "200", "1000" })
+	private long latenciaEstoqueMicros;
+
+	@Param({ "100", "10000" })
+	private int tamanhoCarrinho;
+
+	private ExecutorService executor;
+	private CompraService sequencial;
+	private CompraService concorrente;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		CarrinhoDeCompras carrinho = DadosBenchmark.carrinho(tamanhoCarrinho, TipoCliente.BRONZE);
+		EstoqueLento estoque = new EstoqueLento(TimeUnit.MICROSECONDS.toNanos(latenciaEstoqueMicros));
+		executor = Executors.newFixedThreadPool(4);
+
+		sequencial = new CompraService(new CarrinhoFixo(carrinho), new ClienteFixo(carrinho.getCliente()), estoque,
+				new PagamentoSimulado(true, 1L), new CalculadoraDeCusto(), Runnable::run,
+				new MetricasCompra(new SimpleMeterRegistry()), new RegistroSemBanco());
+		concorrente = new CompraService(new CarrinhoFixo(carrinho), new ClienteFixo(carrinho.getCliente()), estoque,
+				new PagamentoSimulado(true, 1L), new CalculadoraDeCusto(), executor,
+				new MetricasCompra(new SimpleMeterRegistry()), new RegistroSemBanco());
+	}
+
+	@TearDown(Level.Trial)
+	public void encerrar() {
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public CompraDTO finalizarCompraSequencial() {
+		return sequencial.finalizarCompra(1L, 1L);
+	}
+
+	@Benchmark
+	public CompraDTO finalizarCompraConcorrente() {
+		return concorrente.finalizarCompra(1L, 1L);
+	}
+
+	private static final class EstoqueLento extends EstoqueSimulado {
+		private final long latenciaNanos;
+
+		EstoqueLento(long latenciaNanos) {
+			super(null);
+			this.latenciaNanos = latenciaNanos;
+		}
+
+		@Override
+		public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
+			if (latenciaNanos > 0) {
+				LockSupport.parkNanos(latenciaNanos);
+			}
+			return super.verificarDisponibilidade(itens);
+		}
+	}
+}
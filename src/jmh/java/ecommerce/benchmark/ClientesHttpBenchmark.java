@@ -0,0 +1,103 @@
+package ecommerce.benchmark;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.external.fake.PagamentoSimulado;
+import ecommerce.external.http.ClientesHttp;
+import ecommerce.external.http.EstoqueClient;
+import ecommerce.external.http.EstoqueHttp;
+import ecommerce.external.http.PagamentoClient;
+import ecommerce.external.http.PagamentoHttp;
+import ecommerce.external.http.ServidorExternoLocal;
+
+/**
+ * Custo por chamada dos clientes HTTP de estoque e pagamento contra o
+ * {@link ServidorExternoLocal}, com o pool de conexões usado em produção.
+ * {@code maxConexoes} = 1 serializa as threads em uma única conexão; valores
+ * maiores mostram a vazão com conexões reutilizadas em paralelo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ClientesHttpBenchmark {
+
+	@Param({ "1", "16" })
+	private int maxConexoes;
+
+	@Param({ "10", "1000" })
+	private int itensPorCarrinho;
+
+	private ServidorExternoLocal servidor;
+	private CloseableHttpClient httpClient;
+	private IEstoqueExternal estoque;
+	private IPagamentoExternal pagamento;
+	private ItensEstoqueDTO itens;
+
+	@Setup(Level.Trial)
+	public void preparar() throws IOException {
+		servidor = new ServidorExternoLocal(new EstoqueSimulado(null), new PagamentoSimulado(true, 1L), 16);
+
+		ClientesHttp.Configuracao configuracao = new ClientesHttp.Configuracao(maxConexoes, maxConexoes,
+				Duration.ofMillis(500), Duration.ofSeconds(5), Duration.ofSeconds(60));
+		httpClient = ClientesHttp.httpClient(configuracao);
+		ObjectMapper mapper = new ObjectMapper();
+		estoque = new EstoqueHttp(ClientesHttp.criar(EstoqueClient.class, servidor.url(), httpClient, mapper,
+				configuracao));
+		pagamento = new PagamentoHttp(ClientesHttp.criar(PagamentoClient.class, servidor.url(), httpClient, mapper,
+				configuracao));
+
+		long[] ids = new long[itensPorCarrinho];
+		long[] quantidades = new long[itensPorCarrinho];
+		for (int i = 0; i < itensPorCarrinho; i++) {
+			ids[i] = i + 1L;
+			quantidades[i] = 1L + i % 5;
+		}
+		itens = new ItensEstoqueDTO(ids, quantidades);
+	}
+
+	@TearDown(Level.Trial)
+	public void encerrar() throws IOException {
+		httpClient.close();
+		servidor.close();
+	}
+
+	@Benchmark
+	public DisponibilidadeDTO verificarDisponibilidade() {
+		return estoque.verificarDisponibilidade(itens);
+	}
+
+	@Benchmark
+	public PagamentoDTO autorizarPagamento() {
+		return pagamento.autorizarPagamento(1L, 123.45);
+	}
+}
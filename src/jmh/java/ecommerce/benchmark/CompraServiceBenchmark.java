@@ -0,0 +1,74 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ecommerce.benchmark.DadosBenchmark.CarrinhoFixo;
+import ecommerce.benchmark.DadosBenchmark.ClienteFixo;
+import ecommerce.benchmark.DadosBenchmark.RegistroSemBanco;
+import ecommerce.dto.CompraDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.TipoCliente;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.external.fake.PagamentoSimulado;
+import ecommerce.service.CompraService;
+import ecommerce.service.MetricasCompra;
+import ecommerce.service.custo.CalculadoraDeCusto;
+
+/**
+ * Mede o caminho quente do checkout: {@code calcularCustoTotal} (incluindo o
+ * cálculo do frete) e {@code finalizarCompra} contra os serviços externos
+ * simulados, variando o tamanho do carrinho e o tipo do cliente.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompraServiceBenchmark {
+
+	@Param({ "1", "10", "100", "10000" })
+	private int tamanhoCarrinho;
+
+	@Param({ "BRONZE", "PRATA", "OURO" })
+	private TipoCliente tipoCliente;
+
+	private CarrinhoDeCompras carrinho;
+	private CompraService compraService;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		carrinho = DadosBenchmark.carrinho(tamanhoCarrinho, tipoCliente);
+
+		// Executor síncrono: mede só o custo de CPU, sem troca de threads
+		compraService = new CompraService(new CarrinhoFixo(carrinho), new ClienteFixo(carrinho.getCliente()),
+				new EstoqueSimulado(null), new PagamentoSimulado(true, 1L), new CalculadoraDeCusto(), Runnable::run,
+				new MetricasCompra(new SimpleMeterRegistry()), new RegistroSemBanco());
+	}
+
+	@Benchmark
+	public BigDecimal calcularCustoTotal() {
+		return compraService.calcularCustoTotal(carrinho);
+	}
+
+	@Benchmark
+	public CompraDTO finalizarCompra() {
+		return compraService.finalizarCompra(1L, 1L);
+	}
+}
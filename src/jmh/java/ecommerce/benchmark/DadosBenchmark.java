@@ -0,0 +1,129 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import ecommerce.dto.CarrinhoCheckoutDTO;
+import ecommerce.dto.ClienteResumoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.service.CarrinhoDeComprasService;
+import ecommerce.service.ClienteService;
+import ecommerce.service.RegistroDeCompraService;
+
+/** Dados e serviços em memória compartilhados pelos benchmarks. */
+final class DadosBenchmark {
+
+	private DadosBenchmark() {
+	}
+
+	/** Carrinho com preços entre R$ 1,00 e R$ 300,00, pesos de 1 a 10 kg e até 5 unidades por item. */
+	static CarrinhoDeCompras carrinho(int tamanho, TipoCliente tipoCliente) {
+		Random random = new Random(42);
+
+		Cliente cliente = new Cliente(1L, "Cliente", "Endereço", tipoCliente);
+
+		List<ItemCompra> itens = new ArrayList<>(tamanho);
+		for (int i = 0; i < tamanho; i++) {
+			long id = i + 1L;
+			BigDecimal preco = BigDecimal.valueOf(100 + random.nextInt(29_900), 2);
+			Produto produto = new Produto(id, "Produto " + id, "Descrição", preco, 1 + random.nextInt(10),
+					TipoProduto.values()[random.nextInt(TipoProduto.values().length)]);
+			itens.add(new ItemCompra(id, produto, 1L + random.nextInt(5)));
+		}
+		return new CarrinhoDeCompras(1L, cliente, itens, LocalDate.now());
+	}
+
+	/** Devolve sempre o mesmo carrinho, sem acesso a banco. */
+	static final class CarrinhoFixo extends CarrinhoDeComprasService {
+		private final CarrinhoDeCompras carrinho;
+		private final Optional<CarrinhoCheckoutDTO> projecao;
+
+		CarrinhoFixo(CarrinhoDeCompras carrinho) {
+			super(null, null, null);
+			this.carrinho = carrinho;
+			this.projecao = Optional.of(CarrinhoCheckoutDTO.de(carrinho));
+		}
+
+		@Override
+		public CarrinhoDeCompras buscarPorCarrinhoIdEClienteId(Long carrinhoId, Cliente cliente) {
+			return carrinho;
+		}
+
+		@Override
+		public Optional<CarrinhoCheckoutDTO> buscarParaCheckout(Long carrinhoId, ClienteResumoDTO cliente) {
+			return projecao;
+		}
+
+		// O mesmo carrinho é finalizado a cada chamada: sem reserva nem troca de status
+		@Override
+		public void reservarParaCheckout(Long carrinhoId) {
+		}
+
+		@Override
+		public void concluirCheckout(Long carrinhoId) {
+		}
+
+		@Override
+		public void liberarCheckout(Long carrinhoId) {
+		}
+	}
+
+	/** Devolve sempre o mesmo cliente, sem acesso a banco. */
+	static final class ClienteFixo extends ClienteService {
+		private final Cliente cliente;
+		private final ClienteResumoDTO resumo;
+
+		ClienteFixo(Cliente cliente) {
+			super(null, null);
+			this.cliente = cliente;
+			this.resumo = ClienteResumoDTO.de(cliente);
+		}
+
+		@Override
+		public Cliente buscarPorId(Long clienteId) {
+			return cliente;
+		}
+
+		@Override
+		public ClienteResumoDTO buscarResumoPorId(Long clienteId) {
+			return resumo;
+		}
+	}
+
+	/** Saga sem banco: os benchmarks de CPU não medem as escritas. */
+	static final class RegistroSemBanco extends RegistroDeCompraService {
+		RegistroSemBanco() {
+			super(null, null);
+		}
+
+		@Override
+		public Long iniciar(Long carrinhoId, Long clienteId, BigDecimal valorTotal) {
+			return 1L;
+		}
+
+		@Override
+		public void registrarPagamento(Long compraId, Long transacaoId) {
+		}
+
+		@Override
+		public void concluir(Long compraId) {
+		}
+
+		@Override
+		public void recusar(Long compraId, String motivo) {
+		}
+
+		@Override
+		public void cancelar(Long compraId, Long clienteId, Long transacaoId, String motivo) {
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package ecommerce.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.dto.CarrinhoCheckoutDTO;
+import ecommerce.dto.CustoCompraDTO;
+import ecommerce.dto.ItemCheckoutDTO;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.service.custo.CalculadoraDeCusto;
+import ecommerce.service.custo.TabelaDeDescontos;
+
+/**
+ * Custo do cálculo com 10, 100 e 1000 regras de desconto ativas, sorteadas
+ * entre tipos de produto, tipos de cliente e limites. {@code calcular} usa a
+ * {@link TabelaDeDescontos} compilada; {@code avaliarRegraARegra} é a
+ * referência de percorrer todas as regras a cada compra, com os mesmos
+ * subtotais por tipo já somados.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescontosBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	private int regras;
+
+	@Param({ "20" })
+	private int itensPorCarrinho;
+
+	private List<TabelaDeDescontos.Regra> listaDeRegras;
+	private CalculadoraDeCusto calculadora;
+	private CarrinhoCheckoutDTO carrinho;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		SplittableRandom sorteio = new SplittableRandom(42);
+		listaDeRegras = new ArrayList<>(regras);
+		for (int i = 0; i < regras; i++) {
+			TipoProduto produto = sorteio.nextInt(4) == 0 ? null
+					: TipoProduto.values()[sorteio.nextInt(TipoProduto.values().length)];
+			TipoCliente cliente = sorteio.nextInt(4) == 0 ? null
+					: TipoCliente.values()[sorteio.nextInt(TipoCliente.values().length)];
+			listaDeRegras.add(new TabelaDeDescontos.Regra(produto, cliente, sorteio.nextLong(200_000),
+					sorteio.nextLong(1, 3_001)));
+		}
+		calculadora = new CalculadoraDeCusto(TabelaDeDescontos.compilar(listaDeRegras));
+
+		List<ItemCheckoutDTO> itens = new ArrayList<>(itensPorCarrinho);
+		for (long id = 1; id <= itensPorCarrinho; id++) {
+			itens.add(new ItemCheckoutDTO(id, BigDecimal.valueOf(sorteio.nextLong(100, 20_000), 2),
+					sorteio.nextInt(1, 5), sorteio.nextLong(1, 4),
+					TipoProduto.values()[sorteio.nextInt(TipoProduto.values().length)]));
+		}
+		carrinho = new CarrinhoCheckoutDTO(1L, 1L, TipoCliente.PRATA, itens);
+	}
+
+	@Benchmark
+	public CustoCompraDTO calcular() {
+		return calculadora.calcular(carrinho);
+	}
+
+	@Benchmark
+	public long avaliarRegraARegra() {
+		long[] porTipo = new long[TipoProduto.values().length];
+		long subtotal = 0L;
+		for (ItemCheckoutDTO item : carrinho.itens()) {
+			long linha = item.preco().movePointRight(2).longValueExact() * item.quantidade();
+			porTipo[item.tipo().ordinal()] += linha;
+			subtotal += linha;
+		}
+		long desconto = 0L;
+		for (TipoProduto tipo : TipoProduto.values()) {
+			long percentual = 0L;
+			for (TabelaDeDescontos.Regra regra : listaDeRegras) {
+				if ((regra.tipoCliente() == null || regra.tipoCliente() == carrinho.tipoCliente())
+						&& (regra.tipoProduto() == null || regra.tipoProduto() == tipo)
+						&& (regra.tipoProduto() == null ? subtotal : porTipo[tipo.ordinal()]) > regra.acimaDeCentavos()) {
+					percentual = Math.max(percentual, regra.pontosBase());
+				}
+			}
+			desconto += porTipo[tipo.ordinal()] * percentual;
+		}
+		return desconto;
+	}
+}
@@ -0,0 +1,100 @@
+package ecommerce.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.external.fake.EstoqueEmMemoria;
+
+/**
+ * Vazão do {@link EstoqueEmMemoria} com 1 milhão de produtos e várias threads
+ * dando baixa ao mesmo tempo. Com {@code produtosQuentes} > 0 todos os
+ * carrinhos escolhem entre poucos produtos, o que mede a disputa pelas mesmas
+ * posições; com 0 os produtos são sorteados entre todo o catálogo. O número
+ * de threads pode ser alterado com -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class EstoqueEmMemoriaBenchmark {
+
+	private static final int CARRINHOS_POR_THREAD = 1024;
+
+	@Param({ "1000000" })
+	private int produtos;
+
+	@Param({ "1", "5", "20" })
+	private int itensPorCarrinho;
+
+	@Param({ "0", "16" })
+	private int produtosQuentes;
+
+	private EstoqueEmMemoria estoque;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		estoque = new EstoqueEmMemoria(produtos);
+		for (long id = 1; id <= produtos; id++) {
+			// Saldo grande o bastante para nunca esgotar durante a medição
+			estoque.repor(id, Long.MAX_VALUE / 4);
+		}
+	}
+
+	/** Carrinhos pré-gerados por thread, para não medir o sorteio dos produtos. */
+	@State(Scope.Thread)
+	public static class Carrinhos {
+		private ItensEstoqueDTO[] itens;
+		private int proximo;
+
+		@Setup(Level.Trial)
+		public void preparar(EstoqueEmMemoriaBenchmark benchmark) {
+			SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+			int faixa = benchmark.produtosQuentes > 0 ? benchmark.produtosQuentes : benchmark.produtos;
+			itens = new ItensEstoqueDTO[CARRINHOS_POR_THREAD];
+			for (int c = 0; c < CARRINHOS_POR_THREAD; c++) {
+				long[] ids = new long[benchmark.itensPorCarrinho];
+				long[] quantidades = new long[benchmark.itensPorCarrinho];
+				for (int i = 0; i < benchmark.itensPorCarrinho; i++) {
+					ids[i] = 1L + random.nextInt(faixa);
+					quantidades[i] = 1L + random.nextInt(5);
+				}
+				itens[c] = ItensEstoqueDTO.agrupar(ids, quantidades, benchmark.itensPorCarrinho);
+			}
+		}
+
+		ItensEstoqueDTO proximo() {
+			proximo = (proximo + 1) & (CARRINHOS_POR_THREAD - 1);
+			return itens[proximo];
+		}
+	}
+
+	@Benchmark
+	public EstoqueBaixaDTO darBaixa(Carrinhos carrinhos) {
+		return estoque.darBaixa(carrinhos.proximo());
+	}
+
+	@Benchmark
+	public DisponibilidadeDTO verificarDisponibilidade(Carrinhos carrinhos) {
+		return estoque.verificarDisponibilidade(carrinhos.proximo());
+	}
+}
@@ -0,0 +1,210 @@
+package ecommerce.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ecommerce.CompraApplication;
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.external.fake.PagamentoSimulado;
+import ecommerce.external.http.ServidorExternoLocal;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+import ecommerce.repository.ProdutoRepository;
+import ecommerce.service.CompraService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Ocupação do pool de conexões JDBC durante o checkout, com a aplicação
+ * completa (perfil http) contra um {@link ServidorExternoLocal} lento e mais
+ * threads que conexões.
+ * <p>
+ * {@code transacaoUnica} envolve o checkout em uma transação, como antes da
+ * saga: cada conexão fica presa durante as três chamadas remotas.
+ * {@code transacoesCurtas} chama o serviço como está. Ao fim de cada iteração
+ * são impressos, por checkout, o tempo com conexão em uso e o tempo de espera
+ * por uma conexão livre ({@code hikaricp.connections.usage} e {@code .acquire}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Threads(OcupacaoPoolBenchmark.THREADS)
+@Fork(1)
+public class OcupacaoPoolBenchmark {
+
+	static final int THREADS = 16;
+
+	private static final String REABRIR_CARRINHO = "update carrinho_de_compras set status = 'ABERTO' where id = ?";
+
+	@Param({ "transacaoUnica", "transacoesCurtas" })
+	private String modo;
+
+	@Param({ "4" })
+	private int tamanhoPool;
+
+	@Param({ "2", "20" })
+	private long latenciaExternaMillis;
+
+	private ServidorExternoLocal servidor;
+	private ConfigurableApplicationContext contexto;
+	private CompraService compraService;
+	private TransactionTemplate transacao;
+	private Timer usoConexao;
+	private Timer esperaConexao;
+	private JdbcTemplate jdbc;
+	private final List<Long> carrinhoIds = new ArrayList<>();
+	private final AtomicInteger proximoCarrinho = new AtomicInteger();
+	private Long clienteId;
+	private final LongAdder checkouts = new LongAdder();
+
+	private long usosAntes;
+	private double usoAntesMillis;
+	private double esperaAntesMillis;
+
+	@Setup(Level.Trial)
+	public void preparar() throws IOException {
+		long latenciaNanos = TimeUnit.MILLISECONDS.toNanos(latenciaExternaMillis);
+		servidor = new ServidorExternoLocal(new EstoqueSimulado(null) {
+			@Override
+			public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
+				LockSupport.parkNanos(latenciaNanos);
+				return super.verificarDisponibilidade(itens);
+			}
+
+			@Override
+			public EstoqueBaixaDTO darBaixa(ItensEstoqueDTO itens) {
+				LockSupport.parkNanos(latenciaNanos);
+				return super.darBaixa(itens);
+			}
+		}, new PagamentoSimulado(true, 1L) {
+			@Override
+			public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+				LockSupport.parkNanos(latenciaNanos);
+				return super.autorizarPagamento(clienteId, custoTotal);
+			}
+		}, 64);
+
+		contexto = new SpringApplicationBuilder(CompraApplication.class)
+				.web(WebApplicationType.NONE)
+				.profiles("http")
+				.run("--externos.estoque.url=" + servidor.url(),
+						"--externos.pagamento.url=" + servidor.url(),
+						"--spring.datasource.url=jdbc:h2:mem:ocupacao-pool;DB_CLOSE_DELAY=-1",
+						"--spring.datasource.hikari.maximum-pool-size=" + tamanhoPool,
+						"--spring.datasource.hikari.minimum-idle=" + tamanhoPool,
+						"--spring.main.banner-mode=off",
+						"--logging.level.root=WARN");
+
+		compraService = contexto.getBean(CompraService.class);
+		transacao = new TransactionTemplate(contexto.getBean(PlatformTransactionManager.class));
+		MeterRegistry registry = contexto.getBean(MeterRegistry.class);
+		usoConexao = registry.get("hikaricp.connections.usage").timer();
+		esperaConexao = registry.get("hikaricp.connections.acquire").timer();
+
+		Cliente cliente = contexto.getBean(ClienteRepository.class)
+				.save(new Cliente(null, "Cliente", "Rua A", TipoCliente.PRATA));
+		List<Produto> catalogo = new ArrayList<>();
+		ProdutoRepository produtos = contexto.getBean(ProdutoRepository.class);
+		for (int i = 0; i < 10; i++) {
+			catalogo.add(produtos
+					.save(new Produto(null, "Produto " + i, "Descrição", BigDecimal.valueOf(10), 1, TipoProduto.LIVRO)));
+		}
+		// Um carrinho por thread: o mesmo carrinho não pode ser finalizado por duas threads ao mesmo tempo
+		CarrinhoDeComprasRepository carrinhos = contexto.getBean(CarrinhoDeComprasRepository.class);
+		for (int t = 0; t < THREADS; t++) {
+			List<ItemCompra> itens = new ArrayList<>();
+			for (Produto produto : catalogo) {
+				itens.add(new ItemCompra(null, produto, 1L));
+			}
+			carrinhoIds.add(carrinhos.save(new CarrinhoDeCompras(null, cliente, itens, LocalDate.now())).getId());
+		}
+		clienteId = cliente.getId();
+		jdbc = contexto.getBean(JdbcTemplate.class);
+	}
+
+	/** Carrinho usado por uma thread do benchmark. */
+	@State(Scope.Thread)
+	public static class CarrinhoDaThread {
+		Long id;
+
+		@Setup(Level.Trial)
+		public void escolher(OcupacaoPoolBenchmark benchmark) {
+			id = benchmark.carrinhoIds.get(benchmark.proximoCarrinho.getAndIncrement() % THREADS);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void marcar() {
+		checkouts.reset();
+		usosAntes = usoConexao.count();
+		usoAntesMillis = usoConexao.totalTime(TimeUnit.MILLISECONDS);
+		esperaAntesMillis = esperaConexao.totalTime(TimeUnit.MILLISECONDS);
+	}
+
+	@TearDown(Level.Iteration)
+	public void relatar() {
+		double total = Math.max(1, checkouts.sum());
+		System.out.printf("%n  [%s] por checkout: %.2f ms com conexão em uso, %.2f ms esperando conexão, %.1f empréstimos%n",
+				modo, (usoConexao.totalTime(TimeUnit.MILLISECONDS) - usoAntesMillis) / total,
+				(esperaConexao.totalTime(TimeUnit.MILLISECONDS) - esperaAntesMillis) / total,
+				(usoConexao.count() - usosAntes) / total);
+	}
+
+	@TearDown(Level.Trial)
+	public void encerrar() {
+		contexto.close();
+		servidor.close();
+	}
+
+	@Benchmark
+	public CompraDTO finalizarCompra(CarrinhoDaThread carrinho) {
+		checkouts.increment();
+		CompraDTO compra = "transacaoUnica".equals(modo)
+				? transacao.execute(status -> compraService.finalizarCompra(carrinho.id, clienteId))
+				: compraService.finalizarCompra(carrinho.id, clienteId);
+		// Devolve o carrinho finalizado a aberto para a próxima chamada
+		jdbc.update(REABRIR_CARRINHO, carrinho.id);
+		return compra;
+	}
+}
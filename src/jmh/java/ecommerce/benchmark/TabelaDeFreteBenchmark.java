@@ -0,0 +1,67 @@
+package ecommerce.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecommerce.entity.TipoCliente;
+import ecommerce.service.custo.TabelaDeFrete;
+
+/**
+ * Custo da consulta à {@link TabelaDeFrete} conforme o número de faixas
+ * (4 é a tabela padrão). Os pesos consultados são sorteados antes da medição
+ * entre zero e um pouco acima do último limite, para cair em todas as faixas.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TabelaDeFreteBenchmark {
+
+	private static final int PESOS = 4096;
+
+	@Param({ "4", "64", "1024" })
+	private int faixas;
+
+	private TabelaDeFrete tabela;
+	private long[] pesos;
+	private TipoCliente[] tipos;
+	private int posicao;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		StringBuilder descricao = new StringBuilder();
+		for (int i = 1; i < faixas; i++) {
+			descricao.append(i > 1 ? "," : "").append(i * 5).append(':').append(i).append(".00");
+		}
+		tabela = TabelaDeFrete.compilar(descricao.toString(), "7.00", "BRONZE:100,PRATA:50,OURO:0");
+
+		SplittableRandom sorteio = new SplittableRandom(42);
+		pesos = new long[PESOS];
+		tipos = new TipoCliente[PESOS];
+		for (int i = 0; i < PESOS; i++) {
+			pesos[i] = sorteio.nextLong(faixas * 5L + 10);
+			tipos[i] = TipoCliente.values()[sorteio.nextInt(TipoCliente.values().length)];
+		}
+	}
+
+	@Benchmark
+	public long consultar() {
+		int i = posicao++ & (PESOS - 1);
+		return tabela.centavosPorKg(pesos[i]) * tabela.parcela(tipos[i]);
+	}
+}
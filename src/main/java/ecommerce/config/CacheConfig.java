@@ -0,0 +1,109 @@
+package ecommerce.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import ecommerce.dto.ClienteResumoDTO;
+import ecommerce.dto.ProdutoResumoDTO;
+import ecommerce.service.CompraIdempotenteService;
+import ecommerce.service.CotacaoService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+@Configuration
+public class CacheConfig {
+
+	/** Catálogo de produtos usado no cálculo do checkout (preço, peso e tipo). */
+	@Bean
+	public Cache<Long, ProdutoResumoDTO> cacheDeProdutos(
+			@Value("${produtos.cache.tamanho-maximo:100000}") long tamanhoMaximo,
+			@Value("${produtos.cache.expiracao-segundos:600}") long expiracaoSegundos) {
+		return Caffeine.newBuilder()
+				.maximumSize(tamanhoMaximo)
+				.expireAfterWrite(Duration.ofSeconds(expiracaoSegundos))
+				.recordStats()
+				.build();
+	}
+
+	/** Id e tipo dos clientes, que definem o desconto no frete. */
+	@Bean
+	public Cache<Long, ClienteResumoDTO> cacheDeClientes(
+			@Value("${clientes.cache.tamanho-maximo:100000}") long tamanhoMaximo,
+			@Value("${clientes.cache.expiracao-segundos:300}") long expiracaoSegundos) {
+		return Caffeine.newBuilder()
+				.maximumSize(tamanhoMaximo)
+				.expireAfterWrite(Duration.ofSeconds(expiracaoSegundos))
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Execuções de checkout por chave de idempotência. Cada chave fica
+	 * registrada pelo tempo em que o cliente pode reenviar a requisição.
+	 */
+	@Bean
+	public Cache<String, CompraIdempotenteService.Execucao> cacheDeCompras(
+			@Value("${compras.idempotencia.tamanho-maximo:100000}") long tamanhoMaximo,
+			@Value("${compras.idempotencia.expiracao-segundos:86400}") long expiracaoSegundos) {
+		return Caffeine.newBuilder()
+				.maximumSize(tamanhoMaximo)
+				.expireAfterWrite(Duration.ofSeconds(expiracaoSegundos))
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Cotações por carrinho. Uma cotação é removida quando o carrinho é salvo
+	 * e conferida contra os caches de produtos e clientes antes de ser usada.
+	 */
+	@Bean
+	public Cache<Long, CotacaoService.Cotacao> cacheDeCotacoes(
+			@Value("${cotacoes.cache.tamanho-maximo:100000}") long tamanhoMaximo,
+			@Value("${cotacoes.cache.expiracao-segundos:600}") long expiracaoSegundos) {
+		return Caffeine.newBuilder()
+				.maximumSize(tamanhoMaximo)
+				.expireAfterWrite(Duration.ofSeconds(expiracaoSegundos))
+				.recordStats()
+				.build();
+	}
+
+	@Bean
+	public MeterBinder metricasCacheDeProdutos(Cache<Long, ProdutoResumoDTO> cacheDeProdutos) {
+		return registry -> monitorar(registry, cacheDeProdutos, "produtos");
+	}
+
+	@Bean
+	public MeterBinder metricasCacheDeClientes(Cache<Long, ClienteResumoDTO> cacheDeClientes) {
+		return registry -> monitorar(registry, cacheDeClientes, "clientes");
+	}
+
+	@Bean
+	public MeterBinder metricasCacheDeCompras(Cache<String, CompraIdempotenteService.Execucao> cacheDeCompras) {
+		return registry -> monitorar(registry, cacheDeCompras, "compras-idempotentes");
+	}
+
+	@Bean
+	public MeterBinder metricasCacheDeCotacoes(Cache<Long, CotacaoService.Cotacao> cacheDeCotacoes) {
+		return registry -> monitorar(registry, cacheDeCotacoes, "cotacoes");
+	}
+
+	/**
+	 * Publica acertos, faltas, remoções e tamanho do cache em /actuator/metrics
+	 * (cache.*), além da taxa de acerto acumulada (cache.hit.ratio).
+	 */
+	private static void monitorar(MeterRegistry registry, Cache<?, ?> cache, String nome) {
+		CaffeineCacheMetrics.monitor(registry, cache, nome);
+		Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+				.tag("cache", nome)
+				.description("Fração das consultas atendidas pelo cache")
+				.register(registry);
+	}
+}
@@ -0,0 +1,30 @@
+package ecommerce.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+@EnableScheduling
+public class CompraConfig {
+
+	/**
+	 * Threads para as etapas do checkout que rodam em paralelo. Sem fila: com
+	 * todas as threads ocupadas a etapa roda na própria thread da requisição,
+	 * como na execução sequencial.
+	 */
+	@Bean
+	public ThreadPoolTaskExecutor executorCompra(@Value("${compra.executor.threads:32}") int threads) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(0);
+		executor.setThreadNamePrefix("compra-");
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		return executor;
+	}
+}
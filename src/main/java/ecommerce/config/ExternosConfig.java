@@ -0,0 +1,79 @@
+package ecommerce.config;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.agrupado.EstoqueAgrupado;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.external.fake.PagamentoSimulado;
+import ecommerce.external.resiliente.EstoqueResiliente;
+import ecommerce.external.resiliente.PagamentoResiliente;
+import ecommerce.external.resiliente.ProtecaoExterna;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Serviços externos usados pelo checkout, sempre decorados com circuit
+ * breaker, bulkhead e tempo limite. As instâncias {@code estoque} e
+ * {@code pagamento} são configuradas pelas propriedades {@code resilience4j.*}.
+ * As consultas de disponibilidade simultâneas ainda podem ser agrupadas em
+ * uma só chamada ({@link EstoqueAgrupado}).
+ * <p>
+ * Sem perfil, os serviços decorados são os simulados em processo; com o
+ * perfil {@code http}, os clientes HTTP de {@link HttpExternosConfig}.
+ */
+@Configuration
+public class ExternosConfig {
+
+	@Bean
+	@Primary
+	public IEstoqueExternal estoqueExternal(@Qualifier("estoqueRemoto") IEstoqueExternal estoqueRemoto,
+			CircuitBreakerRegistry circuitBreakers, ThreadPoolBulkheadRegistry bulkheads,
+			TimeLimiterRegistry timeLimiters, MeterRegistry registry,
+			@Value("${externos.estoque.agrupamento.janela-micros:0}") long janelaMicros,
+			@Value("${externos.estoque.agrupamento.tamanho-maximo:64}") int tamanhoMaximo) {
+		// O agrupamento fica por fora da proteção: cada chamada agrupada ocupa uma só vaga do bulkhead
+		return new EstoqueAgrupado(
+				new EstoqueResiliente(estoqueRemoto,
+						protecao("estoque", circuitBreakers, bulkheads, timeLimiters, registry)),
+				Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(janelaMicros)), tamanhoMaximo, registry);
+	}
+
+	@Bean
+	@Primary
+	public IPagamentoExternal pagamentoExternal(@Qualifier("pagamentoRemoto") IPagamentoExternal pagamentoRemoto,
+			CircuitBreakerRegistry circuitBreakers, ThreadPoolBulkheadRegistry bulkheads,
+			TimeLimiterRegistry timeLimiters, MeterRegistry registry) {
+		return new PagamentoResiliente(pagamentoRemoto,
+				protecao("pagamento", circuitBreakers, bulkheads, timeLimiters, registry));
+	}
+
+	@Bean
+	@Profile("!http")
+	public IEstoqueExternal estoqueRemoto() {
+		return new EstoqueSimulado(null);
+	}
+
+	@Bean
+	@Profile("!http")
+	public IPagamentoExternal pagamentoRemoto() {
+		return new PagamentoSimulado(true, 1L);
+	}
+
+	private static ProtecaoExterna protecao(String nome, CircuitBreakerRegistry circuitBreakers,
+			ThreadPoolBulkheadRegistry bulkheads, TimeLimiterRegistry timeLimiters, MeterRegistry registry) {
+		return new ProtecaoExterna(nome, circuitBreakers.circuitBreaker(nome), bulkheads.bulkhead(nome),
+				timeLimiters.timeLimiter(nome), registry);
+	}
+}
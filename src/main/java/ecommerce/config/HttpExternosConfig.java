@@ -0,0 +1,56 @@
+package ecommerce.config;
+
+import java.time.Duration;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.http.ClientesHttp;
+import ecommerce.external.http.EstoqueClient;
+import ecommerce.external.http.EstoqueHttp;
+import ecommerce.external.http.PagamentoClient;
+import ecommerce.external.http.PagamentoHttp;
+
+/** Clientes HTTP dos serviços externos, ativos com o perfil {@code http}. */
+@Configuration
+@Profile("http")
+public class HttpExternosConfig {
+
+	@Bean
+	public ClientesHttp.Configuracao configuracaoHttp(
+			@Value("${externos.http.max-conexoes:200}") int maxConexoes,
+			@Value("${externos.http.max-conexoes-por-rota:100}") int maxConexoesPorRota,
+			@Value("${externos.http.timeout-conexao-ms:500}") long timeoutConexaoMs,
+			@Value("${externos.http.timeout-resposta-ms:2000}") long timeoutRespostaMs,
+			@Value("${externos.http.tempo-de-vida-conexao-segundos:60}") long tempoDeVidaSegundos) {
+		return new ClientesHttp.Configuracao(maxConexoes, maxConexoesPorRota, Duration.ofMillis(timeoutConexaoMs),
+				Duration.ofMillis(timeoutRespostaMs), Duration.ofSeconds(tempoDeVidaSegundos));
+	}
+
+	/** Pool compartilhado pelos dois serviços; as rotas são separadas por host. */
+	@Bean(destroyMethod = "close")
+	public CloseableHttpClient httpClientExterno(ClientesHttp.Configuracao configuracaoHttp) {
+		return ClientesHttp.httpClient(configuracaoHttp);
+	}
+
+	@Bean
+	public IEstoqueExternal estoqueRemoto(@Value("${externos.estoque.url}") String url,
+			CloseableHttpClient httpClientExterno, ObjectMapper objectMapper, ClientesHttp.Configuracao configuracaoHttp) {
+		return new EstoqueHttp(ClientesHttp.criar(EstoqueClient.class, url, httpClientExterno, objectMapper,
+				configuracaoHttp));
+	}
+
+	@Bean
+	public IPagamentoExternal pagamentoRemoto(@Value("${externos.pagamento.url}") String url,
+			CloseableHttpClient httpClientExterno, ObjectMapper objectMapper, ClientesHttp.Configuracao configuracaoHttp) {
+		return new PagamentoHttp(ClientesHttp.criar(PagamentoClient.class, url, httpClientExterno, objectMapper,
+				configuracaoHttp));
+	}
+}
@@ -0,0 +1,63 @@
+package ecommerce.config;
+
+import java.math.BigDecimal;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import ecommerce.entity.TipoCliente;
+import ecommerce.massa.GeradorDeMassa;
+import ecommerce.massa.Mistura;
+import ecommerce.massa.ParametrosDaMassa;
+
+/**
+ * Com o perfil {@code massa}, a aplicação gera a massa de dados sintética
+ * descrita pelas propriedades {@code massa.*} (ver
+ * application-massa.properties) e termina.
+ */
+@Configuration
+@Profile("massa")
+public class MassaConfig {
+
+	@Bean
+	public GeradorDeMassa geradorDeMassa(JdbcTemplate jdbc, PlatformTransactionManager transacoes) {
+		return new GeradorDeMassa(jdbc, transacoes);
+	}
+
+	@Bean
+	public ParametrosDaMassa parametrosDaMassa(@Value("${massa.clientes.quantidade}") int clientes,
+			@Value("${massa.clientes.tipos}") String tipos,
+			@Value("${massa.produtos.quantidade}") int produtos,
+			@Value("${massa.produtos.preco-minimo}") BigDecimal precoMinimo,
+			@Value("${massa.produtos.preco-maximo}") BigDecimal precoMaximo,
+			@Value("${massa.produtos.peso-minimo}") int pesoMinimo,
+			@Value("${massa.produtos.peso-maximo}") int pesoMaximo,
+			@Value("${massa.produtos.zipf}") double zipf,
+			@Value("${massa.carrinhos.quantidade}") int carrinhos,
+			@Value("${massa.carrinhos.itens}") String itensPorCarrinho,
+			@Value("${massa.itens.quantidade-maxima}") int quantidadeMaxima,
+			@Value("${massa.lote}") int lote,
+			@Value("${massa.semente}") long semente,
+			@Value("${massa.adiar-chaves-estrangeiras}") boolean adiarChavesEstrangeiras) {
+		return new ParametrosDaMassa(clientes, produtos, carrinhos, Mistura.de(tipos, TipoCliente::valueOf),
+				Mistura.de(itensPorCarrinho, Integer::valueOf), precoMinimo, precoMaximo, pesoMinimo, pesoMaximo, zipf,
+				quantidadeMaxima, lote, semente, adiarChavesEstrangeiras);
+	}
+
+	@Bean
+	public CommandLineRunner gerarMassa(GeradorDeMassa gerador, ParametrosDaMassa parametros,
+			ConfigurableApplicationContext contexto) {
+		return args -> {
+			gerador.gerar(parametros);
+			// Encerra o contexto para que as threads do agendador não mantenham a JVM viva
+			SpringApplication.exit(contexto);
+		};
+	}
+}
@@ -0,0 +1,48 @@
+package ecommerce.config;
+
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import ecommerce.transferencia.TransferenciaDeCarrinhos;
+
+/**
+ * Com o perfil {@code transferencia}, a aplicação exporta os carrinhos para
+ * um arquivo JSON Lines ou importa os de um arquivo, conforme as propriedades
+ * {@code transferencia.*} (ver application-transferencia.properties), e
+ * termina.
+ */
+@Configuration
+@Profile("transferencia")
+public class TransferenciaConfig {
+
+	@Bean
+	public TransferenciaDeCarrinhos transferenciaDeCarrinhos(JdbcTemplate jdbc, PlatformTransactionManager transacoes,
+			@Value("${transferencia.lote}") int lote, @Value("${transferencia.leitura}") int leitura) {
+		return new TransferenciaDeCarrinhos(jdbc, transacoes, lote, leitura);
+	}
+
+	@Bean
+	public CommandLineRunner transferirCarrinhos(TransferenciaDeCarrinhos transferencia,
+			@Value("${transferencia.operacao}") String operacao, @Value("${transferencia.arquivo}") Path arquivo,
+			ConfigurableApplicationContext contexto) {
+		return args -> {
+			switch (operacao) {
+				case "exportar" -> transferencia.exportar(arquivo);
+				case "importar" -> transferencia.importar(arquivo);
+				default -> throw new IllegalArgumentException(
+						"transferencia.operacao deve ser exportar ou importar: " + operacao + ".");
+			}
+			// Encerra o contexto para que as threads do agendador não mantenham a JVM viva
+			SpringApplication.exit(contexto);
+		};
+	}
+}
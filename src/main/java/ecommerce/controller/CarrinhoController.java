@@ -0,0 +1,41 @@
+package ecommerce.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import ecommerce.dto.CotacaoDTO;
+import ecommerce.service.CotacaoService;
+
+@RestController
+@RequestMapping("/carrinhos")
+public class CarrinhoController {
+
+	private final CotacaoService cotacaoService;
+
+	@Autowired
+	public CarrinhoController(CotacaoService cotacaoService) {
+		this.cotacaoService = cotacaoService;
+	}
+
+	/**
+	 * Subtotal, desconto, frete e total do carrinho, sem finalizar a compra.
+	 * A resposta leva o ETag da cotação; com {@code If-None-Match} igual a ele,
+	 * o Spring responde 304 sem corpo.
+	 */
+	@GetMapping("/{carrinhoId}/cotacao")
+	public ResponseEntity<CotacaoDTO> cotar(@PathVariable Long carrinhoId, @RequestParam Long clienteId) {
+		try {
+			return cotacaoService.cotar(carrinhoId, clienteId)
+					.map(cotacao -> ResponseEntity.ok()
+							.eTag(cotacao.etag())
+							.cacheControl(CacheControl.noCache().cachePrivate())
+							.body(cotacao.valores()))
+					.orElseGet(() -> ResponseEntity.notFound().build());
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		}
+	}
+}
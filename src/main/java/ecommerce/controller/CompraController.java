@@ -1,31 +1,56 @@
 package ecommerce.controller;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import ecommerce.dto.CompraDTO;
+import ecommerce.dto.CompraLoteItemDTO;
+import ecommerce.dto.CompraLoteResultadoDTO;
+import ecommerce.external.DependenciaIndisponivelException;
+import ecommerce.service.CompraEmLoteService;
+import ecommerce.service.CompraIdempotenteService;
 import ecommerce.service.CompraService;
+import ecommerce.service.PagamentoIncertoException;
+import ecommerce.service.VerificacaoDePagamentos;
 
 @RestController
 @RequestMapping("/")
 public class CompraController {
 
 	private final CompraService compraService;
+	private final CompraEmLoteService compraEmLoteService;
+	private final CompraIdempotenteService compraIdempotenteService;
+	private final VerificacaoDePagamentos verificacaoDePagamentos;
 
 	@Autowired
-	public CompraController(CompraService compraService) {
+	public CompraController(CompraService compraService, CompraEmLoteService compraEmLoteService,
+			CompraIdempotenteService compraIdempotenteService, VerificacaoDePagamentos verificacaoDePagamentos) {
 		this.compraService = compraService;
+		this.compraEmLoteService = compraEmLoteService;
+		this.compraIdempotenteService = compraIdempotenteService;
+		this.verificacaoDePagamentos = verificacaoDePagamentos;
 	}
 
+	/**
+	 * Com o cabeçalho {@code Idempotency-Key}, repetições da mesma requisição
+	 * devolvem o resultado da primeira execução em vez de repetir o checkout.
+	 */
 	@PostMapping("/finalizar")
-	public ResponseEntity<CompraDTO> finalizarCompra(@RequestParam Long carrinhoId, @RequestParam Long clienteId) {
+	public ResponseEntity<CompraDTO> finalizarCompra(@RequestParam Long carrinhoId, @RequestParam Long clienteId,
+			@RequestHeader(value = "Idempotency-Key", required = false) String chaveIdempotencia) {
 		try {
-			CompraDTO compraDTO = compraService.finalizarCompra(carrinhoId, clienteId);
+			CompraDTO compraDTO = chaveIdempotencia == null
+					? compraService.finalizarCompra(carrinhoId, clienteId)
+					: compraIdempotenteService.finalizarCompra(chaveIdempotencia, carrinhoId, clienteId);
 			return ResponseEntity.ok(compraDTO);
 		} catch (IllegalArgumentException e) {
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, e.getMessage()));
+		} catch (DependenciaIndisponivelException | PagamentoIncertoException e) {
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new CompraDTO(false, null, e.getMessage()));
 		} catch (IllegalStateException e) {
 			return ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, e.getMessage()));
 		} catch (Exception e) {
@@ -33,4 +58,75 @@ public class CompraController {
 					.body(new CompraDTO(false, null, "Erro ao processar compra."));
 		}
 	}
+
+	@PostMapping("/finalizar/lote")
+	public ResponseEntity<?> finalizarCompraEmLote(@RequestBody List<CompraLoteItemDTO> pedidos) {
+		try {
+			List<CompraLoteResultadoDTO> resultados = compraEmLoteService.finalizarCompras(pedidos);
+			return ResponseEntity.ok(resultados);
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, e.getMessage()));
+		} catch (Exception e) {
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+					.body(new CompraDTO(false, null, "Erro ao processar compra."));
+		}
+	}
+
+	/**
+	 * Desfecho de uma compra com pagamento incerto, informado por quem
+	 * verificou a transação no serviço de pagamento: autorizada, a compra
+	 * continua pela baixa no estoque.
+	 */
+	@PostMapping("/compras/{compraId}/pagamento/confirmar")
+	public ResponseEntity<CompraDTO> confirmarPagamento(@PathVariable Long compraId,
+			@RequestParam Long transacaoPagamentoId) {
+		try {
+			return ResponseEntity.ok(verificacaoDePagamentos.confirmarPagamento(compraId, transacaoPagamentoId));
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, e.getMessage()));
+		} catch (DependenciaIndisponivelException | PagamentoIncertoException e) {
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new CompraDTO(false, null, e.getMessage()));
+		} catch (IllegalStateException e) {
+			return ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, e.getMessage()));
+		}
+	}
+
+	/** Cancela a compra com pagamento incerto; a transação, se houve autorização, é estornada. */
+	@PostMapping("/compras/{compraId}/pagamento/cancelar")
+	public ResponseEntity<CompraDTO> cancelarPagamento(@PathVariable Long compraId,
+			@RequestParam(required = false) Long transacaoPagamentoId) {
+		try {
+			verificacaoDePagamentos.cancelarPagamento(compraId, transacaoPagamentoId);
+			return ResponseEntity.noContent().build();
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, e.getMessage()));
+		} catch (IllegalStateException e) {
+			return ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, e.getMessage()));
+		}
+	}
+
+	/** Desfecho de uma compra com baixa incerta, informado por quem verificou o estoque. */
+	@PostMapping("/compras/{compraId}/baixa/confirmar")
+	public ResponseEntity<CompraDTO> confirmarBaixa(@PathVariable Long compraId) {
+		try {
+			verificacaoDePagamentos.confirmarBaixa(compraId);
+			return ResponseEntity.noContent().build();
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, e.getMessage()));
+		} catch (IllegalStateException e) {
+			return ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, e.getMessage()));
+		}
+	}
+
+	@PostMapping("/compras/{compraId}/baixa/cancelar")
+	public ResponseEntity<CompraDTO> cancelarBaixa(@PathVariable Long compraId) {
+		try {
+			verificacaoDePagamentos.cancelarBaixa(compraId);
+			return ResponseEntity.noContent().build();
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new CompraDTO(false, null, e.getMessage()));
+		} catch (IllegalStateException e) {
+			return ResponseEntity.status(HttpStatus.CONFLICT).body(new CompraDTO(false, null, e.getMessage()));
+		}
+	}
 }
@@ -0,0 +1,26 @@
+package ecommerce.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.TipoCliente;
+
+/**
+ * Visão somente leitura do carrinho com o que o checkout precisa para
+ * consultar o estoque e calcular o custo, sem entidades gerenciadas.
+ */
+public record CarrinhoCheckoutDTO(Long carrinhoId, Long clienteId, TipoCliente tipoCliente,
+		List<ItemCheckoutDTO> itens) {
+
+	public static CarrinhoCheckoutDTO de(CarrinhoDeCompras carrinho) {
+		List<ItemCheckoutDTO> itens = new ArrayList<>(carrinho.getItens().size());
+		for (ItemCompra item : carrinho.getItens()) {
+			itens.add(new ItemCheckoutDTO(item.getProduto().getId(), item.getProduto().getPreco(),
+					item.getProduto().getPeso(), item.getQuantidade(), item.getProduto().getTipo()));
+		}
+		return new CarrinhoCheckoutDTO(carrinho.getId(), carrinho.getCliente().getId(),
+				carrinho.getCliente().getTipo(), itens);
+	}
+}
@@ -0,0 +1,11 @@
+package ecommerce.dto;
+
+import ecommerce.entity.Cliente;
+import ecommerce.entity.TipoCliente;
+
+public record ClienteResumoDTO(Long id, TipoCliente tipo) {
+
+	public static ClienteResumoDTO de(Cliente cliente) {
+		return new ClienteResumoDTO(cliente.getId(), cliente.getTipo());
+	}
+}
@@ -0,0 +1,4 @@
+package ecommerce.dto;
+
+public record CompraLoteItemDTO(Long carrinhoId, Long clienteId) {
+}
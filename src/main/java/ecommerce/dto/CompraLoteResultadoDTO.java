@@ -0,0 +1,4 @@
+package ecommerce.dto;
+
+public record CompraLoteResultadoDTO(Long carrinhoId, Long clienteId, CompraDTO compra) {
+}
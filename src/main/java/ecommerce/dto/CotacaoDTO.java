@@ -0,0 +1,12 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+
+/** Custo do carrinho se a compra fosse finalizada agora, sem reservar estoque nem cobrar. */
+public record CotacaoDTO(Long carrinhoId, BigDecimal subtotal, BigDecimal desconto, BigDecimal frete,
+		BigDecimal total) {
+
+	public static CotacaoDTO de(Long carrinhoId, CustoCompraDTO custo) {
+		return new CotacaoDTO(carrinhoId, custo.subtotal(), custo.desconto(), custo.frete(), custo.total());
+	}
+}
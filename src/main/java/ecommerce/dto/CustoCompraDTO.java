@@ -0,0 +1,6 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+
+public record CustoCompraDTO(BigDecimal subtotal, BigDecimal desconto, BigDecimal frete, BigDecimal total) {
+}
@@ -0,0 +1,8 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+
+import ecommerce.entity.TipoProduto;
+
+public record ItemCheckoutDTO(Long produtoId, BigDecimal preco, Integer peso, Long quantidade, TipoProduto tipo) {
+}
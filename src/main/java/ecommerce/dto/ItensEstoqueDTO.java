@@ -0,0 +1,91 @@
+package ecommerce.dto;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Produtos e quantidades enviados ao estoque, em vetores paralelos de
+ * {@code long} e sem produtos repetidos. Em JSON vira dois arrays de números.
+ * <p>
+ * Use {@link #agrupar} para montar a partir das linhas de um carrinho: linhas
+ * do mesmo produto são somadas, mantendo a ordem da primeira ocorrência.
+ */
+public record ItensEstoqueDTO(long[] produtosIds, long[] quantidades) {
+
+	public ItensEstoqueDTO {
+		if (produtosIds.length != quantidades.length) {
+			throw new IllegalArgumentException("Listas de produtos e quantidades com tamanhos diferentes.");
+		}
+	}
+
+	public int tamanho() {
+		return produtosIds.length;
+	}
+
+	/** Soma as quantidades de produtos repetidos nas {@code tamanho} primeiras posições. */
+	public static ItensEstoqueDTO agrupar(long[] produtosIds, long[] quantidades, int tamanho) {
+		// Tabela de endereçamento aberto id -> posição no resultado (+1; 0 = vazio)
+		int capacidade = Integer.highestOneBit(Math.max(1, tamanho) * 2 - 1) << 1;
+		long[] chaves = new long[capacidade];
+		int[] posicoes = new int[capacidade];
+		int mascara = capacidade - 1;
+
+		long[] ids = new long[tamanho];
+		long[] somas = new long[tamanho];
+		int distintos = 0;
+		for (int i = 0; i < tamanho; i++) {
+			long id = produtosIds[i];
+			int slot = Long.hashCode(id * 0x9E3779B97F4A7C15L) & mascara;
+			while (posicoes[slot] != 0 && chaves[slot] != id) {
+				slot = (slot + 1) & mascara;
+			}
+			if (posicoes[slot] == 0) {
+				chaves[slot] = id;
+				posicoes[slot] = ++distintos;
+				ids[distintos - 1] = id;
+				somas[distintos - 1] = quantidades[i];
+			} else {
+				int posicao = posicoes[slot] - 1;
+				somas[posicao] = Math.addExact(somas[posicao], quantidades[i]);
+			}
+		}
+
+		if (distintos == tamanho) {
+			return new ItensEstoqueDTO(ids, somas);
+		}
+		return new ItensEstoqueDTO(Arrays.copyOf(ids, distintos), Arrays.copyOf(somas, distintos));
+	}
+
+	/** Converte o formato antigo em listas, somando produtos repetidos. */
+	public static ItensEstoqueDTO de(List<Long> produtosIds, List<Long> quantidades) {
+		if (produtosIds.size() != quantidades.size()) {
+			throw new IllegalArgumentException("Listas de produtos e quantidades com tamanhos diferentes.");
+		}
+		int tamanho = produtosIds.size();
+		long[] ids = new long[tamanho];
+		long[] qtds = new long[tamanho];
+		for (int i = 0; i < tamanho; i++) {
+			ids[i] = produtosIds.get(i);
+			qtds[i] = quantidades.get(i);
+		}
+		return agrupar(ids, qtds, tamanho);
+	}
+
+	@Override
+	public boolean equals(Object outro) {
+		return outro instanceof ItensEstoqueDTO itens
+				&& Arrays.equals(produtosIds, itens.produtosIds)
+				&& Arrays.equals(quantidades, itens.quantidades);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(produtosIds) + Arrays.hashCode(quantidades);
+	}
+
+	@Override
+	public String toString() {
+		return "ItensEstoqueDTO[produtosIds=" + Arrays.toString(produtosIds) + ", quantidades="
+				+ Arrays.toString(quantidades) + "]";
+	}
+}
@@ -0,0 +1,9 @@
+package ecommerce.dto;
+
+/**
+ * Linha da consulta de checkout com um item do carrinho. Carrinhos vazios vêm
+ * em uma única linha com todos os campos nulos. Cliente e dados dos produtos
+ * vêm dos respectivos caches.
+ */
+public record LinhaCheckoutDTO(Long itemId, Long produtoId, Long quantidade) {
+}
@@ -0,0 +1,8 @@
+package ecommerce.dto;
+
+import java.math.BigDecimal;
+
+import ecommerce.entity.TipoProduto;
+
+public record ProdutoResumoDTO(Long id, BigDecimal preco, Integer peso, TipoProduto tipo) {
+}
@@ -0,0 +1,124 @@
+package ecommerce.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Cancelamento de pagamento a enviar (outbox). Gravado na mesma transação que
+ * marca a compra como cancelada e apagado depois que o serviço de pagamento
+ * confirma o cancelamento. Após o limite de tentativas fica marcado como
+ * esgotado, para tratamento manual.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_cancelamento_proxima_tentativa", columnList = "esgotado, proximaTentativa"))
+public class CancelamentoPendente {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long compraId; // Nulo para compras do checkout em lote, que não têm registro próprio
+
+    private Long clienteId;
+
+    private Long transacaoPagamentoId;
+
+    private int tentativas;
+
+    private Instant proximaTentativa;
+
+    private String ultimoErro;
+
+    private boolean esgotado;
+
+    private Instant criadoEm;
+
+    public CancelamentoPendente() {}
+
+    public CancelamentoPendente(Long compraId, Long clienteId, Long transacaoPagamentoId, Instant criadoEm) {
+        this.compraId = compraId;
+        this.clienteId = clienteId;
+        this.transacaoPagamentoId = transacaoPagamentoId;
+        this.proximaTentativa = criadoEm;
+        this.criadoEm = criadoEm;
+    }
+
+    // Getters e Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCompraId() {
+        return compraId;
+    }
+
+    public void setCompraId(Long compraId) {
+        this.compraId = compraId;
+    }
+
+    public Long getClienteId() {
+        return clienteId;
+    }
+
+    public void setClienteId(Long clienteId) {
+        this.clienteId = clienteId;
+    }
+
+    public Long getTransacaoPagamentoId() {
+        return transacaoPagamentoId;
+    }
+
+    public void setTransacaoPagamentoId(Long transacaoPagamentoId) {
+        this.transacaoPagamentoId = transacaoPagamentoId;
+    }
+
+    public int getTentativas() {
+        return tentativas;
+    }
+
+    public void setTentativas(int tentativas) {
+        this.tentativas = tentativas;
+    }
+
+    public Instant getProximaTentativa() {
+        return proximaTentativa;
+    }
+
+    public void setProximaTentativa(Instant proximaTentativa) {
+        this.proximaTentativa = proximaTentativa;
+    }
+
+    public String getUltimoErro() {
+        return ultimoErro;
+    }
+
+    public void setUltimoErro(String ultimoErro) {
+        this.ultimoErro = ultimoErro;
+    }
+
+    public boolean isEsgotado() {
+        return esgotado;
+    }
+
+    public void setEsgotado(boolean esgotado) {
+        this.esgotado = esgotado;
+    }
+
+    public Instant getCriadoEm() {
+        return criadoEm;
+    }
+
+    public void setCriadoEm(Instant criadoEm) {
+        this.criadoEm = criadoEm;
+    }
+}
@@ -1,17 +1,22 @@
 package ecommerce.entity;
 
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.Version;
 
 @Entity
 public class CarrinhoDeCompras {
@@ -30,6 +35,25 @@ public class CarrinhoDeCompras {
 
     private LocalDate data;
 
+    // Totais mantidos a cada mudança nos itens, com os preços e pesos da época;
+    // nulos quando desconhecidos (carrinhos gravados fora da entidade)
+    private BigDecimal subtotal;
+
+    private Long pesoTotal;
+
+    // Incrementada a cada mudança nos itens ou reparo dos totais
+    private Long revisao = 0L;
+
+    @Enumerated(EnumType.STRING)
+    private StatusCarrinho status = StatusCarrinho.ABERTO;
+
+    // Início da última reserva para finalização; reservas esquecidas são desfeitas pela conciliação
+    private Instant reservadoEm;
+
+    // Controle de concorrência otimista: gravações com versão antiga falham
+    @Version
+    private Long versao;
+
     public CarrinhoDeCompras() {}
 
     public CarrinhoDeCompras(Long id, Cliente cliente, List<ItemCompra> itens, LocalDate data) {
@@ -37,6 +61,91 @@ public class CarrinhoDeCompras {
         this.cliente = cliente;
         this.itens = itens;
         this.data = data;
+        calcularTotais();
+    }
+
+    /** Adiciona um item e soma seu preço e peso aos totais. */
+    public ItemCompra adicionarItem(Produto produto, Long quantidade) {
+        exigirAberto();
+        ItemCompra item = new ItemCompra(null, produto, quantidade);
+        itens.add(item);
+        somar(produto, quantidade);
+        return item;
+    }
+
+    /** Remove o item e desconta seu preço e peso dos totais. */
+    public void removerItem(ItemCompra item) {
+        exigirAberto();
+        if (itens.remove(item)) {
+            somar(item.getProduto(), -item.getQuantidade());
+        }
+    }
+
+    /** Altera a quantidade do item, ajustando os totais pela diferença. */
+    public void alterarQuantidade(ItemCompra item, Long quantidade) {
+        exigirAberto();
+        long diferenca = quantidade - item.getQuantidade();
+        item.setQuantidade(quantidade);
+        somar(item.getProduto(), diferenca);
+    }
+
+    /**
+     * Recalcula os totais a partir dos itens e dos preços atuais dos produtos.
+     * Devolve se eles mudaram (os totais estavam defasados).
+     */
+    public boolean recalcularTotais() {
+        boolean mudou = calcularTotais();
+        if (mudou) {
+            avancarRevisao();
+        }
+        return mudou;
+    }
+
+    /** Se subtotal e peso total estão disponíveis para calcular o custo sem percorrer os itens. */
+    public boolean possuiTotais() {
+        return subtotal != null && pesoTotal != null;
+    }
+
+    private boolean calcularTotais() {
+        BigDecimal novoSubtotal = BigDecimal.ZERO;
+        long novoPeso = 0;
+        for (ItemCompra item : itens == null ? List.<ItemCompra>of() : itens) {
+            Produto produto = item.getProduto();
+            if (produto == null || produto.getPreco() == null || produto.getPeso() == null
+                    || item.getQuantidade() == null) {
+                boolean mudou = subtotal != null || pesoTotal != null;
+                subtotal = null;
+                pesoTotal = null;
+                return mudou;
+            }
+            novoSubtotal = novoSubtotal.add(produto.getPreco().multiply(BigDecimal.valueOf(item.getQuantidade())));
+            novoPeso += produto.getPeso() * item.getQuantidade();
+        }
+        boolean mudou = subtotal == null || pesoTotal == null || subtotal.compareTo(novoSubtotal) != 0
+                || pesoTotal != novoPeso;
+        subtotal = novoSubtotal;
+        pesoTotal = novoPeso;
+        return mudou;
+    }
+
+    private void somar(Produto produto, long quantidade) {
+        if (possuiTotais() && produto.getPreco() != null && produto.getPeso() != null) {
+            subtotal = subtotal.add(produto.getPreco().multiply(BigDecimal.valueOf(quantidade)));
+            pesoTotal += produto.getPeso() * quantidade;
+        } else {
+            calcularTotais();
+        }
+        avancarRevisao();
+    }
+
+    private void exigirAberto() {
+        if (status != null && status != StatusCarrinho.ABERTO) {
+            throw new IllegalStateException("Carrinho em finalização ou finalizado não pode ser alterado.");
+        }
+    }
+
+    private void avancarRevisao() {
+        revisao = revisao == null ? 1L : revisao + 1;
     }
 
     // Getters e Setters
@@ -62,6 +171,7 @@ public class CarrinhoDeCompras {
 
     public void setItens(List<ItemCompra> itens) {
         this.itens = itens;
+        recalcularTotais();
     }
 
     public LocalDate getData() {
@@ -71,4 +181,32 @@ public class CarrinhoDeCompras {
     public void setData(LocalDate data) {
         this.data = data;
     }
+
+    public BigDecimal getSubtotal() {
+        return subtotal;
+    }
+
+    public Long getPesoTotal() {
+        return pesoTotal;
+    }
+
+    public Long getRevisao() {
+        return revisao;
+    }
+
+    public StatusCarrinho getStatus() {
+        return status;
+    }
+
+    public void setStatus(StatusCarrinho status) {
+        this.status = status;
+    }
+
+    public Instant getReservadoEm() {
+        return reservadoEm;
+    }
+
+    public Long getVersao() {
+        return versao;
+    }
 }
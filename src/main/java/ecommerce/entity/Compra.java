@@ -0,0 +1,129 @@
+package ecommerce.entity;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Registro de um checkout a partir da autorização do pagamento. Cada mudança
+ * de status é gravada em uma transação curta própria, entre as chamadas aos
+ * serviços externos, para que uma compra interrompida possa ser encontrada e
+ * compensada pela {@code ConciliacaoDeCompras}.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_compra_status_atualizada_em", columnList = "status, atualizadaEm"))
+public class Compra {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long carrinhoId;
+
+    private Long clienteId;
+
+    private BigDecimal valorTotal;
+
+    @Enumerated(EnumType.STRING)
+    private StatusCompra status;
+
+    private Long transacaoPagamentoId;
+
+    private String motivo;
+
+    private Instant criadaEm;
+
+    private Instant atualizadaEm;
+
+    public Compra() {}
+
+    public Compra(Long carrinhoId, Long clienteId, BigDecimal valorTotal, Instant criadaEm) {
+        this.carrinhoId = carrinhoId;
+        this.clienteId = clienteId;
+        this.valorTotal = valorTotal;
+        this.status = StatusCompra.INICIADA;
+        this.criadaEm = criadaEm;
+        this.atualizadaEm = criadaEm;
+    }
+
+    // Getters e Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCarrinhoId() {
+        return carrinhoId;
+    }
+
+    public void setCarrinhoId(Long carrinhoId) {
+        this.carrinhoId = carrinhoId;
+    }
+
+    public Long getClienteId() {
+        return clienteId;
+    }
+
+    public void setClienteId(Long clienteId) {
+        this.clienteId = clienteId;
+    }
+
+    public BigDecimal getValorTotal() {
+        return valorTotal;
+    }
+
+    public void setValorTotal(BigDecimal valorTotal) {
+        this.valorTotal = valorTotal;
+    }
+
+    public StatusCompra getStatus() {
+        return status;
+    }
+
+    public void setStatus(StatusCompra status) {
+        this.status = status;
+    }
+
+    public Long getTransacaoPagamentoId() {
+        return transacaoPagamentoId;
+    }
+
+    public void setTransacaoPagamentoId(Long transacaoPagamentoId) {
+        this.transacaoPagamentoId = transacaoPagamentoId;
+    }
+
+    public String getMotivo() {
+        return motivo;
+    }
+
+    public void setMotivo(String motivo) {
+        this.motivo = motivo;
+    }
+
+    public Instant getCriadaEm() {
+        return criadaEm;
+    }
+
+    public void setCriadaEm(Instant criadaEm) {
+        this.criadaEm = criadaEm;
+    }
+
+    public Instant getAtualizadaEm() {
+        return atualizadaEm;
+    }
+
+    public void setAtualizadaEm(Instant atualizadaEm) {
+        this.atualizadaEm = atualizadaEm;
+    }
+}
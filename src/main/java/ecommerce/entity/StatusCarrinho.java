@@ -0,0 +1,10 @@
+package ecommerce.entity;
+
+/**
+ * Situação do carrinho no checkout. Só carrinhos {@code ABERTO} podem ser
+ * alterados ou finalizados; {@code EM_CHECKOUT} marca a finalização em
+ * andamento e {@code FINALIZADO} é final.
+ */
+public enum StatusCarrinho {
+	ABERTO, EM_CHECKOUT, FINALIZADO
+}
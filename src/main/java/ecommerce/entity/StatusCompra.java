@@ -0,0 +1,13 @@
+package ecommerce.entity;
+
+/**
+ * Etapas da compra registradas durante o checkout. {@code INICIADA} e
+ * {@code PAGAMENTO_AUTORIZADO} são estados intermediários; os demais são finais.
+ * {@code PAGAMENTO_INCERTO} é a compra que falhou sem saber se o pagamento foi
+ * autorizado; {@code BAIXA_INCERTA}, a que falhou com o pagamento autorizado
+ * sem saber se o estoque foi baixado. Nas duas o carrinho continua em
+ * finalização até a verificação.
+ */
+public enum StatusCompra {
+	INICIADA, PAGAMENTO_AUTORIZADO, CONCLUIDA, RECUSADA, CANCELADA, PAGAMENTO_INCERTO, BAIXA_INCERTA
+}
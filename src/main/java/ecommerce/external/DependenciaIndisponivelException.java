@@ -0,0 +1,31 @@
+package ecommerce.external;
+
+/**
+ * Serviço externo recusou ou não respondeu à chamada a tempo: circuito
+ * aberto, limite de chamadas simultâneas atingido ou tempo limite excedido.
+ * Mapeada para 503 pelo controller.
+ */
+public class DependenciaIndisponivelException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final boolean podeTerSidoExecutada;
+
+	public DependenciaIndisponivelException(String mensagem, Throwable causa) {
+		this(mensagem, causa, true);
+	}
+
+	public DependenciaIndisponivelException(String mensagem, Throwable causa, boolean podeTerSidoExecutada) {
+		super(mensagem, causa);
+		this.podeTerSidoExecutada = podeTerSidoExecutada;
+	}
+
+	/**
+	 * Se a chamada pode ter chegado ao serviço (tempo limite, falha no meio da
+	 * chamada); falso quando foi recusada antes de sair, pelo circuito aberto
+	 * ou pelo limite de concorrência.
+	 */
+	public boolean podeTerSidoExecutada() {
+		return podeTerSidoExecutada;
+	}
+}
@@ -4,11 +4,24 @@ import java.util.List;
 
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
 
 public interface IEstoqueExternal {
 
-	public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades);
+	public EstoqueBaixaDTO darBaixa(ItensEstoqueDTO itens);
 
-	public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades);
+	public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens);
+
+	/** @deprecated use {@link #darBaixa(ItensEstoqueDTO)}, que não repete produtos nem cria objetos por item */
+	@Deprecated
+	public default EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
+		return darBaixa(ItensEstoqueDTO.de(produtosIds, produtosQuantidades));
+	}
+
+	/** @deprecated use {@link #verificarDisponibilidade(ItensEstoqueDTO)} */
+	@Deprecated
+	public default DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
+		return verificarDisponibilidade(ItensEstoqueDTO.de(produtosIds, produtosQuantidades));
+	}
 
 }
@@ -0,0 +1,221 @@
+package ecommerce.external.agrupado;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.external.IEstoqueExternal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Junta as consultas de disponibilidade que chegam dentro de uma mesma janela
+ * em uma única chamada ao estoque e devolve a cada chamador a sua resposta.
+ * <p>
+ * A primeira consulta abre a janela e a conduz: espera até {@code janela} (ou
+ * até a janela juntar {@code tamanhoMaximo} consultas), faz a chamada agrupada
+ * na própria thread e distribui o resultado. As demais só esperam a resposta,
+ * de modo que a latência adicionada é no máximo a duração da janela e não há
+ * threads extras.
+ * <p>
+ * Cada produto vai na chamada com a maior quantidade pedida na janela. Um
+ * produto indisponível nessa quantidade é indisponível para quem pediu
+ * exatamente ela; quem pediu menos não pode ser respondido pela chamada
+ * agrupada e refaz a consulta sozinho (na própria thread). Em picos, em que a
+ * maioria dos carrinhos leva uma unidade dos mesmos produtos, isso é raro. Uma
+ * resposta agrupada indisponível que não aponta os produtos não responde
+ * ninguém: todas as consultas da janela são refeitas sozinhas.
+ * <p>
+ * A baixa no estoque não é agrupada. Janela zero ou tamanho máximo 1 desligam
+ * o agrupamento.
+ */
+public class EstoqueAgrupado implements IEstoqueExternal {
+
+	private final IEstoqueExternal estoque;
+	private final long janelaNanos;
+	private final int tamanhoMaximo;
+
+	private final ReentrantLock trava = new ReentrantLock();
+	private Janela aberta;
+
+	private final DistributionSummary tamanhoDoGrupo;
+	private final Counter refeitas;
+
+	public EstoqueAgrupado(IEstoqueExternal estoque, Duration janela, int tamanhoMaximo, MeterRegistry registry) {
+		if (janela.isNegative() || tamanhoMaximo < 1) {
+			throw new IllegalArgumentException("Janela e tamanho máximo do agrupamento inválidos.");
+		}
+		this.estoque = estoque;
+		this.janelaNanos = janela.toNanos();
+		this.tamanhoMaximo = tamanhoMaximo;
+
+		this.tamanhoDoGrupo = DistributionSummary.builder("estoque.agrupamento.tamanho")
+				.description("Consultas de disponibilidade atendidas por chamada agrupada")
+				.publishPercentiles(0.5, 0.95, 0.99)
+				.register(registry);
+		this.refeitas = Counter.builder("estoque.agrupamento.refeitas")
+				.description("Consultas refeitas individualmente por pedirem menos que o máximo da janela")
+				.register(registry);
+	}
+
+	@Override
+	public EstoqueBaixaDTO darBaixa(ItensEstoqueDTO itens) {
+		return estoque.darBaixa(itens);
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
+		if (janelaNanos == 0 || tamanhoMaximo == 1) {
+			return estoque.verificarDisponibilidade(itens);
+		}
+
+		Consulta consulta = new Consulta(itens);
+		Janela janela;
+		boolean conduz;
+		trava.lock();
+		try {
+			conduz = aberta == null;
+			if (conduz) {
+				aberta = new Janela();
+			}
+			janela = aberta;
+			janela.consultas.add(consulta);
+			if (janela.consultas.size() >= tamanhoMaximo) {
+				aberta = null;
+				janela.cheia.countDown();
+			}
+		} finally {
+			trava.unlock();
+		}
+
+		if (conduz) {
+			conduzir(janela);
+		}
+
+		DisponibilidadeDTO resposta;
+		try {
+			resposta = consulta.resposta.join();
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException erro ? erro : e;
+		}
+		if (resposta == null) {
+			refeitas.increment();
+			return estoque.verificarDisponibilidade(itens);
+		}
+		return resposta;
+	}
+
+	private void conduzir(Janela janela) {
+		try {
+			janela.cheia.await(janelaNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		trava.lock();
+		try {
+			if (aberta == janela) {
+				aberta = null;
+			}
+		} finally {
+			trava.unlock();
+		}
+
+		// A partir daqui a janela está fechada e a lista de consultas não muda
+		List<Consulta> consultas = janela.consultas;
+		tamanhoDoGrupo.record(consultas.size());
+		if (consultas.size() == 1) {
+			Consulta unica = consultas.get(0);
+			try {
+				unica.resposta.complete(estoque.verificarDisponibilidade(unica.itens));
+			} catch (RuntimeException e) {
+				unica.resposta.completeExceptionally(e);
+			}
+			return;
+		}
+
+		Map<Long, Long> maximos = new HashMap<>();
+		for (Consulta consulta : consultas) {
+			long[] ids = consulta.itens.produtosIds();
+			long[] quantidades = consulta.itens.quantidades();
+			for (int i = 0; i < ids.length; i++) {
+				maximos.merge(ids[i], quantidades[i], Math::max);
+			}
+		}
+		long[] ids = new long[maximos.size()];
+		long[] quantidades = new long[maximos.size()];
+		int posicao = 0;
+		for (Map.Entry<Long, Long> produto : maximos.entrySet()) {
+			ids[posicao] = produto.getKey();
+			quantidades[posicao++] = produto.getValue();
+		}
+
+		DisponibilidadeDTO agrupada;
+		try {
+			agrupada = estoque.verificarDisponibilidade(new ItensEstoqueDTO(ids, quantidades));
+		} catch (RuntimeException e) {
+			for (Consulta consulta : consultas) {
+				consulta.resposta.completeExceptionally(e);
+			}
+			return;
+		}
+
+		if (!agrupada.disponivel()
+				&& (agrupada.idsProdutosIndisponiveis() == null || agrupada.idsProdutosIndisponiveis().isEmpty())) {
+			for (Consulta consulta : consultas) {
+				consulta.resposta.complete(null);
+			}
+			return;
+		}
+
+		Set<Long> indisponiveis = agrupada.idsProdutosIndisponiveis() == null ? Set.of()
+				: new HashSet<>(agrupada.idsProdutosIndisponiveis());
+		for (Consulta consulta : consultas) {
+			consulta.resposta.complete(responder(consulta.itens, indisponiveis, maximos));
+		}
+	}
+
+	/** Resposta da consulta a partir da chamada agrupada, ou nulo se ela não basta. */
+	private static DisponibilidadeDTO responder(ItensEstoqueDTO itens, Set<Long> indisponiveis,
+			Map<Long, Long> maximos) {
+		List<Long> daConsulta = new ArrayList<>(0);
+		long[] ids = itens.produtosIds();
+		long[] quantidades = itens.quantidades();
+		for (int i = 0; i < ids.length; i++) {
+			if (indisponiveis.contains(ids[i])) {
+				if (quantidades[i] < maximos.get(ids[i])) {
+					return null;
+				}
+				daConsulta.add(ids[i]);
+			}
+		}
+		return new DisponibilidadeDTO(daConsulta.isEmpty(), daConsulta);
+	}
+
+	private static final class Janela {
+		private final List<Consulta> consultas = new ArrayList<>();
+		private final CountDownLatch cheia = new CountDownLatch(1);
+	}
+
+	private static final class Consulta {
+		private final ItensEstoqueDTO itens;
+		private final CompletableFuture<DisponibilidadeDTO> resposta = new CompletableFuture<>();
+
+		private Consulta(ItensEstoqueDTO itens) {
+			// Sem produtos repetidos, para que a quantidade de cada um seja a total da consulta
+			this.itens = ItensEstoqueDTO.agrupar(itens.produtosIds(), itens.quantidades(), itens.tamanho());
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package ecommerce.external.fake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.external.IEstoqueExternal;
+
+/**
+ * Estoque em processo que controla de fato a quantidade de cada produto, para
+ * testes de capacidade sem o serviço externo.
+ * <p>
+ * Os produtos ficam em uma tabela de endereçamento aberto com chaves
+ * {@code long} (sem boxing), cujas posições indexam um {@link AtomicLongArray}
+ * de quantidades. A baixa de um único produto é feita só com CAS. A baixa de
+ * vários produtos trava as faixas ({@code stripes}) envolvidas em ordem
+ * crescente, confere todas as quantidades e só então as decrementa, de modo
+ * que carrinhos com produtos diferentes não disputam a mesma trava.
+ * <p>
+ * O cadastro de produtos também é livre de travas, mas a tabela tem capacidade
+ * fixa definida na construção.
+ */
+public class EstoqueEmMemoria implements IEstoqueExternal {
+
+  private static final long VAZIO = 0L;
+  private static final int FAIXAS_PADRAO = 1024;
+
+  private final AtomicLongArray chaves;
+  private final AtomicLongArray quantidades;
+  private final int mascara;
+  private final ReentrantLock[] faixas;
+  private final int mascaraFaixas;
+
+  public EstoqueEmMemoria(int capacidade) {
+    this(capacidade, FAIXAS_PADRAO);
+  }
+
+  public EstoqueEmMemoria(int capacidade, int faixas) {
+    if (capacidade <= 0 || capacidade > (1 << 29)) {
+      throw new IllegalArgumentException("Capacidade inválida: " + capacidade);
+    }
+    // Fator de carga de no máximo 50% para sondagens curtas
+    int tamanho = Integer.highestOneBit(capacidade * 2 - 1) << 1;
+    this.chaves = new AtomicLongArray(tamanho);
+    this.quantidades = new AtomicLongArray(tamanho);
+    this.mascara = tamanho - 1;
+
+    int totalFaixas = Integer.highestOneBit(Math.max(1, faixas) * 2 - 1);
+    this.faixas = new ReentrantLock[totalFaixas];
+    for (int i = 0; i < totalFaixas; i++) {
+      this.faixas[i] = new ReentrantLock();
+    }
+    this.mascaraFaixas = totalFaixas - 1;
+  }
+
+  /** Soma {@code quantidade} ao estoque do produto, cadastrando-o se necessário. */
+  public void repor(long produtoId, long quantidade) {
+    if (quantidade < 0) {
+      throw new IllegalArgumentException("Quantidade não pode ser negativa.");
+    }
+    quantidades.addAndGet(cadastrar(produtoId), quantidade);
+  }
+
+  /** Quantidade atual do produto, ou zero se ele não estiver cadastrado. */
+  public long quantidade(long produtoId) {
+    int posicao = posicao(produtoId);
+    return posicao < 0 ? 0L : quantidades.get(posicao);
+  }
+
+  @Override
+  public EstoqueBaixaDTO darBaixa(ItensEstoqueDTO itens) {
+    Pedido pedido = Pedido.de(this, itens);
+    if (pedido.tamanho == 0 || !pedido.desconhecidos.isEmpty()) {
+      return new EstoqueBaixaDTO(false);
+    }
+    if (pedido.tamanho == 1) {
+      return new EstoqueBaixaDTO(retirar(pedido.posicoes[0], pedido.quantidades[0]));
+    }
+
+    int[] travas = pedido.faixas(mascaraFaixas);
+    for (int faixa : travas) {
+      faixas[faixa].lock();
+    }
+    try {
+      for (int i = 0; i < pedido.tamanho; i++) {
+        if (quantidades.get(pedido.posicoes[i]) < pedido.quantidades[i]) {
+          return new EstoqueBaixaDTO(false);
+        }
+      }
+      for (int i = 0; i < pedido.tamanho; i++) {
+        // A baixa de produto único não trava a faixa: se ela levou o saldo
+        // entre a conferência e aqui, desfaz o que já foi retirado
+        if (!retirar(pedido.posicoes[i], pedido.quantidades[i])) {
+          for (int j = 0; j < i; j++) {
+            quantidades.addAndGet(pedido.posicoes[j], pedido.quantidades[j]);
+          }
+          return new EstoqueBaixaDTO(false);
+        }
+      }
+      return new EstoqueBaixaDTO(true);
+    } finally {
+      for (int i = travas.length - 1; i >= 0; i--) {
+        faixas[travas[i]].unlock();
+      }
+    }
+  }
+
+  @Override
+  public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
+    // Consulta sem travas: reflete o saldo no instante da leitura de cada produto
+    Pedido pedido = Pedido.de(this, itens);
+    List<Long> idsIndisponiveis = new ArrayList<>(pedido.desconhecidos);
+    for (int i = 0; i < pedido.tamanho; i++) {
+      if (quantidades.get(pedido.posicoes[i]) < pedido.quantidades[i]) {
+        idsIndisponiveis.add(itens.produtosIds()[pedido.primeiros[i]]);
+      }
+    }
+    return new DisponibilidadeDTO(idsIndisponiveis.isEmpty(), idsIndisponiveis);
+  }
+
+  /** Decrementa o saldo com CAS, sem deixá-lo negativo. */
+  private boolean retirar(int posicao, long quantidade) {
+    long atual;
+    do {
+      atual = quantidades.get(posicao);
+      if (atual < quantidade) {
+        return false;
+      }
+    } while (!quantidades.compareAndSet(posicao, atual, atual - quantidade));
+    return true;
+  }
+
+  private int posicao(long produtoId) {
+    if (produtoId == VAZIO) {
+      return -1;
+    }
+    int posicao = espalhar(produtoId) & mascara;
+    for (int tentativas = 0; tentativas <= mascara; tentativas++) {
+      long chave = chaves.get(posicao);
+      if (chave == produtoId) {
+        return posicao;
+      }
+      if (chave == VAZIO) {
+        return -1;
+      }
+      posicao = (posicao + 1) & mascara;
+    }
+    return -1;
+  }
+
+  private int cadastrar(long produtoId) {
+    if (produtoId == VAZIO) {
+      throw new IllegalArgumentException("Id de produto inválido: " + produtoId);
+    }
+    int posicao = espalhar(produtoId) & mascara;
+    for (int tentativas = 0; tentativas <= mascara; tentativas++) {
+      long chave = chaves.get(posicao);
+      if (chave == produtoId) {
+        return posicao;
+      }
+      if (chave == VAZIO && chaves.compareAndSet(posicao, VAZIO, produtoId)) {
+        return posicao;
+      }
+      if (chaves.get(posicao) == produtoId) {
+        return posicao; // Cadastrado por outra thread na mesma posição
+      }
+      posicao = (posicao + 1) & mascara;
+    }
+    throw new IllegalStateException("Capacidade do estoque em memória esgotada.");
+  }
+
+  /** Mistura os bits do id (finalizador do MurmurHash3) para espalhar ids sequenciais. */
+  private static int espalhar(long valor) {
+    valor ^= valor >>> 33;
+    valor *= 0xff51afd7ed558ccdL;
+    valor ^= valor >>> 33;
+    valor *= 0xc4ceb9fe1a85ec53L;
+    valor ^= valor >>> 33;
+    return (int) valor;
+  }
+
+  /**
+   * Itens do pedido já resolvidos para posições da tabela, ordenados por posição
+   * e com as quantidades de produtos repetidos somadas.
+   */
+  private static final class Pedido {
+    private final int[] posicoes;
+    private final long[] quantidades;
+    /** Índice, na lista original, da primeira ocorrência de cada produto. */
+    private final int[] primeiros;
+    private final int tamanho;
+    private final List<Long> desconhecidos;
+
+    private Pedido(int[] posicoes, long[] quantidades, int[] primeiros, int tamanho, List<Long> desconhecidos) {
+      this.posicoes = posicoes;
+      this.quantidades = quantidades;
+      this.primeiros = primeiros;
+      this.tamanho = tamanho;
+      this.desconhecidos = desconhecidos;
+    }
+
+    static Pedido de(EstoqueEmMemoria estoque, ItensEstoqueDTO itens) {
+      long[] produtosIds = itens.produtosIds();
+      long[] produtosQuantidades = itens.quantidades();
+      int total = itens.tamanho();
+
+      // Posição na parte alta e índice original na parte baixa, para ordenar sem objetos
+      long[] ordem = new long[total];
+      int conhecidos = 0;
+      List<Long> desconhecidos = new ArrayList<>(0);
+      for (int i = 0; i < total; i++) {
+        long id = produtosIds[i];
+        if (produtosQuantidades[i] < 0) {
+          throw new IllegalArgumentException("Quantidade inválida para o produto " + id + ".");
+        }
+        int posicao = estoque.posicao(id);
+        if (posicao < 0) {
+          desconhecidos.add(id);
+        } else {
+          ordem[conhecidos++] = ((long) posicao << 32) | i;
+        }
+      }
+      Arrays.sort(ordem, 0, conhecidos);
+
+      int[] posicoes = new int[conhecidos];
+      long[] quantidades = new long[conhecidos];
+      int[] primeiros = new int[conhecidos];
+      int tamanho = 0;
+      for (int k = 0; k < conhecidos; k++) {
+        int posicao = (int) (ordem[k] >>> 32);
+        int indice = (int) ordem[k];
+        long quantidade = produtosQuantidades[indice];
+        if (tamanho > 0 && posicoes[tamanho - 1] == posicao) {
+          quantidades[tamanho - 1] = Math.addExact(quantidades[tamanho - 1], quantidade);
+        } else {
+          posicoes[tamanho] = posicao;
+          quantidades[tamanho] = quantidade;
+          primeiros[tamanho] = indice;
+          tamanho++;
+        }
+      }
+      return new Pedido(posicoes, quantidades, primeiros, tamanho, desconhecidos);
+    }
+
+    /** Faixas a travar, sem repetições e em ordem crescente para evitar deadlock. */
+    int[] faixas(int mascaraFaixas) {
+      int[] faixas = new int[tamanho];
+      for (int i = 0; i < tamanho; i++) {
+        faixas[i] = posicoes[i] & mascaraFaixas;
+      }
+      Arrays.sort(faixas);
+      int distintas = 0;
+      for (int i = 0; i < tamanho; i++) {
+        if (distintas == 0 || faixas[distintas - 1] != faixas[i]) {
+          faixas[distintas++] = faixas[i];
+        }
+      }
+      return Arrays.copyOf(faixas, distintas);
+    }
+  }
+}
@@ -5,6 +5,7 @@ import java.util.List;
 
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
 import ecommerce.external.IEstoqueExternal;
 
 public class EstoqueSimulado implements IEstoqueExternal {
@@ -15,18 +16,20 @@ public class EstoqueSimulado implements IEstoqueExternal {
   }
 
   @Override
-  public EstoqueBaixaDTO darBaixa(List<Long> produtosIds, List<Long> produtosQuantidades) {
+  public EstoqueBaixaDTO darBaixa(ItensEstoqueDTO itens) {
     // Simula uma operação bem-sucedida de baixa no estoque
     return new EstoqueBaixaDTO(true);
   }
 
   @Override
-  public DisponibilidadeDTO verificarDisponibilidade(List<Long> produtosIds, List<Long> produtosQuantidades) {
+  public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
     // Identifica quais produtos da solicitação estão indisponíveis
     List<Long> idsIndisponiveis = new ArrayList<>();
-    for (Long id : produtosIds) {
-      if (produtosIndisponiveis.contains(id)) {
-        idsIndisponiveis.add(id);
+    if (!produtosIndisponiveis.isEmpty()) {
+      for (long id : itens.produtosIds()) {
+        if (produtosIndisponiveis.contains(id)) {
+          idsIndisponiveis.add(id);
+        }
       }
     }
 
@@ -0,0 +1,87 @@
+package ecommerce.external.http;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.HttpMessageConverterCustomizer;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.cloud.openfeign.support.SpringEncoder;
+import org.springframework.cloud.openfeign.support.SpringMvcContract;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import feign.Feign;
+import feign.Request;
+import feign.Retryer;
+import feign.hc5.ApacheHttp5Client;
+
+/**
+ * Monta os clientes Feign dos serviços externos sobre um único
+ * {@link CloseableHttpClient} com pool de conexões persistentes (keep-alive).
+ * Usado pela configuração do perfil {@code http} e pelos benchmarks, para que
+ * ambos meçam o mesmo caminho.
+ */
+public final class ClientesHttp {
+
+	private ClientesHttp() {
+	}
+
+	/** Limites do pool e tempos limite de conexão e de resposta. */
+	public record Configuracao(int maxConexoes, int maxConexoesPorRota, Duration timeoutConexao,
+			Duration timeoutResposta, Duration tempoDeVidaConexao) {
+	}
+
+	public static CloseableHttpClient httpClient(Configuracao configuracao) {
+		PoolingHttpClientConnectionManager pool = PoolingHttpClientConnectionManagerBuilder.create()
+				.setMaxConnTotal(configuracao.maxConexoes())
+				.setMaxConnPerRoute(configuracao.maxConexoesPorRota())
+				.setDefaultConnectionConfig(ConnectionConfig.custom()
+						.setConnectTimeout(Timeout.of(configuracao.timeoutConexao()))
+						.setSocketTimeout(Timeout.of(configuracao.timeoutResposta()))
+						.setTimeToLive(TimeValue.of(configuracao.tempoDeVidaConexao()))
+						// Revalida conexões ociosas antes de reutilizá-las
+						.setValidateAfterInactivity(TimeValue.ofSeconds(2))
+						.build())
+				.build();
+		return HttpClients.custom()
+				.setConnectionManager(pool)
+				.evictExpiredConnections()
+				.evictIdleConnections(TimeValue.of(configuracao.tempoDeVidaConexao()))
+				.disableCookieManagement()
+				.disableAutomaticRetries()
+				.build();
+	}
+
+	public static <T> T criar(Class<T> tipo, String url, CloseableHttpClient httpClient, ObjectMapper mapper,
+			Configuracao configuracao) {
+		MappingJackson2HttpMessageConverter json = new MappingJackson2HttpMessageConverter(mapper);
+		ObjectFactory<HttpMessageConverters> conversores = () -> new HttpMessageConverters(false, List.of(json));
+		// Sem personalizações: os conversores são só o JSON acima
+		ObjectProvider<HttpMessageConverterCustomizer> semPersonalizacoes = new StaticListableBeanFactory()
+				.getBeanProvider(HttpMessageConverterCustomizer.class);
+		return Feign.builder()
+				.client(new ApacheHttp5Client(httpClient))
+				.contract(new SpringMvcContract())
+				.encoder(new SpringEncoder(conversores))
+				.decoder(new ResponseEntityDecoder(new SpringDecoder(conversores, semPersonalizacoes)))
+				// Novas tentativas ficam a cargo do circuit breaker, não do Feign
+				.retryer(Retryer.NEVER_RETRY)
+				.options(new Request.Options(configuracao.timeoutConexao().toMillis(), TimeUnit.MILLISECONDS,
+						configuracao.timeoutResposta().toMillis(), TimeUnit.MILLISECONDS, false))
+				.target(tipo, url);
+	}
+}
@@ -0,0 +1,18 @@
+package ecommerce.external.http;
+
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+
+/** Contrato HTTP do serviço de estoque, montado como cliente Feign por {@link ClientesHttp}. */
+public interface EstoqueClient {
+
+	@PostMapping("/estoque/disponibilidade")
+	DisponibilidadeDTO verificarDisponibilidade(@RequestBody ItensEstoqueDTO itens);
+
+	@PostMapping("/estoque/baixa")
+	EstoqueBaixaDTO darBaixa(@RequestBody ItensEstoqueDTO itens);
+}
@@ -0,0 +1,25 @@
+package ecommerce.external.http;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.external.IEstoqueExternal;
+
+public class EstoqueHttp implements IEstoqueExternal {
+
+	private final EstoqueClient client;
+
+	public EstoqueHttp(EstoqueClient client) {
+		this.client = client;
+	}
+
+	@Override
+	public EstoqueBaixaDTO darBaixa(ItensEstoqueDTO itens) {
+		return client.darBaixa(itens);
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
+		return client.verificarDisponibilidade(itens);
+	}
+}
@@ -0,0 +1,18 @@
+package ecommerce.external.http;
+
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import ecommerce.dto.PagamentoDTO;
+
+/** Contrato HTTP do serviço de pagamento, montado como cliente Feign por {@link ClientesHttp}. */
+public interface PagamentoClient {
+
+	@PostMapping("/pagamentos/autorizacao")
+	PagamentoDTO autorizarPagamento(@RequestParam("clienteId") Long clienteId,
+			@RequestParam("custoTotal") Double custoTotal);
+
+	@PostMapping("/pagamentos/{transacaoId}/cancelamento")
+	void cancelarPagamento(@PathVariable("transacaoId") Long transacaoId, @RequestParam("clienteId") Long clienteId);
+}
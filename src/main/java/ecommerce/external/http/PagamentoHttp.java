@@ -0,0 +1,23 @@
+package ecommerce.external.http;
+
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.IPagamentoExternal;
+
+public class PagamentoHttp implements IPagamentoExternal {
+
+	private final PagamentoClient client;
+
+	public PagamentoHttp(PagamentoClient client) {
+		this.client = client;
+	}
+
+	@Override
+	public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+		return client.autorizarPagamento(clienteId, custoTotal);
+	}
+
+	@Override
+	public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId) {
+		client.cancelarPagamento(pagamentoTransacaoId, clienteId);
+	}
+}
@@ -0,0 +1,28 @@
+package ecommerce.external.resiliente;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.external.IEstoqueExternal;
+
+/** Aplica a {@link ProtecaoExterna} do estoque a todas as chamadas do serviço decorado. */
+public class EstoqueResiliente implements IEstoqueExternal {
+
+	private final IEstoqueExternal estoque;
+	private final ProtecaoExterna protecao;
+
+	public EstoqueResiliente(IEstoqueExternal estoque, ProtecaoExterna protecao) {
+		this.estoque = estoque;
+		this.protecao = protecao;
+	}
+
+	@Override
+	public EstoqueBaixaDTO darBaixa(ItensEstoqueDTO itens) {
+		return protecao.executar(() -> estoque.darBaixa(itens));
+	}
+
+	@Override
+	public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
+		return protecao.executar(() -> estoque.verificarDisponibilidade(itens));
+	}
+}
@@ -0,0 +1,26 @@
+package ecommerce.external.resiliente;
+
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.IPagamentoExternal;
+
+/** Aplica a {@link ProtecaoExterna} do pagamento a todas as chamadas do serviço decorado. */
+public class PagamentoResiliente implements IPagamentoExternal {
+
+	private final IPagamentoExternal pagamento;
+	private final ProtecaoExterna protecao;
+
+	public PagamentoResiliente(IPagamentoExternal pagamento, ProtecaoExterna protecao) {
+		this.pagamento = pagamento;
+		this.protecao = protecao;
+	}
+
+	@Override
+	public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+		return protecao.executar(() -> pagamento.autorizarPagamento(clienteId, custoTotal));
+	}
+
+	@Override
+	public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId) {
+		protecao.executarSemResultado(() -> pagamento.cancelarPagamento(clienteId, pagamentoTransacaoId));
+	}
+}
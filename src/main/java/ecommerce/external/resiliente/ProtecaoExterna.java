@@ -0,0 +1,100 @@
+package ecommerce.external.resiliente;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import ecommerce.external.DependenciaIndisponivelException;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkhead;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Executa as chamadas a um serviço externo com limite de concorrência
+ * ({@link ThreadPoolBulkhead}), tempo limite ({@link TimeLimiter}) e
+ * {@link CircuitBreaker}.
+ * <p>
+ * Chamadas recusadas pelo bulkhead devolvem a permissão ao circuito e não
+ * contam como falha do serviço; tempos limite e exceções contam.
+ * Recusas e tempos esgotados viram {@link DependenciaIndisponivelException}
+ * e são contados em {@code compra.externo.rejeicoes}.
+ */
+public final class ProtecaoExterna {
+
+	private final String dependencia;
+	private final CircuitBreaker circuitBreaker;
+	private final ThreadPoolBulkhead bulkhead;
+	private final TimeLimiter timeLimiter;
+
+	private final Counter rejeicoesCircuito;
+	private final Counter rejeicoesLimite;
+	private final Counter rejeicoesTempo;
+
+	public ProtecaoExterna(String dependencia, CircuitBreaker circuitBreaker, ThreadPoolBulkhead bulkhead,
+			TimeLimiter timeLimiter, MeterRegistry registry) {
+		this.dependencia = dependencia;
+		this.circuitBreaker = circuitBreaker;
+		this.bulkhead = bulkhead;
+		this.timeLimiter = timeLimiter;
+
+		this.rejeicoesCircuito = contador(registry, dependencia, "circuito-aberto");
+		this.rejeicoesLimite = contador(registry, dependencia, "limite-concorrencia");
+		this.rejeicoesTempo = contador(registry, dependencia, "tempo-limite");
+	}
+
+	public <T> T executar(Supplier<T> chamada) {
+		if (!circuitBreaker.tryAcquirePermission()) {
+			rejeicoesCircuito.increment();
+			throw new DependenciaIndisponivelException("Serviço de " + dependencia + " indisponível.",
+					CallNotPermittedException.createCallNotPermittedException(circuitBreaker), false);
+		}
+
+		long inicio = System.nanoTime();
+		CompletableFuture<T> futura;
+		try {
+			futura = bulkhead.executeSupplier(chamada).toCompletableFuture();
+		} catch (BulkheadFullException e) {
+			circuitBreaker.releasePermission();
+			rejeicoesLimite.increment();
+			throw new DependenciaIndisponivelException("Serviço de " + dependencia + " sobrecarregado.", e, false);
+		}
+
+		try {
+			T resultado = timeLimiter.executeFutureSupplier(() -> futura);
+			circuitBreaker.onSuccess(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+			return resultado;
+		} catch (TimeoutException e) {
+			circuitBreaker.onError(System.nanoTime() - inicio, TimeUnit.NANOSECONDS, e);
+			rejeicoesTempo.increment();
+			throw new DependenciaIndisponivelException("Serviço de " + dependencia + " não respondeu a tempo.", e);
+		} catch (Exception e) {
+			Throwable causa = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+			circuitBreaker.onError(System.nanoTime() - inicio, TimeUnit.NANOSECONDS, causa);
+			if (causa instanceof RuntimeException) {
+				throw (RuntimeException) causa;
+			}
+			throw new DependenciaIndisponivelException("Falha na chamada ao serviço de " + dependencia + ".", causa);
+		}
+	}
+
+	public void executarSemResultado(Runnable chamada) {
+		executar(() -> {
+			chamada.run();
+			return null;
+		});
+	}
+
+	private static Counter contador(MeterRegistry registry, String dependencia, String motivo) {
+		return Counter.builder("compra.externo.rejeicoes")
+				.description("Chamadas a serviços externos recusadas sem resposta do serviço")
+				.tag("dependencia", dependencia)
+				.tag("motivo", motivo)
+				.register(registry);
+	}
+}
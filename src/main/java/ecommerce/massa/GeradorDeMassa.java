@@ -0,0 +1,380 @@
+package ecommerce.massa;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+
+/**
+ * Gera clientes, produtos, carrinhos e itens sintéticos direto nas tabelas,
+ * com inserções JDBC em lote, sem passar pelo JPA.
+ * <p>
+ * As linhas são geradas e inseridas um lote por vez (cada lote em sua
+ * transação), de modo que a memória usada não depende do tamanho da massa:
+ * só o tipo de cada cliente e a ordem de popularidade dos produtos ficam em
+ * vetores. Os ids continuam a partir do maior id de cada tabela e, no final,
+ * as colunas de identidade são reposicionadas para que as inserções da
+ * aplicação não colidam com a massa. Opcionalmente as chaves estrangeiras de
+ * carrinhos e itens ficam de fora durante a carga, que é dominada pela
+ * manutenção dos índices dessas chaves.
+ * <p>
+ * Os produtos de cada carrinho seguem uma distribuição {@link Zipf} sobre uma
+ * ordem de popularidade embaralhada, para que os produtos mais vendidos não
+ * sejam simplesmente os de menor id.
+ */
+public class GeradorDeMassa {
+
+	private static final Logger log = LoggerFactory.getLogger(GeradorDeMassa.class);
+
+	private static final String INSERIR_CLIENTE = "insert into cliente (id, nome, endereco, tipo) values (?, ?, ?, ?)";
+	private static final String INSERIR_PRODUTO =
+			"insert into produto (id, nome, descricao, preco, peso, tipo) values (?, ?, ?, ?, ?, ?)";
+	private static final String INSERIR_CARRINHO =
+			"insert into carrinho_de_compras (id, cliente_id, data, status, versao, revisao) values (?, ?, ?, 'ABERTO', 0, 0)";
+	private static final String INSERIR_ITEM =
+			"insert into item_compra (id, carrinho_id, produto_id, quantidade) values (?, ?, ?, ?)";
+
+	/** Chaves estrangeiras (de uma coluna) das tabelas de carrinhos e itens, pelo information_schema. */
+	private static final String CONSULTAR_CHAVES_ESTRANGEIRAS = "select tc.constraint_name, tc.table_name, "
+			+ "kcu.column_name, pk.table_name, pk.column_name from information_schema.table_constraints tc "
+			+ "join information_schema.key_column_usage kcu on kcu.constraint_schema = tc.constraint_schema "
+			+ "and kcu.constraint_name = tc.constraint_name "
+			+ "join information_schema.referential_constraints rc on rc.constraint_schema = tc.constraint_schema "
+			+ "and rc.constraint_name = tc.constraint_name "
+			+ "join information_schema.key_column_usage pk on pk.constraint_schema = rc.unique_constraint_schema "
+			+ "and pk.constraint_name = rc.unique_constraint_name "
+			+ "and pk.ordinal_position = kcu.position_in_unique_constraint "
+			+ "where tc.constraint_type = 'FOREIGN KEY' and tc.table_schema = current_schema "
+			+ "and upper(tc.table_name) in ('CARRINHO_DE_COMPRAS', 'ITEM_COMPRA')";
+
+	/** Tentativas de sortear um produto que ainda não está no carrinho antes de aceitar a repetição. */
+	private static final int TENTATIVAS_PRODUTO_DISTINTO = 10;
+	private static final int DIAS_DE_CARRINHOS = 30;
+
+	/** Recebe cada carrinho depois que o lote dele foi gravado. */
+	@FunctionalInterface
+	public interface Observador {
+		void carrinhoGerado(long carrinhoId, long clienteId, TipoCliente tipo, int itens);
+	}
+
+	public record Resumo(long clientes, long produtos, long carrinhos, long itens, Duration duracao) {
+
+		public double linhasPorSegundo() {
+			return (clientes + produtos + carrinhos + itens) / Math.max(0.001, duracao.toNanos() / 1e9);
+		}
+	}
+
+	private final JdbcTemplate jdbc;
+	private final TransactionTemplate transacao;
+
+	public GeradorDeMassa(JdbcTemplate jdbc, PlatformTransactionManager transacoes) {
+		this.jdbc = jdbc;
+		this.transacao = new TransactionTemplate(transacoes);
+	}
+
+	public Resumo gerar(ParametrosDaMassa parametros) {
+		return gerar(parametros, (carrinhoId, clienteId, tipo, itens) -> {
+		});
+	}
+
+	public Resumo gerar(ParametrosDaMassa parametros, Observador observador) {
+		long inicio = System.nanoTime();
+		SplittableRandom aleatorio = new SplittableRandom(parametros.semente());
+
+		List<ChaveEstrangeira> adiadas = List.of();
+		long[] carrinhosEItens;
+		try {
+			long primeiroCliente = proximoId("cliente");
+			TipoCliente[] tiposDosClientes = gerarClientes(parametros, aleatorio, primeiroCliente);
+			log.info("Massa: {} clientes ({})", parametros.clientes(), parametros.tipos());
+
+			long primeiroProduto = proximoId("produto");
+			gerarProdutos(parametros, aleatorio, primeiroProduto);
+			log.info("Massa: {} produtos", parametros.produtos());
+
+			adiadas = parametros.adiarChavesEstrangeiras() ? removerChavesEstrangeiras() : List.of();
+			carrinhosEItens = gerarCarrinhos(parametros, aleatorio, primeiroCliente, tiposDosClientes, primeiroProduto,
+					observador);
+		} finally {
+			// Os lotes já gravados ficam no banco mesmo se a geração falhar no meio
+			try {
+				recriar(adiadas);
+			} finally {
+				reiniciarIdentidades();
+			}
+		}
+
+		Resumo resumo = new Resumo(parametros.clientes(), parametros.produtos(), carrinhosEItens[0],
+				carrinhosEItens[1], Duration.ofNanos(System.nanoTime() - inicio));
+		log.info("Massa: {} carrinhos e {} itens; {} linhas em {} ms ({} linhas/s)", resumo.carrinhos(),
+				resumo.itens(), resumo.clientes() + resumo.produtos() + resumo.carrinhos() + resumo.itens(),
+				resumo.duracao().toMillis(), Math.round(resumo.linhasPorSegundo()));
+		return resumo;
+	}
+
+	private TipoCliente[] gerarClientes(ParametrosDaMassa parametros, SplittableRandom aleatorio, long primeiroId) {
+		TipoCliente[] tipos = new TipoCliente[parametros.clientes()];
+		for (int inicio = 0; inicio < tipos.length; inicio += parametros.lote()) {
+			int base = inicio;
+			inserirEmTransacao(INSERIR_CLIENTE, Math.min(parametros.lote(), tipos.length - inicio), (ps, i) -> {
+				long id = primeiroId + base + i;
+				TipoCliente tipo = parametros.tipos().sortear(aleatorio);
+				tipos[base + i] = tipo;
+				ps.setLong(1, id);
+				ps.setString(2, "Cliente " + id);
+				ps.setString(3, "Rua " + id);
+				ps.setString(4, tipo.name());
+			});
+		}
+		return tipos;
+	}
+
+	private void gerarProdutos(ParametrosDaMassa parametros, SplittableRandom aleatorio, long primeiroId) {
+		long centavosMinimo = parametros.precoMinimo().movePointRight(2).longValueExact();
+		long centavosMaximo = parametros.precoMaximo().movePointRight(2).longValueExact();
+		TipoProduto[] tiposProduto = TipoProduto.values();
+		for (int inicio = 0; inicio < parametros.produtos(); inicio += parametros.lote()) {
+			int base = inicio;
+			inserirEmTransacao(INSERIR_PRODUTO, Math.min(parametros.lote(), parametros.produtos() - inicio), (ps, i) -> {
+				long id = primeiroId + base + i;
+				ps.setLong(1, id);
+				ps.setString(2, "Produto " + id);
+				ps.setString(3, "Produto sintético");
+				ps.setBigDecimal(4,
+						BigDecimal.valueOf(centavosMinimo + aleatorio.nextLong(centavosMaximo - centavosMinimo + 1), 2));
+				ps.setInt(5, parametros.pesoMinimo()
+						+ aleatorio.nextInt(parametros.pesoMaximo() - parametros.pesoMinimo() + 1));
+				ps.setString(6, tiposProduto[aleatorio.nextInt(tiposProduto.length)].name());
+			});
+		}
+	}
+
+	/** Devolve a quantidade de carrinhos e de itens gerados. */
+	private long[] gerarCarrinhos(ParametrosDaMassa parametros, SplittableRandom aleatorio, long primeiroCliente,
+			TipoCliente[] tiposDosClientes, long primeiroProduto, Observador observador) {
+		// Posição na ordem de popularidade -> deslocamento do produto a partir do primeiro id
+		int[] popularidade = new int[parametros.produtos()];
+		for (int i = 0; i < popularidade.length; i++) {
+			popularidade[i] = i;
+		}
+		for (int i = popularidade.length - 1; i > 0; i--) {
+			int j = aleatorio.nextInt(i + 1);
+			int troca = popularidade[i];
+			popularidade[i] = popularidade[j];
+			popularidade[j] = troca;
+		}
+		Zipf zipf = new Zipf(parametros.produtos(), parametros.zipf());
+		LocalDate hoje = LocalDate.now();
+
+		long proximoCarrinho = proximoId("carrinho_de_compras");
+		long proximoItem = proximoId("item_compra");
+		Lote lote = new Lote(parametros.lote());
+		long itens = 0;
+		long marcoDeProgresso = 0;
+		long inicio = System.nanoTime();
+
+		for (int c = 0; c < parametros.carrinhos(); c++) {
+			int cliente = aleatorio.nextInt(tiposDosClientes.length);
+			int tamanho = parametros.itensPorCarrinho().sortear(aleatorio);
+			lote.novoCarrinho(proximoCarrinho++, primeiroCliente + cliente, tiposDosClientes[cliente],
+					hoje.minusDays(aleatorio.nextInt(DIAS_DE_CARRINHOS)), tamanho);
+			for (int i = 0; i < tamanho; i++) {
+				long produto = 0;
+				for (int tentativa = 0; tentativa < TENTATIVAS_PRODUTO_DISTINTO; tentativa++) {
+					produto = primeiroProduto + popularidade[zipf.sortear(aleatorio)];
+					if (!lote.carrinhoAtualContem(produto)) {
+						break;
+					}
+				}
+				lote.novoItem(proximoItem++, produto, 1 + aleatorio.nextInt(parametros.quantidadeMaxima()));
+			}
+			itens += tamanho;
+
+			if (lote.itens >= parametros.lote() || lote.carrinhos >= parametros.lote()) {
+				gravar(lote, observador);
+			}
+			if (itens - marcoDeProgresso >= 1_000_000) {
+				marcoDeProgresso = itens;
+				log.info("Massa: {} carrinhos e {} itens ({} itens/s)", c + 1, itens,
+						itens * TimeUnit.SECONDS.toNanos(1) / Math.max(1, System.nanoTime() - inicio));
+			}
+		}
+		gravar(lote, observador);
+		return new long[] { parametros.carrinhos(), itens };
+	}
+
+	private void gravar(Lote lote, Observador observador) {
+		if (lote.carrinhos == 0) {
+			return;
+		}
+		transacao.executeWithoutResult(status -> {
+			inserir(INSERIR_CARRINHO, lote.carrinhos, (ps, i) -> {
+				ps.setLong(1, lote.carrinhosIds[i]);
+				ps.setLong(2, lote.clientesIds[i]);
+				ps.setObject(3, lote.datas[i]);
+			});
+			inserir(INSERIR_ITEM, lote.itens, (ps, i) -> {
+				ps.setLong(1, lote.itensIds[i]);
+				ps.setLong(2, lote.carrinhosIds[lote.carrinhoDoItem[i]]);
+				ps.setLong(3, lote.produtosIds[i]);
+				ps.setLong(4, lote.quantidades[i]);
+			});
+		});
+		for (int i = 0; i < lote.carrinhos; i++) {
+			observador.carrinhoGerado(lote.carrinhosIds[i], lote.clientesIds[i], lote.tipos[i], lote.tamanhos[i]);
+		}
+		lote.limpar();
+	}
+
+	/** Inserções com ids explícitos não avançam as identidades: elas voltam a seguir o maior id. */
+	private void reiniciarIdentidades() {
+		for (String tabela : new String[] { "cliente", "produto", "carrinho_de_compras", "item_compra" }) {
+			jdbc.execute("alter table " + tabela + " alter column id restart with " + proximoId(tabela));
+		}
+	}
+
+	/**
+	 * Remove as chaves estrangeiras de carrinhos e itens: sem elas cada linha
+	 * inserida deixa de atualizar os índices das chaves e de consultar as tabelas
+	 * referenciadas. Recriadas no final, as chaves validam a massa inteira de uma vez.
+	 */
+	private List<ChaveEstrangeira> removerChavesEstrangeiras() {
+		List<ChaveEstrangeira> chaves = jdbc.query(CONSULTAR_CHAVES_ESTRANGEIRAS,
+				(linha, i) -> new ChaveEstrangeira(linha.getString(1), linha.getString(2), linha.getString(3),
+						linha.getString(4), linha.getString(5)));
+		for (ChaveEstrangeira chave : chaves) {
+			jdbc.execute("alter table " + chave.tabela() + " drop constraint " + chave.nome());
+		}
+		return chaves;
+	}
+
+	private void recriar(List<ChaveEstrangeira> chaves) {
+		long inicio = System.nanoTime();
+		for (ChaveEstrangeira chave : chaves) {
+			jdbc.execute("alter table " + chave.tabela() + " add constraint " + chave.nome() + " foreign key ("
+					+ chave.coluna() + ") references " + chave.tabelaReferenciada() + " (" + chave.colunaReferenciada()
+					+ ")");
+		}
+		if (!chaves.isEmpty()) {
+			log.info("Massa: {} chaves estrangeiras recriadas em {} ms", chaves.size(),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+		}
+	}
+
+	private void inserirEmTransacao(String sql, int linhas, Preenchedor preenchedor) {
+		transacao.executeWithoutResult(status -> inserir(sql, linhas, preenchedor));
+	}
+
+	private void inserir(String sql, int linhas, Preenchedor preenchedor) {
+		jdbc.batchUpdate(sql, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				preenchedor.preencher(ps, i);
+			}
+
+			@Override
+			public int getBatchSize() {
+				return linhas;
+			}
+		});
+	}
+
+	private long proximoId(String tabela) {
+		return jdbc.queryForObject("select coalesce(max(id), 0) + 1 from " + tabela, Long.class);
+	}
+
+	private record ChaveEstrangeira(String nome, String tabela, String coluna, String tabelaReferenciada,
+			String colunaReferenciada) {
+	}
+
+	@FunctionalInterface
+	private interface Preenchedor {
+		void preencher(PreparedStatement ps, int linha) throws SQLException;
+	}
+
+	/** Carrinhos e itens de um lote em vetores paralelos, reaproveitados entre lotes. */
+	private static final class Lote {
+		long[] carrinhosIds;
+		long[] clientesIds;
+		TipoCliente[] tipos;
+		LocalDate[] datas;
+		int[] tamanhos;
+		int carrinhos;
+
+		long[] itensIds;
+		long[] produtosIds;
+		long[] quantidades;
+		int[] carrinhoDoItem;
+		int itens;
+		/** Posição do primeiro item do carrinho sendo gerado. */
+		private int inicioDoCarrinhoAtual;
+
+		Lote(int capacidade) {
+			carrinhosIds = new long[capacidade];
+			clientesIds = new long[capacidade];
+			tipos = new TipoCliente[capacidade];
+			datas = new LocalDate[capacidade];
+			tamanhos = new int[capacidade];
+			itensIds = new long[capacidade];
+			produtosIds = new long[capacidade];
+			quantidades = new long[capacidade];
+			carrinhoDoItem = new int[capacidade];
+		}
+
+		void novoCarrinho(long id, long clienteId, TipoCliente tipo, LocalDate data, int tamanho) {
+			carrinhosIds[carrinhos] = id;
+			clientesIds[carrinhos] = clienteId;
+			tipos[carrinhos] = tipo;
+			datas[carrinhos] = data;
+			tamanhos[carrinhos] = tamanho;
+			carrinhos++;
+			inicioDoCarrinhoAtual = itens;
+			if (itens + tamanho > itensIds.length) {
+				// Carrinho maior que o espaço restante: o lote cresce só desta vez
+				int capacidade = itens + tamanho;
+				itensIds = Arrays.copyOf(itensIds, capacidade);
+				produtosIds = Arrays.copyOf(produtosIds, capacidade);
+				quantidades = Arrays.copyOf(quantidades, capacidade);
+				carrinhoDoItem = Arrays.copyOf(carrinhoDoItem, capacidade);
+			}
+		}
+
+		boolean carrinhoAtualContem(long produtoId) {
+			for (int i = inicioDoCarrinhoAtual; i < itens; i++) {
+				if (produtosIds[i] == produtoId) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void novoItem(long id, long produtoId, long quantidade) {
+			itensIds[itens] = id;
+			produtosIds[itens] = produtoId;
+			quantidades[itens] = quantidade;
+			carrinhoDoItem[itens] = carrinhos - 1;
+			itens++;
+		}
+
+		void limpar() {
+			carrinhos = 0;
+			itens = 0;
+			inicioDoCarrinhoAtual = 0;
+		}
+	}
+}
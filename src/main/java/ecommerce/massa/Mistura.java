@@ -0,0 +1,72 @@
+package ecommerce.massa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.random.RandomGenerator;
+
+/**
+ * Valores sorteados com pesos, escritos como {@code valor:peso,valor:peso}
+ * (peso 1 quando omitido). Ex.: {@code BRONZE:60,PRATA:30,OURO:10}.
+ */
+public record Mistura<T>(List<T> valores, int[] pesosAcumulados) {
+
+	public static <T> Mistura<T> de(String texto, Function<String, T> conversor) {
+		List<T> valores = new ArrayList<>();
+		List<Integer> pesos = new ArrayList<>();
+		for (String parte : texto.split(",")) {
+			String[] valorPeso = parte.trim().split(":");
+			int peso = valorPeso.length > 1 ? Integer.parseInt(valorPeso[1].trim()) : 1;
+			if (peso < 0) {
+				throw new IllegalArgumentException("Peso negativo em " + texto + ".");
+			}
+			valores.add(conversor.apply(valorPeso[0].trim()));
+			pesos.add(peso);
+		}
+		int[] acumulados = new int[pesos.size()];
+		int soma = 0;
+		for (int i = 0; i < acumulados.length; i++) {
+			soma += pesos.get(i);
+			acumulados[i] = soma;
+		}
+		if (soma == 0) {
+			throw new IllegalArgumentException("A soma dos pesos de " + texto + " deve ser positiva.");
+		}
+		return new Mistura<>(List.copyOf(valores), acumulados);
+	}
+
+	public T sortear(RandomGenerator aleatorio) {
+		int sorteio = aleatorio.nextInt(pesosAcumulados[pesosAcumulados.length - 1]);
+		int i = 0;
+		while (pesosAcumulados[i] <= sorteio) {
+			i++;
+		}
+		return valores.get(i);
+	}
+
+	/** Valores com peso maior que zero. */
+	public List<T> possiveis() {
+		List<T> possiveis = new ArrayList<>();
+		int anterior = 0;
+		for (int i = 0; i < valores.size(); i++) {
+			if (pesosAcumulados[i] > anterior) {
+				possiveis.add(valores.get(i));
+			}
+			anterior = pesosAcumulados[i];
+		}
+		return possiveis;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder texto = new StringBuilder();
+		int anterior = 0;
+		int total = pesosAcumulados[pesosAcumulados.length - 1];
+		for (int i = 0; i < valores.size(); i++) {
+			texto.append(i == 0 ? "" : ", ").append(valores.get(i)).append(' ')
+					.append(Math.round(100.0 * (pesosAcumulados[i] - anterior) / total)).append('%');
+			anterior = pesosAcumulados[i];
+		}
+		return texto.toString();
+	}
+}
@@ -0,0 +1,38 @@
+package ecommerce.massa;
+
+import java.math.BigDecimal;
+
+import ecommerce.entity.TipoCliente;
+
+/**
+ * Quantidades e distribuições da massa de dados sintética.
+ *
+ * @param tipos              mistura de tipos de cliente
+ * @param itensPorCarrinho   mistura de quantidades de itens por carrinho
+ * @param zipf               concentração das compras nos produtos mais populares (0 = uniforme)
+ * @param quantidadeMaxima   quantidade máxima de cada item (sorteada de 1 até ela)
+ * @param lote               linhas por lote de inserção (e por transação)
+ * @param adiarChavesEstrangeiras remove as chaves estrangeiras de carrinhos e itens durante a carga e as
+ *                           recria no final; só para bancos sem outros acessos durante a geração
+ */
+public record ParametrosDaMassa(int clientes, int produtos, int carrinhos, Mistura<TipoCliente> tipos,
+		Mistura<Integer> itensPorCarrinho, BigDecimal precoMinimo, BigDecimal precoMaximo, int pesoMinimo,
+		int pesoMaximo, double zipf, int quantidadeMaxima, int lote, long semente, boolean adiarChavesEstrangeiras) {
+
+	public ParametrosDaMassa {
+		if (clientes <= 0 || produtos <= 0 || carrinhos < 0 || lote <= 0 || quantidadeMaxima <= 0) {
+			throw new IllegalArgumentException(
+					"Clientes, produtos, lote e quantidade máxima devem ser positivos e carrinhos não negativo.");
+		}
+		if (itensPorCarrinho.valores().stream().anyMatch(itens -> itens <= 0)) {
+			throw new IllegalArgumentException("Carrinhos devem ter ao menos um item.");
+		}
+		if (precoMinimo.signum() < 0 || precoMinimo.compareTo(precoMaximo) > 0 || precoMaximo.scale() > 2
+				|| precoMinimo.scale() > 2) {
+			throw new IllegalArgumentException("Faixa de preços inválida: " + precoMinimo + " a " + precoMaximo + ".");
+		}
+		if (pesoMinimo < 0 || pesoMinimo > pesoMaximo) {
+			throw new IllegalArgumentException("Faixa de pesos inválida: " + pesoMinimo + " a " + pesoMaximo + ".");
+		}
+	}
+}
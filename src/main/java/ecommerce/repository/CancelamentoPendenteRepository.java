@@ -0,0 +1,30 @@
+package ecommerce.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import ecommerce.entity.CancelamentoPendente;
+import jakarta.transaction.Transactional;
+
+@Repository
+public interface CancelamentoPendenteRepository extends JpaRepository<CancelamentoPendente, Long> {
+
+    // Próximo lote a enviar, na ordem em que ficou pronto
+    @Query("select c from CancelamentoPendente c where c.esgotado = false and c.proximaTentativa <= :agora "
+            + "order by c.proximaTentativa, c.id")
+    List<CancelamentoPendente> findProntos(@Param("agora") Instant agora, Pageable lote);
+
+    @Transactional
+    @Modifying
+    @Query("update CancelamentoPendente c set c.tentativas = c.tentativas + 1, c.proximaTentativa = :proxima, "
+            + "c.ultimoErro = :erro, c.esgotado = :esgotado where c.id = :id")
+    int registrarFalha(@Param("id") Long id, @Param("proxima") Instant proxima, @Param("erro") String erro,
+            @Param("esgotado") boolean esgotado);
+}
@@ -1,15 +1,114 @@
 package ecommerce.repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import ecommerce.dto.LinhaCheckoutDTO;
 import ecommerce.entity.CarrinhoDeCompras;
 import ecommerce.entity.Cliente;
+import ecommerce.entity.StatusCarrinho;
+import jakarta.transaction.Transactional;
 
 @Repository
 public interface CarrinhoDeComprasRepository extends JpaRepository<CarrinhoDeCompras, Long> {
 
+    // Subtotal e peso do carrinho c pelos itens e preços atuais
+    String SUBTOTAL_ATUAL = "(select coalesce(sum(i.quantidade * p.preco), 0) from item_compra i "
+            + "join produto p on p.id = i.produto_id where i.carrinho_id = c.id)";
+    String PESO_ATUAL = "(select coalesce(sum(i.quantidade * p.peso), 0) from item_compra i "
+            + "join produto p on p.id = i.produto_id where i.carrinho_id = c.id)";
+
+    // Regrava os totais (e avança a revisão) só dos carrinhos em que eles divergem dos atuais
+    String REPARAR_TOTAIS = "update carrinho_de_compras c set subtotal = " + SUBTOTAL_ATUAL + ", peso_total = "
+            + PESO_ATUAL + ", revisao = coalesce(c.revisao, 0) + 1, versao = coalesce(c.versao, 0) + 1 where (c.subtotal is null "
+            + "or c.peso_total is null or c.subtotal <> " + SUBTOTAL_ATUAL + " or c.peso_total <> " + PESO_ATUAL + ")";
+
     Optional<CarrinhoDeCompras> findByIdAndCliente(Long id, Cliente cliente);
+
+    // Projeção somente leitura com os itens do carrinho; cliente e produtos vêm do cache
+    @Query("select new ecommerce.dto.LinhaCheckoutDTO(i.id, i.produto.id, i.quantidade) "
+            + "from CarrinhoDeCompras c left join c.itens i "
+            + "where c.id = :carrinhoId and c.cliente.id = :clienteId")
+    List<LinhaCheckoutDTO> findLinhasCheckout(@Param("carrinhoId") Long carrinhoId,
+            @Param("clienteId") Long clienteId);
+
+    // Só a revisão, avançada a cada mudança nos itens: confere uma cotação em cache pela chave primária
+    @Query("select coalesce(c.revisao, 0) from CarrinhoDeCompras c where c.id = :id")
+    Optional<Long> findRevisao(@Param("id") Long id);
+
+    // Carrega carrinhos, clientes, itens e produtos de uma vez (usado no checkout em lote)
+    @Query("select distinct c from CarrinhoDeCompras c join fetch c.cliente left join fetch c.itens i "
+            + "left join fetch i.produto where c.id in :ids")
+    List<CarrinhoDeCompras> findAllComItensByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select min(c.id) from CarrinhoDeCompras c")
+    Long findMenorId();
+
+    @Query("select max(c.id) from CarrinhoDeCompras c")
+    Long findMaiorId();
+
+    @Transactional
+    @Modifying
+    @Query(value = REPARAR_TOTAIS + " and c.id between :de and :ate", nativeQuery = true)
+    int repararTotaisEntre(@Param("de") Long de, @Param("ate") Long ate);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query(value = REPARAR_TOTAIS + " and c.id in (select i.carrinho_id from item_compra i where i.produto_id = :produtoId)",
+            nativeQuery = true)
+    int repararTotaisComProduto(@Param("produtoId") Long produtoId);
+
+    // Reserva para finalização, como alterarStatus de aberto (ou sem status) para em finalização, guardando o horário
+    @Transactional
+    @Modifying
+    @Query("update CarrinhoDeCompras c set c.status = ecommerce.entity.StatusCarrinho.EM_CHECKOUT, "
+            + "c.reservadoEm = :agora, c.versao = coalesce(c.versao, 0) + 1 "
+            + "where c.id = :id and (c.status = ecommerce.entity.StatusCarrinho.ABERTO or c.status is null)")
+    int reservar(@Param("id") Long id, @Param("agora") Instant agora);
+
+    // Reservas anteriores ao limite (ou sem horário) cuja compra foi concluída: só faltou finalizar o carrinho
+    @Transactional
+    @Modifying
+    @Query("update CarrinhoDeCompras c set c.status = ecommerce.entity.StatusCarrinho.FINALIZADO, "
+            + "c.versao = coalesce(c.versao, 0) + 1 "
+            + "where c.status = ecommerce.entity.StatusCarrinho.EM_CHECKOUT "
+            + "and (c.reservadoEm is null or c.reservadoEm < :limite) "
+            + "and exists (select p.id from Compra p where p.carrinhoId = c.id "
+            + "and p.status = ecommerce.entity.StatusCompra.CONCLUIDA)")
+    int finalizarReservasConcluidas(@Param("limite") Instant limite);
+
+    // Reservas anteriores ao limite sem compra concluída nem em aberto: a finalização morreu sem liberar o carrinho
+    @Transactional
+    @Modifying
+    @Query("update CarrinhoDeCompras c set c.status = ecommerce.entity.StatusCarrinho.ABERTO, "
+            + "c.versao = coalesce(c.versao, 0) + 1 "
+            + "where c.status = ecommerce.entity.StatusCarrinho.EM_CHECKOUT "
+            + "and (c.reservadoEm is null or c.reservadoEm < :limite) "
+            + "and not exists (select p.id from Compra p where p.carrinhoId = c.id "
+            + "and p.status in (ecommerce.entity.StatusCompra.CONCLUIDA, ecommerce.entity.StatusCompra.INICIADA, "
+            + "ecommerce.entity.StatusCompra.PAGAMENTO_AUTORIZADO, ecommerce.entity.StatusCompra.PAGAMENTO_INCERTO, "
+            + "ecommerce.entity.StatusCompra.BAIXA_INCERTA))")
+    int liberarReservasExpiradas(@Param("limite") Instant limite);
+
+    // Troca de status condicional: só altera se o carrinho ainda estiver em "atual", avançando a versão
+    // para que gravações da entidade com a versão anterior falhem
+    default int alterarStatus(Long id, StatusCarrinho atual, StatusCarrinho novo) {
+        // Carrinhos gravados antes da coluna de status contam como abertos
+        return alterarStatus(id, atual, novo, atual == StatusCarrinho.ABERTO);
+    }
+
+    @Transactional
+    @Modifying
+    @Query("update CarrinhoDeCompras c set c.status = :novo, c.versao = coalesce(c.versao, 0) + 1 "
+            + "where c.id = :id and (c.status = :atual or (c.status is null and :semStatusConta = true))")
+    int alterarStatus(@Param("id") Long id, @Param("atual") StatusCarrinho atual, @Param("novo") StatusCarrinho novo,
+            @Param("semStatusConta") boolean semStatusConta);
 }
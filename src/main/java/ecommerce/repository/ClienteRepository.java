@@ -1,10 +1,18 @@
 package ecommerce.repository;
 
+import java.util.Optional;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import ecommerce.dto.ClienteResumoDTO;
 import ecommerce.entity.Cliente;
 
 @Repository
 public interface ClienteRepository extends JpaRepository<Cliente, Long> {
-}
\ No newline at end of file
+
+    @Query("select new ecommerce.dto.ClienteResumoDTO(c.id, c.tipo) from Cliente c where c.id = :id")
+    Optional<ClienteResumoDTO> findResumoById(@Param("id") Long id);
+}
@@ -0,0 +1,51 @@
+package ecommerce.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import ecommerce.entity.Compra;
+import ecommerce.entity.StatusCompra;
+
+@Repository
+public interface CompraRepository extends JpaRepository<Compra, Long> {
+
+    // Atualizações condicionais em uma única instrução, sem carregar a entidade
+    @Modifying
+    @Query("update Compra c set c.status = ecommerce.entity.StatusCompra.PAGAMENTO_AUTORIZADO, "
+            + "c.transacaoPagamentoId = :transacaoId, c.atualizadaEm = :agora "
+            + "where c.id = :id and c.status = :atual")
+    int registrarPagamento(@Param("id") Long id, @Param("atual") StatusCompra atual,
+            @Param("transacaoId") Long transacaoId, @Param("agora") Instant agora);
+
+    @Modifying
+    @Query("update Compra c set c.status = :novo, c.motivo = :motivo, c.atualizadaEm = :agora "
+            + "where c.id = :id and c.status = :atual")
+    int alterarStatus(@Param("id") Long id, @Param("atual") StatusCompra atual, @Param("novo") StatusCompra novo,
+            @Param("motivo") String motivo, @Param("agora") Instant agora);
+
+    // Pagamento autorizado que não chegou a ser registrado: a compra pode ter sido dada como incerta nesse meio tempo
+    @Modifying
+    @Query("update Compra c set c.status = ecommerce.entity.StatusCompra.CANCELADA, "
+            + "c.transacaoPagamentoId = :transacaoId, c.motivo = :motivo, c.atualizadaEm = :agora "
+            + "where c.id = :id and c.status in (ecommerce.entity.StatusCompra.INICIADA, "
+            + "ecommerce.entity.StatusCompra.PAGAMENTO_INCERTO)")
+    int cancelarSemRegistro(@Param("id") Long id, @Param("transacaoId") Long transacaoId,
+            @Param("motivo") String motivo, @Param("agora") Instant agora);
+
+    @Modifying
+    @Query("update Compra c set c.status = :novo, c.motivo = :motivo, c.atualizadaEm = :agora "
+            + "where c.status = :atual and c.atualizadaEm < :limite")
+    int alterarStatusParados(@Param("atual") StatusCompra atual, @Param("novo") StatusCompra novo,
+            @Param("motivo") String motivo, @Param("limite") Instant limite, @Param("agora") Instant agora);
+
+    // Compras paradas em um status intermediário desde antes do limite, das mais antigas para as mais novas
+    List<Compra> findByStatusAndAtualizadaEmBeforeOrderByAtualizadaEm(StatusCompra status, Instant limite,
+            Pageable lote);
+}
@@ -1,10 +1,19 @@
 package ecommerce.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import ecommerce.dto.ProdutoResumoDTO;
 import ecommerce.entity.Produto;
 
 @Repository
 public interface ProdutoRepository extends JpaRepository<Produto, Long> {
+
+    @Query("select new ecommerce.dto.ProdutoResumoDTO(p.id, p.preco, p.peso, p.tipo) from Produto p where p.id in :ids")
+    List<ProdutoResumoDTO> findResumosByIdIn(@Param("ids") Collection<? extends Long> ids);
 }
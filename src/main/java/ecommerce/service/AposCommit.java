@@ -0,0 +1,28 @@
+package ecommerce.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Adia uma ação até o commit da transação corrente (ou a executa na hora, se
+ * não houver transação). Usado para invalidar caches só depois que a escrita
+ * está visível, evitando que uma leitura concorrente recoloque o valor antigo.
+ */
+final class AposCommit {
+
+	private AposCommit() {
+	}
+
+	static void executar(Runnable acao) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			acao.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				acao.run();
+			}
+		});
+	}
+}
@@ -1,22 +1,143 @@
 package ecommerce.service;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+
+import ecommerce.dto.CarrinhoCheckoutDTO;
+import ecommerce.dto.ClienteResumoDTO;
+import ecommerce.dto.ItemCheckoutDTO;
+import ecommerce.dto.LinhaCheckoutDTO;
+import ecommerce.dto.ProdutoResumoDTO;
 import ecommerce.entity.CarrinhoDeCompras;
 import ecommerce.entity.Cliente;
+import ecommerce.entity.StatusCarrinho;
 import ecommerce.repository.CarrinhoDeComprasRepository;
+import jakarta.transaction.Transactional;
 
 @Service
 public class CarrinhoDeComprasService {
+
+	static final String CARRINHO_OCUPADO = "Carrinho já está em finalização ou finalizado.";
+
 	private final CarrinhoDeComprasRepository repository;
+	private final ProdutoService produtoService;
+	private final Cache<Long, CotacaoService.Cotacao> cacheDeCotacoes;
 	
 	@Autowired
-	public CarrinhoDeComprasService(CarrinhoDeComprasRepository repository) {
+	public CarrinhoDeComprasService(CarrinhoDeComprasRepository repository, ProdutoService produtoService,
+			Cache<Long, CotacaoService.Cotacao> cacheDeCotacoes) {
 		this.repository = repository;
+		this.produtoService = produtoService;
+		this.cacheDeCotacoes = cacheDeCotacoes;
+	}
+
+	/** Salva o carrinho e, após o commit, descarta a cotação calculada com os itens anteriores. */
+	@Transactional
+	public CarrinhoDeCompras salvar(CarrinhoDeCompras carrinho) {
+		CarrinhoDeCompras salvo = repository.save(carrinho);
+		Long carrinhoId = salvo.getId();
+		AposCommit.executar(() -> cacheDeCotacoes.invalidate(carrinhoId));
+		return salvo;
 	}
 
 	public CarrinhoDeCompras buscarPorCarrinhoIdEClienteId(Long carrinhoId, Cliente cliente) {
 		return repository.findByIdAndCliente(carrinhoId, cliente).orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
 	}
+
+	/** Revisão atual do carrinho, ou vazio se ele não existir. */
+	public Optional<Long> buscarRevisao(Long carrinhoId) {
+		return repository.findRevisao(carrinhoId);
+	}
+
+	/** Itens e catálogo lidos em uma única transação curta, encerrada antes das chamadas remotas. */
+	@Transactional
+	public Optional<CarrinhoCheckoutDTO> buscarParaCheckout(Long carrinhoId, ClienteResumoDTO cliente) {
+		List<LinhaCheckoutDTO> linhas = repository.findLinhasCheckout(carrinhoId, cliente.id());
+		if (linhas.isEmpty()) {
+			return Optional.empty();
+		}
+
+		Set<Long> produtoIds = new HashSet<>();
+		for (LinhaCheckoutDTO linha : linhas) {
+			if (linha.itemId() != null && linha.produtoId() != null) {
+				produtoIds.add(linha.produtoId());
+			}
+		}
+		Map<Long, ProdutoResumoDTO> produtos = produtoService.buscarResumos(produtoIds);
+
+		List<ItemCheckoutDTO> itens = new ArrayList<>(linhas.size());
+		for (LinhaCheckoutDTO linha : linhas) {
+			if (linha.itemId() == null) {
+				continue;
+			}
+			ProdutoResumoDTO produto = produtos.get(linha.produtoId());
+			if (produto == null) {
+				throw new IllegalArgumentException("Produto não encontrado.");
+			}
+			itens.add(new ItemCheckoutDTO(produto.id(), produto.preco(), produto.peso(), linha.quantidade(),
+					produto.tipo()));
+		}
+
+		return Optional.of(new CarrinhoCheckoutDTO(carrinhoId, cliente.id(), cliente.tipo(), itens));
+	}
+
+	/**
+	 * Passa o carrinho de aberto para em finalização com uma atualização
+	 * condicional. Entre finalizações simultâneas só uma consegue; as demais
+	 * falham aqui, antes de qualquer chamada remota. O horário da reserva
+	 * permite à {@link ConciliacaoDeCompras} desfazer as esquecidas.
+	 */
+	public void reservarParaCheckout(Long carrinhoId) {
+		if (repository.reservar(carrinhoId, Instant.now()) != 1) {
+			throw new CarrinhoOcupadoException();
+		}
+	}
+
+	/** Reserva os carrinhos do lote em uma transação e devolve os que puderam ser reservados. */
+	@Transactional
+	public Set<Long> reservarParaCheckout(Collection<Long> carrinhoIds) {
+		Set<Long> reservados = new HashSet<>();
+		Instant agora = Instant.now();
+		for (Long carrinhoId : carrinhoIds) {
+			if (repository.reservar(carrinhoId, agora) == 1) {
+				reservados.add(carrinhoId);
+			}
+		}
+		return reservados;
+	}
+
+	public void concluirCheckout(Long carrinhoId) {
+		repository.alterarStatus(carrinhoId, StatusCarrinho.EM_CHECKOUT, StatusCarrinho.FINALIZADO);
+	}
+
+	/** Devolve o carrinho a aberto depois de uma finalização sem sucesso, para nova tentativa. */
+	public void liberarCheckout(Long carrinhoId) {
+		repository.alterarStatus(carrinhoId, StatusCarrinho.EM_CHECKOUT, StatusCarrinho.ABERTO);
+	}
+
+	/** Conclui os carrinhos finalizados com sucesso e libera os demais, em uma transação. */
+	@Transactional
+	public void encerrarCheckout(Collection<Long> concluidos, Collection<Long> liberados) {
+		for (Long carrinhoId : concluidos) {
+			concluirCheckout(carrinhoId);
+		}
+		for (Long carrinhoId : liberados) {
+			liberarCheckout(carrinhoId);
+		}
+	}
+
+	public List<CarrinhoDeCompras> buscarPorIds(Collection<Long> carrinhoIds) {
+		return repository.findAllComItensByIdIn(carrinhoIds);
+	}
 }
@@ -0,0 +1,15 @@
+package ecommerce.service;
+
+/**
+ * Carrinho já está em finalização por outra requisição ou foi finalizado.
+ * Enquanto outra finalização está em andamento a condição é passageira: se
+ * ela falhar o carrinho volta a aberto. Mapeada para 409 pelo controller.
+ */
+public class CarrinhoOcupadoException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CarrinhoOcupadoException() {
+		super(CarrinhoDeComprasService.CARRINHO_OCUPADO);
+	}
+}
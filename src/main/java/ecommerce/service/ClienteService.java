@@ -1,23 +1,54 @@
 package ecommerce.service;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+
+import ecommerce.dto.ClienteResumoDTO;
 import ecommerce.entity.Cliente;
 import ecommerce.repository.ClienteRepository;
+import jakarta.transaction.Transactional;
 
 @Service
 public class ClienteService {
 	
 	private final ClienteRepository repository;
+	private final Cache<Long, ClienteResumoDTO> cache;
 	
 	@Autowired
-	public ClienteService(ClienteRepository repository) {
+	public ClienteService(ClienteRepository repository, Cache<Long, ClienteResumoDTO> cacheDeClientes) {
 		this.repository = repository;
+		this.cache = cacheDeClientes;
 	}
 
 	public Cliente buscarPorId(Long clienteId) {
 		return repository.findById(clienteId).orElseThrow(() -> new IllegalArgumentException("Cliente não encontrado"));
 	}
 
+	/** Id e tipo do cliente, usados no checkout, lidos do cache quando possível. */
+	public ClienteResumoDTO buscarResumoPorId(Long clienteId) {
+		ClienteResumoDTO cliente = cache.get(clienteId, id -> repository.findResumoById(id).orElse(null));
+		if (cliente == null) {
+			throw new IllegalArgumentException("Cliente não encontrado");
+		}
+		return cliente;
+	}
+
+	/** Salva o cliente e, após o commit, grava o novo resumo no cache. */
+	@Transactional
+	public Cliente atualizar(Cliente cliente) {
+		Cliente salvo = repository.save(cliente);
+		ClienteResumoDTO resumo = ClienteResumoDTO.de(salvo);
+		AposCommit.executar(() -> cache.put(resumo.id(), resumo));
+		return salvo;
+	}
+
+	public List<Cliente> buscarPorIds(Collection<Long> clienteIds) {
+		return repository.findAllById(clienteIds);
+	}
+
 }
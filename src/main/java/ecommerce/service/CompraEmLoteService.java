@@ -0,0 +1,475 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.CompraLoteItemDTO;
+import ecommerce.dto.CompraLoteResultadoDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.external.DependenciaIndisponivelException;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+
+/**
+ * Finaliza vários carrinhos em uma única chamada. Carrinhos e clientes são
+ * carregados em consultas únicas e as chamadas ao estoque são agrupadas para
+ * todo o lote; cada carrinho recebe seu próprio {@link CompraDTO}, de modo que
+ * a falha de um não interrompe os demais.
+ * <p>
+ * Cada carrinho percorre a mesma saga do {@link CompraService}: a compra é
+ * registrada logo depois da reserva, para que a conciliação nunca reabra um
+ * carrinho que ainda aguarda sua vez no lote, e os carrinhos cujo pagamento
+ * ficou incerto continuam reservados em vez de voltarem a aberto.
+ */
+@Service
+public class CompraEmLoteService {
+
+	private static final Logger log = LoggerFactory.getLogger(CompraEmLoteService.class);
+
+	public static final int TAMANHO_MAXIMO_LOTE = 500;
+
+	private static final String ERRO_PROCESSAMENTO = "Erro ao processar compra.";
+
+	private final CompraService compraService;
+	private final CarrinhoDeComprasService carrinhoService;
+	private final ClienteService clienteService;
+
+	private final IEstoqueExternal estoqueExternal;
+	private final IPagamentoExternal pagamentoExternal;
+	private final RegistroDeCompraService registroDeCompra;
+
+	@Autowired
+	public CompraEmLoteService(CompraService compraService, CarrinhoDeComprasService carrinhoService,
+			ClienteService clienteService, IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal,
+			RegistroDeCompraService registroDeCompra) {
+		this.compraService = compraService;
+		this.carrinhoService = carrinhoService;
+		this.clienteService = clienteService;
+
+		this.estoqueExternal = estoqueExternal;
+		this.pagamentoExternal = pagamentoExternal;
+		this.registroDeCompra = registroDeCompra;
+	}
+
+	// Sem transação: carrinhos e clientes chegam completos em consultas próprias
+	// e nenhuma conexão fica presa durante as chamadas ao estoque e ao pagamento
+	public List<CompraLoteResultadoDTO> finalizarCompras(List<CompraLoteItemDTO> pedidos) {
+		if (pedidos == null || pedidos.isEmpty() || pedidos.size() > TAMANHO_MAXIMO_LOTE) {
+			throw new IllegalArgumentException("O lote deve ter entre 1 e " + TAMANHO_MAXIMO_LOTE + " carrinhos.");
+		}
+
+		Set<Long> clienteIds = new HashSet<>();
+		Set<Long> carrinhoIds = new HashSet<>();
+		for (CompraLoteItemDTO pedido : pedidos) {
+			if (pedido.clienteId() != null) {
+				clienteIds.add(pedido.clienteId());
+			}
+			if (pedido.carrinhoId() != null) {
+				carrinhoIds.add(pedido.carrinhoId());
+			}
+		}
+
+		Map<Long, Cliente> clientes = new HashMap<>();
+		for (Cliente cliente : clienteService.buscarPorIds(clienteIds)) {
+			clientes.put(cliente.getId(), cliente);
+		}
+		Map<Long, CarrinhoDeCompras> carrinhos = new HashMap<>();
+		for (CarrinhoDeCompras carrinho : carrinhoService.buscarPorIds(carrinhoIds)) {
+			carrinhos.put(carrinho.getId(), carrinho);
+		}
+
+		CompraDTO[] resultados = new CompraDTO[pedidos.size()];
+		List<Compra> compras = new ArrayList<>();
+		Set<Long> carrinhosNoLote = new HashSet<>();
+
+		for (int i = 0; i < pedidos.size(); i++) {
+			CompraLoteItemDTO pedido = pedidos.get(i);
+			Cliente cliente = clientes.get(pedido.clienteId());
+			CarrinhoDeCompras carrinho = carrinhos.get(pedido.carrinhoId());
+
+			if (cliente == null) {
+				resultados[i] = falha("Cliente não encontrado");
+			} else if (carrinho == null || !cliente.getId().equals(carrinho.getCliente().getId())) {
+				resultados[i] = falha("Carrinho não encontrado.");
+			} else if (!carrinhosNoLote.add(carrinho.getId())) {
+				resultados[i] = falha("Carrinho repetido no lote.");
+			} else {
+				compras.add(new Compra(i, cliente, carrinho));
+			}
+		}
+
+		List<Compra> reservadas = reservar(compras, resultados);
+		try {
+			List<Compra> iniciadas = iniciar(reservadas, resultados);
+			List<Compra> disponiveis = verificarDisponibilidade(iniciadas, resultados);
+			List<Compra> pagas = autorizarPagamentos(disponiveis, resultados);
+			darBaixa(pagas, resultados);
+		} finally {
+			encerrar(reservadas, resultados);
+		}
+
+		List<CompraLoteResultadoDTO> resposta = new ArrayList<>(pedidos.size());
+		for (int i = 0; i < pedidos.size(); i++) {
+			CompraLoteItemDTO pedido = pedidos.get(i);
+			resposta.add(new CompraLoteResultadoDTO(pedido.carrinhoId(), pedido.clienteId(), resultados[i]));
+		}
+		return resposta;
+	}
+
+	/**
+	 * Passa os carrinhos do lote para em finalização. Os que já estão sendo
+	 * finalizados por outra requisição (ou já foram) ficam de fora do lote.
+	 */
+	private List<Compra> reservar(List<Compra> compras, CompraDTO[] resultados) {
+		if (compras.isEmpty()) {
+			return compras;
+		}
+		List<Long> carrinhoIds = new ArrayList<>(compras.size());
+		for (Compra compra : compras) {
+			carrinhoIds.add(compra.carrinho.getId());
+		}
+		Set<Long> reservados = carrinhoService.reservarParaCheckout(carrinhoIds);
+
+		List<Compra> reservadas = new ArrayList<>(reservados.size());
+		for (Compra compra : compras) {
+			if (reservados.contains(compra.carrinho.getId())) {
+				reservadas.add(compra);
+			} else {
+				resultados[compra.posicao] = falha(CarrinhoDeComprasService.CARRINHO_OCUPADO);
+			}
+		}
+		return reservadas;
+	}
+
+	/**
+	 * Conclui os carrinhos comprados e devolve os demais a aberto, exceto os de
+	 * compra incerta, que continuam reservados até a conciliação.
+	 */
+	private void encerrar(List<Compra> reservadas, CompraDTO[] resultados) {
+		if (reservadas.isEmpty()) {
+			return;
+		}
+		List<Long> concluidos = new ArrayList<>();
+		List<Long> liberados = new ArrayList<>();
+		for (Compra compra : reservadas) {
+			CompraDTO resultado = resultados[compra.posicao];
+			if (compra.incerta) {
+				continue;
+			}
+			if (resultado != null && resultado.sucesso()) {
+				concluidos.add(compra.carrinho.getId());
+			} else {
+				liberados.add(compra.carrinho.getId());
+			}
+		}
+		carrinhoService.encerrarCheckout(concluidos, liberados);
+	}
+
+	/** Registra a compra de cada carrinho reservado antes de qualquer chamada remota. */
+	private List<Compra> iniciar(List<Compra> compras, CompraDTO[] resultados) {
+		List<Compra> iniciadas = new ArrayList<>(compras.size());
+		for (Compra compra : compras) {
+			try {
+				compra.custoTotal = compraService.calcularCustoTotal(compra.carrinho);
+				compra.compraId = registroDeCompra.iniciar(compra.carrinho.getId(), compra.cliente.getId(),
+						compra.custoTotal);
+				iniciadas.add(compra);
+			} catch (RuntimeException e) {
+				resultados[compra.posicao] = falha(ERRO_PROCESSAMENTO);
+			}
+		}
+		return iniciadas;
+	}
+
+	/**
+	 * Consulta o estoque uma única vez com a demanda somada de todo o lote. Só
+	 * os carrinhos que contêm algum produto apontado como indisponível são
+	 * verificados individualmente, já que a soma pode exceder o estoque mesmo
+	 * quando cada carrinho isolado cabe nele.
+	 */
+	private List<Compra> verificarDisponibilidade(List<Compra> compras, CompraDTO[] resultados) {
+		if (compras.isEmpty()) {
+			return compras;
+		}
+
+		DisponibilidadeDTO agregada;
+		try {
+			agregada = estoqueExternal.verificarDisponibilidade(somar(compras));
+		} catch (RuntimeException e) {
+			for (Compra compra : compras) {
+				recusar(compra, ERRO_PROCESSAMENTO, resultados);
+			}
+			return Collections.emptyList();
+		}
+
+		boolean todasSuspeitas = !agregada.disponivel()
+				&& (agregada.idsProdutosIndisponiveis() == null || agregada.idsProdutosIndisponiveis().isEmpty());
+		Set<Long> indisponiveis = agregada.disponivel() || todasSuspeitas ? Collections.emptySet()
+				: new HashSet<>(agregada.idsProdutosIndisponiveis());
+
+		List<Compra> disponiveis = new ArrayList<>(compras.size());
+		for (Compra compra : compras) {
+			if (!todasSuspeitas && !contemAlgum(compra.itens, indisponiveis)) {
+				disponiveis.add(compra);
+				continue;
+			}
+			try {
+				if (estoqueExternal.verificarDisponibilidade(compra.itens).disponivel()) {
+					disponiveis.add(compra);
+				} else {
+					recusar(compra, "Itens fora de estoque.", resultados);
+				}
+			} catch (RuntimeException e) {
+				recusar(compra, ERRO_PROCESSAMENTO, resultados);
+			}
+		}
+		return disponiveis;
+	}
+
+	/**
+	 * Mesmos desfechos do checkout individual: pagamento recusado encerra a
+	 * compra, pagamento sem resposta a deixa incerta com o carrinho reservado e
+	 * pagamento autorizado é registrado antes da baixa.
+	 */
+	private List<Compra> autorizarPagamentos(List<Compra> compras, CompraDTO[] resultados) {
+		List<Compra> pagas = new ArrayList<>(compras.size());
+		for (Compra compra : compras) {
+			PagamentoDTO pagamento;
+			try {
+				pagamento = pagamentoExternal.autorizarPagamento(compra.cliente.getId(), compra.custoTotal.doubleValue());
+			} catch (DependenciaIndisponivelException e) {
+				if (e.podeTerSidoExecutada()) {
+					pagamentoIncerto(compra, e, resultados);
+				} else {
+					// Recusada antes de chegar ao pagamento: nada foi autorizado
+					recusar(compra, e.getMessage(), resultados);
+				}
+				continue;
+			} catch (RuntimeException e) {
+				pagamentoIncerto(compra, e, resultados);
+				continue;
+			}
+
+			if (!pagamento.autorizado()) {
+				recusar(compra, "Pagamento não autorizado.", resultados);
+				continue;
+			}
+			compra.transacaoPagamentoId = pagamento.transacaoId();
+			try {
+				registroDeCompra.registrarPagamento(compra.compraId, compra.transacaoPagamentoId);
+				pagas.add(compra);
+			} catch (RuntimeException e) {
+				compensarPagamentoSemRegistro(compra, e, resultados);
+			}
+		}
+		return pagas;
+	}
+
+	/**
+	 * Dá baixa de todo o lote em uma única chamada. Se o estoque recusar a
+	 * baixa agrupada, cada carrinho é baixado individualmente e os pagamentos
+	 * dos que falharem são cancelados.
+	 */
+	private void darBaixa(List<Compra> compras, CompraDTO[] resultados) {
+		if (compras.isEmpty()) {
+			return;
+		}
+
+		EstoqueBaixaDTO baixaAgrupada;
+		try {
+			baixaAgrupada = estoqueExternal.darBaixa(somar(compras));
+		} catch (RuntimeException e) {
+			// Não repete a baixa: se ela pode ter acontecido, o lote inteiro fica incerto
+			for (Compra compra : compras) {
+				falhaNaBaixa(compra, e, resultados);
+			}
+			return;
+		}
+
+		if (baixaAgrupada.sucesso()) {
+			for (Compra compra : compras) {
+				concluir(compra, resultados);
+			}
+			return;
+		}
+
+		for (Compra compra : compras) {
+			try {
+				if (estoqueExternal.darBaixa(compra.itens).sucesso()) {
+					concluir(compra, resultados);
+				} else {
+					cancelarPagamento(compra, "Erro ao dar baixa no estoque.", resultados);
+				}
+			} catch (RuntimeException e) {
+				falhaNaBaixa(compra, e, resultados);
+			}
+		}
+	}
+
+	/**
+	 * Baixa sem resposta: como no checkout individual, só compensa se o
+	 * estoque certamente não foi alcançado; senão a compra fica incerta com o
+	 * carrinho reservado.
+	 */
+	private void falhaNaBaixa(Compra compra, RuntimeException falha, CompraDTO[] resultados) {
+		if (!(falha instanceof DependenciaIndisponivelException indisponivel && indisponivel.podeTerSidoExecutada())) {
+			cancelarPagamento(compra, ERRO_PROCESSAMENTO, resultados);
+			return;
+		}
+		compra.incerta = true;
+		resultados[compra.posicao] = falha(CompraService.BAIXA_INCERTA);
+		try {
+			registroDeCompra.marcarBaixaIncerta(compra.compraId, falha.getMessage());
+		} catch (RuntimeException e) {
+			log.error("Compra {} do lote com baixa incerta sem registro", compra.compraId, e);
+		}
+	}
+
+	private void concluir(Compra compra, CompraDTO[] resultados) {
+		try {
+			registroDeCompra.concluir(compra.compraId);
+			resultados[compra.posicao] = sucesso(compra);
+		} catch (RuntimeException e) {
+			// Pago e baixado, mas sem registro: a conciliação decide com o carrinho ainda reservado
+			log.error("Compra {} do lote paga e baixada sem conclusão registrada", compra.compraId, e);
+			compra.incerta = true;
+			resultados[compra.posicao] = falha(ERRO_PROCESSAMENTO);
+		}
+	}
+
+	/** Encerra a compra antes do pagamento autorizado; a conciliação marca depois se esta gravação falhar. */
+	private void recusar(Compra compra, String motivo, CompraDTO[] resultados) {
+		resultados[compra.posicao] = falha(motivo);
+		try {
+			registroDeCompra.recusar(compra.compraId, motivo);
+		} catch (RuntimeException e) {
+			log.warn("Compra {} do lote recusada sem registro", compra.compraId, e);
+		}
+	}
+
+	private void pagamentoIncerto(Compra compra, RuntimeException causa, CompraDTO[] resultados) {
+		compra.incerta = true;
+		resultados[compra.posicao] = falha(CompraService.PAGAMENTO_INCERTO);
+		try {
+			registroDeCompra.marcarPagamentoIncerto(compra.compraId, causa.getMessage());
+		} catch (RuntimeException e) {
+			log.warn("Compra {} do lote com pagamento incerto sem registro", compra.compraId, e);
+		}
+	}
+
+	/**
+	 * Pagamento autorizado que não foi registrado: agenda o estorno pela outbox.
+	 * Se nem isso puder ser gravado, o carrinho continua reservado.
+	 */
+	private void compensarPagamentoSemRegistro(Compra compra, RuntimeException falha, CompraDTO[] resultados) {
+		try {
+			registroDeCompra.cancelarSemRegistro(compra.compraId, compra.cliente.getId(), compra.transacaoPagamentoId,
+					"Falha ao registrar o pagamento.");
+			resultados[compra.posicao] = falha(ERRO_PROCESSAMENTO);
+		} catch (RuntimeException e) {
+			falha.addSuppressed(e);
+			log.error("Pagamento {} da compra {} autorizado sem registro nem cancelamento agendado",
+					compra.transacaoPagamentoId, compra.compraId, falha);
+			compra.incerta = true;
+			resultados[compra.posicao] = falha(CompraService.PAGAMENTO_INCERTO);
+		}
+	}
+
+	/**
+	 * Cancela a compra e agenda o estorno na mesma transação; o
+	 * DespachanteDeCancelamentos envia depois, com novas tentativas se falhar.
+	 * Se a gravação falhar, o carrinho continua reservado e a conciliação
+	 * cancela a compra que ficou com o pagamento autorizado.
+	 */
+	private void cancelarPagamento(Compra compra, String motivo, CompraDTO[] resultados) {
+		resultados[compra.posicao] = falha(motivo);
+		try {
+			registroDeCompra.cancelar(compra.compraId, compra.cliente.getId(), compra.transacaoPagamentoId, motivo);
+		} catch (RuntimeException e) {
+			log.error("Pagamento {} da compra {} sem cancelamento agendado", compra.transacaoPagamentoId,
+					compra.compraId, e);
+			compra.incerta = true;
+		}
+	}
+
+	/** Soma as quantidades por produto, sem repetir ids, preservando a ordem. */
+	private static ItensEstoqueDTO somar(Collection<Compra> compras) {
+		int tamanho = 0;
+		for (Compra compra : compras) {
+			tamanho += compra.itens.tamanho();
+		}
+		long[] produtosIds = new long[tamanho];
+		long[] quantidades = new long[tamanho];
+		int posicao = 0;
+		for (Compra compra : compras) {
+			int itens = compra.itens.tamanho();
+			System.arraycopy(compra.itens.produtosIds(), 0, produtosIds, posicao, itens);
+			System.arraycopy(compra.itens.quantidades(), 0, quantidades, posicao, itens);
+			posicao += itens;
+		}
+		return ItensEstoqueDTO.agrupar(produtosIds, quantidades, tamanho);
+	}
+
+	private static boolean contemAlgum(ItensEstoqueDTO itens, Set<Long> produtosIds) {
+		for (long produtoId : itens.produtosIds()) {
+			if (produtosIds.contains(produtoId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static CompraDTO sucesso(Compra compra) {
+		return new CompraDTO(true, compra.transacaoPagamentoId, "Compra finalizada com sucesso.");
+	}
+
+	private static CompraDTO falha(String mensagem) {
+		return new CompraDTO(false, null, mensagem);
+	}
+
+	private static final class Compra {
+		private final int posicao;
+		private final Cliente cliente;
+		private final CarrinhoDeCompras carrinho;
+		private final ItensEstoqueDTO itens;
+		private BigDecimal custoTotal;
+		private Long compraId;
+		private Long transacaoPagamentoId;
+		// Carrinho mantido reservado: pagamento ou baixa sem desfecho conhecido
+		private boolean incerta;
+
+		Compra(int posicao, Cliente cliente, CarrinhoDeCompras carrinho) {
+			this.posicao = posicao;
+			this.cliente = cliente;
+			this.carrinho = carrinho;
+			int tamanho = carrinho.getItens().size();
+			long[] produtosIds = new long[tamanho];
+			long[] quantidades = new long[tamanho];
+			for (int i = 0; i < tamanho; i++) {
+				ItemCompra item = carrinho.getItens().get(i);
+				produtosIds[i] = item.getProduto().getId();
+				quantidades[i] = item.getQuantidade();
+			}
+			this.itens = ItensEstoqueDTO.agrupar(produtosIds, quantidades, tamanho);
+		}
+	}
+}
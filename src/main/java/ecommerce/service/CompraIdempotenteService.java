@@ -0,0 +1,97 @@
+package ecommerce.service;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.external.DependenciaIndisponivelException;
+
+/**
+ * Garante que repetições de {@code POST /finalizar} com a mesma chave de
+ * idempotência executem o checkout uma única vez.
+ * <p>
+ * A primeira requisição com uma chave registra sua execução no cache; as
+ * repetições concorrentes esperam por ela e as posteriores recebem o mesmo
+ * resultado, inclusive as falhas de negócio ({@link IllegalArgumentException}
+ * e {@link IllegalStateException}, incluindo o pagamento incerto, cujo
+ * carrinho continua reservado). Falhas inesperadas, serviços externos
+ * indisponíveis e carrinho ocupado por outra finalização liberam a chave para
+ * que uma nova tentativa execute o checkout outra vez.
+ */
+@Service
+public class CompraIdempotenteService {
+
+	public static final int TAMANHO_MAXIMO_CHAVE = 255;
+
+	private final CompraService compraService;
+	private final Cache<String, Execucao> execucoes;
+
+	@Autowired
+	public CompraIdempotenteService(CompraService compraService, Cache<String, Execucao> cacheDeCompras) {
+		this.compraService = compraService;
+		this.execucoes = cacheDeCompras;
+	}
+
+	public CompraDTO finalizarCompra(String chave, Long carrinhoId, Long clienteId) {
+		if (chave == null || chave.isBlank() || chave.length() > TAMANHO_MAXIMO_CHAVE) {
+			throw new IllegalArgumentException(
+					"Chave de idempotência deve ter entre 1 e " + TAMANHO_MAXIMO_CHAVE + " caracteres.");
+		}
+
+		Execucao nova = new Execucao(carrinhoId, clienteId, new CompletableFuture<>());
+		Execucao existente = execucoes.asMap().putIfAbsent(chave, nova);
+		if (existente != null) {
+			if (!existente.mesmaCompra(carrinhoId, clienteId)) {
+				throw new IllegalArgumentException("Chave de idempotência já usada em outra compra.");
+			}
+			return aguardar(existente.resultado());
+		}
+
+		try {
+			CompraDTO compra = compraService.finalizarCompra(carrinhoId, clienteId);
+			nova.resultado().complete(compra);
+			return compra;
+		} catch (DependenciaIndisponivelException | CarrinhoOcupadoException e) {
+			// Falha transitória: a próxima tentativa deve executar de novo
+			execucoes.asMap().remove(chave, nova);
+			nova.resultado().completeExceptionally(e);
+			throw e;
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			nova.resultado().completeExceptionally(e);
+			throw e;
+		} catch (RuntimeException | Error e) {
+			execucoes.asMap().remove(chave, nova);
+			nova.resultado().completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private static CompraDTO aguardar(CompletableFuture<CompraDTO> resultado) {
+		try {
+			return resultado.join();
+		} catch (CompletionException e) {
+			Throwable causa = e.getCause();
+			if (causa instanceof RuntimeException) {
+				throw (RuntimeException) causa;
+			}
+			if (causa instanceof Error) {
+				throw (Error) causa;
+			}
+			throw e;
+		}
+	}
+
+	/** Compra associada a uma chave e seu resultado, concluído quando o checkout termina. */
+	public record Execucao(Long carrinhoId, Long clienteId, CompletableFuture<CompraDTO> resultado) {
+
+		boolean mesmaCompra(Long carrinhoId, Long clienteId) {
+			return Objects.equals(this.carrinhoId, carrinhoId) && Objects.equals(this.clienteId, clienteId);
+		}
+	}
+}
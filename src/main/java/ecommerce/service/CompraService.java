@@ -1,143 +1,280 @@
 package ecommerce.service;
 
 import java.math.BigDecimal;
-import java.util.ArrayList; 
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 //import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import ecommerce.dto.CarrinhoCheckoutDTO;
+import ecommerce.dto.ClienteResumoDTO;
 import ecommerce.dto.CompraDTO;
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItemCheckoutDTO;
+import ecommerce.dto.ItensEstoqueDTO;
 import ecommerce.dto.PagamentoDTO;
 import ecommerce.entity.CarrinhoDeCompras;
-import ecommerce.entity.Cliente;
-import ecommerce.entity.ItemCompra;
+import ecommerce.entity.TipoCliente;
+import ecommerce.external.DependenciaIndisponivelException;
 import ecommerce.external.IEstoqueExternal;
 import ecommerce.external.IPagamentoExternal;
-import jakarta.transaction.Transactional;
+import ecommerce.service.MetricasCompra.Etapa;
+import ecommerce.service.MetricasCompra.Falha;
+import ecommerce.service.custo.CalculadoraDeCusto;
 
 @Service
 public class CompraService {
 
+	private static final Logger log = LoggerFactory.getLogger(CompraService.class);
+
+	static final String PAGAMENTO_INCERTO = "Não foi possível confirmar o pagamento; a compra ficou em verificação.";
+	static final String BAIXA_INCERTA = "Não foi possível confirmar a baixa no estoque; a compra ficou em verificação.";
+
 	private final CarrinhoDeComprasService carrinhoService;
 	private final ClienteService clienteService;
 
 	private final IEstoqueExternal estoqueExternal;
 	private final IPagamentoExternal pagamentoExternal;
 
+	private final CalculadoraDeCusto calculadoraDeCusto;
+	private final Executor executorCompra;
+	private final MetricasCompra metricas;
+	private final RegistroDeCompraService registroDeCompra;
+
 	@Autowired
 	public CompraService(CarrinhoDeComprasService carrinhoService, ClienteService clienteService,
-			IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal) {
+			IEstoqueExternal estoqueExternal, IPagamentoExternal pagamentoExternal,
+			CalculadoraDeCusto calculadoraDeCusto, @Qualifier("executorCompra") Executor executorCompra,
+			MetricasCompra metricas, RegistroDeCompraService registroDeCompra) {
 		this.carrinhoService = carrinhoService;
 		this.clienteService = clienteService;
 
 		this.estoqueExternal = estoqueExternal;
 		this.pagamentoExternal = pagamentoExternal;
+
+		this.calculadoraDeCusto = calculadoraDeCusto;
+		this.executorCompra = executorCompra;
+		this.metricas = metricas;
+		this.registroDeCompra = registroDeCompra;
 	}
 
-	@Transactional
+	/**
+	 * Sem transação englobando o checkout: as leituras terminam antes da primeira
+	 * chamada remota e cada passo da saga é gravado em uma transação curta pelo
+	 * {@link RegistroDeCompraService}, de modo que nenhuma conexão do pool fica
+	 * presa esperando o estoque ou o pagamento.
+	 */
 	public CompraDTO finalizarCompra(Long carrinhoId, Long clienteId) {
-		Cliente cliente = clienteService.buscarPorId(clienteId);
-		CarrinhoDeCompras carrinho = carrinhoService.buscarPorCarrinhoIdEClienteId(carrinhoId, cliente);
-
-		// List<Long> produtosIds = carrinho.getItens().stream().map(i -> i.getProduto().getId())
-		// 		.collect(Collectors.toList());
-		// List<Long> produtosQtds = carrinho.getItens().stream().map(i -> i.getQuantidade()).collect(Collectors.toList());
-
-		List<Long> produtosIds = new ArrayList<>(); 
-
-		List<Long> produtosQtds = new ArrayList<>();
-
-		for (ItemCompra item : carrinho.getItens()) { 
+		long inicioCompra = metricas.inicio();
+		ClienteResumoDTO cliente = clienteService.buscarResumoPorId(clienteId);
+		TipoCliente tipo = cliente.tipo();
+		metricas.registrar(Etapa.CLIENTE, tipo, inicioCompra);
+
+		try {
+			return finalizarCompra(carrinhoId, cliente);
+		} finally {
+			metricas.registrar(Etapa.TOTAL, tipo, inicioCompra);
+		}
+	}
 
-		    produtosIds.add(item.getProduto().getId());
+	private CompraDTO finalizarCompra(Long carrinhoId, ClienteResumoDTO cliente) {
+		TipoCliente tipo = cliente.tipo();
+		CarrinhoCheckoutDTO carrinho = metricas
+				.medir(Etapa.CARRINHO, tipo, () -> carrinhoService.buscarParaCheckout(carrinhoId, cliente))
+				.orElseThrow(() -> new IllegalArgumentException("Carrinho não encontrado."));
+
+		// Finalizações simultâneas do mesmo carrinho: a perdedora falha aqui, antes do estoque e do pagamento
+		try {
+			carrinhoService.reservarParaCheckout(carrinhoId);
+		} catch (CarrinhoOcupadoException e) {
+			metricas.contar(Falha.CARRINHO_OCUPADO, tipo);
+			throw e;
+		}
 
-		    produtosQtds.add(item.getQuantidade());
+		CompraDTO compra;
+		try {
+			compra = processar(carrinhoId, carrinho, tipo);
+		} catch (PagamentoIncertoException e) {
+			// Pagamento talvez autorizado: o carrinho continua reservado para não ser pago de novo
+			throw e;
+		} catch (RuntimeException e) {
+			carrinhoService.liberarCheckout(carrinhoId);
+			throw e;
+		}
+		carrinhoService.concluirCheckout(carrinhoId);
+		return compra;
+	}
 
+	private CompraDTO processar(Long carrinhoId, CarrinhoCheckoutDTO carrinho, TipoCliente tipo) {
+		// Vetores primitivos, com linhas repetidas do mesmo produto somadas em uma só
+		int quantidadeItens = carrinho.itens().size();
+		long[] produtosIds = new long[quantidadeItens];
+		long[] produtosQtds = new long[quantidadeItens];
+		for (int i = 0; i < quantidadeItens; i++) {
+			ItemCheckoutDTO item = carrinho.itens().get(i);
+			produtosIds[i] = item.produtoId();
+			produtosQtds[i] = item.quantidade();
+		}
+		ItensEstoqueDTO itensEstoque = ItensEstoqueDTO.agrupar(produtosIds, produtosQtds, quantidadeItens);
+
+		// A consulta remota ao estoque roda em paralelo com o cálculo do custo, que
+		// fica na thread da requisição
+		CompletableFuture<DisponibilidadeDTO> disponibilidadeFutura = CompletableFuture.supplyAsync(
+				() -> metricas.medir(Etapa.DISPONIBILIDADE, tipo,
+						() -> estoqueExternal.verificarDisponibilidade(itensEstoque)),
+				executorCompra);
+
+		BigDecimal custoTotal = null;
+		RuntimeException falhaNoCalculo = null;
+		try {
+			custoTotal = metricas.medir(Etapa.CUSTO, tipo, () -> calculadoraDeCusto.calcular(carrinho).total());
+		} catch (RuntimeException e) {
+			falhaNoCalculo = e;
 		}
 
-		DisponibilidadeDTO disponibilidade = estoqueExternal.verificarDisponibilidade(produtosIds, produtosQtds);
+		DisponibilidadeDTO disponibilidade = aguardar(disponibilidadeFutura);
 
+		// Mesma ordem de falhas da execução sequencial: estoque antes do custo
 		if (!disponibilidade.disponivel()) {
+			metricas.contar(Falha.FORA_DE_ESTOQUE, tipo);
 			throw new IllegalStateException("Itens fora de estoque.");
 		}
+		if (falhaNoCalculo != null) {
+			throw falhaNoCalculo;
+		}
 
-		BigDecimal custoTotal = calcularCustoTotal(carrinho);
-
-		PagamentoDTO pagamento = pagamentoExternal.autorizarPagamento(cliente.getId(), custoTotal.doubleValue());
+		Long compraId = registroDeCompra.iniciar(carrinhoId, carrinho.clienteId(), custoTotal);
+
+		double valor = custoTotal.doubleValue();
+		PagamentoDTO pagamento;
+		try {
+			pagamento = metricas.medir(Etapa.PAGAMENTO, tipo,
+					() -> pagamentoExternal.autorizarPagamento(carrinho.clienteId(), valor));
+		} catch (DependenciaIndisponivelException e) {
+			if (e.podeTerSidoExecutada()) {
+				throw pagamentoIncerto(compraId, tipo, e);
+			}
+			// Recusada antes de chegar ao pagamento: nada foi autorizado
+			registroDeCompra.recusar(compraId, e.getMessage());
+			throw e;
+		} catch (RuntimeException e) {
+			throw pagamentoIncerto(compraId, tipo, e);
+		}
 
 		if (!pagamento.autorizado()) {
+			metricas.contar(Falha.PAGAMENTO_NEGADO, tipo);
+			registroDeCompra.recusar(compraId, "Pagamento não autorizado.");
 			throw new IllegalStateException("Pagamento não autorizado.");
 		}
+		try {
+			registroDeCompra.registrarPagamento(compraId, pagamento.transacaoId());
+		} catch (RuntimeException e) {
+			compensarPagamentoSemRegistro(compraId, carrinho.clienteId(), pagamento.transacaoId(), tipo, e);
+			throw e;
+		}
 
-		EstoqueBaixaDTO baixaDTO = estoqueExternal.darBaixa(produtosIds, produtosQtds);
+		EstoqueBaixaDTO baixaDTO;
+		try {
+			baixaDTO = metricas.medir(Etapa.BAIXA, tipo, () -> estoqueExternal.darBaixa(itensEstoque));
+		} catch (DependenciaIndisponivelException e) {
+			if (e.podeTerSidoExecutada()) {
+				// O estoque pode ter baixado: estornar seria entregar sem cobrar
+				throw baixaIncerta(compraId, tipo, e);
+			}
+			// Recusada antes de chegar ao estoque: agenda o estorno e devolve a indisponibilidade
+			metricas.contar(Falha.BAIXA_COMPENSADA, tipo);
+			registroDeCompra.cancelar(compraId, carrinho.clienteId(), pagamento.transacaoId(), e.getMessage());
+			throw e;
+		}
 
 		if (!baixaDTO.sucesso()) {
-			pagamentoExternal.cancelarPagamento(cliente.getId(), pagamento.transacaoId());
+			// O cancelamento do pagamento vai para a outbox: a resposta não espera o estorno
+			metricas.contar(Falha.BAIXA_COMPENSADA, tipo);
+			registroDeCompra.cancelar(compraId, carrinho.clienteId(), pagamento.transacaoId(),
+					"Erro ao dar baixa no estoque.");
 			throw new IllegalStateException("Erro ao dar baixa no estoque.");
 		}
+		registroDeCompra.concluir(compraId);
 
 		CompraDTO compraDTO = new CompraDTO(true, pagamento.transacaoId(), "Compra finalizada com sucesso.");
 
 		return compraDTO;
 	}
 
-	public BigDecimal calcularCustoTotal(CarrinhoDeCompras carrinho) {
-    BigDecimal custoItens = carrinho.getItens().stream()
-			.map(item -> item.getProduto().getPreco().multiply(BigDecimal.valueOf(item.getQuantidade())))
-			.reduce(BigDecimal.ZERO, BigDecimal::add);
-
-    double pesoTotal = carrinho.getItens().stream()
-			.mapToDouble(item -> item.getProduto().getPeso() * item.getQuantidade())
-			.sum();
-
-    // Cálculo do valor do frete com base no peso
-    BigDecimal frete = calcularFrete(pesoTotal, carrinho.getCliente());
+	/** Marca a compra cujo pagamento não respondeu; a conciliação marca depois se esta gravação também falhar. */
+	private PagamentoIncertoException pagamentoIncerto(Long compraId, TipoCliente tipo, RuntimeException causa) {
+		metricas.contar(Falha.PAGAMENTO_INCERTO, tipo);
+		PagamentoIncertoException incerto = new PagamentoIncertoException(PAGAMENTO_INCERTO, causa);
+		try {
+			registroDeCompra.marcarPagamentoIncerto(compraId, causa.getMessage());
+		} catch (RuntimeException e) {
+			incerto.addSuppressed(e);
+		}
+		return incerto;
+	}
 
-    BigDecimal desconto = BigDecimal.ZERO;
-    if (custoItens.compareTo(BigDecimal.valueOf(1000)) > 0) {
-			desconto = custoItens.multiply(BigDecimal.valueOf(0.2));
-    } else if (custoItens.compareTo(BigDecimal.valueOf(500)) > 0) {
-			desconto = custoItens.multiply(BigDecimal.valueOf(0.1));
-    }
+	/** Marca a compra cuja baixa não respondeu; se esta gravação falhar, a conciliação a cancela depois do prazo. */
+	private PagamentoIncertoException baixaIncerta(Long compraId, TipoCliente tipo, RuntimeException causa) {
+		metricas.contar(Falha.BAIXA_INCERTA, tipo);
+		PagamentoIncertoException incerta = new PagamentoIncertoException(BAIXA_INCERTA, causa);
+		try {
+			registroDeCompra.marcarBaixaIncerta(compraId, causa.getMessage());
+		} catch (RuntimeException e) {
+			incerta.addSuppressed(e);
+		}
+		return incerta;
+	}
 
-    BigDecimal custoItensComDesconto = custoItens.subtract(desconto);
+	/**
+	 * Pagamento autorizado que não foi registrado: agenda o estorno pela outbox
+	 * antes de liberar o carrinho. Se nem isso puder ser gravado, o carrinho
+	 * continua reservado e a transação fica no log para conciliação manual.
+	 */
+	private void compensarPagamentoSemRegistro(Long compraId, Long clienteId, Long transacaoId, TipoCliente tipo,
+			RuntimeException falha) {
+		try {
+			registroDeCompra.cancelarSemRegistro(compraId, clienteId, transacaoId, "Falha ao registrar o pagamento.");
+		} catch (RuntimeException e) {
+			falha.addSuppressed(e);
+			metricas.contar(Falha.PAGAMENTO_INCERTO, tipo);
+			log.error("Pagamento {} da compra {} autorizado sem registro nem cancelamento agendado", transacaoId,
+					compraId, falha);
+			throw new PagamentoIncertoException(PAGAMENTO_INCERTO, falha);
+		}
+	}
 
-    // Cálculo do custo total (itens com desconto + frete)
-    return custoItensComDesconto.add(frete);
+	private static <T> T aguardar(CompletableFuture<T> futura) {
+		try {
+			return futura.join();
+		} catch (CompletionException e) {
+			Throwable causa = e.getCause();
+			if (causa instanceof RuntimeException) {
+				throw (RuntimeException) causa;
+			}
+			if (causa instanceof Error) {
+				throw (Error) causa;
+			}
+			throw e;
+		}
 	}
 
-	private BigDecimal calcularFrete(double pesoTotal, Cliente cliente) {
-		BigDecimal valorFrete;
-
-		if (pesoTotal <= 5) {
-			valorFrete = BigDecimal.ZERO;
-		} else if (pesoTotal <= 10) {
-			valorFrete = BigDecimal.valueOf(pesoTotal * 2);
-		} else if (pesoTotal <= 50) {
-			valorFrete = BigDecimal.valueOf(pesoTotal * 4);
-		} else {
-			valorFrete = BigDecimal.valueOf(pesoTotal * 7);
-		}
-
-		// Aplicação de descontos no frete com base no tipo de cliente
-		switch (cliente.getTipo()) {
-			case OURO:
-				valorFrete = BigDecimal.ZERO; // Isenção total
-				break;
-			case PRATA:
-				valorFrete = valorFrete.multiply(BigDecimal.valueOf(0.5)); // 50% de desconto
-				break;
-			//case BRONZE:
-			//	break; // Sem desconto adicional
-			default:
-				break; // Sem desconto adicional
-		}
-
-		return valorFrete;
+	/**
+	 * Usa os totais mantidos pelo carrinho quando disponíveis e as regras de
+	 * desconto não dependem do tipo de produto; senão percorre os itens.
+	 */
+	public BigDecimal calcularCustoTotal(CarrinhoDeCompras carrinho) {
+		TipoCliente tipo = carrinho.getCliente().getTipo();
+		if (carrinho.possuiTotais() && calculadoraDeCusto.calculaPelosTotais()) {
+			return calculadoraDeCusto.calcular(carrinho.getSubtotal(), carrinho.getPesoTotal(), tipo).total();
+		}
+		return calculadoraDeCusto.calcular(carrinho.getItens(), tipo).total();
 	}
 
 }
@@ -0,0 +1,138 @@
+package ecommerce.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import ecommerce.entity.Compra;
+import ecommerce.entity.StatusCompra;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.CompraRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Compensa as compras cujo checkout foi interrompido (queda da aplicação,
+ * falha ao gravar o passo seguinte) e que ficaram em um status intermediário
+ * por mais de {@code prazo-ms}.
+ * <p>
+ * Compras com pagamento autorizado são canceladas e o cancelamento do
+ * pagamento vai para a outbox, como quando a baixa no estoque falha. Compras
+ * apenas iniciadas podem ter o pagamento autorizado sem que a resposta tenha
+ * sido gravada: passam a pagamento incerto e o carrinho continua em
+ * finalização até a {@link VerificacaoDePagamentos}.
+ * <p>
+ * Depois das compras vêm os carrinhos reservados há mais que o prazo: os de
+ * compra concluída são finalizados e os sem compra concluída ou pendente
+ * voltam a abertos, desfazendo reservas de finalizações que morreram antes
+ * de liberar o carrinho.
+ * <p>
+ * O prazo deve ficar bem acima do tempo limite das chamadas externas, para não
+ * alcançar checkouts ainda em andamento.
+ */
+@Component
+public class ConciliacaoDeCompras {
+
+	private static final Logger log = LoggerFactory.getLogger(ConciliacaoDeCompras.class);
+
+	static final String CHECKOUT_INTERROMPIDO = "Checkout interrompido antes de concluir a compra.";
+
+	private final CompraRepository repository;
+	private final CarrinhoDeComprasRepository carrinhos;
+	private final RegistroDeCompraService registroDeCompra;
+	private final int tamanhoLote;
+	private final Duration prazo;
+	private final Clock relogio;
+
+	private final Counter canceladas;
+	private final Counter incertas;
+	private final Counter carrinhosFinalizados;
+	private final Counter carrinhosReabertos;
+
+	@Autowired
+	public ConciliacaoDeCompras(CompraRepository repository, CarrinhoDeComprasRepository carrinhos,
+			RegistroDeCompraService registroDeCompra, MeterRegistry registry,
+			@Value("${compras.conciliacao.lote:100}") int tamanhoLote,
+			@Value("${compras.conciliacao.prazo-ms:300000}") long prazoMs) {
+		this(repository, carrinhos, registroDeCompra, registry, tamanhoLote, Duration.ofMillis(prazoMs),
+				Clock.systemUTC());
+	}
+
+	ConciliacaoDeCompras(CompraRepository repository, CarrinhoDeComprasRepository carrinhos,
+			RegistroDeCompraService registroDeCompra, MeterRegistry registry, int tamanhoLote, Duration prazo,
+			Clock relogio) {
+		this.repository = repository;
+		this.carrinhos = carrinhos;
+		this.registroDeCompra = registroDeCompra;
+		this.tamanhoLote = tamanhoLote;
+		this.prazo = prazo;
+		this.relogio = relogio;
+
+		this.canceladas = contador(registry, "cancelada");
+		this.incertas = contador(registry, "pagamento-incerto");
+		this.carrinhosFinalizados = contador(registry, "carrinho-finalizado");
+		this.carrinhosReabertos = contador(registry, "carrinho-reaberto");
+	}
+
+	private static Counter contador(MeterRegistry registry, String resultado) {
+		return Counter.builder("compra.conciliacao")
+				.description("Compras e carrinhos de finalizações interrompidas acertados pela conciliação")
+				.tag("resultado", resultado)
+				.register(registry);
+	}
+
+	@Scheduled(initialDelayString = "${compras.conciliacao.intervalo-ms:60000}",
+			fixedDelayString = "${compras.conciliacao.intervalo-ms:60000}")
+	public void conciliarPeriodicamente() {
+		conciliar();
+	}
+
+	/** Compensa as compras e os carrinhos parados desde antes do prazo e devolve quantos foram alterados. */
+	public int conciliar() {
+		Instant limite = relogio.instant().minus(prazo);
+
+		int canceladasAgora = 0;
+		List<Compra> lote;
+		do {
+			lote = repository.findByStatusAndAtualizadaEmBeforeOrderByAtualizadaEm(StatusCompra.PAGAMENTO_AUTORIZADO,
+					limite, PageRequest.of(0, tamanhoLote));
+			for (Compra compra : lote) {
+				try {
+					registroDeCompra.cancelar(compra.getId(), compra.getClienteId(), compra.getTransacaoPagamentoId(),
+							CHECKOUT_INTERROMPIDO);
+					canceladasAgora++;
+				} catch (IllegalStateException e) {
+					// Concluída ou cancelada pelo próprio checkout depois da leitura
+				}
+			}
+		} while (lote.size() == tamanhoLote);
+
+		int incertasAgora = registroDeCompra.marcarIniciadasAntesDe(limite, CHECKOUT_INTERROMPIDO);
+		int finalizadosAgora = carrinhos.finalizarReservasConcluidas(limite);
+		int reabertosAgora = carrinhos.liberarReservasExpiradas(limite);
+
+		if (canceladasAgora > 0) {
+			canceladas.increment(canceladasAgora);
+			log.warn("{} compras interrompidas com pagamento autorizado foram canceladas", canceladasAgora);
+		}
+		if (incertasAgora > 0) {
+			incertas.increment(incertasAgora);
+			log.warn("{} compras interrompidas durante o pagamento aguardam verificação", incertasAgora);
+		}
+		if (finalizadosAgora + reabertosAgora > 0) {
+			carrinhosFinalizados.increment(finalizadosAgora);
+			carrinhosReabertos.increment(reabertosAgora);
+			log.warn("Reservas expiradas: {} carrinhos finalizados e {} reabertos", finalizadosAgora, reabertosAgora);
+		}
+		return canceladasAgora + incertasAgora + finalizadosAgora + reabertosAgora;
+	}
+}
@@ -0,0 +1,69 @@
+package ecommerce.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Confere periodicamente os totais mantidos em {@link CarrinhoDeCompras}
+ * (subtotal e peso) contra os itens e os preços atuais e regrava os que
+ * divergirem.
+ * <p>
+ * Mudanças feitas por {@link ProdutoService#salvar} já corrigem os carrinhos
+ * afetados; a varredura cobre o que muda por fora da aplicação (atualizações
+ * direto no banco, massa gerada por JDBC). Cada faixa de {@code lote} ids é
+ * conferida e reparada por uma única instrução, em sua própria transação.
+ */
+@Component
+public class ConsistenciaDeCarrinhos {
+
+	private static final Logger log = LoggerFactory.getLogger(ConsistenciaDeCarrinhos.class);
+
+	private final CarrinhoDeComprasRepository repository;
+	private final int tamanhoLote;
+	private final Counter reparados;
+
+	@Autowired
+	public ConsistenciaDeCarrinhos(CarrinhoDeComprasRepository repository, MeterRegistry registry,
+			@Value("${carrinhos.consistencia.lote:1000}") int tamanhoLote) {
+		this.repository = repository;
+		this.tamanhoLote = tamanhoLote;
+		this.reparados = Counter.builder("carrinho.totais.reparados")
+				.description("Carrinhos cujos totais divergiam dos itens e foram regravados")
+				.register(registry);
+	}
+
+	@Scheduled(initialDelayString = "${carrinhos.consistencia.intervalo-ms:3600000}",
+			fixedDelayString = "${carrinhos.consistencia.intervalo-ms:3600000}")
+	public void verificarPeriodicamente() {
+		verificar();
+	}
+
+	/** Percorre todos os carrinhos por faixas de ids e devolve quantos tinham totais divergentes. */
+	public int verificar() {
+		Long menor = repository.findMenorId();
+		Long maior = repository.findMaiorId();
+		if (menor == null) {
+			return 0;
+		}
+
+		int divergentes = 0;
+		for (long de = menor; de <= maior; de += tamanhoLote) {
+			divergentes += repository.repararTotaisEntre(de, de + tamanhoLote - 1);
+		}
+
+		if (divergentes > 0) {
+			reparados.increment(divergentes);
+			log.warn("Totais de {} carrinhos divergiam dos itens e foram reparados", divergentes);
+		}
+		return divergentes;
+	}
+}
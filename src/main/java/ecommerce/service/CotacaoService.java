@@ -0,0 +1,141 @@
+package ecommerce.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import ecommerce.dto.CarrinhoCheckoutDTO;
+import ecommerce.dto.ClienteResumoDTO;
+import ecommerce.dto.CotacaoDTO;
+import ecommerce.dto.ItemCheckoutDTO;
+import ecommerce.dto.ProdutoResumoDTO;
+import ecommerce.service.custo.CalculadoraDeCusto;
+
+/**
+ * Cotação do carrinho (subtotal, desconto, frete e total) sem finalizar a
+ * compra, para telas que mostram o total a cada visualização.
+ * <p>
+ * As cotações ficam em cache por carrinho, junto com a revisão do carrinho e
+ * os itens, preços, pesos, tipos de produto e tipo de cliente usados no
+ * cálculo. Uma cotação em cache só é devolvida se esses dados ainda forem os
+ * dos caches de produtos e de clientes e se a revisão ainda for a do banco,
+ * lida pela chave primária. A revisão avança a cada mudança nos itens, seja
+ * por {@link CarrinhoDeComprasService#salvar} (que também remove a cotação
+ * desta instância), seja por outra instância ou pela reparação dos totais.
+ * <p>
+ * O ETag é um resumo desses mesmos dados: carrinhos que não mudaram têm o
+ * mesmo ETag mesmo depois de recalculados, em qualquer instância.
+ */
+@Service
+public class CotacaoService {
+
+	/** Cotação calculada, o carrinho (com preços e tipo de cliente) usado no cálculo e a sua revisão. */
+	public record Cotacao(CotacaoDTO valores, String etag, CarrinhoCheckoutDTO carrinho, long revisao) {
+	}
+
+	private final CarrinhoDeComprasService carrinhoService;
+	private final ClienteService clienteService;
+	private final ProdutoService produtoService;
+	private final CalculadoraDeCusto calculadoraDeCusto;
+	private final Cache<Long, Cotacao> cache;
+
+	@Autowired
+	public CotacaoService(CarrinhoDeComprasService carrinhoService, ClienteService clienteService,
+			ProdutoService produtoService, CalculadoraDeCusto calculadoraDeCusto,
+			Cache<Long, Cotacao> cacheDeCotacoes) {
+		this.carrinhoService = carrinhoService;
+		this.clienteService = clienteService;
+		this.produtoService = produtoService;
+		this.calculadoraDeCusto = calculadoraDeCusto;
+		this.cache = cacheDeCotacoes;
+	}
+
+	/** Cotação do carrinho do cliente, ou vazio se o carrinho não existir ou for de outro cliente. */
+	public Optional<Cotacao> cotar(Long carrinhoId, Long clienteId) {
+		Cotacao emCache = cache.getIfPresent(carrinhoId);
+		if (emCache != null) {
+			if (!emCache.carrinho().clienteId().equals(clienteId)) {
+				return Optional.empty();
+			}
+			if (vigente(emCache)) {
+				return Optional.of(emCache);
+			}
+			// Só remove a cotação vencida, e não uma recalculada por outra thread nesse meio tempo
+			cache.asMap().remove(carrinhoId, emCache);
+		}
+
+		ClienteResumoDTO cliente = clienteService.buscarResumoPorId(clienteId);
+		Cotacao cotacao = cache.get(carrinhoId, id -> {
+			// Lida antes dos itens: uma mudança entre as duas leituras deixa a cotação já vencida
+			Optional<Long> revisao = carrinhoService.buscarRevisao(id);
+			if (revisao.isEmpty()) {
+				return null;
+			}
+			return carrinhoService.buscarParaCheckout(id, cliente)
+					.map(carrinho -> calcular(carrinho, revisao.get()))
+					.orElse(null);
+		});
+		if (cotacao == null || !cotacao.carrinho().clienteId().equals(clienteId)) {
+			return Optional.empty();
+		}
+		return Optional.of(cotacao);
+	}
+
+	private Cotacao calcular(CarrinhoCheckoutDTO carrinho, long revisao) {
+		CotacaoDTO valores = CotacaoDTO.de(carrinho.carrinhoId(), calculadoraDeCusto.calcular(carrinho));
+		return new Cotacao(valores, etag(carrinho, revisao), carrinho, revisao);
+	}
+
+	/**
+	 * Confere a revisão do carrinho no banco e, pelos caches, se tipo do
+	 * cliente, preços, pesos e tipos dos produtos ainda são os usados na cotação.
+	 */
+	private boolean vigente(Cotacao cotacao) {
+		CarrinhoCheckoutDTO carrinho = cotacao.carrinho();
+		Optional<Long> revisao = carrinhoService.buscarRevisao(carrinho.carrinhoId());
+		if (revisao.isEmpty() || revisao.get() != cotacao.revisao()) {
+			return false;
+		}
+		if (clienteService.buscarResumoPorId(carrinho.clienteId()).tipo() != carrinho.tipoCliente()) {
+			return false;
+		}
+		List<ItemCheckoutDTO> itens = carrinho.itens();
+		Map<Long, ProdutoResumoDTO> produtos = produtoService
+				.buscarResumos(itens.stream().map(ItemCheckoutDTO::produtoId).toList());
+		for (ItemCheckoutDTO item : itens) {
+			ProdutoResumoDTO produto = produtos.get(item.produtoId());
+			if (produto == null || produto.preco().compareTo(item.preco()) != 0
+					|| !produto.peso().equals(item.peso()) || produto.tipo() != item.tipo()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Resumo SHA-256 (primeiros 16 bytes) do carrinho e sua revisão, do tipo de cliente e de cada item. */
+	static String etag(CarrinhoCheckoutDTO carrinho, long revisao) {
+		StringBuilder dados = new StringBuilder().append(carrinho.carrinhoId()).append('|').append(revisao)
+				.append('|').append(carrinho.clienteId()).append('|').append(carrinho.tipoCliente());
+		for (ItemCheckoutDTO item : carrinho.itens()) {
+			dados.append('|').append(item.produtoId()).append(':').append(item.preco().stripTrailingZeros())
+					.append(':').append(item.peso()).append(':').append(item.quantidade()).append(':')
+					.append(item.tipo());
+		}
+		try {
+			byte[] resumo = MessageDigest.getInstance("SHA-256")
+					.digest(dados.toString().getBytes(StandardCharsets.UTF_8));
+			return '"' + HexFormat.of().formatHex(resumo, 0, 16) + '"';
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 indisponível.", e);
+		}
+	}
+}
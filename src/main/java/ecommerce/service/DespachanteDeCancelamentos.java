@@ -0,0 +1,150 @@
+package ecommerce.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import ecommerce.entity.CancelamentoPendente;
+import ecommerce.external.DependenciaIndisponivelException;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.repository.CancelamentoPendenteRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Envia em segundo plano os cancelamentos de pagamento gravados na outbox
+ * ({@link CancelamentoPendente}), em lotes, fora da thread da requisição.
+ * <p>
+ * Os enviados são apagados com uma única instrução por lote. Uma falha
+ * reagenda o cancelamento com espera exponencial (dobrando a partir de
+ * {@code espera-inicial-ms}, até {@code espera-maxima-ms}); depois de
+ * {@code tentativas-maximas} ele fica esgotado e sai da fila. Se o pagamento
+ * estiver indisponível (circuito aberto, limite de concorrência ou tempo
+ * limite), o restante do lote fica para a próxima rodada em vez de insistir.
+ * <p>
+ * Pensado para uma única instância da aplicação: não há reserva de linhas
+ * entre despachantes concorrentes.
+ */
+@Component
+public class DespachanteDeCancelamentos {
+
+	private static final Logger log = LoggerFactory.getLogger(DespachanteDeCancelamentos.class);
+	private static final int TAMANHO_MAXIMO_ERRO = 255;
+
+	private final CancelamentoPendenteRepository repository;
+	private final IPagamentoExternal pagamentoExternal;
+	private final int tamanhoLote;
+	private final Duration esperaInicial;
+	private final Duration esperaMaxima;
+	private final int tentativasMaximas;
+	private final Clock relogio;
+
+	private final Counter enviados;
+	private final Counter reagendados;
+	private final Counter esgotados;
+
+	@Autowired
+	public DespachanteDeCancelamentos(CancelamentoPendenteRepository repository, IPagamentoExternal pagamentoExternal,
+			MeterRegistry registry,
+			@Value("${compras.cancelamentos.lote:100}") int tamanhoLote,
+			@Value("${compras.cancelamentos.espera-inicial-ms:1000}") long esperaInicialMs,
+			@Value("${compras.cancelamentos.espera-maxima-ms:300000}") long esperaMaximaMs,
+			@Value("${compras.cancelamentos.tentativas-maximas:10}") int tentativasMaximas) {
+		this(repository, pagamentoExternal, registry, tamanhoLote, Duration.ofMillis(esperaInicialMs),
+				Duration.ofMillis(esperaMaximaMs), tentativasMaximas, Clock.systemUTC());
+	}
+
+	DespachanteDeCancelamentos(CancelamentoPendenteRepository repository, IPagamentoExternal pagamentoExternal,
+			MeterRegistry registry, int tamanhoLote, Duration esperaInicial, Duration esperaMaxima,
+			int tentativasMaximas, Clock relogio) {
+		this.repository = repository;
+		this.pagamentoExternal = pagamentoExternal;
+		this.tamanhoLote = tamanhoLote;
+		this.esperaInicial = esperaInicial;
+		this.esperaMaxima = esperaMaxima;
+		this.tentativasMaximas = tentativasMaximas;
+		this.relogio = relogio;
+
+		this.enviados = contador(registry, "enviado");
+		this.reagendados = contador(registry, "reagendado");
+		this.esgotados = contador(registry, "esgotado");
+	}
+
+	private static Counter contador(MeterRegistry registry, String resultado) {
+		return Counter.builder("compra.cancelamentos")
+				.description("Cancelamentos de pagamento processados pela outbox")
+				.tag("resultado", resultado)
+				.register(registry);
+	}
+
+	@Scheduled(fixedDelayString = "${compras.cancelamentos.intervalo-ms:500}")
+	public void despacharPendentes() {
+		// Esvazia a fila enquanto houver lotes cheios e o pagamento estiver respondendo
+		int confirmados;
+		do {
+			confirmados = despachar();
+		} while (confirmados == tamanhoLote);
+	}
+
+	/** Envia um lote de cancelamentos vencidos e devolve quantos foram confirmados. */
+	public int despachar() {
+		Instant agora = relogio.instant();
+		List<CancelamentoPendente> lote = repository.findProntos(agora, PageRequest.of(0, tamanhoLote));
+
+		List<Long> confirmados = new ArrayList<>(lote.size());
+		for (CancelamentoPendente cancelamento : lote) {
+			try {
+				pagamentoExternal.cancelarPagamento(cancelamento.getClienteId(), cancelamento.getTransacaoPagamentoId());
+				confirmados.add(cancelamento.getId());
+			} catch (DependenciaIndisponivelException e) {
+				reagendar(cancelamento, e, agora);
+				break;
+			} catch (RuntimeException e) {
+				reagendar(cancelamento, e, agora);
+			}
+		}
+
+		if (!confirmados.isEmpty()) {
+			repository.deleteAllByIdInBatch(confirmados);
+			enviados.increment(confirmados.size());
+		}
+		return confirmados.size();
+	}
+
+	private void reagendar(CancelamentoPendente cancelamento, RuntimeException erro, Instant agora) {
+		int tentativas = cancelamento.getTentativas() + 1;
+		boolean esgotado = tentativas >= tentativasMaximas;
+		Instant proxima = agora.plus(espera(tentativas));
+		repository.registrarFalha(cancelamento.getId(), proxima, mensagem(erro), esgotado);
+
+		if (esgotado) {
+			esgotados.increment();
+			log.error("Cancelamento do pagamento {} esgotou {} tentativas", cancelamento.getTransacaoPagamentoId(),
+					tentativas, erro);
+		} else {
+			reagendados.increment();
+		}
+	}
+
+	/** Espera antes da próxima tentativa: esperaInicial * 2^(tentativas - 1), limitada a esperaMaxima. */
+	Duration espera(int tentativas) {
+		int expoente = Math.min(tentativas - 1, 30);
+		Duration espera = esperaInicial.multipliedBy(1L << expoente);
+		return espera.compareTo(esperaMaxima) > 0 ? esperaMaxima : espera;
+	}
+
+	private static String mensagem(RuntimeException erro) {
+		String mensagem = erro.getClass().getSimpleName() + ": " + erro.getMessage();
+		return mensagem.length() > TAMANHO_MAXIMO_ERRO ? mensagem.substring(0, TAMANHO_MAXIMO_ERRO) : mensagem;
+	}
+}
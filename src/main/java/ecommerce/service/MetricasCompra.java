@@ -0,0 +1,120 @@
+package ecommerce.service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import ecommerce.entity.TipoCliente;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Métricas do checkout publicadas em /actuator/metrics.
+ * <p>
+ * {@code compra.etapa} mede cada etapa de {@code finalizarCompra}, com
+ * percentis e histograma, por etapa e tipo de cliente. {@code compra.falhas}
+ * conta os desfechos sem sucesso por motivo e tipo de cliente. Os medidores
+ * são registrados uma única vez, na construção, para que o checkout não
+ * consulte o registro a cada chamada.
+ */
+@Component
+public class MetricasCompra {
+
+	public enum Etapa {
+		CLIENTE("cliente"),
+		CARRINHO("carrinho"),
+		DISPONIBILIDADE("estoque.disponibilidade"),
+		CUSTO("custo"),
+		PAGAMENTO("pagamento"),
+		BAIXA("estoque.baixa"),
+		TOTAL("total");
+
+		private final String tag;
+
+		Etapa(String tag) {
+			this.tag = tag;
+		}
+	}
+
+	public enum Falha {
+		FORA_DE_ESTOQUE("fora-de-estoque"),
+		PAGAMENTO_NEGADO("pagamento-negado"),
+		BAIXA_COMPENSADA("baixa-estoque-compensada"),
+		CARRINHO_OCUPADO("carrinho-ocupado"),
+		PAGAMENTO_INCERTO("pagamento-incerto"),
+		BAIXA_INCERTA("baixa-incerta");
+
+		private final String tag;
+
+		Falha(String tag) {
+			this.tag = tag;
+		}
+	}
+
+	private final Clock relogio;
+	private final Map<Etapa, Map<TipoCliente, Timer>> timers = new EnumMap<>(Etapa.class);
+	private final Map<Falha, Map<TipoCliente, Counter>> falhas = new EnumMap<>(Falha.class);
+
+	@Autowired
+	public MetricasCompra(MeterRegistry registry) {
+		this.relogio = registry.config().clock();
+
+		for (Etapa etapa : Etapa.values()) {
+			Map<TipoCliente, Timer> porTipo = new EnumMap<>(TipoCliente.class);
+			for (TipoCliente tipo : TipoCliente.values()) {
+				porTipo.put(tipo, Timer.builder("compra.etapa")
+						.description("Duração das etapas de finalizarCompra")
+						.tag("etapa", etapa.tag)
+						.tag("tipoCliente", tipo.name())
+						.publishPercentiles(0.5, 0.95, 0.99)
+						.publishPercentileHistogram()
+						.minimumExpectedValue(Duration.ofNanos(100_000))
+						.maximumExpectedValue(Duration.ofSeconds(10))
+						.register(registry));
+			}
+			timers.put(etapa, porTipo);
+		}
+
+		for (Falha falha : Falha.values()) {
+			Map<TipoCliente, Counter> porTipo = new EnumMap<>(TipoCliente.class);
+			for (TipoCliente tipo : TipoCliente.values()) {
+				porTipo.put(tipo, Counter.builder("compra.falhas")
+						.description("Compras não concluídas por motivo")
+						.tag("motivo", falha.tag)
+						.tag("tipoCliente", tipo.name())
+						.register(registry));
+			}
+			falhas.put(falha, porTipo);
+		}
+	}
+
+	/** Instante de início de uma etapa, para {@link #registrar}. */
+	public long inicio() {
+		return relogio.monotonicTime();
+	}
+
+	public void registrar(Etapa etapa, TipoCliente tipo, long inicio) {
+		timers.get(etapa).get(tipo).record(relogio.monotonicTime() - inicio, TimeUnit.NANOSECONDS);
+	}
+
+	/** Executa e mede a etapa, inclusive quando ela termina com exceção. */
+	public <T> T medir(Etapa etapa, TipoCliente tipo, Supplier<T> execucao) {
+		long inicio = inicio();
+		try {
+			return execucao.get();
+		} finally {
+			registrar(etapa, tipo, inicio);
+		}
+	}
+
+	public void contar(Falha falha, TipoCliente tipo) {
+		falhas.get(falha).get(tipo).increment();
+	}
+}
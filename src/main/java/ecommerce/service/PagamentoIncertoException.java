@@ -0,0 +1,17 @@
+package ecommerce.service;
+
+/**
+ * O pagamento pode ter sido autorizado, mas o checkout não recebeu ou não
+ * conseguiu registrar a resposta; ou foi autorizado e a baixa no estoque não
+ * respondeu. A compra fica marcada e o carrinho continua em finalização, para
+ * que uma nova tentativa não autorize outro pagamento. Mapeada para 503 pelo
+ * controller.
+ */
+public class PagamentoIncertoException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public PagamentoIncertoException(String mensagem, Throwable causa) {
+		super(mensagem, causa);
+	}
+}
@@ -0,0 +1,67 @@
+package ecommerce.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import ecommerce.dto.ProdutoResumoDTO;
+import ecommerce.entity.Produto;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ProdutoRepository;
+import jakarta.transaction.Transactional;
+
+@Service
+public class ProdutoService {
+
+	private final ProdutoRepository repository;
+	private final Cache<Long, ProdutoResumoDTO> cache;
+	private final CarrinhoDeComprasRepository carrinhoRepository;
+
+	@Autowired
+	public ProdutoService(ProdutoRepository repository, Cache<Long, ProdutoResumoDTO> cacheDeProdutos,
+			CarrinhoDeComprasRepository carrinhoRepository) {
+		this.repository = repository;
+		this.cache = cacheDeProdutos;
+		this.carrinhoRepository = carrinhoRepository;
+	}
+
+	/**
+	 * Busca preço, peso e tipo dos produtos pelo cache; os que faltarem são
+	 * carregados em uma única consulta. Ids inexistentes ficam fora do mapa.
+	 */
+	public Map<Long, ProdutoResumoDTO> buscarResumos(Collection<Long> produtoIds) {
+		return cache.getAll(produtoIds, faltantes -> {
+			Map<Long, ProdutoResumoDTO> carregados = new HashMap<>();
+			for (ProdutoResumoDTO resumo : repository.findResumosByIdIn(faltantes)) {
+				carregados.put(resumo.id(), resumo);
+			}
+			return carregados;
+		});
+	}
+
+	/**
+	 * Salva o produto e, na mesma transação, corrige os totais dos carrinhos
+	 * que o contêm, caso preço ou peso tenham mudado.
+	 */
+	@Transactional
+	public Produto salvar(Produto produto) {
+		Produto salvo = repository.save(produto);
+		carrinhoRepository.repararTotaisComProduto(salvo.getId());
+		invalidar(salvo.getId());
+		return salvo;
+	}
+
+	/** Remove o produto do cache assim que a transação corrente for confirmada. */
+	public void invalidar(Long produtoId) {
+		AposCommit.executar(() -> cache.invalidate(produtoId));
+	}
+
+	public void invalidarTodos() {
+		AposCommit.executar(cache::invalidateAll);
+	}
+}
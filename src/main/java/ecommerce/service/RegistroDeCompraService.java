@@ -0,0 +1,160 @@
+package ecommerce.service;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import ecommerce.entity.CancelamentoPendente;
+import ecommerce.entity.Compra;
+import ecommerce.entity.StatusCompra;
+import ecommerce.repository.CancelamentoPendenteRepository;
+import ecommerce.repository.CompraRepository;
+import jakarta.transaction.Transactional;
+
+/**
+ * Passos da saga do checkout. Cada método é uma transação curta de uma única
+ * instrução, chamada entre as chamadas remotas: a conexão com o banco nunca
+ * fica presa enquanto o estoque ou o pagamento respondem.
+ */
+@Service
+public class RegistroDeCompraService {
+
+	private final CompraRepository repository;
+	private final CancelamentoPendenteRepository cancelamentos;
+	private final Clock relogio;
+
+	@Autowired
+	public RegistroDeCompraService(CompraRepository repository, CancelamentoPendenteRepository cancelamentos) {
+		this(repository, cancelamentos, Clock.systemUTC());
+	}
+
+	RegistroDeCompraService(CompraRepository repository, CancelamentoPendenteRepository cancelamentos, Clock relogio) {
+		this.repository = repository;
+		this.cancelamentos = cancelamentos;
+		this.relogio = relogio;
+	}
+
+	/** Registra a compra antes de pedir a autorização do pagamento e devolve seu id. */
+	@Transactional
+	public Long iniciar(Long carrinhoId, Long clienteId, BigDecimal valorTotal) {
+		return repository.save(new Compra(carrinhoId, clienteId, valorTotal, relogio.instant())).getId();
+	}
+
+	@Transactional
+	public void registrarPagamento(Long compraId, Long transacaoId) {
+		verificar(repository.registrarPagamento(compraId, StatusCompra.INICIADA, transacaoId, relogio.instant()),
+				compraId);
+	}
+
+	@Transactional
+	public void concluir(Long compraId) {
+		alterar(compraId, StatusCompra.PAGAMENTO_AUTORIZADO, StatusCompra.CONCLUIDA, null);
+	}
+
+	/** Pagamento negado: nada a compensar. */
+	@Transactional
+	public void recusar(Long compraId, String motivo) {
+		alterar(compraId, StatusCompra.INICIADA, StatusCompra.RECUSADA, motivo);
+	}
+
+	/**
+	 * Baixa no estoque falhou depois do pagamento autorizado: marca a compra
+	 * como cancelada e, na mesma transação, agenda o cancelamento do pagamento,
+	 * enviado depois pelo {@link DespachanteDeCancelamentos}.
+	 */
+	@Transactional
+	public void cancelar(Long compraId, Long clienteId, Long transacaoId, String motivo) {
+		alterar(compraId, StatusCompra.PAGAMENTO_AUTORIZADO, StatusCompra.CANCELADA, motivo);
+		cancelamentos.save(new CancelamentoPendente(compraId, clienteId, transacaoId, relogio.instant()));
+	}
+
+	/**
+	 * Pagamento sem resposta: não se sabe se foi autorizado, então não há o
+	 * que cancelar nem como repetir com segurança. O carrinho fica em
+	 * finalização até a {@link VerificacaoDePagamentos}.
+	 */
+	@Transactional
+	public void marcarPagamentoIncerto(Long compraId, String motivo) {
+		alterar(compraId, StatusCompra.INICIADA, StatusCompra.PAGAMENTO_INCERTO, motivo);
+	}
+
+	/**
+	 * Baixa no estoque sem resposta depois do pagamento autorizado: o estoque
+	 * pode ter sido baixado, então cancelar o pagamento não é seguro. O
+	 * carrinho fica em finalização até a verificação com o estoque.
+	 */
+	@Transactional
+	public void marcarBaixaIncerta(Long compraId, String motivo) {
+		alterar(compraId, StatusCompra.PAGAMENTO_AUTORIZADO, StatusCompra.BAIXA_INCERTA, motivo);
+	}
+
+	/** Baixa incerta que a verificação encontrou feita: a compra está concluída. */
+	@Transactional
+	public void confirmarBaixa(Long compraId) {
+		alterar(compraId, StatusCompra.BAIXA_INCERTA, StatusCompra.CONCLUIDA, null);
+	}
+
+	/** Baixa incerta que a verificação não encontrou: cancela e agenda o estorno na mesma transação. */
+	@Transactional
+	public void cancelarBaixaIncerta(Long compraId, Long clienteId, Long transacaoId, String motivo) {
+		alterar(compraId, StatusCompra.BAIXA_INCERTA, StatusCompra.CANCELADA, motivo);
+		cancelamentos.save(new CancelamentoPendente(compraId, clienteId, transacaoId, relogio.instant()));
+	}
+
+	/**
+	 * Pagamento incerto que a verificação encontrou autorizado: a saga segue
+	 * com a transação informada, como se a autorização tivesse respondido.
+	 */
+	@Transactional
+	public void confirmarPagamento(Long compraId, Long transacaoId) {
+		verificar(repository.registrarPagamento(compraId, StatusCompra.PAGAMENTO_INCERTO, transacaoId,
+				relogio.instant()), compraId);
+	}
+
+	/**
+	 * Pagamento incerto encerrado pela verificação: cancela a compra e, se o
+	 * pagamento foi autorizado, agenda o seu cancelamento na mesma transação.
+	 */
+	@Transactional
+	public void cancelarIncerta(Long compraId, Long clienteId, Long transacaoId, String motivo) {
+		alterar(compraId, StatusCompra.PAGAMENTO_INCERTO, StatusCompra.CANCELADA, motivo);
+		if (transacaoId != null) {
+			cancelamentos.save(new CancelamentoPendente(compraId, clienteId, transacaoId, relogio.instant()));
+		}
+	}
+
+	/**
+	 * Pagamento autorizado cuja gravação falhou: cancela a compra, se ainda
+	 * estiver iniciada ou incerta, e agenda o cancelamento do pagamento na
+	 * mesma transação.
+	 */
+	@Transactional
+	public void cancelarSemRegistro(Long compraId, Long clienteId, Long transacaoId, String motivo) {
+		repository.cancelarSemRegistro(compraId, transacaoId, motivo, relogio.instant());
+		cancelamentos.save(new CancelamentoPendente(compraId, clienteId, transacaoId, relogio.instant()));
+	}
+
+	/**
+	 * Compras iniciadas antes do limite e nunca concluídas (o checkout foi
+	 * interrompido durante a autorização): passam a pagamento incerto, em uma
+	 * única instrução. Devolve quantas foram alteradas.
+	 */
+	@Transactional
+	public int marcarIniciadasAntesDe(Instant limite, String motivo) {
+		return repository.alterarStatusParados(StatusCompra.INICIADA, StatusCompra.PAGAMENTO_INCERTO, motivo, limite,
+				relogio.instant());
+	}
+
+	private void alterar(Long compraId, StatusCompra atual, StatusCompra novo, String motivo) {
+		verificar(repository.alterarStatus(compraId, atual, novo, motivo, relogio.instant()), compraId);
+	}
+
+	private static void verificar(int alteradas, Long compraId) {
+		if (alteradas != 1) {
+			throw new IllegalStateException("Compra " + compraId + " não está no status esperado.");
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package ecommerce.service;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Compra;
+import ecommerce.entity.ItemCompra;
+import ecommerce.external.DependenciaIndisponivelException;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.repository.CompraRepository;
+
+/**
+ * Encerra as compras com pagamento ou baixa incertos. Nem o pagamento nem o
+ * estoque oferecem consulta das operações, então o desfecho vem de quem as
+ * verificou nos sistemas externos. Com pagamento incerto:
+ * <ul>
+ * <li>autorizado: a saga continua de onde parou, com a baixa no estoque, e a
+ * compra termina concluída (carrinho finalizado) ou cancelada com estorno
+ * pela outbox (carrinho reaberto);</li>
+ * <li>não autorizado, ou autorizado mas desistido: a compra é cancelada, o
+ * estorno vai para a outbox se houve autorização e o carrinho volta a
+ * aberto.</li>
+ * </ul>
+ * Com baixa incerta o pagamento está autorizado: baixa feita conclui a compra
+ * e finaliza o carrinho; baixa não feita cancela a compra, com estorno pela
+ * outbox, e reabre o carrinho.
+ * <p>
+ * Como no checkout, nenhuma chamada remota acontece dentro de uma transação.
+ */
+@Service
+public class VerificacaoDePagamentos {
+
+	static final String CANCELADA_NA_VERIFICACAO = "Cancelada na verificação do pagamento.";
+
+	private final CompraRepository compras;
+	private final RegistroDeCompraService registroDeCompra;
+	private final CarrinhoDeComprasService carrinhoService;
+	private final IEstoqueExternal estoqueExternal;
+
+	@Autowired
+	public VerificacaoDePagamentos(CompraRepository compras, RegistroDeCompraService registroDeCompra,
+			CarrinhoDeComprasService carrinhoService, IEstoqueExternal estoqueExternal) {
+		this.compras = compras;
+		this.registroDeCompra = registroDeCompra;
+		this.carrinhoService = carrinhoService;
+		this.estoqueExternal = estoqueExternal;
+	}
+
+	/** O pagamento foi autorizado com a transação informada: dá baixa no estoque e conclui a compra. */
+	public CompraDTO confirmarPagamento(Long compraId, Long transacaoId) {
+		if (transacaoId == null) {
+			throw new IllegalArgumentException("Transação do pagamento não informada.");
+		}
+		Compra compra = buscar(compraId);
+		ItensEstoqueDTO itens = itens(compra.getCarrinhoId());
+		registroDeCompra.confirmarPagamento(compraId, transacaoId);
+
+		EstoqueBaixaDTO baixa;
+		try {
+			baixa = estoqueExternal.darBaixa(itens);
+		} catch (DependenciaIndisponivelException e) {
+			if (e.podeTerSidoExecutada()) {
+				registroDeCompra.marcarBaixaIncerta(compraId, e.getMessage());
+				throw new PagamentoIncertoException(CompraService.BAIXA_INCERTA, e);
+			}
+			cancelar(compra, transacaoId, e.getMessage());
+			throw e;
+		}
+		if (!baixa.sucesso()) {
+			cancelar(compra, transacaoId, "Erro ao dar baixa no estoque.");
+			throw new IllegalStateException("Erro ao dar baixa no estoque.");
+		}
+		registroDeCompra.concluir(compraId);
+		carrinhoService.concluirCheckout(compra.getCarrinhoId());
+		return new CompraDTO(true, transacaoId, "Compra finalizada com sucesso.");
+	}
+
+	/**
+	 * Cancela a compra e reabre o carrinho. Com a transação informada (o
+	 * pagamento chegou a ser autorizado), agenda também o estorno.
+	 */
+	public void cancelarPagamento(Long compraId, Long transacaoId) {
+		Compra compra = buscar(compraId);
+		registroDeCompra.cancelarIncerta(compraId, compra.getClienteId(), transacaoId, CANCELADA_NA_VERIFICACAO);
+		carrinhoService.liberarCheckout(compra.getCarrinhoId());
+	}
+
+	/** A baixa que não respondeu foi feita no estoque: conclui a compra e finaliza o carrinho. */
+	public void confirmarBaixa(Long compraId) {
+		Compra compra = buscar(compraId);
+		registroDeCompra.confirmarBaixa(compraId);
+		carrinhoService.concluirCheckout(compra.getCarrinhoId());
+	}
+
+	/** A baixa que não respondeu não foi feita: cancela a compra com estorno e reabre o carrinho. */
+	public void cancelarBaixa(Long compraId) {
+		Compra compra = buscar(compraId);
+		registroDeCompra.cancelarBaixaIncerta(compraId, compra.getClienteId(), compra.getTransacaoPagamentoId(),
+				CANCELADA_NA_VERIFICACAO);
+		carrinhoService.liberarCheckout(compra.getCarrinhoId());
+	}
+
+	private void cancelar(Compra compra, Long transacaoId, String motivo) {
+		registroDeCompra.cancelar(compra.getId(), compra.getClienteId(), transacaoId, motivo);
+		carrinhoService.liberarCheckout(compra.getCarrinhoId());
+	}
+
+	private Compra buscar(Long compraId) {
+		return compras.findById(compraId).orElseThrow(() -> new IllegalArgumentException("Compra não encontrada."));
+	}
+
+	private ItensEstoqueDTO itens(Long carrinhoId) {
+		List<CarrinhoDeCompras> carrinhos = carrinhoService.buscarPorIds(List.of(carrinhoId));
+		if (carrinhos.isEmpty()) {
+			throw new IllegalArgumentException("Carrinho não encontrado.");
+		}
+		List<ItemCompra> linhas = carrinhos.get(0).getItens();
+		long[] produtosIds = new long[linhas.size()];
+		long[] quantidades = new long[linhas.size()];
+		for (int i = 0; i < linhas.size(); i++) {
+			produtosIds[i] = linhas.get(i).getProduto().getId();
+			quantidades[i] = linhas.get(i).getQuantidade();
+		}
+		return ItensEstoqueDTO.agrupar(produtosIds, quantidades, linhas.size());
+	}
+}
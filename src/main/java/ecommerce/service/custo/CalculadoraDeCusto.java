@@ -0,0 +1,237 @@
+package ecommerce.service.custo;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import ecommerce.dto.CarrinhoCheckoutDTO;
+import ecommerce.dto.CustoCompraDTO;
+import ecommerce.dto.ItemCheckoutDTO;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+
+/**
+ * Calcula o custo de uma compra (itens com desconto + frete) em uma única
+ * passada pelos itens do carrinho.
+ * <p>
+ * Internamente os valores são inteiros: preços em centavos, peso em kg e
+ * percentuais em pontos-base (1/100 de 1%), o que torna as regras exatas sem
+ * criar {@link BigDecimal} por item. O resultado é montado em milionésimos de
+ * real e convertido para {@link BigDecimal} só no final, na menor escala que
+ * representa o valor. Preços com mais de duas casas decimais, ou totais que não
+ * cabem em {@code long}, seguem por um caminho equivalente em
+ * {@link BigDecimal}.
+ * <p>
+ * As faixas e parcelas do frete vêm da {@link TabelaDeFrete}, configurada pelas
+ * propriedades {@code frete.*}, e o desconto sobre os itens da
+ * {@link TabelaDeDescontos}, configurada por {@code descontos.regras}; sem elas
+ * valem as tabelas padrão, com as regras originais.
+ */
+@Component
+public class CalculadoraDeCusto {
+
+	/** 100% em pontos-base. */
+	private static final long PONTOS_BASE = 10_000L;
+
+	/** Escala do resultado interno: milionésimos de real (centavos x pontos-base). */
+	private static final int ESCALA_INTERNA = 6;
+
+	private static final TipoProduto[] TIPOS_DE_PRODUTO = TipoProduto.values();
+
+	private final TabelaDeFrete tabelaDeFrete;
+	private final TabelaDeDescontos tabelaDeDescontos;
+
+	public CalculadoraDeCusto() {
+		this(TabelaDeFrete.PADRAO, TabelaDeDescontos.PADRAO);
+	}
+
+	public CalculadoraDeCusto(TabelaDeFrete tabelaDeFrete) {
+		this(tabelaDeFrete, TabelaDeDescontos.PADRAO);
+	}
+
+	public CalculadoraDeCusto(TabelaDeDescontos tabelaDeDescontos) {
+		this(TabelaDeFrete.PADRAO, tabelaDeDescontos);
+	}
+
+	public CalculadoraDeCusto(TabelaDeFrete tabelaDeFrete, TabelaDeDescontos tabelaDeDescontos) {
+		this.tabelaDeFrete = tabelaDeFrete;
+		this.tabelaDeDescontos = tabelaDeDescontos;
+	}
+
+	@Autowired
+	public CalculadoraDeCusto(@Value("${frete.faixas:5:0.00,10:2.00,50:4.00}") String faixas,
+			@Value("${frete.acima:7.00}") String acima,
+			@Value("${frete.parcelas:BRONZE:100,PRATA:50,OURO:0}") String parcelas,
+			@Value("${descontos.regras:*:*:1000.00:20,*:*:500.00:10}") String regrasDeDesconto) {
+		this(TabelaDeFrete.compilar(faixas, acima, parcelas), TabelaDeDescontos.compilar(regrasDeDesconto));
+	}
+
+	public CustoCompraDTO calcular(List<ItemCompra> itens, TipoCliente tipoCliente) {
+		Acumulador acumulador = new Acumulador(tabelaDeDescontos);
+		for (ItemCompra item : itens) {
+			Produto produto = item.getProduto();
+			acumulador.adicionar(produto.getPreco(), produto.getPeso(), item.getQuantidade(), produto.getTipo());
+		}
+		return acumulador.fechar(tabelaDeFrete, tipoCliente);
+	}
+
+	public CustoCompraDTO calcular(CarrinhoCheckoutDTO carrinho) {
+		Acumulador acumulador = new Acumulador(tabelaDeDescontos);
+		for (ItemCheckoutDTO item : carrinho.itens()) {
+			acumulador.adicionar(item.preco(), item.peso(), item.quantidade(), item.tipo());
+		}
+		return acumulador.fechar(tabelaDeFrete, carrinho.tipoCliente());
+	}
+
+	/**
+	 * Custo a partir dos totais já somados do carrinho, sem percorrer os itens.
+	 * Só é possível quando nenhuma regra de desconto depende do tipo de produto
+	 * (ver {@link #calculaPelosTotais()}).
+	 */
+	public CustoCompraDTO calcular(BigDecimal subtotal, long pesoTotal, TipoCliente tipoCliente) {
+		if (!calculaPelosTotais()) {
+			throw new IllegalStateException("Há regras de desconto por tipo de produto; o custo exige os itens.");
+		}
+		Acumulador acumulador = new Acumulador(tabelaDeDescontos);
+		acumulador.adicionar(subtotal, pesoTotal, 1L, null);
+		return acumulador.fechar(tabelaDeFrete, tipoCliente);
+	}
+
+	/** Se o custo pode sair só do subtotal e do peso total, sem os tipos dos produtos. */
+	public boolean calculaPelosTotais() {
+		return !tabelaDeDescontos.possuiRegrasPorTipoDeProduto();
+	}
+
+	private static BigDecimal valor(long milionesimos) {
+		return normalizar(BigDecimal.valueOf(milionesimos, ESCALA_INTERNA));
+	}
+
+	private static BigDecimal normalizar(BigDecimal valor) {
+		BigDecimal semZeros = valor.stripTrailingZeros();
+		return semZeros.scale() < 0 ? semZeros.setScale(0) : semZeros;
+	}
+
+	private static int posicao(TipoProduto tipoProduto) {
+		return tipoProduto == null ? TIPOS_DE_PRODUTO.length : tipoProduto.ordinal();
+	}
+
+	private static TipoProduto tipoNaPosicao(int posicao) {
+		return posicao == TIPOS_DE_PRODUTO.length ? null : TIPOS_DE_PRODUTO[posicao];
+	}
+
+	private static final class Acumulador {
+		private final TabelaDeDescontos tabelaDeDescontos;
+		private long subtotalCentavos;
+		/** Subtotal por tipo de produto (a última posição é a dos produtos sem tipo), só com regras por tipo. */
+		private final long[] centavosPorTipo;
+		/** Preenchidos apenas quando algum preço não pode ser somado em centavos. */
+		private BigDecimal subtotalExato;
+		private BigDecimal[] exatoPorTipo;
+		private long pesoTotal;
+
+		Acumulador(TabelaDeDescontos tabelaDeDescontos) {
+			this.tabelaDeDescontos = tabelaDeDescontos;
+			this.centavosPorTipo = tabelaDeDescontos.possuiRegrasPorTipoDeProduto()
+					? new long[TIPOS_DE_PRODUTO.length + 1]
+					: null;
+		}
+
+		void adicionar(BigDecimal preco, long peso, long quantidade, TipoProduto tipoProduto) {
+			pesoTotal += peso * quantidade;
+			int posicao = posicao(tipoProduto);
+
+			if (subtotalExato == null) {
+				if (preco.scale() <= 2) {
+					try {
+						long linha = Math.multiplyExact(preco.movePointRight(2).longValueExact(), quantidade);
+						long subtotal = Math.addExact(subtotalCentavos, linha);
+						if (centavosPorTipo != null) {
+							centavosPorTipo[posicao] = Math.addExact(centavosPorTipo[posicao], linha);
+						}
+						subtotalCentavos = subtotal;
+						return;
+					} catch (ArithmeticException e) {
+						// Não cabe em long: segue pelo caminho exato
+					}
+				}
+				passarParaExato();
+			}
+			BigDecimal linha = preco.multiply(BigDecimal.valueOf(quantidade));
+			subtotalExato = subtotalExato.add(linha);
+			if (exatoPorTipo != null) {
+				exatoPorTipo[posicao] = exatoPorTipo[posicao].add(linha);
+			}
+		}
+
+		private void passarParaExato() {
+			subtotalExato = BigDecimal.valueOf(subtotalCentavos, 2);
+			if (centavosPorTipo != null) {
+				exatoPorTipo = new BigDecimal[centavosPorTipo.length];
+				for (int i = 0; i < centavosPorTipo.length; i++) {
+					exatoPorTipo[i] = BigDecimal.valueOf(centavosPorTipo[i], 2);
+				}
+			}
+		}
+
+		CustoCompraDTO fechar(TabelaDeFrete tabelaDeFrete, TipoCliente tipoCliente) {
+			long parcelaFrete = tabelaDeFrete.parcela(tipoCliente);
+			long fretePorKg = tabelaDeFrete.centavosPorKg(pesoTotal);
+
+			if (subtotalExato == null) {
+				try {
+					long subtotal = Math.multiplyExact(subtotalCentavos, PONTOS_BASE);
+					long desconto = desconto(tipoCliente);
+					long frete = Math.multiplyExact(Math.multiplyExact(pesoTotal, fretePorKg), parcelaFrete);
+					long total = Math.addExact(subtotal - desconto, frete);
+					return new CustoCompraDTO(valor(subtotal), valor(desconto), valor(frete), valor(total));
+				} catch (ArithmeticException e) {
+					passarParaExato();
+				}
+			}
+
+			BigDecimal desconto = descontoExato(tipoCliente);
+			BigDecimal frete = BigDecimal.valueOf(pesoTotal).multiply(BigDecimal.valueOf(fretePorKg, 2))
+					.multiply(BigDecimal.valueOf(parcelaFrete, 4));
+			BigDecimal total = subtotalExato.subtract(desconto).add(frete);
+			return new CustoCompraDTO(normalizar(subtotalExato), normalizar(desconto), normalizar(frete),
+					normalizar(total));
+		}
+
+		/** Desconto em milionésimos de real: cada tipo de produto com o seu percentual. */
+		private long desconto(TipoCliente tipoCliente) {
+			if (centavosPorTipo == null) {
+				return Math.multiplyExact(subtotalCentavos, tabelaDeDescontos.desconto(tipoCliente, subtotalCentavos));
+			}
+			long desconto = 0L;
+			for (int i = 0; i < centavosPorTipo.length; i++) {
+				if (centavosPorTipo[i] != 0L) {
+					long percentual = tabelaDeDescontos.desconto(tipoCliente, tipoNaPosicao(i), subtotalCentavos,
+							centavosPorTipo[i]);
+					desconto = Math.addExact(desconto, Math.multiplyExact(centavosPorTipo[i], percentual));
+				}
+			}
+			return desconto;
+		}
+
+		private BigDecimal descontoExato(TipoCliente tipoCliente) {
+			long subtotal = TabelaDeDescontos.centavosParaComparar(subtotalExato);
+			if (exatoPorTipo == null) {
+				return subtotalExato.multiply(BigDecimal.valueOf(tabelaDeDescontos.desconto(tipoCliente, subtotal), 4));
+			}
+			BigDecimal desconto = BigDecimal.ZERO;
+			for (int i = 0; i < exatoPorTipo.length; i++) {
+				if (exatoPorTipo[i].signum() != 0) {
+					long percentual = tabelaDeDescontos.desconto(tipoCliente, tipoNaPosicao(i), subtotal,
+							TabelaDeDescontos.centavosParaComparar(exatoPorTipo[i]));
+					desconto = desconto.add(exatoPorTipo[i].multiply(BigDecimal.valueOf(percentual, 4)));
+				}
+			}
+			return desconto;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package ecommerce.service.custo;
+
+import java.math.BigDecimal;
+
+/** Leitura dos valores decimais das tabelas de custo configuradas por propriedades. */
+final class Decimais {
+
+	private Decimais() {
+	}
+
+	/**
+	 * Valor decimal não negativo com até duas casas, multiplicado por 100
+	 * (centavos, ou pontos-base para percentuais); {@code descricao} nomeia o
+	 * valor na mensagem de erro.
+	 */
+	static long centesimos(String valor, String descricao) {
+		try {
+			long centesimos = new BigDecimal(valor.trim()).movePointRight(2).longValueExact();
+			if (centesimos >= 0) {
+				return centesimos;
+			}
+		} catch (ArithmeticException e) {
+			// mais de duas casas decimais ou fora do intervalo de long
+		}
+		throw new IllegalArgumentException(
+				descricao + " deve ser não negativo e ter até duas casas decimais: " + valor.trim() + ".");
+	}
+}
@@ -0,0 +1,188 @@
+package ecommerce.service.custo;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+
+/**
+ * Regras de desconto sobre os itens, compiladas uma vez em índices por tipo
+ * de cliente e tipo de produto.
+ * <p>
+ * Cada regra é descrita por {@code tipoProduto:tipoCliente:acimaDe:percentual},
+ * com {@code *} valendo para qualquer tipo. Regras sem tipo de produto olham o
+ * subtotal da compra; regras com tipo de produto olham o subtotal dos itens
+ * desse tipo e valem só para eles. Cada item recebe o maior percentual entre
+ * as regras que o alcançam, sem acumular descontos.
+ * <p>
+ * Na compilação as regras de cada combinação de cliente e produto (as de
+ * {@code *} copiadas para todos) são ordenadas pelo limite, guardando o maior
+ * percentual até cada limite; a consulta é uma busca binária por combinação,
+ * qualquer que seja o número de regras.
+ */
+public final class TabelaDeDescontos {
+
+	/** Uma regra: tipos nulos valem para qualquer tipo; o limite é exclusivo, em centavos. */
+	public record Regra(TipoProduto tipoProduto, TipoCliente tipoCliente, long acimaDeCentavos, long pontosBase) {
+	}
+
+	/** Regras originais: acima de R$ 1000,00 20% e acima de R$ 500,00 10% sobre a compra. */
+	public static final TabelaDeDescontos PADRAO = compilar("*:*:1000.00:20,*:*:500.00:10");
+
+	/** Regras sem tipo de produto, por ordinal de {@link TipoCliente}. */
+	private final Faixas[] gerais;
+	/** Regras por ordinal de {@link TipoCliente} e de {@link TipoProduto}. */
+	private final Faixas[][] porTipoDeProduto;
+	private final boolean possuiRegrasPorTipoDeProduto;
+	private final int regras;
+
+	private TabelaDeDescontos(Faixas[] gerais, Faixas[][] porTipoDeProduto, boolean possuiRegrasPorTipoDeProduto,
+			int regras) {
+		this.gerais = gerais;
+		this.porTipoDeProduto = porTipoDeProduto;
+		this.possuiRegrasPorTipoDeProduto = possuiRegrasPorTipoDeProduto;
+		this.regras = regras;
+	}
+
+	/** Compila as regras descritas por {@code "ELETRONICO:OURO:300.00:15,*:*:1000.00:20"}. */
+	public static TabelaDeDescontos compilar(String regras) {
+		List<Regra> lidas = new ArrayList<>();
+		for (String parte : regras.isBlank() ? new String[0] : regras.split(",")) {
+			String[] campos = parte.trim().split(":");
+			if (campos.length != 4) {
+				throw new IllegalArgumentException(
+						"Esperado tipoProduto:tipoCliente:acimaDe:percentual na regra de desconto: " + parte.trim() + ".");
+			}
+			TipoProduto tipoProduto = "*".equals(campos[0].trim()) ? null : TipoProduto.valueOf(campos[0].trim());
+			TipoCliente tipoCliente = "*".equals(campos[1].trim()) ? null : TipoCliente.valueOf(campos[1].trim());
+			lidas.add(new Regra(tipoProduto, tipoCliente, Decimais.centesimos(campos[2], "Limite da regra de desconto"),
+					Decimais.centesimos(campos[3], "Percentual da regra de desconto")));
+		}
+		return compilar(lidas);
+	}
+
+	public static TabelaDeDescontos compilar(List<Regra> regras) {
+		int clientes = TipoCliente.values().length;
+		int produtos = TipoProduto.values().length;
+		List<List<Regra>> gerais = new ArrayList<>();
+		List<List<Regra>> especificas = new ArrayList<>();
+		for (int i = 0; i < clientes; i++) {
+			gerais.add(new ArrayList<>());
+			for (int j = 0; j < produtos; j++) {
+				especificas.add(new ArrayList<>());
+			}
+		}
+
+		boolean porTipoDeProduto = false;
+		for (Regra regra : regras) {
+			if (regra.acimaDeCentavos() < 0 || regra.pontosBase() < 0 || regra.pontosBase() > 10_000L) {
+				throw new IllegalArgumentException("Regra de desconto com limite negativo ou percentual fora de 0 a 100: "
+						+ regra + ".");
+			}
+			porTipoDeProduto |= regra.tipoProduto() != null;
+			for (int i = 0; i < clientes; i++) {
+				if (regra.tipoCliente() != null && regra.tipoCliente().ordinal() != i) {
+					continue;
+				}
+				if (regra.tipoProduto() == null) {
+					gerais.get(i).add(regra);
+				} else {
+					especificas.get(i * produtos + regra.tipoProduto().ordinal()).add(regra);
+				}
+			}
+		}
+
+		Faixas[] faixasGerais = new Faixas[clientes];
+		Faixas[][] faixasPorTipoDeProduto = new Faixas[clientes][produtos];
+		for (int i = 0; i < clientes; i++) {
+			faixasGerais[i] = Faixas.de(gerais.get(i));
+			for (int j = 0; j < produtos; j++) {
+				faixasPorTipoDeProduto[i][j] = Faixas.de(especificas.get(i * produtos + j));
+			}
+		}
+		return new TabelaDeDescontos(faixasGerais, faixasPorTipoDeProduto, porTipoDeProduto, regras.size());
+	}
+
+	/** Percentual, em pontos-base, das regras gerais para o subtotal da compra em centavos. */
+	public long desconto(TipoCliente tipoCliente, long subtotalCentavos) {
+		return gerais[tipoCliente.ordinal()].percentual(subtotalCentavos);
+	}
+
+	/**
+	 * Percentual, em pontos-base, para os itens de um tipo de produto (nulo para
+	 * produtos sem tipo): o maior entre as regras gerais, pelo subtotal da
+	 * compra, e as do tipo, pelo subtotal dos itens do tipo.
+	 */
+	public long desconto(TipoCliente tipoCliente, TipoProduto tipoProduto, long subtotalCentavos,
+			long subtotalDoTipoCentavos) {
+		long geral = desconto(tipoCliente, subtotalCentavos);
+		if (tipoProduto == null) {
+			return geral;
+		}
+		return Math.max(geral,
+				porTipoDeProduto[tipoCliente.ordinal()][tipoProduto.ordinal()].percentual(subtotalDoTipoCentavos));
+	}
+
+	/** Se alguma regra depende do tipo de produto; sem elas o desconto sai só do subtotal da compra. */
+	public boolean possuiRegrasPorTipoDeProduto() {
+		return possuiRegrasPorTipoDeProduto;
+	}
+
+	public int regras() {
+		return regras;
+	}
+
+	/** Subtotal em centavos arredondado para cima, o que preserva a comparação "acima de" com limites inteiros. */
+	static long centavosParaComparar(BigDecimal subtotal) {
+		BigDecimal centavos = subtotal.movePointRight(2).setScale(0, RoundingMode.CEILING);
+		return centavos.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) >= 0 ? Long.MAX_VALUE : centavos.longValue();
+	}
+
+	/** Limites distintos em ordem crescente e o maior percentual entre as regras de limite até cada um. */
+	private static final class Faixas {
+		private static final Faixas VAZIAS = new Faixas(new long[0], new long[0]);
+
+		private final long[] limites;
+		private final long[] melhorAte;
+
+		private Faixas(long[] limites, long[] melhorAte) {
+			this.limites = limites;
+			this.melhorAte = melhorAte;
+		}
+
+		static Faixas de(List<Regra> regras) {
+			if (regras.isEmpty()) {
+				return VAZIAS;
+			}
+			List<Regra> ordenadas = new ArrayList<>(regras);
+			ordenadas.sort(Comparator.comparingLong(Regra::acimaDeCentavos));
+			long[] limites = new long[ordenadas.size()];
+			long[] melhorAte = new long[ordenadas.size()];
+			int distintos = 0;
+			long melhor = 0L;
+			for (Regra regra : ordenadas) {
+				melhor = Math.max(melhor, regra.pontosBase());
+				if (distintos > 0 && limites[distintos - 1] == regra.acimaDeCentavos()) {
+					melhorAte[distintos - 1] = melhor;
+				} else {
+					limites[distintos] = regra.acimaDeCentavos();
+					melhorAte[distintos] = melhor;
+					distintos++;
+				}
+			}
+			return new Faixas(Arrays.copyOf(limites, distintos), Arrays.copyOf(melhorAte, distintos));
+		}
+
+		/** Maior percentual entre as regras cujo limite fica abaixo do subtotal. */
+		long percentual(long subtotalCentavos) {
+			int posicao = Arrays.binarySearch(limites, subtotalCentavos);
+			int abaixo = posicao >= 0 ? posicao : -posicao - 1;
+			return abaixo == 0 ? 0L : melhorAte[abaixo - 1];
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package ecommerce.service.custo;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import ecommerce.entity.TipoCliente;
+
+/**
+ * Faixas de peso do frete e parcela cobrada de cada tipo de cliente,
+ * compiladas uma vez em vetores imutáveis.
+ * <p>
+ * As faixas são descritas por {@code pesoMaximoKg:valorPorKg} em ordem
+ * crescente de peso (o limite é inclusivo), mais o valor por kg acima da
+ * última faixa; a faixa de um peso é achada por busca binária, então o custo
+ * da consulta quase não muda com o número de faixas. As parcelas são
+ * {@code TIPO:percentual} do frete cobrado (100 = integral, 0 = isento) e
+ * devem cobrir todos os tipos de cliente.
+ */
+public final class TabelaDeFrete {
+
+	/** Tabela original: até 5kg grátis, R$ 2/kg até 10kg, R$ 4/kg até 50kg, R$ 7/kg acima; Prata paga 50%, Ouro é isento. */
+	public static final TabelaDeFrete PADRAO = compilar("5:0.00,10:2.00,50:4.00", "7.00", "BRONZE:100,PRATA:50,OURO:0");
+
+	/** Limite superior de cada faixa, em kg, estritamente crescente. */
+	private final long[] limites;
+	/** Valor por kg em centavos de cada faixa; a última posição vale acima do último limite. */
+	private final long[] centavosPorKg;
+	/** Parcela do frete cobrada, em pontos-base, por ordinal de {@link TipoCliente}. */
+	private final long[] parcelas;
+
+	private TabelaDeFrete(long[] limites, long[] centavosPorKg, long[] parcelas) {
+		this.limites = limites;
+		this.centavosPorKg = centavosPorKg;
+		this.parcelas = parcelas;
+	}
+
+	/**
+	 * Compila a tabela a partir das faixas ({@code "5:0.00,10:2.00"}), do valor
+	 * por kg acima da última faixa e das parcelas ({@code "BRONZE:100,PRATA:50,OURO:0"}).
+	 */
+	public static TabelaDeFrete compilar(String faixas, String acimaDaUltima, String parcelasPorTipo) {
+		String[] partes = faixas.isBlank() ? new String[0] : faixas.split(",");
+		long[] limites = new long[partes.length];
+		long[] centavosPorKg = new long[partes.length + 1];
+		for (int i = 0; i < partes.length; i++) {
+			String[] faixa = par(partes[i], "faixa de frete");
+			limites[i] = Long.parseLong(faixa[0].trim());
+			if (limites[i] < 0 || (i > 0 && limites[i] <= limites[i - 1])) {
+				throw new IllegalArgumentException(
+						"Faixas de frete devem ter pesos não negativos e crescentes: " + faixas + ".");
+			}
+			centavosPorKg[i] = Decimais.centesimos(faixa[1], "Valor de frete");
+		}
+		centavosPorKg[partes.length] = Decimais.centesimos(acimaDaUltima, "Valor de frete");
+
+		Map<TipoCliente, Long> porTipo = new EnumMap<>(TipoCliente.class);
+		for (String parte : parcelasPorTipo.split(",")) {
+			String[] parcela = par(parte, "parcela de frete");
+			long pontosBase = Decimais.centesimos(parcela[1], "Parcela de frete");
+			porTipo.put(TipoCliente.valueOf(parcela[0].trim()), pontosBase);
+		}
+		long[] parcelas = new long[TipoCliente.values().length];
+		for (TipoCliente tipo : TipoCliente.values()) {
+			Long pontosBase = porTipo.get(tipo);
+			if (pontosBase == null) {
+				throw new IllegalArgumentException("Parcela de frete não definida para " + tipo + ".");
+			}
+			parcelas[tipo.ordinal()] = pontosBase;
+		}
+		return new TabelaDeFrete(limites, centavosPorKg, parcelas);
+	}
+
+	/** Valor por kg, em centavos, da faixa do peso total. */
+	public long centavosPorKg(long pesoTotal) {
+		int posicao = Arrays.binarySearch(limites, pesoTotal);
+		return centavosPorKg[posicao >= 0 ? posicao : -posicao - 1];
+	}
+
+	/** Parcela do frete cobrada do tipo de cliente, em pontos-base (10.000 = integral). */
+	public long parcela(TipoCliente tipoCliente) {
+		return parcelas[tipoCliente.ordinal()];
+	}
+
+	public int faixas() {
+		return centavosPorKg.length;
+	}
+
+	private static String[] par(String texto, String descricao) {
+		String[] par = texto.split(":");
+		if (par.length != 2) {
+			throw new IllegalArgumentException("Esperado chave:valor na " + descricao + ": " + texto.trim() + ".");
+		}
+		return par;
+	}
+}
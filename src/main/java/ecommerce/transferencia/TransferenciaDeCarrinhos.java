@@ -0,0 +1,481 @@
+package ecommerce.transferencia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import ecommerce.entity.StatusCarrinho;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+
+/**
+ * Exporta e importa carrinhos com seus itens em JSON Lines (um carrinho por
+ * linha), sem carregar os carrinhos como entidades.
+ * <p>
+ * A exportação lê carrinhos e itens em uma única consulta, ordenada por
+ * carrinho, por um cursor somente leitura que traz {@code leitura} linhas por
+ * vez; cada carrinho é escrito à medida que os seus itens chegam. A
+ * importação lê o arquivo com o parser de streaming do Jackson e grava
+ * carrinhos e itens com inserções JDBC em lote, um lote por transação. Nos
+ * dois sentidos o arquivo passa por um canal NIO com buffer de tamanho fixo,
+ * então a memória usada não depende do número de carrinhos nem do tamanho de
+ * cada um.
+ * <p>
+ * Formato de cada linha, com {@code itens} sempre por último:
+ *
+ * <pre>
+ * {"id":1,"clienteId":7,"data":"2024-05-01","status":"ABERTO","subtotal":30.00,"pesoTotal":4,"revisao":2,
+ *  "itens":[{"id":10,"produtoId":3,"quantidade":2}]}
+ * </pre>
+ *
+ * Na importação clientes e produtos precisam existir no destino; carrinhos e
+ * itens recebem novos ids a partir dos maiores das tabelas (os do arquivo são
+ * ignorados) e as colunas de identidade são reposicionadas no final, como na
+ * massa sintética. Carrinhos exportados em finalização voltam como abertos.
+ * Subtotal e peso total do arquivo valem os preços da origem e também são
+ * ignorados: ao fim da importação os totais dos carrinhos importados são
+ * recalculados com os produtos do destino, em faixas de {@code lote} ids.
+ * Cada lote é gravado na sua transação: uma falha interrompe a importação com
+ * os lotes anteriores já gravados.
+ */
+public class TransferenciaDeCarrinhos {
+
+	private static final Logger log = LoggerFactory.getLogger(TransferenciaDeCarrinhos.class);
+
+	private static final String CONSULTAR_CARRINHOS_E_ITENS = "select c.id, c.cliente_id, c.data, c.status, "
+			+ "c.subtotal, c.peso_total, c.revisao, i.id, i.produto_id, i.quantidade from carrinho_de_compras c "
+			+ "left join item_compra i on i.carrinho_id = c.id order by c.id, i.id";
+	private static final String INSERIR_CARRINHO = "insert into carrinho_de_compras "
+			+ "(id, cliente_id, data, status, revisao, versao) values (?, ?, ?, ?, ?, 0)";
+	private static final String INSERIR_ITEM =
+			"insert into item_compra (id, carrinho_id, produto_id, quantidade) values (?, ?, ?, ?)";
+	private static final String REPARAR_TOTAIS_ENTRE = CarrinhoDeComprasRepository.REPARAR_TOTAIS
+			+ " and c.id between ? and ?";
+
+	/** Tamanho do buffer entre o JSON e o canal do arquivo. */
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	public record Resumo(long carrinhos, long itens, Duration duracao) {
+
+		public double carrinhosPorSegundo() {
+			return carrinhos / Math.max(0.001, duracao.toNanos() / 1e9);
+		}
+	}
+
+	private final JdbcTemplate jdbc;
+	private final TransactionTemplate transacao;
+	private final TransactionTemplate somenteLeitura;
+	private final JsonFactory json = new JsonFactory();
+	private final int lote;
+	private final int leitura;
+
+	public TransferenciaDeCarrinhos(JdbcTemplate jdbc, PlatformTransactionManager transacoes, int lote, int leitura) {
+		this.jdbc = jdbc;
+		this.transacao = new TransactionTemplate(transacoes);
+		// Bancos como o PostgreSQL só leem por cursor (fetch size) dentro de uma transação
+		this.somenteLeitura = new TransactionTemplate(transacoes);
+		this.somenteLeitura.setReadOnly(true);
+		this.lote = lote;
+		this.leitura = leitura;
+	}
+
+	public Resumo exportar(Path arquivo) {
+		try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			return exportar(canal);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Não foi possível gravar " + arquivo + ".", e);
+		}
+	}
+
+	/** Escreve todos os carrinhos no canal, que continua aberto. */
+	public Resumo exportar(WritableByteChannel canal) {
+		long inicio = System.nanoTime();
+		Escrita escrita = new Escrita(canal);
+
+		somenteLeitura.executeWithoutResult(status -> jdbc.query(conexao -> {
+			PreparedStatement ps = conexao.prepareStatement(CONSULTAR_CARRINHOS_E_ITENS, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(leitura);
+			return ps;
+		}, escrita::linha));
+		escrita.terminar();
+
+		Resumo resumo = new Resumo(escrita.carrinhos, escrita.itens, Duration.ofNanos(System.nanoTime() - inicio));
+		log.info("Exportação: {} carrinhos e {} itens em {} ms ({} carrinhos/s)", resumo.carrinhos(), resumo.itens(),
+				resumo.duracao().toMillis(), Math.round(resumo.carrinhosPorSegundo()));
+		return resumo;
+	}
+
+	public Resumo importar(Path arquivo) {
+		try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+			return importar(canal);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Não foi possível ler " + arquivo + ".", e);
+		}
+	}
+
+	/** Lê os carrinhos do canal até o fim, que continua aberto. */
+	public Resumo importar(ReadableByteChannel canal) {
+		long inicio = System.nanoTime();
+		Lote pendentes = new Lote(lote);
+		long primeiroCarrinho = proximoId("carrinho_de_compras");
+		long proximoCarrinho = primeiroCarrinho;
+		long proximoItem = proximoId("item_compra");
+		long carrinhos = 0;
+		long itens = 0;
+
+		try {
+			InputStream entrada = new BufferedInputStream(Channels.newInputStream(canal), BUFFER_BYTES);
+			try (JsonParser parser = json.createParser(entrada)) {
+				parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+				for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+					exigir(parser, token == JsonToken.START_OBJECT, "esperado um carrinho");
+					Carrinho carrinho = new Carrinho(proximoCarrinho++);
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						String campo = parser.getCurrentName();
+						JsonToken valor = parser.nextToken();
+						if ("itens".equals(campo)) {
+							exigir(parser, valor == JsonToken.START_ARRAY, "itens deve ser uma lista");
+							carrinho.registrar(parser, pendentes);
+							while (parser.nextToken() == JsonToken.START_OBJECT) {
+								lerItem(parser, pendentes, proximoItem++, carrinho.id);
+								itens++;
+								if (pendentes.itens == pendentes.capacidade) {
+									gravar(pendentes);
+								}
+							}
+						} else {
+							exigir(parser, !carrinho.registrado, "itens deve ser o último campo do carrinho");
+							carrinho.ler(parser, campo, valor);
+						}
+					}
+					carrinho.registrar(parser, pendentes);
+					carrinhos++;
+					if (pendentes.carrinhos == pendentes.capacidade) {
+						gravar(pendentes);
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Falha ao ler os carrinhos.", e);
+			}
+			gravar(pendentes);
+		} finally {
+			// Os lotes já gravados ficam no banco mesmo se a leitura falhar no meio; ids que
+			// não chegaram a ser gravados não existem e a reparação simplesmente não os encontra
+			try {
+				repararTotais(primeiroCarrinho, proximoCarrinho - 1);
+			} finally {
+				for (String tabela : new String[] { "carrinho_de_compras", "item_compra" }) {
+					jdbc.execute("alter table " + tabela + " alter column id restart with " + proximoId(tabela));
+				}
+			}
+		}
+
+		Resumo resumo = new Resumo(carrinhos, itens, Duration.ofNanos(System.nanoTime() - inicio));
+		log.info("Importação: {} carrinhos e {} itens em {} ms ({} carrinhos/s)", resumo.carrinhos(), resumo.itens(),
+				resumo.duracao().toMillis(), Math.round(resumo.carrinhosPorSegundo()));
+		return resumo;
+	}
+
+	/** Lê um item para o lote; o id do arquivo é ignorado. */
+	private static void lerItem(JsonParser parser, Lote pendentes, long id, long carrinhoId) throws IOException {
+		long produtoId = 0;
+		long quantidade = 0;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String campo = parser.getCurrentName();
+			JsonToken valor = parser.nextToken();
+			switch (campo) {
+				case "produtoId" -> produtoId = inteiro(parser, valor, campo);
+				case "quantidade" -> quantidade = inteiro(parser, valor, campo);
+				default -> parser.skipChildren();
+			}
+		}
+		exigir(parser, produtoId > 0 && quantidade > 0, "item sem produtoId ou quantidade positivos");
+		pendentes.novoItem(id, carrinhoId, produtoId, quantidade);
+	}
+
+	private static long inteiro(JsonParser parser, JsonToken valor, String campo) throws IOException {
+		exigir(parser, valor == JsonToken.VALUE_NUMBER_INT, campo + " deve ser um inteiro");
+		return parser.getLongValue();
+	}
+
+	private static void exigir(JsonParser parser, boolean condicao, String problema) {
+		if (!condicao) {
+			throw new IllegalArgumentException(
+					"Linha " + parser.getCurrentLocation().getLineNr() + " inválida: " + problema + ".");
+		}
+	}
+
+	private void gravar(Lote pendentes) {
+		if (pendentes.carrinhos == 0 && pendentes.itens == 0) {
+			return;
+		}
+		transacao.executeWithoutResult(status -> {
+			inserir(INSERIR_CARRINHO, pendentes.carrinhos, (ps, i) -> {
+				ps.setLong(1, pendentes.carrinhosIds[i]);
+				ps.setLong(2, pendentes.clientesIds[i]);
+				ps.setObject(3, pendentes.datas[i]);
+				ps.setString(4, pendentes.status[i].name());
+				ps.setLong(5, pendentes.revisoes[i]);
+			});
+			inserir(INSERIR_ITEM, pendentes.itens, (ps, i) -> {
+				ps.setLong(1, pendentes.itensIds[i]);
+				ps.setLong(2, pendentes.carrinhoDoItem[i]);
+				ps.setLong(3, pendentes.produtosIds[i]);
+				ps.setLong(4, pendentes.quantidades[i]);
+			});
+		});
+		pendentes.limpar();
+	}
+
+	/** Calcula os totais dos carrinhos importados, uma faixa de ids por transação. */
+	private void repararTotais(long primeiro, long ultimo) {
+		for (long de = primeiro; de <= ultimo; de += lote) {
+			long inicio = de;
+			long fim = Math.min(ultimo, de + lote - 1);
+			transacao.executeWithoutResult(status -> jdbc.update(REPARAR_TOTAIS_ENTRE, inicio, fim));
+		}
+	}
+
+	private void inserir(String sql, int linhas, Preenchedor preenchedor) {
+		if (linhas == 0) {
+			return;
+		}
+		jdbc.batchUpdate(sql, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				preenchedor.preencher(ps, i);
+			}
+
+			@Override
+			public int getBatchSize() {
+				return linhas;
+			}
+		});
+	}
+
+	private long proximoId(String tabela) {
+		return jdbc.queryForObject("select coalesce(max(id), 0) + 1 from " + tabela, Long.class);
+	}
+
+	@FunctionalInterface
+	private interface Preenchedor {
+		void preencher(PreparedStatement ps, int linha) throws SQLException;
+	}
+
+	/**
+	 * Escreve as linhas da consulta, ordenadas por carrinho: abre o carrinho na
+	 * sua primeira linha, escreve um item por linha e fecha o carrinho quando
+	 * chega o próximo.
+	 */
+	private final class Escrita {
+		private final JsonGenerator gerador;
+		private long carrinhoAtual = -1;
+		long carrinhos;
+		long itens;
+
+		Escrita(WritableByteChannel canal) {
+			OutputStream saida = new BufferedOutputStream(Channels.newOutputStream(canal), BUFFER_BYTES);
+			try {
+				gerador = json.createGenerator(saida);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			gerador.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			gerador.setRootValueSeparator(null);
+		}
+
+		void linha(ResultSet linha) throws SQLException {
+			try {
+				long carrinhoId = linha.getLong(1);
+				if (carrinhoId != carrinhoAtual) {
+					fecharCarrinho();
+					abrirCarrinho(carrinhoId, linha);
+				}
+				long itemId = linha.getLong(8);
+				if (!linha.wasNull()) {
+					gerador.writeStartObject();
+					gerador.writeNumberField("id", itemId);
+					gerador.writeNumberField("produtoId", linha.getLong(9));
+					gerador.writeNumberField("quantidade", linha.getLong(10));
+					gerador.writeEndObject();
+					itens++;
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Falha ao gravar os carrinhos.", e);
+			}
+		}
+
+		private void abrirCarrinho(long carrinhoId, ResultSet linha) throws SQLException, IOException {
+			carrinhoAtual = carrinhoId;
+			carrinhos++;
+			gerador.writeStartObject();
+			gerador.writeNumberField("id", carrinhoId);
+			gerador.writeNumberField("clienteId", linha.getLong(2));
+			LocalDate data = linha.getObject(3, LocalDate.class);
+			gerador.writeStringField("data", data == null ? null : data.toString());
+			gerador.writeStringField("status", linha.getString(4));
+			BigDecimal subtotal = linha.getBigDecimal(5);
+			if (subtotal == null) {
+				gerador.writeNullField("subtotal");
+			} else {
+				gerador.writeNumberField("subtotal", subtotal);
+			}
+			long pesoTotal = linha.getLong(6);
+			if (linha.wasNull()) {
+				gerador.writeNullField("pesoTotal");
+			} else {
+				gerador.writeNumberField("pesoTotal", pesoTotal);
+			}
+			gerador.writeNumberField("revisao", linha.getLong(7));
+			gerador.writeArrayFieldStart("itens");
+		}
+
+		private void fecharCarrinho() throws IOException {
+			if (carrinhoAtual != -1) {
+				gerador.writeEndArray();
+				gerador.writeEndObject();
+				gerador.writeRaw('\n');
+			}
+		}
+
+		void terminar() {
+			try {
+				fecharCarrinho();
+				gerador.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Falha ao gravar os carrinhos.", e);
+			}
+		}
+	}
+
+	/** Campos do carrinho sendo lido; entra no lote ao chegar nos itens ou ao fim do objeto. */
+	private static final class Carrinho {
+		final long id;
+		Long clienteId;
+		LocalDate data;
+		StatusCarrinho status = StatusCarrinho.ABERTO;
+		long revisao;
+		boolean registrado;
+
+		Carrinho(long id) {
+			this.id = id;
+		}
+
+		void ler(JsonParser parser, String campo, JsonToken valor) throws IOException {
+			boolean nulo = valor == JsonToken.VALUE_NULL;
+			switch (campo) {
+				case "clienteId" -> clienteId = inteiro(parser, valor, campo);
+				case "data" -> {
+					try {
+						data = nulo ? null : LocalDate.parse(parser.getText());
+					} catch (DateTimeParseException e) {
+						exigir(parser, false, "data deve estar no formato AAAA-MM-DD");
+					}
+				}
+				case "status" -> {
+					try {
+						status = nulo ? StatusCarrinho.ABERTO : StatusCarrinho.valueOf(parser.getText());
+					} catch (IllegalArgumentException e) {
+						exigir(parser, false, "status desconhecido " + parser.getText());
+					}
+				}
+				case "revisao" -> revisao = nulo ? 0 : inteiro(parser, valor, campo);
+				default -> parser.skipChildren();
+			}
+		}
+
+		void registrar(JsonParser parser, Lote pendentes) {
+			if (registrado) {
+				return;
+			}
+			exigir(parser, clienteId != null, "carrinho sem clienteId");
+			pendentes.novoCarrinho(this);
+			registrado = true;
+		}
+	}
+
+	/** Carrinhos e itens a gravar em vetores paralelos, reaproveitados entre lotes. */
+	private static final class Lote {
+		final int capacidade;
+
+		final long[] carrinhosIds;
+		final long[] clientesIds;
+		final LocalDate[] datas;
+		final StatusCarrinho[] status;
+		final long[] revisoes;
+		int carrinhos;
+
+		final long[] itensIds;
+		final long[] carrinhoDoItem;
+		final long[] produtosIds;
+		final long[] quantidades;
+		int itens;
+
+		Lote(int capacidade) {
+			this.capacidade = capacidade;
+			carrinhosIds = new long[capacidade];
+			clientesIds = new long[capacidade];
+			datas = new LocalDate[capacidade];
+			status = new StatusCarrinho[capacidade];
+			revisoes = new long[capacidade];
+			itensIds = new long[capacidade];
+			carrinhoDoItem = new long[capacidade];
+			produtosIds = new long[capacidade];
+			quantidades = new long[capacidade];
+		}
+
+		void novoCarrinho(Carrinho carrinho) {
+			carrinhosIds[carrinhos] = carrinho.id;
+			clientesIds[carrinhos] = carrinho.clienteId;
+			datas[carrinhos] = carrinho.data;
+			// Uma finalização em andamento na origem não continua no destino
+			status[carrinhos] = carrinho.status == StatusCarrinho.EM_CHECKOUT ? StatusCarrinho.ABERTO : carrinho.status;
+			revisoes[carrinhos] = carrinho.revisao;
+			carrinhos++;
+		}
+
+		void novoItem(long id, long carrinhoId, long produtoId, long quantidade) {
+			itensIds[itens] = id;
+			carrinhoDoItem[itens] = carrinhoId;
+			produtosIds[itens] = produtoId;
+			quantidades[itens] = quantidade;
+			itens++;
+		}
+
+		void limpar() {
+			Arrays.fill(datas, 0, carrinhos, null);
+			carrinhos = 0;
+			itens = 0;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package ecommerce.external.agrupado;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.external.DependenciaIndisponivelException;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.fake.EstoqueEmMemoria;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class EstoqueAgrupadoTest {
+
+    /** Longa o bastante para que só o tamanho máximo feche a janela nos testes concorrentes. */
+    private static final Duration JANELA_LONGA = Duration.ofSeconds(10);
+
+    private EstoqueEmMemoria memoria;
+    private EstoqueContado estoque;
+    private SimpleMeterRegistry registry;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        memoria = new EstoqueEmMemoria(100);
+        memoria.repor(1L, 10L);
+        memoria.repor(2L, 3L);
+        memoria.repor(3L, 0L);
+        estoque = new EstoqueContado(memoria);
+        registry = new SimpleMeterRegistry();
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void encerrar() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void verificarDisponibilidade_consultasNaMesmaJanela_umaChamadaComRespostaPorConsulta() throws Exception {
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, JANELA_LONGA, 3, registry);
+
+        List<DisponibilidadeDTO> respostas = emParalelo(agrupado,
+                itens(new long[] { 1L, 2L }, new long[] { 1L, 1L }),
+                itens(new long[] { 1L, 3L }, new long[] { 1L, 1L }),
+                itens(new long[] { 2L }, new long[] { 1L }));
+
+        assertEquals(1, estoque.consultas.size());
+        assertEquals(new DisponibilidadeDTO(true, List.of()), respostas.get(0));
+        assertEquals(new DisponibilidadeDTO(false, List.of(3L)), respostas.get(1));
+        assertEquals(new DisponibilidadeDTO(true, List.of()), respostas.get(2));
+        assertEquals(3.0, registry.get("estoque.agrupamento.tamanho").summary().mean());
+    }
+
+    @Test
+    void verificarDisponibilidade_tamanhoMaximo_limitaConsultasPorChamada() throws Exception {
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, JANELA_LONGA, 2, registry);
+        ItensEstoqueDTO itens = itens(new long[] { 1L }, new long[] { 1L });
+
+        List<DisponibilidadeDTO> respostas = emParalelo(agrupado, itens, itens, itens, itens);
+
+        assertEquals(2, estoque.consultas.size());
+        assertEquals(4, respostas.stream().filter(DisponibilidadeDTO::disponivel).count());
+        assertEquals(2.0, registry.get("estoque.agrupamento.tamanho").summary().max());
+    }
+
+    @Test
+    void verificarDisponibilidade_janelaSemOutrasConsultas_terminaNoTempoDaJanela() {
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ofMillis(5), 64, registry);
+
+        DisponibilidadeDTO resposta = agrupado.verificarDisponibilidade(itens(new long[] { 2L }, new long[] { 4L }));
+
+        assertEquals(new DisponibilidadeDTO(false, List.of(2L)), resposta);
+        assertEquals(1, estoque.consultas.size());
+    }
+
+    @Test
+    void verificarDisponibilidade_quantidadeMenorQueOMaximoIndisponivel_refazConsultaSozinha() throws Exception {
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, JANELA_LONGA, 2, registry);
+
+        // Produto 2 tem 3 unidades: a chamada agrupada pergunta por 5 e não responde quem pediu 2
+        List<DisponibilidadeDTO> respostas = emParalelo(agrupado,
+                itens(new long[] { 2L }, new long[] { 5L }),
+                itens(new long[] { 2L }, new long[] { 2L }));
+
+        assertEquals(new DisponibilidadeDTO(false, List.of(2L)), respostas.get(0));
+        assertEquals(new DisponibilidadeDTO(true, List.of()), respostas.get(1));
+        assertEquals(2, estoque.consultas.size());
+        assertEquals(1.0, registry.get("estoque.agrupamento.refeitas").counter().count());
+    }
+
+    @Test
+    void verificarDisponibilidade_indisponivelSemProdutosApontados_refazTodasAsConsultas() throws Exception {
+        estoque.omitirIndisponiveis = true;
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, JANELA_LONGA, 2, registry);
+
+        List<DisponibilidadeDTO> respostas = emParalelo(agrupado,
+                itens(new long[] { 3L }, new long[] { 1L }),
+                itens(new long[] { 1L }, new long[] { 1L }));
+
+        // Sem os ids, a chamada agrupada não diz qual consulta falhou
+        assertFalse(respostas.get(0).disponivel());
+        assertTrue(respostas.get(1).disponivel());
+        assertEquals(3, estoque.consultas.size());
+        assertEquals(2.0, registry.get("estoque.agrupamento.refeitas").counter().count());
+    }
+
+    @Test
+    void verificarDisponibilidade_falhaNaChamadaAgrupada_propagaParaTodos() throws Exception {
+        DependenciaIndisponivelException falha = new DependenciaIndisponivelException("Circuito aberto.", null);
+        estoque.falha = falha;
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, JANELA_LONGA, 2, registry);
+        ItensEstoqueDTO itens = itens(new long[] { 1L }, new long[] { 1L });
+
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<RuntimeException>> erros = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            erros.add(executor.submit(() -> {
+                largada.await();
+                return assertThrows(RuntimeException.class, () -> agrupado.verificarDisponibilidade(itens));
+            }));
+        }
+        largada.countDown();
+
+        for (Future<RuntimeException> erro : erros) {
+            assertSame(falha, erro.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, estoque.consultas.size());
+    }
+
+    @Test
+    void verificarDisponibilidade_janelaZero_chamaDiretoSemAgrupar() {
+        EstoqueAgrupado agrupado = new EstoqueAgrupado(estoque, Duration.ZERO, 64, registry);
+
+        assertTrue(agrupado.verificarDisponibilidade(itens(new long[] { 1L }, new long[] { 1L })).disponivel());
+        assertFalse(agrupado.darBaixa(itens(new long[] { 3L }, new long[] { 1L })).sucesso());
+
+        assertEquals(1, estoque.consultas.size());
+        assertEquals(0, registry.get("estoque.agrupamento.tamanho").summary().count());
+    }
+
+    private List<DisponibilidadeDTO> emParalelo(EstoqueAgrupado agrupado, ItensEstoqueDTO... consultas)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<DisponibilidadeDTO>> futuros = new ArrayList<>();
+        for (ItensEstoqueDTO consulta : consultas) {
+            futuros.add(executor.submit(() -> {
+                largada.await();
+                return agrupado.verificarDisponibilidade(consulta);
+            }));
+        }
+        largada.countDown();
+
+        List<DisponibilidadeDTO> respostas = new ArrayList<>();
+        for (Future<DisponibilidadeDTO> futuro : futuros) {
+            respostas.add(futuro.get(5, TimeUnit.SECONDS));
+        }
+        return respostas;
+    }
+
+    private static ItensEstoqueDTO itens(long[] ids, long[] quantidades) {
+        return new ItensEstoqueDTO(ids, quantidades);
+    }
+
+    /** Registra as consultas que chegam ao estoque. */
+    private static final class EstoqueContado implements IEstoqueExternal {
+        private final IEstoqueExternal estoque;
+        private final List<ItensEstoqueDTO> consultas = new CopyOnWriteArrayList<>();
+        private volatile RuntimeException falha;
+        // Responde indisponível sem apontar os produtos, como alguns estoques fazem
+        private volatile boolean omitirIndisponiveis;
+
+        private EstoqueContado(IEstoqueExternal estoque) {
+            this.estoque = estoque;
+        }
+
+        @Override
+        public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
+            consultas.add(itens);
+            if (falha != null) {
+                throw falha;
+            }
+            DisponibilidadeDTO resposta = estoque.verificarDisponibilidade(itens);
+            if (omitirIndisponiveis && !resposta.disponivel()) {
+                return new DisponibilidadeDTO(false, null);
+            }
+            return resposta;
+        }
+
+        @Override
+        public EstoqueBaixaDTO darBaixa(ItensEstoqueDTO itens) {
+            return estoque.darBaixa(itens);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ecommerce.external.fake;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+
+public class EstoqueEmMemoriaTest {
+
+    private EstoqueEmMemoria estoque;
+
+    @BeforeEach
+    void setUp() {
+        estoque = new EstoqueEmMemoria(1_000);
+        estoque.repor(1L, 10L);
+        estoque.repor(2L, 5L);
+    }
+
+    @Test
+    void darBaixa_quantidadesDisponiveis_decrementaTodosOsProdutos() {
+        assertTrue(estoque.darBaixa(ItensEstoqueDTO.de(List.of(1L, 2L), List.of(3L, 5L))).sucesso());
+
+        assertEquals(7L, estoque.quantidade(1L));
+        assertEquals(0L, estoque.quantidade(2L));
+    }
+
+    @Test
+    void darBaixa_umProdutoSemSaldo_naoAlteraNenhumProduto() {
+        assertFalse(estoque.darBaixa(ItensEstoqueDTO.de(List.of(1L, 2L), List.of(3L, 6L))).sucesso());
+
+        assertEquals(10L, estoque.quantidade(1L));
+        assertEquals(5L, estoque.quantidade(2L));
+    }
+
+    @Test
+    void darBaixa_produtoRepetido_somaAsQuantidades() {
+        assertFalse(estoque.darBaixa(ItensEstoqueDTO.de(List.of(2L, 1L, 2L), List.of(3L, 1L, 3L))).sucesso());
+        assertTrue(estoque.darBaixa(ItensEstoqueDTO.de(List.of(2L, 1L, 2L), List.of(2L, 1L, 3L))).sucesso());
+
+        assertEquals(9L, estoque.quantidade(1L));
+        assertEquals(0L, estoque.quantidade(2L));
+    }
+
+    @Test
+    void darBaixa_produtoNaoCadastrado_falha() {
+        assertFalse(estoque.darBaixa(ItensEstoqueDTO.de(List.of(1L, 99L), List.of(1L, 1L))).sucesso());
+        assertEquals(10L, estoque.quantidade(1L));
+    }
+
+    @Test
+    void verificarDisponibilidade_retornaProdutosSemSaldoOuNaoCadastrados() {
+        DisponibilidadeDTO disponibilidade = estoque.verificarDisponibilidade(
+                ItensEstoqueDTO.de(List.of(1L, 2L, 99L, 2L), List.of(10L, 3L, 1L, 3L)));
+
+        assertFalse(disponibilidade.disponivel());
+        assertEquals(List.of(99L, 2L), disponibilidade.idsProdutosIndisponiveis());
+        assertEquals(5L, estoque.quantidade(2L));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void darBaixaEmListas_formatoAntigo_convertidoParaItensEstoque() {
+        assertTrue(estoque.darBaixa(List.of(1L, 2L, 1L), List.of(3L, 5L, 2L)).sucesso());
+        assertFalse(estoque.verificarDisponibilidade(List.of(1L), List.of(6L)).disponivel());
+
+        assertEquals(5L, estoque.quantidade(1L));
+        assertEquals(0L, estoque.quantidade(2L));
+    }
+
+    @Test
+    void darBaixa_concorrente_nuncaVendeMaisDoQueOEstoque() throws Exception {
+        int produtos = 64;
+        long saldoInicial = 1_000L;
+        EstoqueEmMemoria estoqueConcorrente = new EstoqueEmMemoria(produtos, 8);
+        for (long id = 1; id <= produtos; id++) {
+            estoqueConcorrente.repor(id, saldoInicial);
+        }
+
+        int threads = 8;
+        int baixasPorThread = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch largada = new CountDownLatch(1);
+        AtomicInteger vendidos = new AtomicInteger();
+        List<Future<?>> tarefas = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int semente = t;
+            tarefas.add(executor.submit(() -> {
+                largada.await();
+                for (int i = 0; i < baixasPorThread; i++) {
+                    // Carrinhos de um e de três produtos, sempre incluindo o produto 1
+                    long outro = 2 + (semente * 31L + i) % (produtos - 1);
+                    List<Long> ids = i % 2 == 0 ? List.of(1L) : List.of(outro, 1L, 2 + (outro % (produtos - 1)));
+                    List<Long> quantidades = i % 2 == 0 ? List.of(1L) : List.of(1L, 1L, 1L);
+                    if (estoqueConcorrente.darBaixa(ItensEstoqueDTO.de(ids, quantidades)).sucesso()) {
+                        vendidos.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        largada.countDown();
+        for (Future<?> tarefa : tarefas) {
+            tarefa.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Todo carrinho leva uma unidade do produto 1: o saldo limita as vendas
+        assertEquals(saldoInicial, vendidos.get());
+        assertEquals(0L, estoqueConcorrente.quantidade(1L));
+        for (long id = 2; id <= produtos; id++) {
+            assertTrue(estoqueConcorrente.quantidade(id) >= 0);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ecommerce.external.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.external.fake.EstoqueEmMemoria;
+import ecommerce.external.fake.PagamentoSimulado;
+
+/**
+ * Sobe o contexto com o perfil {@code http} e faz as chamadas de estoque e
+ * pagamento atravessarem os clientes Feign até o {@link ServidorExternoLocal}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("http")
+public class ExternosHttpTest {
+
+    private static final EstoqueEmMemoria ESTOQUE = new EstoqueEmMemoria(100);
+    private static final List<Long> CANCELAMENTOS = new ArrayList<>();
+    private static ServidorExternoLocal servidor;
+
+    @Autowired
+    private IEstoqueExternal estoqueExternal;
+
+    @Autowired
+    private IPagamentoExternal pagamentoExternal;
+
+    @BeforeAll
+    static void iniciarServidor() throws Exception {
+        ESTOQUE.repor(1L, 10L);
+        ESTOQUE.repor(2L, 1L);
+        servidor = new ServidorExternoLocal(ESTOQUE, new PagamentoSimulado(true, 42L) {
+            @Override
+            public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId) {
+                CANCELAMENTOS.add(pagamentoTransacaoId);
+            }
+        }, 4);
+    }
+
+    @AfterAll
+    static void pararServidor() {
+        servidor.close();
+    }
+
+    @DynamicPropertySource
+    static void urls(DynamicPropertyRegistry propriedades) {
+        propriedades.add("externos.estoque.url", () -> servidor.url());
+        propriedades.add("externos.pagamento.url", () -> servidor.url());
+    }
+
+    @Test
+    void estoque_consultaEBaixaPeloClienteHttp() {
+        ItensEstoqueDTO itens = new ItensEstoqueDTO(new long[] { 1L, 2L }, new long[] { 3L, 2L });
+
+        DisponibilidadeDTO disponibilidade = estoqueExternal.verificarDisponibilidade(itens);
+        assertFalse(disponibilidade.disponivel());
+        assertEquals(List.of(2L), disponibilidade.idsProdutosIndisponiveis());
+
+        assertTrue(estoqueExternal.darBaixa(new ItensEstoqueDTO(new long[] { 1L }, new long[] { 3L })).sucesso());
+        assertEquals(7L, ESTOQUE.quantidade(1L));
+    }
+
+    @Test
+    void pagamento_autorizaECancelaPeloClienteHttp() {
+        PagamentoDTO pagamento = pagamentoExternal.autorizarPagamento(5L, 123.45);
+        pagamentoExternal.cancelarPagamento(5L, pagamento.transacaoId());
+
+        assertTrue(pagamento.autorizado());
+        assertEquals(42L, pagamento.transacaoId());
+        assertEquals(List.of(42L), CANCELAMENTOS);
+    }
+}
@@ -0,0 +1,120 @@
+package ecommerce.external.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+
+/**
+ * Servidor HTTP embutido que expõe um {@link IEstoqueExternal} e um
+ * {@link IPagamentoExternal} em processo com o mesmo contrato de
+ * {@link EstoqueClient} e {@link PagamentoClient}. Usado nos testes de
+ * integração e nos benchmarks dos clientes HTTP.
+ */
+public class ServidorExternoLocal implements AutoCloseable {
+
+    static {
+        // Sem isso o atraso de ACK do TCP (Nagle) soma ~40ms a cada resposta
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer servidor;
+    private final ExecutorService executor;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final IEstoqueExternal estoque;
+    private final IPagamentoExternal pagamento;
+
+    public ServidorExternoLocal(IEstoqueExternal estoque, IPagamentoExternal pagamento, int threads) throws IOException {
+        this.estoque = estoque;
+        this.pagamento = pagamento;
+
+        servidor = HttpServer.create(new InetSocketAddress("localhost", 0), 512);
+        executor = Executors.newFixedThreadPool(threads);
+        servidor.setExecutor(executor);
+        servidor.createContext("/estoque/disponibilidade", troca -> responder(troca,
+                () -> this.estoque.verificarDisponibilidade(ler(troca, ItensEstoqueDTO.class))));
+        servidor.createContext("/estoque/baixa", troca -> responder(troca,
+                () -> this.estoque.darBaixa(ler(troca, ItensEstoqueDTO.class))));
+        servidor.createContext("/pagamentos/autorizacao", troca -> responder(troca, () -> {
+            Map<String, String> parametros = parametros(troca.getRequestURI());
+            return this.pagamento.autorizarPagamento(Long.valueOf(parametros.get("clienteId")),
+                    Double.valueOf(parametros.get("custoTotal")));
+        }));
+        servidor.createContext("/pagamentos/", troca -> responder(troca, () -> {
+            // /pagamentos/{transacaoId}/cancelamento
+            String[] partes = troca.getRequestURI().getPath().split("/");
+            Map<String, String> parametros = parametros(troca.getRequestURI());
+            this.pagamento.cancelarPagamento(Long.valueOf(parametros.get("clienteId")), Long.valueOf(partes[2]));
+            return null;
+        }));
+        servidor.start();
+    }
+
+    public String url() {
+        return "http://localhost:" + servidor.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        servidor.stop(0);
+        executor.shutdownNow();
+    }
+
+    private <T> T ler(HttpExchange troca, Class<T> tipo) throws IOException {
+        try (InputStream corpo = troca.getRequestBody()) {
+            return mapper.readValue(corpo, tipo);
+        }
+    }
+
+    private void responder(HttpExchange troca, Resposta resposta) throws IOException {
+        try (troca) {
+            byte[] corpo;
+            int status;
+            try {
+                Object resultado = resposta.gerar();
+                corpo = resultado == null ? new byte[0] : mapper.writeValueAsBytes(resultado);
+                status = 200;
+            } catch (RuntimeException e) {
+                corpo = new byte[0];
+                status = 500;
+            }
+            troca.getResponseHeaders().set("Content-Type", "application/json");
+            troca.sendResponseHeaders(status, corpo.length == 0 ? -1 : corpo.length);
+            if (corpo.length > 0) {
+                try (OutputStream saida = troca.getResponseBody()) {
+                    saida.write(corpo);
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> parametros(URI uri) {
+        Map<String, String> parametros = new HashMap<>();
+        if (uri.getRawQuery() != null) {
+            for (String par : uri.getRawQuery().split("&")) {
+                int igual = par.indexOf('=');
+                parametros.put(par.substring(0, igual), par.substring(igual + 1));
+            }
+        }
+        return parametros;
+    }
+
+    @FunctionalInterface
+    private interface Resposta {
+        Object gerar() throws IOException;
+    }
+}
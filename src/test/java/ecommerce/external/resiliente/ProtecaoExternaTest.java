@@ -0,0 +1,178 @@
+package ecommerce.external.resiliente;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.external.DependenciaIndisponivelException;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.external.fake.PagamentoSimulado;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkhead;
+import io.github.resilience4j.bulkhead.ThreadPoolBulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ProtecaoExternaTest {
+
+    private static final ItensEstoqueDTO ITENS = new ItensEstoqueDTO(new long[] { 1L }, new long[] { 1L });
+
+    private SimpleMeterRegistry registry;
+    private CircuitBreaker circuitBreaker;
+    private ThreadPoolBulkhead bulkhead;
+    private CountDownLatch liberar;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        circuitBreaker = CircuitBreaker.of("teste", CircuitBreakerConfig.custom()
+                .slidingWindowSize(4)
+                .minimumNumberOfCalls(4)
+                .failureRateThreshold(50)
+                .waitDurationInOpenState(Duration.ofMinutes(1))
+                .build());
+        bulkhead = ThreadPoolBulkhead.of("teste", ThreadPoolBulkheadConfig.custom()
+                .coreThreadPoolSize(1)
+                .maxThreadPoolSize(1)
+                .queueCapacity(1)
+                .build());
+        liberar = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        liberar.countDown();
+        bulkhead.close();
+    }
+
+    @Test
+    void autorizarPagamento_servicoLento_falhaPorTempoLimite() {
+        PagamentoResiliente pagamento = new PagamentoResiliente(new PagamentoLento(liberar), protecao(50));
+
+        DependenciaIndisponivelException exception = assertThrows(DependenciaIndisponivelException.class,
+                () -> pagamento.autorizarPagamento(1L, 10.0));
+
+        assertEquals("Serviço de teste não respondeu a tempo.", exception.getMessage());
+        assertTrue(exception.podeTerSidoExecutada());
+        assertEquals(1.0, rejeicoes("tempo-limite"));
+    }
+
+    @Test
+    void verificarDisponibilidade_falhasRepetidas_abreOCircuitoESemChamarOServico() {
+        EstoqueComFalha estoqueComFalha = new EstoqueComFalha();
+        EstoqueResiliente estoque = new EstoqueResiliente(estoqueComFalha, protecao(1_000));
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IllegalStateException.class, () -> estoque.verificarDisponibilidade(ITENS));
+        }
+        DependenciaIndisponivelException exception = assertThrows(DependenciaIndisponivelException.class,
+                () -> estoque.verificarDisponibilidade(ITENS));
+
+        assertEquals("Serviço de teste indisponível.", exception.getMessage());
+        assertFalse(exception.podeTerSidoExecutada());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(4, estoqueComFalha.chamadas.get());
+        assertEquals(1.0, rejeicoes("circuito-aberto"));
+    }
+
+    @Test
+    void autorizarPagamento_limiteDeConcorrenciaAtingido_recusaSemContarComoFalha() throws Exception {
+        PagamentoLento lento = new PagamentoLento(liberar);
+        PagamentoResiliente pagamento = new PagamentoResiliente(lento, protecao(5_000));
+
+        // Uma chamada em execução e outra na fila ocupam o bulkhead
+        CompletableFuture<PagamentoDTO> primeira = CompletableFuture.supplyAsync(() -> pagamento.autorizarPagamento(1L, 10.0));
+        CompletableFuture<PagamentoDTO> segunda = CompletableFuture.supplyAsync(() -> pagamento.autorizarPagamento(2L, 10.0));
+        assertTrue(lento.emExecucao.await(5, TimeUnit.SECONDS));
+        while (bulkhead.getMetrics().getRemainingQueueCapacity() > 0) {
+            Thread.onSpinWait();
+        }
+
+        DependenciaIndisponivelException exception = assertThrows(DependenciaIndisponivelException.class,
+                () -> pagamento.autorizarPagamento(3L, 10.0));
+        liberar.countDown();
+
+        assertEquals("Serviço de teste sobrecarregado.", exception.getMessage());
+        assertFalse(exception.podeTerSidoExecutada());
+        assertTrue(primeira.get(5, TimeUnit.SECONDS).autorizado());
+        assertTrue(segunda.get(5, TimeUnit.SECONDS).autorizado());
+        assertEquals(0, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+        assertEquals(1.0, rejeicoes("limite-concorrencia"));
+    }
+
+    @Test
+    void darBaixa_servicoRespondeNoPrazo_retornaResultadoDoServico() {
+        EstoqueResiliente estoque = new EstoqueResiliente(new EstoqueSimulado(null), protecao(1_000));
+
+        EstoqueBaixaDTO baixa = estoque.darBaixa(ITENS);
+
+        assertTrue(baixa.sucesso());
+        assertEquals(1, circuitBreaker.getMetrics().getNumberOfSuccessfulCalls());
+    }
+
+    private ProtecaoExterna protecao(long tempoLimiteMillis) {
+        TimeLimiter timeLimiter = TimeLimiter.of(TimeLimiterConfig.custom()
+                .timeoutDuration(Duration.ofMillis(tempoLimiteMillis))
+                .build());
+        return new ProtecaoExterna("teste", circuitBreaker, bulkhead, timeLimiter, registry);
+    }
+
+    private double rejeicoes(String motivo) {
+        return registry.get("compra.externo.rejeicoes").tag("motivo", motivo).counter().count();
+    }
+
+    /** Pagamento que só responde quando o teste libera. */
+    private static final class PagamentoLento extends PagamentoSimulado {
+        private final CountDownLatch liberar;
+        private final CountDownLatch emExecucao = new CountDownLatch(1);
+
+        PagamentoLento(CountDownLatch liberar) {
+            super(true, 1L);
+            this.liberar = liberar;
+        }
+
+        @Override
+        public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+            emExecucao.countDown();
+            try {
+                liberar.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.autorizarPagamento(clienteId, custoTotal);
+        }
+    }
+
+    /** Estoque que sempre falha, contando as chamadas recebidas. */
+    private static final class EstoqueComFalha extends EstoqueSimulado {
+        private final AtomicInteger chamadas = new AtomicInteger();
+
+        EstoqueComFalha() {
+            super(List.of());
+        }
+
+        @Override
+        public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
+            chamadas.incrementAndGet();
+            throw new IllegalStateException("Estoque fora do ar");
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package ecommerce.massa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.TipoCliente;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+
+/**
+ * Gera massas pequenas no H2 do teste, sem a transação do teste (o gerador
+ * abre uma por lote), e confere quantidades, distribuições e que a aplicação
+ * continua inserindo normalmente depois da massa.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class GeradorDeMassaTest {
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transacoes;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private CarrinhoDeComprasRepository carrinhoRepository;
+
+    private GeradorDeMassa gerador;
+
+    @BeforeEach
+    void setUp() {
+        gerador = new GeradorDeMassa(jdbc, transacoes);
+    }
+
+    @AfterEach
+    void limpar() {
+        for (String tabela : List.of("item_compra", "carrinho_de_compras", "cliente", "produto")) {
+            jdbc.update("delete from " + tabela);
+        }
+    }
+
+    private static ParametrosDaMassa parametros(int clientes, int produtos, int carrinhos, String tipos, String itens,
+            double zipf, int lote) {
+        return new ParametrosDaMassa(clientes, produtos, carrinhos, Mistura.de(tipos, TipoCliente::valueOf),
+                Mistura.de(itens, Integer::valueOf), new BigDecimal("2.50"), new BigDecimal("9.99"), 1, 4, zipf, 3,
+                lote, 42L, true);
+    }
+
+    private long contar(String tabela) {
+        return jdbc.queryForObject("select count(*) from " + tabela, Long.class);
+    }
+
+    @Test
+    void gerar_lotesMenoresQueAMassa_gravaTodasAsLinhasEDevolveResumo() {
+        // Lote de 64 linhas com carrinhos de até 100 itens: vários lotes e carrinhos maiores que o lote
+        GeradorDeMassa.Resumo resumo = gerador.gerar(parametros(50, 300, 200, "BRONZE,PRATA,OURO", "1,5,100", 1.0, 64));
+
+        assertEquals(50, contar("cliente"));
+        assertEquals(300, contar("produto"));
+        assertEquals(200, contar("carrinho_de_compras"));
+        assertEquals(resumo.itens(), contar("item_compra"));
+        assertEquals(200, resumo.carrinhos());
+        assertTrue(resumo.linhasPorSegundo() > 0);
+    }
+
+    @Test
+    void gerar_carrinhosLegiveisPeloJpaComItensDistintosEValoresNasFaixas() {
+        gerador.gerar(parametros(20, 500, 50, "PRATA", "10", 1.0, 100));
+
+        List<Long> ids = jdbc.queryForList("select id from carrinho_de_compras", Long.class);
+        for (CarrinhoDeCompras carrinho : carrinhoRepository.findAllComItensByIdIn(ids)) {
+            assertEquals(TipoCliente.PRATA, carrinho.getCliente().getTipo());
+            assertEquals(10, carrinho.getItens().size());
+            assertEquals(10, carrinho.getItens().stream().map(item -> item.getProduto().getId()).distinct().count());
+            for (ItemCompra item : carrinho.getItens()) {
+                assertTrue(item.getQuantidade() >= 1 && item.getQuantidade() <= 3);
+                assertTrue(item.getProduto().getPeso() >= 1 && item.getProduto().getPeso() <= 4);
+                assertTrue(item.getProduto().getPreco().compareTo(new BigDecimal("2.50")) >= 0);
+                assertTrue(item.getProduto().getPreco().compareTo(new BigDecimal("9.99")) <= 0);
+            }
+        }
+    }
+
+    @Test
+    void gerar_depoisDaMassa_insercoesDaAplicacaoNaoColidemComOsIds() {
+        gerador.gerar(parametros(30, 30, 30, "OURO", "2", 0, 16));
+        long maiorId = jdbc.queryForObject("select max(id) from cliente", Long.class);
+
+        Cliente novo = clienteRepository.save(new Cliente(null, "Novo", "Rua B", TipoCliente.BRONZE));
+
+        assertTrue(novo.getId() > maiorId);
+    }
+
+    @Test
+    void gerar_falhaNoMeioDosCarrinhos_recriaChavesEReiniciaIdentidades() {
+        IllegalStateException falha = new IllegalStateException("Interrompida.");
+        assertThrows(IllegalStateException.class, () -> gerador.gerar(parametros(10, 10, 40, "OURO", "1", 0, 8),
+                (carrinhoId, clienteId, tipo, itens) -> {
+                    if (contar("carrinho_de_compras") >= 16) {
+                        throw falha;
+                    }
+                }));
+        long maiorId = jdbc.queryForObject("select max(id) from carrinho_de_compras", Long.class);
+
+        Cliente cliente = clienteRepository.findAll().get(0);
+        CarrinhoDeCompras novo = carrinhoRepository.save(new CarrinhoDeCompras(null, cliente, List.of(), null));
+
+        assertTrue(novo.getId() > maiorId);
+        assertEquals(3, jdbc.queryForObject("select count(*) from information_schema.table_constraints "
+                + "where constraint_type = 'FOREIGN KEY' and table_name in ('CARRINHO_DE_COMPRAS', 'ITEM_COMPRA')",
+                Long.class));
+    }
+
+    @Test
+    void gerar_chavesEstrangeirasAdiadas_recriaAsChavesNoFinal() {
+        gerador.gerar(parametros(5, 5, 5, "BRONZE", "1", 0, 8));
+
+        assertEquals(3, jdbc.queryForObject("select count(*) from information_schema.table_constraints "
+                + "where constraint_type = 'FOREIGN KEY' and table_name in ('CARRINHO_DE_COMPRAS', 'ITEM_COMPRA')",
+                Long.class));
+        assertThrows(DataIntegrityViolationException.class, () -> jdbc
+                .update("insert into item_compra (id, carrinho_id, produto_id, quantidade) values (-1, -1, -1, 1)"));
+    }
+
+    @Test
+    void gerar_semAdiarChavesEstrangeiras_geraAMesmaMassa() {
+        ParametrosDaMassa adiando = parametros(20, 50, 40, "BRONZE,OURO", "1,4", 1.0, 16);
+        gerador.gerar(adiando);
+        List<Map<String, Object>> itensAdiando = jdbc.queryForList("select * from item_compra order by id");
+        limpar();
+
+        gerador.gerar(new ParametrosDaMassa(adiando.clientes(), adiando.produtos(), adiando.carrinhos(), adiando.tipos(),
+                adiando.itensPorCarrinho(), adiando.precoMinimo(), adiando.precoMaximo(), adiando.pesoMinimo(),
+                adiando.pesoMaximo(), adiando.zipf(), adiando.quantidadeMaxima(), adiando.lote(), adiando.semente(),
+                false));
+
+        // Os ids continuam dos anteriores; o resto das linhas é igual
+        List<Map<String, Object>> itens = jdbc.queryForList("select * from item_compra order by id");
+        assertEquals(itensAdiando.size(), itens.size());
+        for (int i = 0; i < itens.size(); i++) {
+            assertEquals(itensAdiando.get(i).get("QUANTIDADE"), itens.get(i).get("QUANTIDADE"));
+        }
+    }
+
+    @Test
+    void gerar_segundaMassa_continuaDosMaioresIds() {
+        gerador.gerar(parametros(10, 10, 10, "BRONZE", "1", 0, 8));
+        gerador.gerar(parametros(10, 10, 10, "BRONZE", "1", 0, 8));
+
+        assertEquals(20, contar("cliente"));
+        assertEquals(20, contar("carrinho_de_compras"));
+    }
+
+    @Test
+    void gerar_observadorRecebeCadaCarrinhoComClienteTipoEItens() {
+        Map<Long, Integer> itensPorCarrinho = new HashMap<>();
+        Map<Long, TipoCliente> tipoPorCarrinho = new HashMap<>();
+        gerador.gerar(parametros(40, 100, 120, "BRONZE:1,PRATA:1,OURO:1", "1,3,7", 1.0, 32),
+                (carrinhoId, clienteId, tipo, itens) -> {
+                    itensPorCarrinho.put(carrinhoId, itens);
+                    tipoPorCarrinho.put(carrinhoId, tipo);
+                });
+
+        assertEquals(120, itensPorCarrinho.size());
+        jdbc.query("select c.id, cl.tipo, (select count(*) from item_compra i where i.carrinho_id = c.id) "
+                + "from carrinho_de_compras c join cliente cl on cl.id = c.cliente_id", linha -> {
+                    long id = linha.getLong(1);
+                    assertEquals(TipoCliente.valueOf(linha.getString(2)), tipoPorCarrinho.get(id));
+                    assertEquals(linha.getInt(3), itensPorCarrinho.get(id));
+                });
+    }
+
+    @Test
+    void gerar_misturaDeTipos_respeitaOsPesos() {
+        gerador.gerar(parametros(2000, 10, 0, "BRONZE:0,PRATA:3,OURO:1", "1", 0, 500));
+
+        long prata = jdbc.queryForObject("select count(*) from cliente where tipo = 'PRATA'", Long.class);
+        long ouro = jdbc.queryForObject("select count(*) from cliente where tipo = 'OURO'", Long.class);
+
+        assertEquals(2000, prata + ouro);
+        assertTrue(prata > 1350 && prata < 1650, "PRATA: " + prata);
+    }
+
+    @Test
+    void gerar_zipf_concentraOsItensNosProdutosMaisPopulares() {
+        gerador.gerar(parametros(10, 1000, 2000, "BRONZE", "5", 1.0, 1000));
+
+        // Com expoente 1, os 10 produtos mais populares (1%) levam perto de 39% dos itens
+        assertTrue(participacaoDos10MaisVendidos() > 0.30);
+    }
+
+    @Test
+    void gerar_zipfZero_espalhaOsItensPeloCatalogo() {
+        gerador.gerar(parametros(10, 1000, 2000, "BRONZE", "5", 0, 1000));
+
+        assertTrue(participacaoDos10MaisVendidos() < 0.05);
+    }
+
+    private double participacaoDos10MaisVendidos() {
+        long top = jdbc.queryForObject("select sum(n) from (select count(*) n from item_compra group by produto_id "
+                + "order by n desc limit 10)", Long.class);
+        return (double) top / contar("item_compra");
+    }
+}
@@ -0,0 +1,260 @@
+package ecommerce.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import ecommerce.dto.CompraLoteItemDTO;
+import ecommerce.dto.CompraLoteResultadoDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.external.DependenciaIndisponivelException;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+
+public class CompraEmLoteServiceTest {
+
+    @Mock
+    private CompraService compraService;
+
+    @Mock
+    private CarrinhoDeComprasService carrinhoService;
+
+    @Mock
+    private ClienteService clienteService;
+
+    @Mock
+    private IEstoqueExternal estoqueExternal;
+
+    @Mock
+    private IPagamentoExternal pagamentoExternal;
+
+    @Mock
+    private RegistroDeCompraService registroDeCompra;
+
+    @InjectMocks
+    private CompraEmLoteService compraEmLoteService;
+
+    private Cliente cliente;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        cliente = new Cliente(1L, "Cliente", "Endereço", TipoCliente.BRONZE);
+        when(clienteService.buscarPorIds(anyCollection())).thenReturn(List.of(cliente));
+        when(compraService.calcularCustoTotal(any())).thenReturn(BigDecimal.TEN);
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 99L));
+        when(carrinhoService.reservarParaCheckout(anyCollection()))
+                .thenAnswer(invocacao -> new HashSet<Long>(invocacao.getArgument(0)));
+        // Compra registrada com o id do próprio carrinho, para as verificações abaixo
+        when(registroDeCompra.iniciar(anyLong(), anyLong(), any())).thenAnswer(invocacao -> invocacao.getArgument(0));
+    }
+
+    @Test
+    void finalizarCompras_agrupaChamadasAoEstoque_eRetornaResultadoPorCarrinho() {
+        CarrinhoDeCompras carrinho1 = carrinho(10L, 1L, 2L);
+        CarrinhoDeCompras carrinho2 = carrinho(20L, 1L, 3L);
+        when(carrinhoService.buscarPorIds(anyCollection())).thenReturn(List.of(carrinho1, carrinho2));
+        when(estoqueExternal.verificarDisponibilidade(new ItensEstoqueDTO(new long[] { 1L }, new long[] { 5L })))
+                .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+        when(estoqueExternal.darBaixa(new ItensEstoqueDTO(new long[] { 1L }, new long[] { 5L }))).thenReturn(new EstoqueBaixaDTO(true));
+
+        List<CompraLoteResultadoDTO> resultados = compraEmLoteService.finalizarCompras(List.of(
+                new CompraLoteItemDTO(10L, 1L), new CompraLoteItemDTO(30L, 1L), new CompraLoteItemDTO(20L, 1L)));
+
+        // Quantidades do mesmo produto são somadas em uma única chamada ao estoque
+        verify(estoqueExternal, times(1)).verificarDisponibilidade(any(ItensEstoqueDTO.class));
+        verify(estoqueExternal, times(1)).darBaixa(any(ItensEstoqueDTO.class));
+        verify(pagamentoExternal, times(2)).autorizarPagamento(anyLong(), anyDouble());
+
+        assertEquals(3, resultados.size());
+        assertTrue(resultados.get(0).compra().sucesso());
+        assertEquals(99L, resultados.get(0).compra().transacaoPagamentoId());
+        assertFalse(resultados.get(1).compra().sucesso());
+        assertEquals("Carrinho não encontrado.", resultados.get(1).compra().mensagem());
+        assertTrue(resultados.get(2).compra().sucesso());
+
+        // Cada carrinho percorre a saga da compra individual
+        verify(registroDeCompra).iniciar(10L, 1L, BigDecimal.TEN);
+        verify(registroDeCompra).iniciar(20L, 1L, BigDecimal.TEN);
+        verify(registroDeCompra).registrarPagamento(10L, 99L);
+        verify(registroDeCompra).registrarPagamento(20L, 99L);
+        verify(registroDeCompra).concluir(10L);
+        verify(registroDeCompra).concluir(20L);
+        verify(carrinhoService).encerrarCheckout(List.of(10L, 20L), List.of());
+    }
+
+    @Test
+    void finalizarCompras_produtoIndisponivelNoLote_verificaSomenteCarrinhosAfetados() {
+        CarrinhoDeCompras carrinho1 = carrinho(10L, 1L, 1L);
+        CarrinhoDeCompras carrinho2 = carrinho(20L, 2L, 1L);
+        when(carrinhoService.buscarPorIds(anyCollection())).thenReturn(List.of(carrinho1, carrinho2));
+        when(estoqueExternal.verificarDisponibilidade(new ItensEstoqueDTO(new long[] { 1L, 2L }, new long[] { 1L, 1L })))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(2L)));
+        when(estoqueExternal.verificarDisponibilidade(new ItensEstoqueDTO(new long[] { 2L }, new long[] { 1L })))
+                .thenReturn(new DisponibilidadeDTO(false, List.of(2L)));
+        when(estoqueExternal.darBaixa(new ItensEstoqueDTO(new long[] { 1L }, new long[] { 1L }))).thenReturn(new EstoqueBaixaDTO(true));
+
+        List<CompraLoteResultadoDTO> resultados = compraEmLoteService.finalizarCompras(
+                List.of(new CompraLoteItemDTO(10L, 1L), new CompraLoteItemDTO(20L, 1L)));
+
+        verify(estoqueExternal, times(2)).verificarDisponibilidade(any(ItensEstoqueDTO.class));
+        verify(pagamentoExternal, times(1)).autorizarPagamento(anyLong(), anyDouble());
+        assertTrue(resultados.get(0).compra().sucesso());
+        assertFalse(resultados.get(1).compra().sucesso());
+        assertEquals("Itens fora de estoque.", resultados.get(1).compra().mensagem());
+        verify(registroDeCompra).recusar(20L, "Itens fora de estoque.");
+    }
+
+    @Test
+    void finalizarCompras_baixaAgrupadaRecusada_baixaPorCarrinhoECancelaPagamentoDosQueFalham() {
+        CarrinhoDeCompras carrinho1 = carrinho(10L, 1L, 1L);
+        CarrinhoDeCompras carrinho2 = carrinho(20L, 2L, 1L);
+        when(carrinhoService.buscarPorIds(anyCollection())).thenReturn(List.of(carrinho1, carrinho2));
+        when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+                .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+        when(estoqueExternal.darBaixa(new ItensEstoqueDTO(new long[] { 1L, 2L }, new long[] { 1L, 1L }))).thenReturn(new EstoqueBaixaDTO(false));
+        when(estoqueExternal.darBaixa(new ItensEstoqueDTO(new long[] { 1L }, new long[] { 1L }))).thenReturn(new EstoqueBaixaDTO(true));
+        when(estoqueExternal.darBaixa(new ItensEstoqueDTO(new long[] { 2L }, new long[] { 1L }))).thenReturn(new EstoqueBaixaDTO(false));
+
+        List<CompraLoteResultadoDTO> resultados = compraEmLoteService.finalizarCompras(
+                List.of(new CompraLoteItemDTO(10L, 1L), new CompraLoteItemDTO(20L, 1L)));
+
+        verify(registroDeCompra, times(1)).cancelar(20L, 1L, 99L, "Erro ao dar baixa no estoque.");
+        verify(registroDeCompra, never()).concluir(20L);
+        verify(pagamentoExternal, never()).cancelarPagamento(anyLong(), anyLong());
+        assertTrue(resultados.get(0).compra().sucesso());
+        assertFalse(resultados.get(1).compra().sucesso());
+        assertEquals("Erro ao dar baixa no estoque.", resultados.get(1).compra().mensagem());
+    }
+
+    @Test
+    void finalizarCompras_pagamentoSemResposta_marcaIncertaEMantemCarrinhoReservado() {
+        CarrinhoDeCompras carrinho1 = carrinho(10L, 1L, 1L);
+        CarrinhoDeCompras carrinho2 = carrinho(20L, 2L, 1L);
+        when(carrinhoService.buscarPorIds(anyCollection())).thenReturn(List.of(carrinho1, carrinho2));
+        when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+                .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble()))
+                .thenThrow(new DependenciaIndisponivelException("Serviço de pagamento indisponível.", null))
+                .thenReturn(new PagamentoDTO(true, 99L));
+        when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(new EstoqueBaixaDTO(true));
+
+        List<CompraLoteResultadoDTO> resultados = compraEmLoteService.finalizarCompras(
+                List.of(new CompraLoteItemDTO(10L, 1L), new CompraLoteItemDTO(20L, 1L)));
+
+        verify(registroDeCompra).marcarPagamentoIncerto(eq(10L), anyString());
+        verify(registroDeCompra, never()).recusar(eq(10L), anyString());
+        assertFalse(resultados.get(0).compra().sucesso());
+        assertEquals(CompraService.PAGAMENTO_INCERTO, resultados.get(0).compra().mensagem());
+        assertTrue(resultados.get(1).compra().sucesso());
+        // O carrinho de pagamento incerto não é liberado nem concluído
+        verify(carrinhoService).encerrarCheckout(List.of(20L), List.of());
+    }
+
+    @Test
+    void finalizarCompras_baixaAgrupadaSemResposta_marcaTodasIncertasSemCancelarPagamentos() {
+        CarrinhoDeCompras carrinho1 = carrinho(10L, 1L, 1L);
+        CarrinhoDeCompras carrinho2 = carrinho(20L, 2L, 1L);
+        when(carrinhoService.buscarPorIds(anyCollection())).thenReturn(List.of(carrinho1, carrinho2));
+        when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+                .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+        when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class)))
+                .thenThrow(new DependenciaIndisponivelException("Serviço de estoque não respondeu a tempo.", null));
+
+        List<CompraLoteResultadoDTO> resultados = compraEmLoteService.finalizarCompras(
+                List.of(new CompraLoteItemDTO(10L, 1L), new CompraLoteItemDTO(20L, 1L)));
+
+        verify(registroDeCompra).marcarBaixaIncerta(10L, "Serviço de estoque não respondeu a tempo.");
+        verify(registroDeCompra).marcarBaixaIncerta(20L, "Serviço de estoque não respondeu a tempo.");
+        verify(registroDeCompra, never()).cancelar(anyLong(), anyLong(), anyLong(), anyString());
+        assertEquals(CompraService.BAIXA_INCERTA, resultados.get(0).compra().mensagem());
+        verify(carrinhoService).encerrarCheckout(List.of(), List.of());
+    }
+
+    @Test
+    void finalizarCompras_pagamentoRecusadoAntesDoEnvio_recusaCompraELiberaCarrinho() {
+        when(carrinhoService.buscarPorIds(anyCollection())).thenReturn(List.of(carrinho(10L, 1L, 1L)));
+        when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+                .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+        when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble()))
+                .thenThrow(new DependenciaIndisponivelException("Circuito aberto.", null, false));
+
+        List<CompraLoteResultadoDTO> resultados = compraEmLoteService.finalizarCompras(
+                List.of(new CompraLoteItemDTO(10L, 1L)));
+
+        verify(registroDeCompra).recusar(10L, "Circuito aberto.");
+        verify(registroDeCompra, never()).marcarPagamentoIncerto(anyLong(), anyString());
+        assertEquals("Circuito aberto.", resultados.get(0).compra().mensagem());
+        verify(carrinhoService).encerrarCheckout(List.of(), List.of(10L));
+    }
+
+    @Test
+    void finalizarCompras_registroDoPagamentoFalha_agendaEstornoComACompra() {
+        when(carrinhoService.buscarPorIds(anyCollection())).thenReturn(List.of(carrinho(10L, 1L, 1L)));
+        when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+                .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+        doThrow(new IllegalStateException("Compra 10 não está no status esperado."))
+                .when(registroDeCompra).registrarPagamento(10L, 99L);
+
+        List<CompraLoteResultadoDTO> resultados = compraEmLoteService.finalizarCompras(
+                List.of(new CompraLoteItemDTO(10L, 1L)));
+
+        verify(registroDeCompra).cancelarSemRegistro(10L, 1L, 99L, "Falha ao registrar o pagamento.");
+        verify(estoqueExternal, never()).darBaixa(any(ItensEstoqueDTO.class));
+        assertFalse(resultados.get(0).compra().sucesso());
+        verify(carrinhoService).encerrarCheckout(List.of(), List.of(10L));
+    }
+
+    @Test
+    void finalizarCompras_loteVazio_lancaExcecao() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> compraEmLoteService.finalizarCompras(new ArrayList<>()));
+
+        assertEquals("O lote deve ter entre 1 e 500 carrinhos.", exception.getMessage());
+        verify(estoqueExternal, never()).verificarDisponibilidade(any(ItensEstoqueDTO.class));
+    }
+
+    private CarrinhoDeCompras carrinho(Long carrinhoId, Long produtoId, Long quantidade) {
+        Produto produto = new Produto();
+        produto.setId(produtoId);
+        produto.setPreco(BigDecimal.TEN);
+        produto.setPeso(1);
+
+        ItemCompra item = new ItemCompra(carrinhoId, produto, quantidade);
+        return new CarrinhoDeCompras(carrinhoId, cliente, List.of(item), LocalDate.now());
+    }
+}
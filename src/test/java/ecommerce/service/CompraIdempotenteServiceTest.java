@@ -0,0 +1,123 @@
+package ecommerce.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import ecommerce.dto.CompraDTO;
+
+public class CompraIdempotenteServiceTest {
+
+    @Mock
+    private CompraService compraService;
+
+    private CompraIdempotenteService compraIdempotenteService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        Cache<String, CompraIdempotenteService.Execucao> cache = Caffeine.newBuilder().maximumSize(100).build();
+        compraIdempotenteService = new CompraIdempotenteService(compraService, cache);
+    }
+
+    @Test
+    void finalizarCompra_mesmaChave_executaUmaVezERetornaResultadoArmazenado() {
+        CompraDTO compra = new CompraDTO(true, 10L, "Compra finalizada com sucesso.");
+        when(compraService.finalizarCompra(1L, 1L)).thenReturn(compra);
+
+        CompraDTO primeira = compraIdempotenteService.finalizarCompra("chave-1", 1L, 1L);
+        CompraDTO repetida = compraIdempotenteService.finalizarCompra("chave-1", 1L, 1L);
+
+        assertSame(primeira, repetida);
+        verify(compraService, times(1)).finalizarCompra(1L, 1L);
+    }
+
+    @Test
+    void finalizarCompra_repeticaoConcorrente_aguardaAPrimeiraExecucao() throws Exception {
+        CountDownLatch emExecucao = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        when(compraService.finalizarCompra(1L, 1L)).thenAnswer(invocacao -> {
+            emExecucao.countDown();
+            liberar.await(5, TimeUnit.SECONDS);
+            return new CompraDTO(true, 10L, "Compra finalizada com sucesso.");
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<CompraDTO> primeira = executor.submit(() -> compraIdempotenteService.finalizarCompra("chave", 1L, 1L));
+        emExecucao.await(5, TimeUnit.SECONDS);
+        Future<CompraDTO> repetida = executor.submit(() -> compraIdempotenteService.finalizarCompra("chave", 1L, 1L));
+        liberar.countDown();
+
+        assertEquals(10L, primeira.get(5, TimeUnit.SECONDS).transacaoPagamentoId());
+        assertEquals(10L, repetida.get(5, TimeUnit.SECONDS).transacaoPagamentoId());
+        verify(compraService, times(1)).finalizarCompra(1L, 1L);
+        executor.shutdown();
+    }
+
+    @Test
+    void finalizarCompra_falhaDeNegocio_repeteAFalhaSemExecutarNovamente() {
+        when(compraService.finalizarCompra(1L, 1L)).thenThrow(new IllegalStateException("Pagamento não autorizado."));
+
+        assertThrows(IllegalStateException.class, () -> compraIdempotenteService.finalizarCompra("chave", 1L, 1L));
+        IllegalStateException repetida = assertThrows(IllegalStateException.class,
+                () -> compraIdempotenteService.finalizarCompra("chave", 1L, 1L));
+
+        assertEquals("Pagamento não autorizado.", repetida.getMessage());
+        verify(compraService, times(1)).finalizarCompra(1L, 1L);
+    }
+
+    @Test
+    void finalizarCompra_falhaInesperada_liberaAChaveParaNovaTentativa() {
+        when(compraService.finalizarCompra(1L, 1L)).thenThrow(new RuntimeException("Falha de conexão"))
+                .thenReturn(new CompraDTO(true, 10L, "Compra finalizada com sucesso."));
+
+        assertThrows(RuntimeException.class, () -> compraIdempotenteService.finalizarCompra("chave", 1L, 1L));
+        CompraDTO novaTentativa = compraIdempotenteService.finalizarCompra("chave", 1L, 1L);
+
+        assertEquals(10L, novaTentativa.transacaoPagamentoId());
+        verify(compraService, times(2)).finalizarCompra(1L, 1L);
+    }
+
+    @Test
+    void finalizarCompra_carrinhoOcupado_liberaAChaveParaNovaTentativa() {
+        when(compraService.finalizarCompra(1L, 1L)).thenThrow(new CarrinhoOcupadoException())
+                .thenReturn(new CompraDTO(true, 10L, "Compra finalizada com sucesso."));
+
+        assertThrows(CarrinhoOcupadoException.class, () -> compraIdempotenteService.finalizarCompra("chave", 1L, 1L));
+        CompraDTO novaTentativa = compraIdempotenteService.finalizarCompra("chave", 1L, 1L);
+
+        assertEquals(10L, novaTentativa.transacaoPagamentoId());
+        verify(compraService, times(2)).finalizarCompra(1L, 1L);
+    }
+
+    @Test
+    void finalizarCompra_chaveUsadaEmOutroCarrinho_lancaExcecao() {
+        when(compraService.finalizarCompra(1L, 1L)).thenReturn(new CompraDTO(true, 10L, "Compra finalizada com sucesso."));
+        compraIdempotenteService.finalizarCompra("chave", 1L, 1L);
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> compraIdempotenteService.finalizarCompra("chave", 2L, 1L));
+
+        assertEquals("Chave de idempotência já usada em outra compra.", exception.getMessage());
+        verify(compraService, never()).finalizarCompra(2L, 1L);
+    }
+}
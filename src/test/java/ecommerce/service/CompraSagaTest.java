@@ -0,0 +1,508 @@
+package ecommerce.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ecommerce.config.CacheConfig;
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.DisponibilidadeDTO;
+import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
+import ecommerce.dto.PagamentoDTO;
+import ecommerce.entity.CancelamentoPendente;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.Compra;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.StatusCarrinho;
+import ecommerce.entity.StatusCompra;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.DependenciaIndisponivelException;
+import ecommerce.external.IEstoqueExternal;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.repository.CancelamentoPendenteRepository;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+import ecommerce.repository.CompraRepository;
+import ecommerce.repository.ProdutoRepository;
+import ecommerce.service.custo.CalculadoraDeCusto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Executa o checkout pelo bean do contexto (com os proxies transacionais) e
+ * sem a transação do teste, como em uma requisição real, e confere que nenhuma chamada remota acontece dentro de uma transação e que
+ * cada desfecho fica registrado na {@link Compra}.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ CompraService.class, CarrinhoDeComprasService.class, ClienteService.class, ProdutoService.class,
+        RegistroDeCompraService.class, DespachanteDeCancelamentos.class, VerificacaoDePagamentos.class,
+        CalculadoraDeCusto.class, CacheConfig.class, CompraSagaTest.Externos.class })
+public class CompraSagaTest {
+
+    @Autowired
+    private CompraService compraService;
+
+    @Autowired
+    private RegistroDeCompraService registroDeCompra;
+
+    @Autowired
+    private DespachanteDeCancelamentos despachante;
+
+    @Autowired
+    private VerificacaoDePagamentos verificacao;
+
+    @Autowired
+    private Observador observador;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Autowired
+    private CarrinhoDeComprasRepository carrinhoRepository;
+
+    @Autowired
+    private CompraRepository compraRepository;
+
+    @Autowired
+    private CancelamentoPendenteRepository cancelamentoRepository;
+
+    private Long clienteId;
+    private Long carrinhoId;
+
+    @BeforeEach
+    void setUp() {
+        Cliente cliente = clienteRepository.save(new Cliente(null, "Cliente", "Rua A", TipoCliente.BRONZE));
+        Produto produto = produtoRepository
+                .save(new Produto(null, "Produto", "Descrição", BigDecimal.valueOf(10), 1, TipoProduto.LIVRO));
+        CarrinhoDeCompras carrinho = carrinhoRepository.save(new CarrinhoDeCompras(null, cliente,
+                new ArrayList<>(List.of(new ItemCompra(null, produto, 2L))), LocalDate.now()));
+
+        clienteId = cliente.getId();
+        carrinhoId = carrinho.getId();
+    }
+
+    @AfterEach
+    void limpar() {
+        cancelamentoRepository.deleteAll();
+        compraRepository.deleteAll();
+        carrinhoRepository.deleteAll();
+        produtoRepository.deleteAll();
+        clienteRepository.deleteAll();
+        observador.chamadasEmTransacao.clear();
+        observador.cancelamentos.clear();
+        observador.pagamentoAutorizado = true;
+        observador.baixaAceita = true;
+        observador.falhaNaAutorizacao = null;
+        observador.falhaNaBaixa = null;
+        observador.autorizacoes.set(0);
+        observador.baixas.set(0);
+    }
+
+    @Test
+    void finalizarCompra_chamadasRemotasForaDeTransacao_compraConcluida() {
+        compraService.finalizarCompra(carrinhoId, clienteId);
+
+        assertEquals(List.of(), observador.chamadasEmTransacao);
+        Compra compra = compraRepository.findAll().get(0);
+        assertEquals(StatusCompra.CONCLUIDA, compra.getStatus());
+        assertEquals(carrinhoId, compra.getCarrinhoId());
+        assertEquals(0, BigDecimal.valueOf(20).compareTo(compra.getValorTotal()));
+        assertEquals(42L, compra.getTransacaoPagamentoId());
+        assertNull(compra.getMotivo());
+    }
+
+    @Test
+    void finalizarCompra_pagamentoNegado_compraRecusada() {
+        observador.pagamentoAutorizado = false;
+
+        assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(carrinhoId, clienteId));
+
+        Compra compra = compraRepository.findAll().get(0);
+        assertEquals(StatusCompra.RECUSADA, compra.getStatus());
+        assertEquals("Pagamento não autorizado.", compra.getMotivo());
+    }
+
+    @Test
+    void finalizarCompra_baixaRecusada_compraCanceladaECancelamentoEnviadoPeloDespachante() {
+        observador.baixaAceita = false;
+
+        assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(carrinhoId, clienteId));
+
+        // A resposta não esperou o estorno: ele está na outbox, gravado com a compra cancelada
+        assertEquals(List.of(), observador.cancelamentos);
+        Compra compra = compraRepository.findAll().get(0);
+        assertEquals(StatusCompra.CANCELADA, compra.getStatus());
+        assertEquals(42L, compra.getTransacaoPagamentoId());
+        CancelamentoPendente pendente = cancelamentoRepository.findAll().get(0);
+        assertEquals(compra.getId(), pendente.getCompraId());
+        assertEquals(42L, pendente.getTransacaoPagamentoId());
+
+        assertEquals(1, despachante.despachar());
+
+        assertEquals(List.of(42L), observador.cancelamentos);
+        assertEquals(List.of(), observador.chamadasEmTransacao);
+        assertEquals(0, cancelamentoRepository.count());
+    }
+
+    @Test
+    void finalizarCompra_pagamentoSemResposta_compraIncertaECarrinhoContinuaReservado() {
+        observador.falhaNaAutorizacao = new DependenciaIndisponivelException(
+                "Serviço de pagamento não respondeu a tempo.", null);
+
+        assertThrows(PagamentoIncertoException.class, () -> compraService.finalizarCompra(carrinhoId, clienteId));
+
+        Compra compra = compraRepository.findAll().get(0);
+        assertEquals(StatusCompra.PAGAMENTO_INCERTO, compra.getStatus());
+        assertEquals("Serviço de pagamento não respondeu a tempo.", compra.getMotivo());
+        assertEquals(StatusCarrinho.EM_CHECKOUT, carrinhoRepository.findById(carrinhoId).get().getStatus());
+
+        // Uma nova tentativa não chega a pedir outra autorização
+        observador.falhaNaAutorizacao = null;
+        assertThrows(CarrinhoOcupadoException.class, () -> compraService.finalizarCompra(carrinhoId, clienteId));
+        assertEquals(1, observador.autorizacoes.get());
+    }
+
+    @Test
+    void confirmarPagamento_compraIncerta_retomaPelaBaixaEConcluiACompra() {
+        Long compraId = compraIncerta();
+
+        CompraDTO resultado = verificacao.confirmarPagamento(compraId, 42L);
+
+        assertTrue(resultado.sucesso());
+        assertEquals(1, observador.baixas.get());
+        assertEquals(List.of(), observador.chamadasEmTransacao);
+        Compra compra = compraRepository.findById(compraId).get();
+        assertEquals(StatusCompra.CONCLUIDA, compra.getStatus());
+        assertEquals(42L, compra.getTransacaoPagamentoId());
+        assertEquals(StatusCarrinho.FINALIZADO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+    }
+
+    @Test
+    void confirmarPagamento_baixaRecusada_cancelaComEstornoEReabreOCarrinho() {
+        Long compraId = compraIncerta();
+        observador.baixaAceita = false;
+
+        assertThrows(IllegalStateException.class, () -> verificacao.confirmarPagamento(compraId, 42L));
+
+        assertEquals(StatusCompra.CANCELADA, compraRepository.findById(compraId).get().getStatus());
+        assertEquals(42L, cancelamentoRepository.findAll().get(0).getTransacaoPagamentoId());
+        assertEquals(StatusCarrinho.ABERTO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+    }
+
+    @Test
+    void cancelarPagamento_autorizadoNoProvedor_cancelaComEstornoEReabreOCarrinho() {
+        Long compraId = compraIncerta();
+
+        verificacao.cancelarPagamento(compraId, 42L);
+
+        Compra compra = compraRepository.findById(compraId).get();
+        assertEquals(StatusCompra.CANCELADA, compra.getStatus());
+        assertEquals(VerificacaoDePagamentos.CANCELADA_NA_VERIFICACAO, compra.getMotivo());
+        CancelamentoPendente pendente = cancelamentoRepository.findAll().get(0);
+        assertEquals(compraId, pendente.getCompraId());
+        assertEquals(42L, pendente.getTransacaoPagamentoId());
+        assertEquals(StatusCarrinho.ABERTO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+
+        // Reaberto, o carrinho pode ser finalizado de novo
+        compraService.finalizarCompra(carrinhoId, clienteId);
+        assertEquals(StatusCarrinho.FINALIZADO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+    }
+
+    @Test
+    void cancelarPagamento_semAutorizacao_cancelaSemEstorno() {
+        Long compraId = compraIncerta();
+
+        verificacao.cancelarPagamento(compraId, null);
+
+        assertEquals(StatusCompra.CANCELADA, compraRepository.findById(compraId).get().getStatus());
+        assertEquals(0, cancelamentoRepository.count());
+        assertEquals(StatusCarrinho.ABERTO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+    }
+
+    @Test
+    void cancelarPagamento_compraJaConcluida_recusaSemMexerNoCarrinho() {
+        compraService.finalizarCompra(carrinhoId, clienteId);
+        Long compraId = compraRepository.findAll().get(0).getId();
+
+        assertThrows(IllegalStateException.class, () -> verificacao.cancelarPagamento(compraId, 42L));
+        assertThrows(IllegalStateException.class, () -> verificacao.confirmarPagamento(compraId, 42L));
+
+        assertEquals(StatusCompra.CONCLUIDA, compraRepository.findById(compraId).get().getStatus());
+        assertEquals(0, cancelamentoRepository.count());
+        assertEquals(1, observador.baixas.get());
+        assertEquals(StatusCarrinho.FINALIZADO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+    }
+
+    @Test
+    void finalizarCompra_baixaSemResposta_compraIncertaSemEstornoECarrinhoReservado() {
+        observador.falhaNaBaixa = new DependenciaIndisponivelException("Serviço de estoque não respondeu a tempo.",
+                null);
+
+        assertThrows(PagamentoIncertoException.class, () -> compraService.finalizarCompra(carrinhoId, clienteId));
+
+        Compra compra = compraRepository.findAll().get(0);
+        assertEquals(StatusCompra.BAIXA_INCERTA, compra.getStatus());
+        assertEquals(42L, compra.getTransacaoPagamentoId());
+        assertEquals(0, cancelamentoRepository.count());
+        assertEquals(StatusCarrinho.EM_CHECKOUT, carrinhoRepository.findById(carrinhoId).get().getStatus());
+    }
+
+    @Test
+    void confirmarBaixa_baixaFeitaNoEstoque_concluiACompraEFinalizaOCarrinho() {
+        Long compraId = baixaIncerta();
+
+        verificacao.confirmarBaixa(compraId);
+
+        assertEquals(StatusCompra.CONCLUIDA, compraRepository.findById(compraId).get().getStatus());
+        assertEquals(0, cancelamentoRepository.count());
+        assertEquals(StatusCarrinho.FINALIZADO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+    }
+
+    @Test
+    void cancelarBaixa_baixaNaoFeita_cancelaComEstornoDaTransacaoEReabreOCarrinho() {
+        Long compraId = baixaIncerta();
+
+        verificacao.cancelarBaixa(compraId);
+
+        assertEquals(StatusCompra.CANCELADA, compraRepository.findById(compraId).get().getStatus());
+        assertEquals(42L, cancelamentoRepository.findAll().get(0).getTransacaoPagamentoId());
+        assertEquals(StatusCarrinho.ABERTO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+        // Só compras com baixa incerta são canceladas por aqui
+        assertThrows(IllegalStateException.class, () -> verificacao.cancelarBaixa(compraId));
+    }
+
+    @Test
+    void finalizarCompra_pagamentoRecusadoPeloCircuito_compraRecusadaECarrinhoLiberado() {
+        observador.falhaNaAutorizacao = new DependenciaIndisponivelException("Serviço de pagamento indisponível.",
+                null, false);
+
+        assertThrows(DependenciaIndisponivelException.class,
+                () -> compraService.finalizarCompra(carrinhoId, clienteId));
+
+        assertEquals(StatusCompra.RECUSADA, compraRepository.findAll().get(0).getStatus());
+        assertEquals(StatusCarrinho.ABERTO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+    }
+
+    @Test
+    void registrarPagamento_compraJaConcluida_recusaTransicao() {
+        compraService.finalizarCompra(carrinhoId, clienteId);
+        Long compraId = compraRepository.findAll().get(0).getId();
+
+        assertThrows(IllegalStateException.class, () -> registroDeCompra.registrarPagamento(compraId, 1L));
+        assertEquals(StatusCompra.CONCLUIDA, compraRepository.findById(compraId).get().getStatus());
+    }
+
+    @Test
+    void finalizarCompra_muitasThreadsNoMesmoCarrinho_soUmaPagaEAsDemaisFalhamAntesDasChamadasRemotas()
+            throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<String>> resultados = new ArrayList<>();
+        Callable<String> finalizar = () -> {
+            largada.await();
+            try {
+                return compraService.finalizarCompra(carrinhoId, clienteId).mensagem();
+            } catch (IllegalStateException e) {
+                return e.getMessage();
+            }
+        };
+        try {
+            for (int i = 0; i < threads; i++) {
+                resultados.add(executor.submit(finalizar));
+            }
+            largada.countDown();
+
+            int sucessos = 0;
+            for (Future<String> resultado : resultados) {
+                String mensagem = obter(resultado);
+                if (mensagem.equals("Compra finalizada com sucesso.")) {
+                    sucessos++;
+                } else {
+                    assertEquals(CarrinhoDeComprasService.CARRINHO_OCUPADO, mensagem);
+                }
+            }
+
+            assertEquals(1, sucessos);
+        } finally {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, observador.autorizacoes.get());
+        assertEquals(1, observador.baixas.get());
+        assertEquals(1, compraRepository.count());
+        assertEquals(StatusCarrinho.FINALIZADO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+    }
+
+    @Test
+    void finalizarCompra_pagamentoNegado_devolveOCarrinhoParaNovaTentativa() {
+        observador.pagamentoAutorizado = false;
+        assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(carrinhoId, clienteId));
+        assertEquals(StatusCarrinho.ABERTO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+
+        observador.pagamentoAutorizado = true;
+        compraService.finalizarCompra(carrinhoId, clienteId);
+
+        assertEquals(StatusCarrinho.FINALIZADO, carrinhoRepository.findById(carrinhoId).get().getStatus());
+        CarrinhoOcupadoException repetida = assertThrows(CarrinhoOcupadoException.class,
+                () -> compraService.finalizarCompra(carrinhoId, clienteId));
+        assertEquals(CarrinhoDeComprasService.CARRINHO_OCUPADO, repetida.getMessage());
+    }
+
+    @Test
+    void salvarCarrinho_lidoAntesDaFinalizacao_falhaPelaVersao() {
+        CarrinhoDeCompras lidoAntes = carrinhoRepository.findAllComItensByIdIn(List.of(carrinhoId)).get(0);
+
+        compraService.finalizarCompra(carrinhoId, clienteId);
+        lidoAntes.alterarQuantidade(lidoAntes.getItens().get(0), 5L);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> carrinhoRepository.save(lidoAntes));
+    }
+
+    /** Checkout cujo pagamento não respondeu: compra incerta e carrinho ainda reservado. */
+    private Long compraIncerta() {
+        observador.falhaNaAutorizacao = new DependenciaIndisponivelException(
+                "Serviço de pagamento não respondeu a tempo.", null);
+        assertThrows(PagamentoIncertoException.class, () -> compraService.finalizarCompra(carrinhoId, clienteId));
+        observador.falhaNaAutorizacao = null;
+        return compraRepository.findAll().get(0).getId();
+    }
+
+    /** Checkout cuja baixa não respondeu: pagamento autorizado, compra incerta e carrinho reservado. */
+    private Long baixaIncerta() {
+        observador.falhaNaBaixa = new DependenciaIndisponivelException("Serviço de estoque não respondeu a tempo.",
+                null);
+        assertThrows(PagamentoIncertoException.class, () -> compraService.finalizarCompra(carrinhoId, clienteId));
+        observador.falhaNaBaixa = null;
+        return compraRepository.findAll().get(0).getId();
+    }
+
+    private static String obter(Future<String> resultado) throws InterruptedException, TimeoutException {
+        try {
+            return resultado.get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw new AssertionError(e.getCause());
+        }
+    }
+
+    /** Guarda as chamadas remotas feitas com uma transação ativa. */
+    static final class Observador {
+        final List<String> chamadasEmTransacao = new ArrayList<>();
+        final List<Long> cancelamentos = new ArrayList<>();
+        final AtomicInteger autorizacoes = new AtomicInteger();
+        final AtomicInteger baixas = new AtomicInteger();
+        volatile boolean pagamentoAutorizado = true;
+        volatile boolean baixaAceita = true;
+        volatile RuntimeException falhaNaAutorizacao;
+        volatile RuntimeException falhaNaBaixa;
+
+        void observar(String chamada) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                chamadasEmTransacao.add(chamada);
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class Externos {
+
+        @Bean
+        Observador observador() {
+            return new Observador();
+        }
+
+        @Bean
+        IEstoqueExternal estoqueExternal(Observador observador) {
+            return new IEstoqueExternal() {
+                @Override
+                public DisponibilidadeDTO verificarDisponibilidade(ItensEstoqueDTO itens) {
+                    observador.observar("verificarDisponibilidade");
+                    return new DisponibilidadeDTO(true, List.of());
+                }
+
+                @Override
+                public EstoqueBaixaDTO darBaixa(ItensEstoqueDTO itens) {
+                    observador.observar("darBaixa");
+                    observador.baixas.incrementAndGet();
+                    if (observador.falhaNaBaixa != null) {
+                        throw observador.falhaNaBaixa;
+                    }
+                    return new EstoqueBaixaDTO(observador.baixaAceita);
+                }
+            };
+        }
+
+        @Bean
+        IPagamentoExternal pagamentoExternal(Observador observador) {
+            return new IPagamentoExternal() {
+                @Override
+                public PagamentoDTO autorizarPagamento(Long clienteId, Double custoTotal) {
+                    observador.observar("autorizarPagamento");
+                    observador.autorizacoes.incrementAndGet();
+                    if (observador.falhaNaAutorizacao != null) {
+                        throw observador.falhaNaAutorizacao;
+                    }
+                    return new PagamentoDTO(observador.pagamentoAutorizado, observador.pagamentoAutorizado ? 42L : null);
+                }
+
+                @Override
+                public void cancelarPagamento(Long clienteId, Long pagamentoTransacaoId) {
+                    observador.observar("cancelarPagamento");
+                    observador.cancelamentos.add(pagamentoTransacaoId);
+                }
+            };
+        }
+
+        @Bean
+        Executor executorCompra() {
+            return Runnable::run;
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        MetricasCompra metricasCompra(MeterRegistry registry) {
+            return new MetricasCompra(registry);
+        }
+    }
+}
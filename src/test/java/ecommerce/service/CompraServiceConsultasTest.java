@@ -0,0 +1,163 @@
+package ecommerce.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.transaction.TestTransaction;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import ecommerce.config.CacheConfig;
+import ecommerce.dto.ClienteResumoDTO;
+import ecommerce.dto.CompraDTO;
+import ecommerce.dto.ProdutoResumoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.external.fake.EstoqueSimulado;
+import ecommerce.external.fake.PagamentoSimulado;
+import ecommerce.service.custo.CalculadoraDeCusto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Conta as instruções SQL emitidas pelo checkout contra o H2, para garantir
+ * que os itens do carrinho venham em uma única consulta e que cliente e
+ * produtos venham do cache (ou de uma consulta adicional cada, quando fora dele).
+ * A essas se somam as três escritas de uma instrução da saga da compra e as
+ * duas trocas de status do carrinho.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({ CarrinhoDeComprasService.class, ClienteService.class, ProdutoService.class, RegistroDeCompraService.class,
+        CacheConfig.class })
+public class CompraServiceConsultasTest {
+
+    private static final int QUANTIDADE_ITENS = 50;
+
+    /** Inserção da compra e as duas mudanças de status da saga. */
+    private static final int ESCRITAS_DA_SAGA = 3;
+
+    /** Reserva do carrinho para o checkout e sua conclusão. */
+    private static final int ESCRITAS_DO_CARRINHO = 2;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CarrinhoDeComprasService carrinhoService;
+
+    @Autowired
+    private ClienteService clienteService;
+
+    @Autowired
+    private RegistroDeCompraService registroDeCompra;
+
+    @Autowired
+    private Cache<Long, ProdutoResumoDTO> cacheDeProdutos;
+
+    @Autowired
+    private Cache<Long, ClienteResumoDTO> cacheDeClientes;
+
+    private CompraService compraService;
+    private Statistics estatisticas;
+    private Long clienteId;
+    private Long carrinhoId;
+
+    @BeforeEach
+    void setUp() {
+        compraService = new CompraService(carrinhoService, clienteService, new EstoqueSimulado(null),
+                new PagamentoSimulado(true, 1L), new CalculadoraDeCusto(), Runnable::run,
+                new MetricasCompra(new SimpleMeterRegistry()), registroDeCompra);
+
+        Cliente cliente = entityManager.persist(new Cliente(null, "Cliente", "Rua A", TipoCliente.PRATA));
+
+        List<ItemCompra> itens = new ArrayList<>();
+        for (int i = 0; i < QUANTIDADE_ITENS; i++) {
+            Produto produto = entityManager.persist(
+                    new Produto(null, "Produto " + i, "Descrição", BigDecimal.valueOf(10), 1, TipoProduto.LIVRO));
+            itens.add(new ItemCompra(null, produto, 1L));
+        }
+        CarrinhoDeCompras carrinho = entityManager.persist(new CarrinhoDeCompras(null, cliente, itens, LocalDate.now()));
+
+        // Descarta o contexto de persistência para que nada venha do cache de primeiro nível
+        entityManager.flush();
+        entityManager.clear();
+
+        clienteId = cliente.getId();
+        carrinhoId = carrinho.getId();
+
+        estatisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estatisticas.clear();
+    }
+
+    @Test
+    void finalizarCompra_carrinhoCom50Itens_catalogoEmCache_executaUmaUnicaConsulta() {
+        // Carrega cliente e produtos nos caches
+        carrinhoService.buscarParaCheckout(carrinhoId, clienteService.buscarResumoPorId(clienteId));
+        estatisticas.clear();
+
+        CompraDTO resultado = compraService.finalizarCompra(carrinhoId, clienteId);
+
+        assertTrue(resultado.sucesso());
+        assertEquals(1 + ESCRITAS_DA_SAGA + ESCRITAS_DO_CARRINHO, estatisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void finalizarCompra_carrinhoCom50Itens_cachesVazios_carregaClienteEProdutosEmUmaConsultaCada() {
+        cacheDeProdutos.invalidateAll();
+        cacheDeClientes.invalidateAll();
+
+        CompraDTO resultado = compraService.finalizarCompra(carrinhoId, clienteId);
+
+        assertTrue(resultado.sucesso());
+        assertEquals(3 + ESCRITAS_DA_SAGA + ESCRITAS_DO_CARRINHO, estatisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void atualizar_tipoDoClienteAlterado_checkoutUsaNovoTipoSemConsultarCliente() {
+        compraService.finalizarCompra(carrinhoId, clienteId);
+
+        Cliente cliente = clienteService.buscarPorId(clienteId);
+        cliente.setTipo(TipoCliente.OURO);
+        clienteService.atualizar(cliente);
+
+        // O cache só recebe o novo resumo depois do commit
+        assertEquals(TipoCliente.PRATA, cacheDeClientes.getIfPresent(clienteId).tipo());
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        estatisticas.clear();
+
+        assertEquals(TipoCliente.OURO, clienteService.buscarResumoPorId(clienteId).tipo());
+        assertEquals(0, estatisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void buscarPorIds_carregaCarrinhosComItensEProdutosEmUmaUnicaConsulta() {
+        List<CarrinhoDeCompras> carrinhos = carrinhoService.buscarPorIds(List.of(carrinhoId));
+
+        BigDecimal custoTotal = compraService.calcularCustoTotal(carrinhos.get(0));
+
+        // 50 itens * R$ 10,00 = R$ 500,00 sem desconto; 50kg * R$ 4,00 com 50% de desconto (cliente Prata)
+        assertEquals(0, BigDecimal.valueOf(600).compareTo(custoTotal));
+        assertEquals(1, estatisticas.getPrepareStatementCount());
+    }
+}
@@ -3,10 +3,13 @@ package ecommerce.service;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyDouble;
-import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -17,24 +20,36 @@ import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.Executor;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.core.task.SyncTaskExecutor;
 
+import ecommerce.dto.CarrinhoCheckoutDTO;
+import ecommerce.dto.ClienteResumoDTO;
 import ecommerce.dto.CompraDTO;
+import ecommerce.dto.CustoCompraDTO;
 import ecommerce.dto.DisponibilidadeDTO;
 import ecommerce.dto.EstoqueBaixaDTO;
+import ecommerce.dto.ItensEstoqueDTO;
 import ecommerce.dto.PagamentoDTO;
 import ecommerce.entity.CarrinhoDeCompras;
 import ecommerce.entity.Cliente;
 import ecommerce.entity.ItemCompra;
 import ecommerce.entity.Produto;
 import ecommerce.entity.TipoCliente;
+import ecommerce.external.DependenciaIndisponivelException;
 import ecommerce.external.IEstoqueExternal;
 import ecommerce.external.IPagamentoExternal;
+import ecommerce.service.custo.CalculadoraDeCusto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 public class CompraServiceTest {
 
@@ -57,6 +72,20 @@ public class CompraServiceTest {
     @Mock
     private IPagamentoExternal pagamentoExternal;
 
+    @Mock
+    private RegistroDeCompraService registroDeCompra;
+
+    @Spy
+    private CalculadoraDeCusto calculadoraDeCusto = new CalculadoraDeCusto();
+
+    @Spy
+    private Executor executorCompra = new SyncTaskExecutor();
+
+    private SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private MetricasCompra metricas = new MetricasCompra(registry);
+
     @InjectMocks
     private CompraService compraService;
 
@@ -95,21 +124,21 @@ public class CompraServiceTest {
         EstoqueBaixaDTO baixaDTO = new EstoqueBaixaDTO(true);
 
         // Configurar comportamento dos mocks
-        when(clienteService.buscarPorId(1L)).thenReturn(cliente); // Cliente encontrado
-        when(carrinhoService.buscarPorCarrinhoIdEClienteId(eq(1L), eq(cliente))).thenReturn(carrinho); // Carrinho encontrado
-        when(estoqueExternal.verificarDisponibilidade(anyList(), anyList())).thenReturn(disponibilidade); // Estoque disponível
+        when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+        when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho))); // Carrinho encontrado
+        when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class))).thenReturn(disponibilidade); // Estoque disponível
         when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(pagamento); // Pagamento autorizado
-        when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(baixaDTO); // Estoque atualizado com sucesso
+        when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(baixaDTO); // Estoque atualizado com sucesso
 
         // Executar o método
         CompraDTO resultado = compraService.finalizarCompra(1L, 1L);
 
         // Verificar interações e resultado
-        verify(clienteService, times(1)).buscarPorId(1L);
-        verify(carrinhoService, times(1)).buscarPorCarrinhoIdEClienteId(eq(1L), eq(cliente));
-        verify(estoqueExternal, times(1)).verificarDisponibilidade(anyList(), anyList());
+        verify(clienteService, times(1)).buscarResumoPorId(1L);
+        verify(carrinhoService, times(1)).buscarParaCheckout(eq(1L), any());
+        verify(estoqueExternal, times(1)).verificarDisponibilidade(any(ItensEstoqueDTO.class));
         verify(pagamentoExternal, times(1)).autorizarPagamento(anyLong(), anyDouble());
-        verify(estoqueExternal, times(1)).darBaixa(anyList(), anyList());
+        verify(estoqueExternal, times(1)).darBaixa(any(ItensEstoqueDTO.class));
         assertTrue(resultado.sucesso());
         assertEquals("Compra finalizada com sucesso.", resultado.mensagem());
     }
@@ -655,9 +684,9 @@ public class CompraServiceTest {
       DisponibilidadeDTO disponibilidade = new DisponibilidadeDTO(false, Collections.emptyList());
 
       // Configurar mocks
-      when(clienteService.buscarPorId(1L)).thenReturn(cliente);
-      when(carrinhoService.buscarPorCarrinhoIdEClienteId(eq(1L), eq(cliente))).thenReturn(carrinho);
-      when(estoqueExternal.verificarDisponibilidade(anyList(), anyList())).thenReturn(disponibilidade);
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class))).thenReturn(disponibilidade);
 
       // Tentar finalizar a compra 
       IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
@@ -698,11 +727,11 @@ public class CompraServiceTest {
       EstoqueBaixaDTO baixaDTO = new EstoqueBaixaDTO(false);
 
       // Configurar mocks
-      when(clienteService.buscarPorId(1L)).thenReturn(cliente);
-      when(carrinhoService.buscarPorCarrinhoIdEClienteId(eq(1L), eq(cliente))).thenReturn(carrinho);
-      when(estoqueExternal.verificarDisponibilidade(anyList(), anyList())).thenReturn(disponibilidade);
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class))).thenReturn(disponibilidade);
       when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(pagamento);
-      when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(baixaDTO);
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(baixaDTO);
 
       // Tentar finalizar
       IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
@@ -742,11 +771,11 @@ public class CompraServiceTest {
       EstoqueBaixaDTO baixaDTO = new EstoqueBaixaDTO(false);
 
       // Configurar mocks
-      when(clienteService.buscarPorId(1L)).thenReturn(cliente);
-      when(carrinhoService.buscarPorCarrinhoIdEClienteId(eq(1L), eq(cliente))).thenReturn(carrinho);
-      when(estoqueExternal.verificarDisponibilidade(anyList(), anyList())).thenReturn(disponibilidade);
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class))).thenReturn(disponibilidade);
       when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(pagamento);
-      when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(baixaDTO);
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(baixaDTO);
 
       // Tenta Finalizar
       IllegalStateException exception = assertThrows(IllegalStateException.class, () -> {
@@ -756,8 +785,10 @@ public class CompraServiceTest {
       // Verificar  exceção
       assertEquals("Erro ao dar baixa no estoque.", exception.getMessage());
 
-      // Verificar se o método cancelarPagamento foi chamado com o ID do cliente e o ID da transação
-      verify(pagamentoExternal, times(1)).cancelarPagamento(eq(cliente.getId()), eq(pagamento.transacaoId()));
+      // Verificar se o cancelamento foi agendado com o ID do cliente e o ID da transação, sem chamada síncrona
+      verify(registroDeCompra, times(1)).cancelar(any(), eq(cliente.getId()), eq(pagamento.transacaoId()),
+              eq("Erro ao dar baixa no estoque."));
+      verify(pagamentoExternal, never()).cancelarPagamento(anyLong(), anyLong());
   }
   
   
@@ -790,11 +821,11 @@ public class CompraServiceTest {
       EstoqueBaixaDTO baixaDTO = new EstoqueBaixaDTO(true);
 
       // Configurar mocks
-      when(clienteService.buscarPorId(1L)).thenReturn(cliente);
-      when(carrinhoService.buscarPorCarrinhoIdEClienteId(eq(1L), eq(cliente))).thenReturn(carrinho);
-      when(estoqueExternal.verificarDisponibilidade(anyList(), anyList())).thenReturn(disponibilidade);
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class))).thenReturn(disponibilidade);
       when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(pagamento);
-      when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(baixaDTO);
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(baixaDTO);
 
       // Executar o método
       CompraDTO resultado = compraService.finalizarCompra(1L, 1L);
@@ -835,11 +866,11 @@ public class CompraServiceTest {
       EstoqueBaixaDTO baixaDTO = new EstoqueBaixaDTO(true);
 
       // Configurar mocks
-      when(clienteService.buscarPorId(1L)).thenReturn(cliente);
-      when(carrinhoService.buscarPorCarrinhoIdEClienteId(eq(1L), eq(cliente))).thenReturn(carrinho);
-      when(estoqueExternal.verificarDisponibilidade(anyList(), anyList())).thenReturn(disponibilidade);
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class))).thenReturn(disponibilidade);
       when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(pagamento);
-      when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(baixaDTO);
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(baixaDTO);
 
       // Tentar finalizar
       Exception exception = assertThrows(IllegalStateException.class, () -> {
@@ -880,21 +911,21 @@ public class CompraServiceTest {
       EstoqueBaixaDTO baixaDTO = new EstoqueBaixaDTO(true);
 
       // Configurar comportamento dos mocks
-      when(clienteService.buscarPorId(1L)).thenReturn(cliente); // Cliente encontrado
-      when(carrinhoService.buscarPorCarrinhoIdEClienteId(eq(1L), eq(cliente))).thenReturn(carrinho); // Carrinho encontrado
-      when(estoqueExternal.verificarDisponibilidade(anyList(), anyList())).thenReturn(disponibilidade); // Estoque disponível
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho))); // Carrinho encontrado
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class))).thenReturn(disponibilidade); // Estoque disponível
       when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(pagamento); // Pagamento autorizado
-      when(estoqueExternal.darBaixa(anyList(), anyList())).thenReturn(baixaDTO); // Estoque atualizado com sucesso
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(baixaDTO); // Estoque atualizado com sucesso
 
       // Executar o método
       CompraDTO resultado = compraService.finalizarCompra(1L, 1L);
 
       // Verificar interações e resultado
-      verify(clienteService, times(1)).buscarPorId(1L);
-      verify(carrinhoService, times(1)).buscarPorCarrinhoIdEClienteId(eq(1L), eq(cliente));
-      verify(estoqueExternal, times(1)).verificarDisponibilidade(anyList(), anyList());
+      verify(clienteService, times(1)).buscarResumoPorId(1L);
+      verify(carrinhoService, times(1)).buscarParaCheckout(eq(1L), any());
+      verify(estoqueExternal, times(1)).verificarDisponibilidade(any(ItensEstoqueDTO.class));
       verify(pagamentoExternal, times(1)).autorizarPagamento(eq(1L), eq(220.0d)); // Atualize para 220.0d se esse for o valor correto
-      verify(estoqueExternal, times(1)).darBaixa(anyList(), anyList());
+      verify(estoqueExternal, times(1)).darBaixa(any(ItensEstoqueDTO.class));
 
       assertTrue(resultado.sucesso());
       
@@ -902,5 +933,373 @@ public class CompraServiceTest {
       assertEquals("Compra finalizada com sucesso.", resultado.mensagem());
   }
 
+  @Test
+  void calcularCustoTotal_precoComTresCasasDecimais_mantemValorExato() {
+      Cliente cliente = new Cliente();
+      cliente.setTipo(TipoCliente.BRONZE);
+
+      Produto produto = new Produto();
+      produto.setPeso(3);
+      produto.setPreco(new BigDecimal("300.125")); // Não cabe em centavos
+
+      ItemCompra item = new ItemCompra();
+      item.setProduto(produto);
+      item.setQuantidade(2L);
+
+      CarrinhoDeCompras carrinho = new CarrinhoDeCompras(1L, cliente, Arrays.asList(item), LocalDate.now());
+
+      BigDecimal custoTotal = compraService.calcularCustoTotal(carrinho);
+
+      // Itens: 300,125 * 2 = 600,25 com 10% de desconto = 540,225
+      // Peso total: 3 * 2 = 6kg, frete 6kg * 2,00 = R$ 12,00 (cliente Bronze)
+      assertEquals(0, new BigDecimal("552.225").compareTo(custoTotal));
+  }
+
+  @Test
+  void calcular_detalhaSubtotalDescontoEFrete() {
+      Produto produto = new Produto();
+      produto.setPeso(6);
+      produto.setPreco(new BigDecimal("250.10"));
+
+      ItemCompra item = new ItemCompra();
+      item.setProduto(produto);
+      item.setQuantidade(5L);
+
+      CustoCompraDTO custo = calculadoraDeCusto.calcular(Arrays.asList(item), TipoCliente.PRATA);
+
+      // Itens: 250,10 * 5 = 1250,50 com 20% de desconto (250,10)
+      // Peso total: 6 * 5 = 30kg, frete 30kg * 4,00 = R$ 120,00 com 50% de desconto
+      assertEquals(new BigDecimal("1250.5"), custo.subtotal());
+      assertEquals(new BigDecimal("250.1"), custo.desconto());
+      assertEquals(BigDecimal.valueOf(60), custo.frete());
+      assertEquals(new BigDecimal("1060.4"), custo.total());
+  }
+
+  @Test
+  void finalizarCompra_itensForaDeEstoqueEErroNoCalculo_priorizaFalhaDeEstoque() {
+      Cliente cliente = new Cliente();
+      cliente.setId(1L);
+      cliente.setTipo(TipoCliente.BRONZE);
+
+      Produto produto = new Produto();
+      produto.setId(1L);
+      produto.setPeso(1); // Sem preço: o cálculo do custo falha
+
+      ItemCompra item = new ItemCompra();
+      item.setProduto(produto);
+      item.setQuantidade(1L);
+
+      CarrinhoDeCompras carrinho = new CarrinhoDeCompras(1L, cliente, Arrays.asList(item), LocalDate.now());
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+              .thenReturn(new DisponibilidadeDTO(false, Arrays.asList(1L)));
+
+      // Estoque e custo rodam em paralelo, mas a falha de estoque continua tendo precedência
+      IllegalStateException exception = assertThrows(IllegalStateException.class,
+              () -> compraService.finalizarCompra(1L, 1L));
+
+      assertEquals("Itens fora de estoque.", exception.getMessage());
+  }
+
+  @Test
+  void finalizarCompra_carrinhoNaoEncontrado() {
+      ClienteResumoDTO cliente = new ClienteResumoDTO(1L, TipoCliente.BRONZE);
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(cliente);
+      when(carrinhoService.buscarParaCheckout(2L, cliente)).thenReturn(Optional.empty());
+
+      IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+              () -> compraService.finalizarCompra(2L, 1L));
+
+      assertEquals("Carrinho não encontrado.", exception.getMessage());
+  }
+
+  @Test
+  void finalizarCompra_clienteNaoEncontrado() {
+      when(clienteService.buscarResumoPorId(2L)).thenThrow(new IllegalArgumentException("Cliente não encontrado"));
+
+      IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+              () -> compraService.finalizarCompra(1L, 2L));
+
+      assertEquals("Cliente não encontrado", exception.getMessage());
+      verify(carrinhoService, never()).buscarParaCheckout(anyLong(), any());
+      verify(estoqueExternal, never()).verificarDisponibilidade(any(ItensEstoqueDTO.class));
+  }
+
+  @Test
+  void finalizarCompra_produtoRepetidoNoCarrinho_enviaUmaLinhaSomadaAoEstoque() {
+      Cliente cliente = new Cliente();
+      cliente.setId(1L);
+      cliente.setTipo(TipoCliente.BRONZE);
+
+      Produto produto = new Produto();
+      produto.setId(7L);
+      produto.setPreco(BigDecimal.TEN);
+      produto.setPeso(1);
+      Produto outroProduto = new Produto();
+      outroProduto.setId(8L);
+      outroProduto.setPreco(BigDecimal.ONE);
+      outroProduto.setPeso(1);
+
+      CarrinhoDeCompras carrinho = new CarrinhoDeCompras(1L, cliente, Arrays.asList(
+              new ItemCompra(1L, produto, 2L), new ItemCompra(2L, outroProduto, 1L), new ItemCompra(3L, produto, 3L)),
+              LocalDate.now());
+      ItensEstoqueDTO esperado = new ItensEstoqueDTO(new long[] { 7L, 8L }, new long[] { 5L, 1L });
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(esperado)).thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+      when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 1L));
+      when(estoqueExternal.darBaixa(esperado)).thenReturn(new EstoqueBaixaDTO(true));
+
+      CompraDTO resultado = compraService.finalizarCompra(1L, 1L);
+
+      assertTrue(resultado.sucesso());
+      verify(estoqueExternal, times(1)).darBaixa(esperado);
+  }
+
+  @Test
+  void finalizarCompra_estoqueSemRespostaNaBaixa_marcaBaixaIncertaSemCancelarOPagamento() {
+      Cliente cliente = new Cliente();
+      cliente.setId(1L);
+      cliente.setTipo(TipoCliente.BRONZE);
+
+      Produto produto = new Produto();
+      produto.setId(1L);
+      produto.setPreco(BigDecimal.TEN);
+      produto.setPeso(1);
+
+      CarrinhoDeCompras carrinho = new CarrinhoDeCompras(1L, cliente, Arrays.asList(new ItemCompra(1L, produto, 1L)),
+              LocalDate.now());
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+              .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+      when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 77L));
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class)))
+              .thenThrow(new DependenciaIndisponivelException("Serviço de estoque não respondeu a tempo.", null));
+
+      PagamentoIncertoException exception = assertThrows(PagamentoIncertoException.class,
+              () -> compraService.finalizarCompra(1L, 1L));
+
+      // O estoque pode ter baixado: estornar entregaria sem cobrar
+      assertEquals(CompraService.BAIXA_INCERTA, exception.getMessage());
+      verify(registroDeCompra, times(1)).marcarBaixaIncerta(any(), eq("Serviço de estoque não respondeu a tempo."));
+      verify(registroDeCompra, never()).cancelar(any(), any(), any(), any());
+      verify(carrinhoService, never()).liberarCheckout(anyLong());
+      verify(pagamentoExternal, never()).cancelarPagamento(anyLong(), anyLong());
+  }
+
+  @Test
+  void finalizarCompra_estoqueRecusadoPeloCircuitoNaBaixa_agendaCancelamentoEPropagaIndisponibilidade() {
+      CarrinhoDeCompras carrinho = carrinhoComUmItem();
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+              .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+      when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 77L));
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class)))
+              .thenThrow(new DependenciaIndisponivelException("Serviço de estoque indisponível.", null, false));
+
+      DependenciaIndisponivelException exception = assertThrows(DependenciaIndisponivelException.class,
+              () -> compraService.finalizarCompra(1L, 1L));
+
+      assertEquals("Serviço de estoque indisponível.", exception.getMessage());
+      verify(registroDeCompra, times(1)).cancelar(any(), eq(1L), eq(77L), eq("Serviço de estoque indisponível."));
+      verify(registroDeCompra, never()).marcarBaixaIncerta(any(), any());
+      verify(carrinhoService).liberarCheckout(1L);
+  }
+
+  @Test
+  void finalizarCompra_compraConcluida_registraTempoDeCadaEtapaPorTipoDeCliente() {
+      Cliente cliente = new Cliente();
+      cliente.setId(1L);
+      cliente.setTipo(TipoCliente.OURO);
+
+      Produto produto = new Produto();
+      produto.setId(1L);
+      produto.setPreco(BigDecimal.TEN);
+      produto.setPeso(1);
+
+      CarrinhoDeCompras carrinho = new CarrinhoDeCompras(1L, cliente, Arrays.asList(new ItemCompra(1L, produto, 1L)),
+              LocalDate.now());
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+              .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+      when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 1L));
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(new EstoqueBaixaDTO(true));
+
+      compraService.finalizarCompra(1L, 1L);
+
+      for (String etapa : List.of("cliente", "carrinho", "estoque.disponibilidade", "custo", "pagamento",
+              "estoque.baixa", "total")) {
+          assertEquals(1, registry.get("compra.etapa").tag("etapa", etapa).tag("tipoCliente", "OURO").timer().count(),
+                  etapa);
+      }
+      assertEquals(0, registry.get("compra.etapa").tag("tipoCliente", "BRONZE").timers().stream()
+              .mapToLong(timer -> timer.count()).sum());
+  }
+
+  @Test
+  void finalizarCompra_falhas_contadasPorMotivoETipoDeCliente() {
+      Cliente cliente = new Cliente();
+      cliente.setId(1L);
+      cliente.setTipo(TipoCliente.PRATA);
+
+      Produto produto = new Produto();
+      produto.setId(1L);
+      produto.setPreco(BigDecimal.TEN);
+      produto.setPeso(1);
+
+      CarrinhoDeCompras carrinho = new CarrinhoDeCompras(1L, cliente, Arrays.asList(new ItemCompra(1L, produto, 1L)),
+              LocalDate.now());
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+              .thenReturn(new DisponibilidadeDTO(false, List.of(1L)))
+              .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+      when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble()))
+              .thenReturn(new PagamentoDTO(false, null))
+              .thenReturn(new PagamentoDTO(true, 5L));
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(new EstoqueBaixaDTO(false));
+
+      for (int i = 0; i < 3; i++) {
+          assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(1L, 1L));
+      }
+
+      for (String motivo : List.of("fora-de-estoque", "pagamento-negado", "baixa-estoque-compensada")) {
+          assertEquals(1.0, registry.get("compra.falhas").tag("motivo", motivo).tag("tipoCliente", "PRATA").counter()
+                  .count(), motivo);
+      }
+      // Toda compra iniciada entra no tempo total, inclusive as que falharam
+      assertEquals(3, registry.get("compra.etapa").tag("etapa", "total").tag("tipoCliente", "PRATA").timer().count());
+  }
+
+  @Test
+  void finalizarCompra_compraConcluida_registraCadaPassoDaSagaEntreAsChamadasRemotas() {
+      Cliente cliente = new Cliente();
+      cliente.setId(1L);
+      cliente.setTipo(TipoCliente.BRONZE);
+
+      Produto produto = new Produto();
+      produto.setId(1L);
+      produto.setPreco(BigDecimal.TEN);
+      produto.setPeso(1);
+
+      CarrinhoDeCompras carrinho = new CarrinhoDeCompras(1L, cliente, Arrays.asList(new ItemCompra(1L, produto, 1L)),
+              LocalDate.now());
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+              .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+      when(registroDeCompra.iniciar(eq(1L), eq(1L), any(BigDecimal.class))).thenReturn(9L);
+      when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 77L));
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(new EstoqueBaixaDTO(true));
+
+      compraService.finalizarCompra(1L, 1L);
+
+      InOrder ordem = inOrder(registroDeCompra, pagamentoExternal, estoqueExternal);
+      ordem.verify(registroDeCompra).iniciar(eq(1L), eq(1L), any(BigDecimal.class));
+      ordem.verify(pagamentoExternal).autorizarPagamento(anyLong(), anyDouble());
+      ordem.verify(registroDeCompra).registrarPagamento(9L, 77L);
+      ordem.verify(estoqueExternal).darBaixa(any(ItensEstoqueDTO.class));
+      ordem.verify(registroDeCompra).concluir(9L);
+  }
+
+  @Test
+  void finalizarCompra_falhaAoRegistrarPagamento_agendaCancelamentoELiberaOCarrinho() {
+      CarrinhoDeCompras carrinho = carrinhoComUmItem();
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+              .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+      when(registroDeCompra.iniciar(eq(1L), eq(1L), any(BigDecimal.class))).thenReturn(9L);
+      when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 77L));
+      doThrow(new IllegalStateException("Banco indisponível.")).when(registroDeCompra).registrarPagamento(9L, 77L);
+
+      assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(1L, 1L));
+
+      verify(registroDeCompra).cancelarSemRegistro(9L, 1L, 77L, "Falha ao registrar o pagamento.");
+      verify(estoqueExternal, never()).darBaixa(any(ItensEstoqueDTO.class));
+      verify(carrinhoService).liberarCheckout(1L);
+  }
+
+  @Test
+  void finalizarCompra_pagamentoSemRegistroNemCancelamento_mantemOCarrinhoReservado() {
+      CarrinhoDeCompras carrinho = carrinhoComUmItem();
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+              .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+      when(registroDeCompra.iniciar(eq(1L), eq(1L), any(BigDecimal.class))).thenReturn(9L);
+      when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble())).thenReturn(new PagamentoDTO(true, 77L));
+      doThrow(new IllegalStateException("Banco indisponível.")).when(registroDeCompra).registrarPagamento(9L, 77L);
+      doThrow(new IllegalStateException("Banco indisponível.")).when(registroDeCompra)
+              .cancelarSemRegistro(anyLong(), anyLong(), anyLong(), any());
+
+      assertThrows(PagamentoIncertoException.class, () -> compraService.finalizarCompra(1L, 1L));
+
+      verify(carrinhoService, never()).liberarCheckout(anyLong());
+      verify(carrinhoService, never()).concluirCheckout(anyLong());
+      assertEquals(1.0, registry.get("compra.falhas").tag("motivo", "pagamento-incerto").tag("tipoCliente", "BRONZE")
+              .counter().count());
+  }
+
+  private static CarrinhoDeCompras carrinhoComUmItem() {
+      Cliente cliente = new Cliente();
+      cliente.setId(1L);
+      cliente.setTipo(TipoCliente.BRONZE);
+
+      Produto produto = new Produto();
+      produto.setId(1L);
+      produto.setPreco(BigDecimal.TEN);
+      produto.setPeso(1);
+
+      return new CarrinhoDeCompras(1L, cliente, Arrays.asList(new ItemCompra(1L, produto, 1L)), LocalDate.now());
+  }
+
+  @Test
+  void finalizarCompra_pagamentoNegadoOuBaixaRecusada_registraDesfechoDaSaga() {
+      Cliente cliente = new Cliente();
+      cliente.setId(1L);
+      cliente.setTipo(TipoCliente.BRONZE);
+
+      Produto produto = new Produto();
+      produto.setId(1L);
+      produto.setPreco(BigDecimal.TEN);
+      produto.setPeso(1);
+
+      CarrinhoDeCompras carrinho = new CarrinhoDeCompras(1L, cliente, Arrays.asList(new ItemCompra(1L, produto, 1L)),
+              LocalDate.now());
+
+      when(clienteService.buscarResumoPorId(1L)).thenReturn(ClienteResumoDTO.de(carrinho.getCliente()));
+      when(carrinhoService.buscarParaCheckout(eq(1L), any())).thenReturn(Optional.of(CarrinhoCheckoutDTO.de(carrinho)));
+      when(estoqueExternal.verificarDisponibilidade(any(ItensEstoqueDTO.class)))
+              .thenReturn(new DisponibilidadeDTO(true, Collections.emptyList()));
+      when(registroDeCompra.iniciar(eq(1L), eq(1L), any(BigDecimal.class))).thenReturn(1L).thenReturn(2L);
+      when(pagamentoExternal.autorizarPagamento(anyLong(), anyDouble()))
+              .thenReturn(new PagamentoDTO(false, null))
+              .thenReturn(new PagamentoDTO(true, 5L));
+      when(estoqueExternal.darBaixa(any(ItensEstoqueDTO.class))).thenReturn(new EstoqueBaixaDTO(false));
+
+      assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(1L, 1L));
+      assertThrows(IllegalStateException.class, () -> compraService.finalizarCompra(1L, 1L));
+
+      verify(registroDeCompra).recusar(1L, "Pagamento não autorizado.");
+      verify(registroDeCompra).registrarPagamento(2L, 5L);
+      verify(registroDeCompra).cancelar(2L, 1L, 5L, "Erro ao dar baixa no estoque.");
+      verify(registroDeCompra, never()).concluir(anyLong());
+  }
+
 }
 //teste
@@ -0,0 +1,170 @@
+package ecommerce.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import ecommerce.entity.CancelamentoPendente;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.Compra;
+import ecommerce.entity.StatusCarrinho;
+import ecommerce.entity.StatusCompra;
+import ecommerce.entity.TipoCliente;
+import ecommerce.repository.CancelamentoPendenteRepository;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+import ecommerce.repository.CompraRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Compras paradas em status intermediários e carrinhos reservados, gravados
+ * no H2 com datas anteriores ao prazo, e sem a transação do teste (cada
+ * compensação roda na sua).
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(RegistroDeCompraService.class)
+public class ConciliacaoDeComprasTest {
+
+    private static final Instant AGORA = Instant.parse("2024-01-01T12:00:00Z");
+
+    @Autowired
+    private CompraRepository compraRepository;
+
+    @Autowired
+    private CancelamentoPendenteRepository cancelamentoRepository;
+
+    @Autowired
+    private CarrinhoDeComprasRepository carrinhoRepository;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private RegistroDeCompraService registroDeCompra;
+
+    private SimpleMeterRegistry registry;
+    private ConciliacaoDeCompras conciliacao;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        conciliacao = new ConciliacaoDeCompras(compraRepository, carrinhoRepository, registroDeCompra, registry, 2,
+                Duration.ofMinutes(5), Clock.fixed(AGORA, ZoneOffset.UTC));
+    }
+
+    @AfterEach
+    void limpar() {
+        cancelamentoRepository.deleteAll();
+        compraRepository.deleteAll();
+        carrinhoRepository.deleteAll();
+        clienteRepository.deleteAll();
+    }
+
+    private Compra compra(StatusCompra status, Long transacaoId, Duration ha) {
+        return compra(1L, status, transacaoId, ha);
+    }
+
+    private Compra compra(Long carrinhoId, StatusCompra status, Long transacaoId, Duration ha) {
+        Compra compra = new Compra(carrinhoId, 7L, BigDecimal.TEN, AGORA.minus(ha));
+        compra.setStatus(status);
+        compra.setTransacaoPagamentoId(transacaoId);
+        return compraRepository.save(compra);
+    }
+
+    private StatusCompra status(Compra compra) {
+        return compraRepository.findById(compra.getId()).get().getStatus();
+    }
+
+    private Long carrinhoReservado(Cliente cliente, Duration ha) {
+        Long id = carrinhoRepository.save(new CarrinhoDeCompras(null, cliente, new ArrayList<>(), LocalDate.now()))
+                .getId();
+        assertEquals(1, carrinhoRepository.reservar(id, AGORA.minus(ha)));
+        return id;
+    }
+
+    private StatusCarrinho status(Long carrinhoId) {
+        return carrinhoRepository.findById(carrinhoId).get().getStatus();
+    }
+
+    @Test
+    void conciliar_pagamentoAutorizadoParado_cancelaEAgendaOEstornoEmLotes() {
+        Compra primeira = compra(StatusCompra.PAGAMENTO_AUTORIZADO, 41L, Duration.ofMinutes(30));
+        Compra segunda = compra(StatusCompra.PAGAMENTO_AUTORIZADO, 42L, Duration.ofMinutes(20));
+        Compra terceira = compra(StatusCompra.PAGAMENTO_AUTORIZADO, 43L, Duration.ofMinutes(10));
+        Compra emAndamento = compra(StatusCompra.PAGAMENTO_AUTORIZADO, 44L, Duration.ofMinutes(1));
+
+        assertEquals(3, conciliacao.conciliar());
+
+        for (Compra compra : new Compra[] { primeira, segunda, terceira }) {
+            assertEquals(StatusCompra.CANCELADA, status(compra));
+        }
+        assertEquals(StatusCompra.PAGAMENTO_AUTORIZADO, status(emAndamento));
+        assertEquals(3, cancelamentoRepository.count());
+        for (CancelamentoPendente pendente : cancelamentoRepository.findAll()) {
+            assertEquals(7L, pendente.getClienteId());
+        }
+        assertEquals(3.0, registry.get("compra.conciliacao").tag("resultado", "cancelada").counter().count());
+    }
+
+    @Test
+    void conciliar_compraIniciadaParada_marcaPagamentoIncertoSemCancelar() {
+        Compra parada = compra(StatusCompra.INICIADA, null, Duration.ofMinutes(30));
+        Compra emAndamento = compra(StatusCompra.INICIADA, null, Duration.ofMinutes(1));
+        Compra concluida = compra(StatusCompra.CONCLUIDA, 45L, Duration.ofMinutes(30));
+
+        assertEquals(1, conciliacao.conciliar());
+
+        assertEquals(StatusCompra.PAGAMENTO_INCERTO, status(parada));
+        assertEquals(ConciliacaoDeCompras.CHECKOUT_INTERROMPIDO,
+                compraRepository.findById(parada.getId()).get().getMotivo());
+        assertEquals(StatusCompra.INICIADA, status(emAndamento));
+        assertEquals(StatusCompra.CONCLUIDA, status(concluida));
+        assertEquals(0, cancelamentoRepository.count());
+        assertEquals(1.0, registry.get("compra.conciliacao").tag("resultado", "pagamento-incerto").counter().count());
+    }
+
+    @Test
+    void conciliar_reservasExpiradas_finalizaAsConcluidasEReabreAsAbandonadas() {
+        Cliente cliente = clienteRepository.save(new Cliente(null, "Cliente", "Rua A", TipoCliente.BRONZE));
+        Long abandonado = carrinhoReservado(cliente, Duration.ofMinutes(30));
+        Long concluido = carrinhoReservado(cliente, Duration.ofMinutes(30));
+        Long incerto = carrinhoReservado(cliente, Duration.ofMinutes(30));
+        Long baixaIncerta = carrinhoReservado(cliente, Duration.ofMinutes(30));
+        Long recusadoAntes = carrinhoReservado(cliente, Duration.ofMinutes(30));
+        Long emAndamento = carrinhoReservado(cliente, Duration.ofMinutes(1));
+        compra(concluido, StatusCompra.CONCLUIDA, 41L, Duration.ofMinutes(29));
+        compra(incerto, StatusCompra.PAGAMENTO_INCERTO, null, Duration.ofMinutes(29));
+        compra(baixaIncerta, StatusCompra.BAIXA_INCERTA, 43L, Duration.ofMinutes(29));
+        compra(recusadoAntes, StatusCompra.RECUSADA, null, Duration.ofMinutes(29));
+
+        assertEquals(3, conciliacao.conciliar());
+
+        assertEquals(StatusCarrinho.ABERTO, status(abandonado));
+        assertEquals(StatusCarrinho.FINALIZADO, status(concluido));
+        // Pagamento talvez autorizado: o carrinho espera a verificação
+        assertEquals(StatusCarrinho.EM_CHECKOUT, status(incerto));
+        assertEquals(StatusCarrinho.EM_CHECKOUT, status(baixaIncerta));
+        assertEquals(StatusCarrinho.ABERTO, status(recusadoAntes));
+        assertEquals(StatusCarrinho.EM_CHECKOUT, status(emAndamento));
+        assertEquals(AGORA.minus(Duration.ofMinutes(1)), carrinhoRepository.findById(emAndamento).get().getReservadoEm());
+        assertEquals(1.0, registry.get("compra.conciliacao").tag("resultado", "carrinho-finalizado").counter().count());
+        assertEquals(2.0, registry.get("compra.conciliacao").tag("resultado", "carrinho-reaberto").counter().count());
+    }
+}
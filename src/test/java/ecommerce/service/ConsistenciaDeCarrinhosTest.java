@@ -0,0 +1,162 @@
+package ecommerce.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import ecommerce.config.CacheConfig;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+import ecommerce.repository.ProdutoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Totais mantidos no carrinho a cada mudança nos itens e o reparo dos que
+ * divergem depois de mudanças de preço, contra o H2 e sem a transação do
+ * teste (cada reparo roda na sua).
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ ProdutoService.class, CacheConfig.class })
+public class ConsistenciaDeCarrinhosTest {
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Autowired
+    private CarrinhoDeComprasRepository carrinhoRepository;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    private SimpleMeterRegistry registry;
+    private ConsistenciaDeCarrinhos consistencia;
+    private Cliente cliente;
+    private Produto livro;
+    private Produto eletronico;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        consistencia = new ConsistenciaDeCarrinhos(carrinhoRepository, registry, 2);
+
+        cliente = clienteRepository.save(new Cliente(null, "Cliente", "Rua A", TipoCliente.BRONZE));
+        livro = produtoRepository.save(
+                new Produto(null, "Livro", "Descrição", new BigDecimal("12.50"), 1, TipoProduto.LIVRO));
+        eletronico = produtoRepository.save(
+                new Produto(null, "Fone", "Descrição", new BigDecimal("100.00"), 3, TipoProduto.ELETRONICO));
+    }
+
+    @AfterEach
+    void limpar() {
+        for (String tabela : List.of("item_compra", "carrinho_de_compras", "cliente", "produto")) {
+            jdbc.update("delete from " + tabela);
+        }
+    }
+
+    private CarrinhoDeCompras novoCarrinho(long quantidadeLivros, long quantidadeEletronicos) {
+        List<ItemCompra> itens = new ArrayList<>();
+        itens.add(new ItemCompra(null, livro, quantidadeLivros));
+        itens.add(new ItemCompra(null, eletronico, quantidadeEletronicos));
+        return carrinhoRepository.save(new CarrinhoDeCompras(null, cliente, itens, LocalDate.now()));
+    }
+
+    private CarrinhoDeCompras recarregar(CarrinhoDeCompras carrinho) {
+        return carrinhoRepository.findAllComItensByIdIn(List.of(carrinho.getId())).get(0);
+    }
+
+    @Test
+    void novoCarrinho_gravaSubtotalEPesoDosItens() {
+        CarrinhoDeCompras carrinho = recarregar(novoCarrinho(2, 1));
+
+        assertEquals(0, new BigDecimal("125.00").compareTo(carrinho.getSubtotal()));
+        assertEquals(5L, carrinho.getPesoTotal());
+        assertEquals(0L, carrinho.getRevisao());
+    }
+
+    @Test
+    void adicionarRemoverEAlterarItens_mantemOsTotaisEAvancamARevisao() {
+        CarrinhoDeCompras carrinho = recarregar(novoCarrinho(2, 1));
+
+        carrinho.alterarQuantidade(carrinho.getItens().get(0), 4L);
+        carrinho.adicionarItem(livro, 1L);
+        carrinho.removerItem(carrinho.getItens().get(1));
+        carrinho = recarregar(carrinhoRepository.save(carrinho));
+
+        assertEquals(0, new BigDecimal("62.50").compareTo(carrinho.getSubtotal()));
+        assertEquals(5L, carrinho.getPesoTotal());
+        assertEquals(3L, carrinho.getRevisao());
+        assertFalse(carrinho.recalcularTotais());
+    }
+
+    @Test
+    void salvarProduto_precoAlterado_corrigeOsCarrinhosQueOContem() {
+        CarrinhoDeCompras comEletronico = novoCarrinho(1, 2);
+        CarrinhoDeCompras semEletronico = carrinhoRepository.save(new CarrinhoDeCompras(null, cliente,
+                new ArrayList<>(List.of(new ItemCompra(null, livro, 1L))), LocalDate.now()));
+
+        eletronico.setPreco(new BigDecimal("80.00"));
+        produtoService.salvar(eletronico);
+
+        CarrinhoDeCompras corrigido = recarregar(comEletronico);
+        assertEquals(0, new BigDecimal("172.50").compareTo(corrigido.getSubtotal()));
+        assertEquals(1L, corrigido.getRevisao());
+        assertEquals(0L, recarregar(semEletronico).getRevisao());
+        assertEquals(0, consistencia.verificar());
+    }
+
+    @Test
+    void verificar_totaisDivergentesOuAusentes_reparaSoOsDivergentes() {
+        CarrinhoDeCompras alterado = novoCarrinho(1, 1);
+        CarrinhoDeCompras semTotais = novoCarrinho(3, 0);
+        CarrinhoDeCompras intacto = carrinhoRepository.save(new CarrinhoDeCompras(null, cliente,
+                new ArrayList<>(List.of(new ItemCompra(null, eletronico, 1L))), LocalDate.now()));
+        // Mudanças por fora da aplicação: preço do livro e carrinho gravado sem totais
+        jdbc.update("update produto set preco = 20.00 where id = ?", livro.getId());
+        jdbc.update("update carrinho_de_compras set subtotal = null, peso_total = null where id = ?",
+                semTotais.getId());
+
+        int reparados = consistencia.verificar();
+
+        assertEquals(2, reparados);
+        assertEquals(0, new BigDecimal("120.00").compareTo(recarregar(alterado).getSubtotal()));
+        assertEquals(0, new BigDecimal("60.00").compareTo(recarregar(semTotais).getSubtotal()));
+        assertEquals(3L, recarregar(semTotais).getPesoTotal());
+        assertEquals(0L, recarregar(intacto).getRevisao());
+        assertEquals(2.0, registry.get("carrinho.totais.reparados").counter().count());
+        assertEquals(0, consistencia.verificar());
+    }
+
+    @Test
+    void verificar_semCarrinhos_naoFazNada() {
+        assertEquals(0, consistencia.verificar());
+        assertTrue(carrinhoRepository.findAll().isEmpty());
+    }
+}
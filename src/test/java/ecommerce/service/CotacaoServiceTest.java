@@ -0,0 +1,265 @@
+package ecommerce.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import ecommerce.config.CacheConfig;
+import ecommerce.controller.CarrinhoController;
+import ecommerce.dto.ClienteResumoDTO;
+import ecommerce.dto.CotacaoDTO;
+import ecommerce.dto.ProdutoResumoDTO;
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.ItemCompra;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+import ecommerce.repository.ProdutoRepository;
+import ecommerce.service.custo.CalculadoraDeCusto;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Cotações contra o H2, sem a transação do teste, para que as invalidações
+ * feitas após o commit aconteçam. Conta as instruções SQL para garantir que
+ * cotações repetidas de um carrinho inalterado não consultem o banco. O
+ * endpoint é exercitado pelo MockMvc sobre o controller, com os mesmos
+ * serviços, para conferir o ETag e o 304.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ CotacaoService.class, CarrinhoDeComprasService.class, ClienteService.class, ProdutoService.class,
+        CalculadoraDeCusto.class, CacheConfig.class })
+public class CotacaoServiceTest {
+
+    private static final int QUANTIDADE_ITENS = 50;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @Autowired
+    private CarrinhoDeComprasRepository carrinhoRepository;
+
+    @Autowired
+    private CotacaoService cotacaoService;
+
+    @Autowired
+    private CarrinhoDeComprasService carrinhoService;
+
+    @Autowired
+    private ClienteService clienteService;
+
+    @Autowired
+    private ProdutoService produtoService;
+
+    @Autowired
+    private Cache<Long, ProdutoResumoDTO> cacheDeProdutos;
+
+    @Autowired
+    private Cache<Long, ClienteResumoDTO> cacheDeClientes;
+
+    @Autowired
+    private Cache<Long, CotacaoService.Cotacao> cacheDeCotacoes;
+
+    private Statistics estatisticas;
+    private Cliente cliente;
+    private Produto primeiroProduto;
+    private Long carrinhoId;
+
+    @BeforeEach
+    void setUp() {
+        cliente = clienteRepository.save(new Cliente(null, "Cliente", "Rua A", TipoCliente.PRATA));
+
+        List<ItemCompra> itens = new ArrayList<>();
+        for (int i = 0; i < QUANTIDADE_ITENS; i++) {
+            Produto produto = produtoRepository.save(
+                    new Produto(null, "Produto " + i, "Descrição", BigDecimal.valueOf(10), 1, TipoProduto.LIVRO));
+            if (primeiroProduto == null) {
+                primeiroProduto = produto;
+            }
+            itens.add(new ItemCompra(null, produto, 1L));
+        }
+        carrinhoId = carrinhoRepository.save(new CarrinhoDeCompras(null, cliente, itens, LocalDate.now())).getId();
+
+        estatisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estatisticas.clear();
+    }
+
+    @AfterEach
+    void limpar() {
+        for (String tabela : List.of("item_compra", "carrinho_de_compras", "cliente", "produto")) {
+            jdbc.update("delete from " + tabela);
+        }
+        cacheDeProdutos.invalidateAll();
+        cacheDeClientes.invalidateAll();
+        cacheDeCotacoes.invalidateAll();
+    }
+
+    private CotacaoService.Cotacao cotar() {
+        return cotacaoService.cotar(carrinhoId, cliente.getId()).orElseThrow();
+    }
+
+    @Test
+    void cotar_carrinhoCom50Itens_calculaSubtotalDescontoFreteETotal() {
+        CotacaoDTO valores = cotar().valores();
+
+        // 50 itens * R$ 10,00 = R$ 500,00 sem desconto; 50kg * R$ 4,00 com 50% de desconto (cliente Prata)
+        assertEquals(carrinhoId, valores.carrinhoId());
+        assertEquals(0, BigDecimal.valueOf(500).compareTo(valores.subtotal()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(valores.desconto()));
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(valores.frete()));
+        assertEquals(0, BigDecimal.valueOf(600).compareTo(valores.total()));
+    }
+
+    @Test
+    void cotar_carrinhoInalterado_devolveAMesmaCotacaoConsultandoSoARevisao() {
+        CotacaoService.Cotacao primeira = cotar();
+        estatisticas.clear();
+
+        CotacaoService.Cotacao segunda = cotar();
+
+        assertEquals(primeira.etag(), segunda.etag());
+        assertEquals(1, estatisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void cotar_cachesVazios_recalculaComOMesmoEtag() {
+        String etag = cotar().etag();
+        cacheDeProdutos.invalidateAll();
+        cacheDeClientes.invalidateAll();
+        cacheDeCotacoes.invalidateAll();
+
+        assertEquals(etag, cotar().etag());
+        assertTrue(estatisticas.getPrepareStatementCount() > 0);
+    }
+
+    @Test
+    void cotar_precoDeProdutoAlterado_devolveNovoEtagETotal() {
+        String etag = cotar().etag();
+
+        primeiroProduto.setPreco(BigDecimal.valueOf(110));
+        produtoService.salvar(primeiroProduto);
+        CotacaoService.Cotacao cotacao = cotar();
+
+        assertNotEquals(etag, cotacao.etag());
+        assertEquals(0, BigDecimal.valueOf(600).compareTo(cotacao.valores().subtotal()));
+    }
+
+    @Test
+    void getCotacao_etagReenviado_responde304AteOPrecoMudar() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new CarrinhoController(cotacaoService)).build();
+        String url = "/carrinhos/" + carrinhoId + "/cotacao?clienteId=" + cliente.getId();
+
+        String etag = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(jsonPath("$.total").value(600.0))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(""));
+
+        primeiroProduto.setPreco(BigDecimal.valueOf(110));
+        produtoService.salvar(primeiroProduto);
+
+        String novoEtag = mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(640.0))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, novoEtag);
+    }
+
+    @Test
+    void cotar_tipoDoClienteAlterado_devolveNovoEtagEFrete() {
+        String etag = cotar().etag();
+
+        cliente.setTipo(TipoCliente.OURO);
+        clienteService.atualizar(cliente);
+        CotacaoService.Cotacao cotacao = cotar();
+
+        assertNotEquals(etag, cotacao.etag());
+        assertEquals(0, BigDecimal.ZERO.compareTo(cotacao.valores().frete()));
+    }
+
+    @Test
+    void salvar_quantidadeDeItemAlterada_descartaACotacao() {
+        String etag = cotar().etag();
+
+        CarrinhoDeCompras carrinho = carrinhoService.buscarPorIds(List.of(carrinhoId)).get(0);
+        carrinho.alterarQuantidade(carrinho.getItens().get(0), 3L);
+        carrinhoService.salvar(carrinho);
+        CotacaoService.Cotacao cotacao = cotar();
+
+        assertNotEquals(etag, cotacao.etag());
+        assertEquals(0, BigDecimal.valueOf(520).compareTo(cotacao.valores().subtotal()));
+    }
+
+    @Test
+    void cotar_itensAlteradosForaDoSalvar_devolveNovoEtagESubtotal() {
+        String etag = cotar().etag();
+
+        // Como outra instância faria: a cotação em cache aqui não é descartada, só a revisão avança
+        jdbc.update("update item_compra set quantidade = 3 where carrinho_id = ? and produto_id = ?",
+                carrinhoId, primeiroProduto.getId());
+        jdbc.update("update carrinho_de_compras set revisao = revisao + 1 where id = ?", carrinhoId);
+        CotacaoService.Cotacao cotacao = cotar();
+
+        assertNotEquals(etag, cotacao.etag());
+        assertEquals(0, BigDecimal.valueOf(520).compareTo(cotacao.valores().subtotal()));
+    }
+
+    @Test
+    void cotar_carrinhoDeOutroCliente_devolveVazio() {
+        Cliente outro = clienteRepository.save(new Cliente(null, "Outro", "Rua B", TipoCliente.BRONZE));
+        cotar();
+
+        assertTrue(cotacaoService.cotar(carrinhoId, outro.getId()).isEmpty());
+        cacheDeCotacoes.invalidateAll();
+        assertTrue(cotacaoService.cotar(carrinhoId, outro.getId()).isEmpty());
+    }
+
+    @Test
+    void cotar_carrinhoInexistente_devolveVazio() {
+        assertTrue(cotacaoService.cotar(-1L, cliente.getId()).isEmpty());
+    }
+}
@@ -0,0 +1,121 @@
+package ecommerce.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+
+import ecommerce.entity.CancelamentoPendente;
+import ecommerce.external.DependenciaIndisponivelException;
+import ecommerce.external.IPagamentoExternal;
+import ecommerce.repository.CancelamentoPendenteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class DespachanteDeCancelamentosTest {
+
+    private static final Instant AGORA = Instant.parse("2024-01-01T12:00:00Z");
+
+    @Mock
+    private CancelamentoPendenteRepository repository;
+
+    @Mock
+    private IPagamentoExternal pagamentoExternal;
+
+    private SimpleMeterRegistry registry;
+    private DespachanteDeCancelamentos despachante;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        registry = new SimpleMeterRegistry();
+        despachante = new DespachanteDeCancelamentos(repository, pagamentoExternal, registry, 10,
+                Duration.ofSeconds(1), Duration.ofSeconds(30), 3, Clock.fixed(AGORA, ZoneOffset.UTC));
+    }
+
+    @Test
+    void despachar_loteEnviado_apagaConfirmadosEmUmaInstrucao() {
+        when(repository.findProntos(eq(AGORA), any(Pageable.class)))
+                .thenReturn(List.of(pendente(1L, 10L, 0), pendente(2L, 20L, 0)));
+
+        int confirmados = despachante.despachar();
+
+        assertEquals(2, confirmados);
+        verify(pagamentoExternal).cancelarPagamento(5L, 10L);
+        verify(pagamentoExternal).cancelarPagamento(5L, 20L);
+        verify(repository, times(1)).deleteAllByIdInBatch(List.of(1L, 2L));
+        assertEquals(2.0, registry.get("compra.cancelamentos").tag("resultado", "enviado").counter().count());
+    }
+
+    @Test
+    void despachar_falhaNoCancelamento_reagendaComEsperaExponencialESegueOLote() {
+        when(repository.findProntos(eq(AGORA), any(Pageable.class)))
+                .thenReturn(List.of(pendente(1L, 10L, 1), pendente(2L, 20L, 0)));
+        doThrow(new IllegalStateException("recusado")).when(pagamentoExternal).cancelarPagamento(5L, 10L);
+
+        int confirmados = despachante.despachar();
+
+        assertEquals(1, confirmados);
+        // Segunda falha: 1s * 2^1
+        verify(repository).registrarFalha(1L, AGORA.plusSeconds(2), "IllegalStateException: recusado", false);
+        verify(repository).deleteAllByIdInBatch(List.of(2L));
+    }
+
+    @Test
+    void despachar_ultimaTentativa_marcaComoEsgotado() {
+        when(repository.findProntos(eq(AGORA), any(Pageable.class))).thenReturn(List.of(pendente(1L, 10L, 2)));
+        doThrow(new IllegalStateException("recusado")).when(pagamentoExternal).cancelarPagamento(5L, 10L);
+
+        despachante.despachar();
+
+        verify(repository).registrarFalha(eq(1L), any(Instant.class), any(), eq(true));
+        verify(repository, never()).deleteAllByIdInBatch(any());
+        assertEquals(1.0, registry.get("compra.cancelamentos").tag("resultado", "esgotado").counter().count());
+    }
+
+    @Test
+    void despachar_pagamentoIndisponivel_deixaRestoDoLoteParaProximaRodada() {
+        when(repository.findProntos(eq(AGORA), any(Pageable.class)))
+                .thenReturn(List.of(pendente(1L, 10L, 0), pendente(2L, 20L, 0)));
+        doThrow(new DependenciaIndisponivelException("Circuito aberto.", null)).when(pagamentoExternal)
+                .cancelarPagamento(5L, 10L);
+
+        int confirmados = despachante.despachar();
+
+        assertEquals(0, confirmados);
+        verify(pagamentoExternal, never()).cancelarPagamento(5L, 20L);
+        verify(repository, times(1)).registrarFalha(anyLong(), any(Instant.class), any(), anyBoolean());
+    }
+
+    @Test
+    void espera_dobraACadaTentativaAteOLimite() {
+        assertEquals(Duration.ofSeconds(1), despachante.espera(1));
+        assertEquals(Duration.ofSeconds(16), despachante.espera(5));
+        assertEquals(Duration.ofSeconds(30), despachante.espera(6));
+        assertEquals(Duration.ofSeconds(30), despachante.espera(100));
+    }
+
+    private static CancelamentoPendente pendente(Long id, Long transacaoId, int tentativas) {
+        CancelamentoPendente cancelamento = new CancelamentoPendente(null, 5L, transacaoId, AGORA);
+        cancelamento.setId(id);
+        cancelamento.setTentativas(tentativas);
+        return cancelamento;
+    }
+}
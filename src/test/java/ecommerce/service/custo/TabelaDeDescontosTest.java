@@ -0,0 +1,173 @@
+package ecommerce.service.custo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.CarrinhoCheckoutDTO;
+import ecommerce.dto.CustoCompraDTO;
+import ecommerce.dto.ItemCheckoutDTO;
+import ecommerce.entity.TipoCliente;
+import ecommerce.entity.TipoProduto;
+
+/**
+ * Compilação e avaliação das regras de desconto, conferindo a tabela padrão
+ * contra os limites que o cálculo usava antes dela e tabelas grandes contra
+ * uma avaliação regra a regra.
+ */
+public class TabelaDeDescontosTest {
+
+    /** Desconto como era fixado no cálculo antes da tabela, em pontos-base. */
+    private static long descontoOriginal(BigDecimal subtotal) {
+        if (subtotal.compareTo(new BigDecimal("1000.00")) > 0) {
+            return 2_000L;
+        } else if (subtotal.compareTo(new BigDecimal("500.00")) > 0) {
+            return 1_000L;
+        }
+        return 0L;
+    }
+
+    private static ItemCheckoutDTO item(String preco, long quantidade, TipoProduto tipo) {
+        return new ItemCheckoutDTO(1L, new BigDecimal(preco), 0, quantidade, tipo);
+    }
+
+    private static CustoCompraDTO calcular(String regras, TipoCliente tipoCliente, ItemCheckoutDTO... itens) {
+        return new CalculadoraDeCusto(TabelaDeDescontos.compilar(regras))
+                .calcular(new CarrinhoCheckoutDTO(1L, 1L, tipoCliente, List.of(itens)));
+    }
+
+    private static void assertValor(String esperado, BigDecimal valor) {
+        assertEquals(0, new BigDecimal(esperado).compareTo(valor), "esperado " + esperado + ", obtido " + valor);
+    }
+
+    @Test
+    void padrao_mesmosLimitesDoCalculoOriginal() {
+        for (String subtotal : List.of("0", "499.99", "500.00", "500.001", "500.01", "999.99", "1000.00",
+                "1000.001", "1000.01", "123456.78")) {
+            BigDecimal valor = new BigDecimal(subtotal);
+            for (TipoCliente tipo : TipoCliente.values()) {
+                assertEquals(descontoOriginal(valor), TabelaDeDescontos.PADRAO.desconto(tipo,
+                        TabelaDeDescontos.centavosParaComparar(valor)), subtotal);
+            }
+        }
+    }
+
+    @Test
+    void calcular_tabelaPadraoComTiposDeProduto_mesmoDescontoSobreACompra() {
+        // A regra de móveis nunca é alcançada, mas faz o cálculo somar por tipo de produto
+        CustoCompraDTO custo = calcular("*:*:1000.00:20,*:*:500.00:10,MOVEL:*:100000.00:50", TipoCliente.BRONZE,
+                item("400.00", 2, TipoProduto.ELETRONICO), item("300.00", 1, TipoProduto.LIVRO),
+                item("0.005", 2, null));
+
+        // Subtotal R$ 1100,01 > R$ 1000,00: 20% em todos os itens, inclusive pelo caminho exato
+        assertValor("1100.01", custo.subtotal());
+        assertValor("220.002", custo.desconto());
+    }
+
+    @Test
+    void calcular_regraPorTipoDeProduto_valeSoParaOsItensDoTipoPeloSubtotalDoTipo() {
+        String regras = "ELETRONICO:*:200.00:15";
+
+        CustoCompraDTO acima = calcular(regras, TipoCliente.PRATA, item("150.00", 2, TipoProduto.ELETRONICO),
+                item("500.00", 1, TipoProduto.MOVEL));
+        CustoCompraDTO abaixo = calcular(regras, TipoCliente.PRATA, item("150.00", 1, TipoProduto.ELETRONICO),
+                item("500.00", 1, TipoProduto.MOVEL));
+
+        // 15% de R$ 300,00 em eletrônicos; os móveis não entram
+        assertValor("45.00", acima.desconto());
+        assertValor("0", abaixo.desconto());
+    }
+
+    @Test
+    void calcular_regraPorTipoDeCliente_valeSoParaOTipo() {
+        String regras = "*:OURO:100.00:5,LIVRO:PRATA:10.00:30";
+
+        assertValor("7.50", calcular(regras, TipoCliente.OURO, item("150.00", 1, TipoProduto.LIVRO)).desconto());
+        assertValor("45.00", calcular(regras, TipoCliente.PRATA, item("150.00", 1, TipoProduto.LIVRO)).desconto());
+        assertValor("0", calcular(regras, TipoCliente.BRONZE, item("150.00", 1, TipoProduto.LIVRO)).desconto());
+    }
+
+    @Test
+    void calcular_variasRegrasAlcancamOItem_valeOMaiorPercentualSemAcumular() {
+        String regras = "*:*:100.00:10,ROUPA:*:50.00:25,ROUPA:BRONZE:50.00:5";
+
+        CustoCompraDTO custo = calcular(regras, TipoCliente.BRONZE, item("60.00", 1, TipoProduto.ROUPA),
+                item("60.00", 1, TipoProduto.ALIMENTO));
+
+        // Roupa: maior entre 10% (compra de R$ 120,00), 25% e 5% = 25%; alimento: 10%
+        assertValor("21.00", custo.desconto());
+    }
+
+    @Test
+    void calcular_semRegras_semDesconto() {
+        CustoCompraDTO custo = calcular("", TipoCliente.BRONZE, item("5000.00", 1, TipoProduto.MOVEL));
+
+        assertValor("0", custo.desconto());
+        assertValor("5000.00", custo.total());
+    }
+
+    @Test
+    void calculaPelosTotais_regrasPorTipoDeProduto_exigemOsItens() {
+        CalculadoraDeCusto gerais = new CalculadoraDeCusto(TabelaDeDescontos.compilar("*:OURO:10.00:50"));
+        CalculadoraDeCusto porTipo = new CalculadoraDeCusto(TabelaDeDescontos.compilar("LIVRO:*:10.00:50"));
+
+        assertTrue(gerais.calculaPelosTotais());
+        assertValor("50.00", gerais.calcular(new BigDecimal("100.00"), 0, TipoCliente.OURO).desconto());
+        assertFalse(porTipo.calculaPelosTotais());
+        assertThrows(IllegalStateException.class,
+                () -> porTipo.calcular(new BigDecimal("100.00"), 0, TipoCliente.OURO));
+    }
+
+    @Test
+    void desconto_milRegrasSorteadas_mesmoResultadoDaAvaliacaoRegraARegra() {
+        SplittableRandom sorteio = new SplittableRandom(7);
+        List<TabelaDeDescontos.Regra> regras = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            TipoProduto produto = sorteio.nextInt(3) == 0 ? null
+                    : TipoProduto.values()[sorteio.nextInt(TipoProduto.values().length)];
+            TipoCliente cliente = sorteio.nextInt(3) == 0 ? null
+                    : TipoCliente.values()[sorteio.nextInt(TipoCliente.values().length)];
+            regras.add(new TabelaDeDescontos.Regra(produto, cliente, sorteio.nextLong(200_000),
+                    sorteio.nextLong(5_001)));
+        }
+        TabelaDeDescontos tabela = TabelaDeDescontos.compilar(regras);
+
+        assertEquals(1000, tabela.regras());
+        for (int i = 0; i < 2000; i++) {
+            TipoCliente cliente = TipoCliente.values()[sorteio.nextInt(TipoCliente.values().length)];
+            TipoProduto produto = TipoProduto.values()[sorteio.nextInt(TipoProduto.values().length)];
+            long subtotal = sorteio.nextLong(250_000);
+            long subtotalDoTipo = sorteio.nextLong(subtotal + 1);
+
+            long esperado = 0L;
+            for (TabelaDeDescontos.Regra regra : regras) {
+                boolean alcanca = (regra.tipoCliente() == null || regra.tipoCliente() == cliente)
+                        && (regra.tipoProduto() == null || regra.tipoProduto() == produto)
+                        && (regra.tipoProduto() == null ? subtotal : subtotalDoTipo) > regra.acimaDeCentavos();
+                if (alcanca) {
+                    esperado = Math.max(esperado, regra.pontosBase());
+                }
+            }
+            assertEquals(esperado, tabela.desconto(cliente, produto, subtotal, subtotalDoTipo));
+        }
+    }
+
+    @Test
+    void compilar_configuracoesInvalidas_lancamExcecao() {
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeDescontos.compilar("*:*:100.00"));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeDescontos.compilar("BRINQUEDO:*:100.00:10"));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeDescontos.compilar("*:DIAMANTE:100.00:10"));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeDescontos.compilar("*:*:-1.00:10"));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeDescontos.compilar("*:*:100.001:10"));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeDescontos.compilar("*:*:100.00:101"));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeDescontos.compilar("*:*:100.00:x"));
+    }
+}
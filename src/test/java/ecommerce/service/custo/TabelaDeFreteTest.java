@@ -0,0 +1,138 @@
+package ecommerce.service.custo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import ecommerce.dto.CarrinhoCheckoutDTO;
+import ecommerce.dto.CustoCompraDTO;
+import ecommerce.dto.ItemCheckoutDTO;
+import ecommerce.entity.TipoCliente;
+
+/**
+ * Compilação e consulta da tabela de frete, conferindo a tabela padrão contra
+ * as faixas que o cálculo usava antes dela.
+ */
+public class TabelaDeFreteTest {
+
+    /** Faixas e parcelas como eram fixadas no cálculo antes da tabela. */
+    private static long fretePorKgOriginal(long pesoTotal) {
+        if (pesoTotal <= 5) {
+            return 0L;
+        } else if (pesoTotal <= 10) {
+            return 2_00L;
+        } else if (pesoTotal <= 50) {
+            return 4_00L;
+        }
+        return 7_00L;
+    }
+
+    private static long parcelaOriginal(TipoCliente tipoCliente) {
+        switch (tipoCliente) {
+            case OURO:
+                return 0L;
+            case PRATA:
+                return 5_000L;
+            default:
+                return 10_000L;
+        }
+    }
+
+    @Test
+    void padrao_mesmasFaixasEParcelasDoCalculoOriginal() {
+        for (long peso = 0; peso <= 200; peso++) {
+            assertEquals(fretePorKgOriginal(peso), TabelaDeFrete.PADRAO.centavosPorKg(peso), "peso " + peso);
+        }
+        assertEquals(7_00L, TabelaDeFrete.PADRAO.centavosPorKg(Long.MAX_VALUE));
+        for (TipoCliente tipo : TipoCliente.values()) {
+            assertEquals(parcelaOriginal(tipo), TabelaDeFrete.PADRAO.parcela(tipo), tipo.name());
+        }
+    }
+
+    @Test
+    void calcular_tabelaPadraoConfigurada_mesmoCustoDaCalculadoraSemConfiguracao() {
+        CalculadoraDeCusto semConfiguracao = new CalculadoraDeCusto();
+        CalculadoraDeCusto configurada = new CalculadoraDeCusto("5:0.00,10:2.00,50:4.00", "7.00",
+                "BRONZE:100,PRATA:50,OURO:0", "*:*:1000.00:20,*:*:500.00:10");
+
+        for (TipoCliente tipo : TipoCliente.values()) {
+            for (long peso = 0; peso <= 60; peso++) {
+                CustoCompraDTO esperado = semConfiguracao.calcular(new BigDecimal("123.45"), peso, tipo);
+                assertEquals(esperado, configurada.calcular(new BigDecimal("123.45"), peso, tipo));
+            }
+        }
+    }
+
+    @Test
+    void centavosPorKg_limitesInclusivos_entreFaixasEAcimaDaUltima() {
+        TabelaDeFrete tabela = TabelaDeFrete.compilar("0:1.00,3:2.50,7:3.00", "9.99", "BRONZE:100,PRATA:100,OURO:100");
+
+        assertEquals(1_00L, tabela.centavosPorKg(0));
+        assertEquals(2_50L, tabela.centavosPorKg(1));
+        assertEquals(2_50L, tabela.centavosPorKg(3));
+        assertEquals(3_00L, tabela.centavosPorKg(4));
+        assertEquals(3_00L, tabela.centavosPorKg(7));
+        assertEquals(9_99L, tabela.centavosPorKg(8));
+        assertEquals(4, tabela.faixas());
+    }
+
+    @Test
+    void centavosPorKg_muitasFaixas_achaAFaixaDeCadaPeso() {
+        StringBuilder faixas = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            faixas.append(i > 1 ? "," : "").append(i * 10).append(':').append(i).append(".00");
+        }
+        TabelaDeFrete tabela = TabelaDeFrete.compilar(faixas.toString(), "0.01", "BRONZE:100,PRATA:100,OURO:100");
+
+        for (long peso = 0; peso <= 10_000; peso++) {
+            long faixa = Math.max(1, (peso + 9) / 10);
+            assertEquals(faixa * 100, tabela.centavosPorKg(peso), "peso " + peso);
+        }
+        assertEquals(1L, tabela.centavosPorKg(10_001));
+    }
+
+    @Test
+    void compilar_semFaixas_valorUnicoParaQualquerPeso() {
+        TabelaDeFrete tabela = TabelaDeFrete.compilar("", "1.50", "BRONZE:100,PRATA:100,OURO:100");
+
+        assertEquals(1_50L, tabela.centavosPorKg(0));
+        assertEquals(1_50L, tabela.centavosPorKg(1_000));
+    }
+
+    @Test
+    void calcular_tabelaConfigurada_aplicaFaixaEParcelaDoCliente() {
+        CalculadoraDeCusto calculadora = new CalculadoraDeCusto(
+                TabelaDeFrete.compilar("2:0.00,20:3.00", "5.00", "BRONZE:100,PRATA:75,OURO:12.5"));
+        CarrinhoCheckoutDTO carrinho = new CarrinhoCheckoutDTO(1L, 1L, TipoCliente.OURO,
+                List.of(new ItemCheckoutDTO(1L, new BigDecimal("10.00"), 4, 2L, null)));
+
+        // 8kg * R$ 3,00 = R$ 24,00, dos quais o cliente Ouro paga 12,5% = R$ 3,00
+        CustoCompraDTO custo = calculadora.calcular(carrinho);
+
+        assertEquals(0, new BigDecimal("3.00").compareTo(custo.frete()));
+        assertEquals(0, new BigDecimal("23.00").compareTo(custo.total()));
+    }
+
+    @Test
+    void compilar_configuracoesInvalidas_lancamExcecao() {
+        String parcelas = "BRONZE:100,PRATA:50,OURO:0";
+
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeFrete.compilar("10:1.00,5:2.00", "3.00", parcelas));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeFrete.compilar("5:1.00,5:2.00", "3.00", parcelas));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeFrete.compilar("-1:1.00", "3.00", parcelas));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeFrete.compilar("5:-1.00", "3.00", parcelas));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeFrete.compilar("5:1.001", "3.00", parcelas));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeFrete.compilar("5", "3.00", parcelas));
+        assertThrows(IllegalArgumentException.class, () -> TabelaDeFrete.compilar("5:1.00", "x", parcelas));
+        assertThrows(IllegalArgumentException.class,
+                () -> TabelaDeFrete.compilar("5:1.00", "3.00", "BRONZE:100,PRATA:50"));
+        assertThrows(IllegalArgumentException.class,
+                () -> TabelaDeFrete.compilar("5:1.00", "3.00", "BRONZE:100,PRATA:-50,OURO:0"));
+        assertThrows(IllegalArgumentException.class,
+                () -> TabelaDeFrete.compilar("5:1.00", "3.00", "BRONZE:100,PRATA:50,DIAMANTE:0"));
+    }
+}
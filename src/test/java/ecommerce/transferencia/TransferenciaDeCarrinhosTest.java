@@ -0,0 +1,231 @@
+package ecommerce.transferencia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import ecommerce.entity.CarrinhoDeCompras;
+import ecommerce.entity.Cliente;
+import ecommerce.entity.Produto;
+import ecommerce.entity.TipoCliente;
+import ecommerce.massa.GeradorDeMassa;
+import ecommerce.massa.Mistura;
+import ecommerce.massa.ParametrosDaMassa;
+import ecommerce.repository.CarrinhoDeComprasRepository;
+import ecommerce.repository.ClienteRepository;
+import ecommerce.repository.ProdutoRepository;
+
+/**
+ * Exporta uma massa pequena gerada no H2 do teste, importa o arquivo de volta
+ * e confere que carrinhos e itens voltam iguais, sem a transação do teste (a
+ * importação abre uma por lote).
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class TransferenciaDeCarrinhosTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transacoes;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private CarrinhoDeComprasRepository carrinhoRepository;
+
+    @Autowired
+    private ProdutoRepository produtoRepository;
+
+    @TempDir
+    private Path pasta;
+
+    private TransferenciaDeCarrinhos transferencia;
+
+    @BeforeEach
+    void setUp() {
+        transferencia = new TransferenciaDeCarrinhos(jdbc, transacoes, 16, 10);
+    }
+
+    @AfterEach
+    void limpar() {
+        for (String tabela : List.of("item_compra", "carrinho_de_compras", "cliente", "produto")) {
+            jdbc.update("delete from " + tabela);
+        }
+    }
+
+    private void gerarMassa(int carrinhos, String itensPorCarrinho) {
+        new GeradorDeMassa(jdbc, transacoes).gerar(new ParametrosDaMassa(20, 200, carrinhos,
+                Mistura.de("BRONZE,PRATA,OURO", TipoCliente::valueOf), Mistura.de(itensPorCarrinho, Integer::valueOf),
+                new BigDecimal("1.00"), new BigDecimal("99.99"), 1, 5, 1.0, 3, 64, 42L, false));
+    }
+
+    private long contar(String tabela) {
+        return jdbc.queryForObject("select count(*) from " + tabela, Long.class);
+    }
+
+    private void apagarCarrinhos() {
+        jdbc.update("delete from item_compra");
+        jdbc.update("delete from carrinho_de_compras");
+    }
+
+    /** Linhas do arquivo sem os ids e os totais, que a importação atribui e recalcula. */
+    private static List<JsonNode> semIds(Path arquivo) throws IOException {
+        List<JsonNode> linhas = new ArrayList<>();
+        for (String linha : Files.readAllLines(arquivo, StandardCharsets.UTF_8)) {
+            ObjectNode carrinho = (ObjectNode) JSON.readTree(linha);
+            carrinho.remove(List.of("id", "subtotal", "pesoTotal", "revisao"));
+            carrinho.get("itens").forEach(item -> ((ObjectNode) item).remove("id"));
+            linhas.add(carrinho);
+        }
+        return linhas;
+    }
+
+    @Test
+    void exportar_umaLinhaPorCarrinhoComOsItensDoBanco() throws IOException {
+        gerarMassa(50, "1,5,40");
+        Path arquivo = pasta.resolve("carrinhos.jsonl");
+
+        TransferenciaDeCarrinhos.Resumo resumo = transferencia.exportar(arquivo);
+
+        List<String> linhas = Files.readAllLines(arquivo, StandardCharsets.UTF_8);
+        assertEquals(50, linhas.size());
+        assertEquals(50, resumo.carrinhos());
+        assertEquals(contar("item_compra"), resumo.itens());
+        for (String linha : linhas) {
+            JsonNode carrinho = JSON.readTree(linha);
+            long id = carrinho.get("id").asLong();
+            Map<String, Object> banco = jdbc.queryForMap("select cliente_id, data, status from carrinho_de_compras "
+                    + "where id = ?", id);
+            assertEquals(((Number) banco.get("CLIENTE_ID")).longValue(), carrinho.get("clienteId").asLong());
+            assertEquals(banco.get("DATA").toString(), carrinho.get("data").asText());
+            assertEquals("ABERTO", carrinho.get("status").asText());
+            List<Long> produtos = jdbc.queryForList(
+                    "select produto_id from item_compra where carrinho_id = ? order by id", Long.class, id);
+            assertEquals(produtos.size(), carrinho.get("itens").size());
+            for (int i = 0; i < produtos.size(); i++) {
+                assertEquals(produtos.get(i), carrinho.get("itens").get(i).get("produtoId").asLong());
+            }
+        }
+    }
+
+    @Test
+    void importar_arquivoExportado_recriaOsMesmosCarrinhosComNovosIds() throws IOException {
+        // Carrinhos de 40 itens com lote de 16: itens de um carrinho em vários lotes
+        gerarMassa(60, "1,3,40");
+        Path exportado = pasta.resolve("exportado.jsonl");
+        transferencia.exportar(exportado);
+        long itens = contar("item_compra");
+        long maiorId = jdbc.queryForObject("select max(id) from carrinho_de_compras", Long.class);
+
+        TransferenciaDeCarrinhos.Resumo resumo = transferencia.importar(exportado);
+
+        assertEquals(60, resumo.carrinhos());
+        assertEquals(itens, resumo.itens());
+        assertEquals(120, contar("carrinho_de_compras"));
+        assertEquals(2 * itens, contar("item_compra"));
+        jdbc.update("delete from item_compra where carrinho_id <= ?", maiorId);
+        jdbc.update("delete from carrinho_de_compras where id <= ?", maiorId);
+        Path reexportado = pasta.resolve("reexportado.jsonl");
+        transferencia.exportar(reexportado);
+        assertEquals(semIds(exportado), semIds(reexportado));
+    }
+
+    @Test
+    void importar_carrinhosLegiveisPeloJpaEInsercoesDaAplicacaoNaoColidem() throws IOException {
+        Cliente cliente = clienteRepository.save(new Cliente(null, "Cliente", "Rua A", TipoCliente.OURO));
+        Path arquivo = pasta.resolve("carrinhos.jsonl");
+        Files.writeString(arquivo, "{\"id\":900,\"clienteId\":" + cliente.getId() + ",\"data\":\"2024-05-01\","
+                + "\"status\":\"EM_CHECKOUT\",\"subtotal\":null,\"pesoTotal\":null,\"revisao\":3,\"itens\":[]}\n"
+                + "{\"clienteId\":" + cliente.getId() + "}\n");
+
+        transferencia.importar(arquivo);
+
+        List<Long> ids = jdbc.queryForList("select id from carrinho_de_compras order by id", Long.class);
+        List<CarrinhoDeCompras> carrinhos = carrinhoRepository.findAllComItensByIdIn(ids);
+        assertEquals(2, carrinhos.size());
+        for (CarrinhoDeCompras carrinho : carrinhos) {
+            assertEquals(cliente.getId(), carrinho.getCliente().getId());
+            assertTrue(carrinho.getItens().isEmpty());
+            // Uma finalização em andamento na origem não continua no destino
+            assertEquals("ABERTO", carrinho.getStatus().name());
+        }
+        CarrinhoDeCompras novo = carrinhoRepository.save(new CarrinhoDeCompras(null, cliente, List.of(), null));
+        assertTrue(novo.getId() > ids.get(1));
+    }
+
+    @Test
+    void importar_totaisDoArquivo_recalculaComOsPrecosDoDestino() throws IOException {
+        Cliente cliente = clienteRepository.save(new Cliente(null, "Cliente", "Rua A", TipoCliente.OURO));
+        Produto produto = produtoRepository.save(new Produto(null, "Livro", "Livro", new BigDecimal("12.50"), 3, null));
+        Path arquivo = pasta.resolve("carrinhos.jsonl");
+        Files.writeString(arquivo, "{\"clienteId\":" + cliente.getId() + ",\"subtotal\":999.99,\"pesoTotal\":1,"
+                + "\"itens\":[{\"produtoId\":" + produto.getId() + ",\"quantidade\":2}]}\n");
+
+        transferencia.importar(arquivo);
+
+        Map<String, Object> totais = jdbc.queryForMap("select subtotal, peso_total from carrinho_de_compras");
+        assertEquals(0, new BigDecimal("25.00").compareTo((BigDecimal) totais.get("SUBTOTAL")));
+        assertEquals(6L, ((Number) totais.get("PESO_TOTAL")).longValue());
+    }
+
+    @Test
+    void importar_linhaInvalida_informaALinhaEMantemOsLotesAnteriores() throws IOException {
+        gerarMassa(20, "2");
+        Path arquivo = pasta.resolve("carrinhos.jsonl");
+        transferencia.exportar(arquivo);
+        apagarCarrinhos();
+        List<String> linhas = new ArrayList<>(Files.readAllLines(arquivo, StandardCharsets.UTF_8));
+        linhas.set(18, linhas.get(18).replace("\"produtoId\"", "\"produto\""));
+        Files.write(arquivo, linhas, StandardCharsets.UTF_8);
+
+        IllegalArgumentException erro = assertThrows(IllegalArgumentException.class,
+                () -> transferencia.importar(arquivo));
+
+        assertTrue(erro.getMessage().startsWith("Linha 19 inválida"), erro.getMessage());
+        // Os dois lotes de 16 itens (8 carrinhos cada) gravados antes da linha inválida continuam no banco
+        assertEquals(16, contar("carrinho_de_compras"));
+        // ...com os totais recalculados e sem colidir com as inserções da aplicação
+        assertEquals(0, contar("carrinho_de_compras where subtotal is null"));
+        long maiorId = jdbc.queryForObject("select max(id) from carrinho_de_compras", Long.class);
+        Cliente cliente = clienteRepository.findAll().get(0);
+        CarrinhoDeCompras novo = carrinhoRepository.save(new CarrinhoDeCompras(null, cliente, List.of(), null));
+        assertTrue(novo.getId() > maiorId);
+    }
+
+    @Test
+    void importar_itensAntesDosCamposDoCarrinho_recusaOArquivo() throws IOException {
+        Path arquivo = pasta.resolve("carrinhos.jsonl");
+        Files.writeString(arquivo, "{\"clienteId\":1,\"itens\":[],\"status\":\"ABERTO\"}\n");
+
+        assertThrows(IllegalArgumentException.class, () -> transferencia.importar(arquivo));
+    }
+}